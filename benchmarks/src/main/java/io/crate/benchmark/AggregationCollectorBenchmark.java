@@ -0,0 +1,97 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.operation.aggregation.AggregationCollector;
+import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.util.BigArrays;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * aggregates a long column into a single group, once with the object state
+ * and once with the fixed width {@link StateColumns} used for grouping.
+ * Aggregations without a fixed width state use the object state in both benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AggregationCollectorBenchmark {
+
+    private static final int NUM_ROWS = 1000000;
+
+    @Param({"count", "sum", "min", "max", "avg", "arbitrary", "collect_set"})
+    public String aggregation;
+
+    private Object[][] rows;
+    private InputCollectExpression<Object> input;
+    private AggregationCollector collector;
+
+    @Setup
+    public void setUp() {
+        rows = RowGenerator.rows(new RowGenerator().longs(NUM_ROWS, 10000L));
+        input = new InputCollectExpression<>(0);
+        AggregationFunction function = BenchmarkFunctions.get(aggregation, DataTypes.LONG);
+        collector = new AggregationCollector(
+                new Aggregation(function.info(), ImmutableList.<Symbol>of(new InputColumn(0)),
+                        Aggregation.Step.ITER, Aggregation.Step.FINAL),
+                function,
+                input
+        );
+    }
+
+    @Benchmark
+    public Object objectState() {
+        collector.startCollect();
+        for (Object[] row : rows) {
+            input.setNextRow(row);
+            collector.processRow();
+        }
+        return collector.finishCollect();
+    }
+
+    @Benchmark
+    public Object stateColumns() {
+        if (!collector.hasFixedWidthState()) {
+            return objectState();
+        }
+        StateColumns columns = collector.newStateColumns(BigArrays.NON_RECYCLING_INSTANCE);
+        columns.ensureCapacity(0);
+        collector.startCollect(columns, 0);
+        for (Object[] row : rows) {
+            input.setNextRow(row);
+            collector.processRow(columns, 0);
+        }
+        return collector.finishCollect(columns, 0);
+    }
+}
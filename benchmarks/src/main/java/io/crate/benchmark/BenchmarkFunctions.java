@@ -0,0 +1,61 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionImplementation;
+import io.crate.metadata.Functions;
+import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.operator.OperatorModule;
+import io.crate.operation.predicate.PredicateModule;
+import io.crate.operation.scalar.ScalarFunctionModule;
+import io.crate.types.DataType;
+import org.elasticsearch.common.inject.ModulesBuilder;
+
+import java.util.Arrays;
+
+/**
+ * function implementations as registered on a node, without starting one
+ */
+public class BenchmarkFunctions {
+
+    private static final Functions FUNCTIONS = new ModulesBuilder()
+            .add(new AggregationImplModule())
+            .add(new OperatorModule())
+            .add(new PredicateModule())
+            .add(new ScalarFunctionModule())
+            .createInjector().getInstance(Functions.class);
+
+    public static Functions functions() {
+        return FUNCTIONS;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends FunctionImplementation> T get(String name, DataType... argumentTypes) {
+        FunctionImplementation implementation = FUNCTIONS.get(
+                new FunctionIdent(name, Arrays.asList(argumentTypes)));
+        if (implementation == null) {
+            throw new IllegalArgumentException("unknown function " + name + Arrays.toString(argumentTypes));
+        }
+        return (T) implementation;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.google.common.base.Optional;
+import io.crate.Streamer;
+import io.crate.executor.transport.distributed.DistributedRequestContextManager;
+import io.crate.executor.transport.distributed.DistributedResultRequest;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * serializes and deserializes a page of rows (string, long, double)
+ * as sent from mappers to reducers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DistributedResultRequestBenchmark {
+
+    @Param({"100", "10000"})
+    public int numRows;
+
+    private final UUID contextId = UUID.randomUUID();
+    private final Streamer<?>[] streamers = new Streamer[]{
+            DataTypes.STRING.streamer(), DataTypes.LONG.streamer(), DataTypes.DOUBLE.streamer()};
+
+    private Object[][] rows;
+    private BytesReference serialized;
+    private DistributedRequestContextManager contextManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        RowGenerator generator = new RowGenerator();
+        rows = RowGenerator.rows(
+                generator.strings(numRows, 1000),
+                generator.longs(numRows, Long.MAX_VALUE),
+                generator.doubles(numRows));
+        serialized = write();
+
+        // only the streamer lookup of the context manager is used while reading
+        contextManager = new DistributedRequestContextManager(null, BenchmarkFunctions.functions()) {
+            @Override
+            public Optional<Streamer<?>[]> getStreamer(UUID contextId) {
+                return Optional.of(streamers);
+            }
+        };
+    }
+
+    @Benchmark
+    public BytesReference write() throws IOException {
+        DistributedResultRequest request = new DistributedResultRequest(contextId, streamers);
+        request.rows(rows);
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        return out.bytes();
+    }
+
+    @Benchmark
+    public Object[][] read() throws IOException {
+        DistributedResultRequest request = new DistributedResultRequest(contextManager);
+        request.readFrom(new BytesStreamInput(serialized));
+        return request.rows();
+    }
+}
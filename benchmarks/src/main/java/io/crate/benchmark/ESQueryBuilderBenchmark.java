@@ -0,0 +1,95 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.google.common.collect.ImmutableSet;
+import io.crate.analyze.WhereClause;
+import io.crate.executor.transport.task.elasticsearch.ESQueryBuilder;
+import io.crate.metadata.FunctionImplementation;
+import io.crate.metadata.ReferenceIdent;
+import io.crate.metadata.ReferenceInfo;
+import io.crate.metadata.TableIdent;
+import io.crate.operation.operator.*;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import io.crate.types.SetType;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * converts a where clause combining eq, like, range, in and boolean operators into an ES query
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ESQueryBuilderBenchmark {
+
+    private static final TableIdent CHARACTERS = new TableIdent(null, "characters");
+
+    private final ESQueryBuilder queryBuilder = new ESQueryBuilder();
+    private WhereClause whereClause;
+
+    @Setup
+    public void setUp() {
+        Reference name = reference("name", DataTypes.STRING);
+        Reference age = reference("age", DataTypes.INTEGER);
+        Reference weight = reference("weight", DataTypes.DOUBLE);
+
+        Function eqName = function(EqOperator.NAME, name, Literal.newLiteral("Marvin"));
+        Function likeName = function(LikeOperator.NAME, name, Literal.newLiteral("Ar%"));
+        Function gtWeight = function(GtOperator.NAME, weight, Literal.newLiteral(42.0));
+        Function inAge = function(InOperator.NAME, age, Literal.newLiteral(
+                new SetType(DataTypes.INTEGER), ImmutableSet.of(16, 32, 64, 128, 256)));
+
+        Function or = function(OrOperator.NAME, eqName, likeName);
+        Function and = function(AndOperator.NAME, gtWeight, inAge);
+        whereClause = new WhereClause(function(AndOperator.NAME, or, and));
+    }
+
+    @Benchmark
+    public BytesReference convert() throws IOException {
+        return queryBuilder.convert(whereClause);
+    }
+
+    private static Reference reference(String column, DataType type) {
+        return new Reference(new ReferenceInfo(new ReferenceIdent(CHARACTERS, column), RowGranularity.DOC, type));
+    }
+
+    private static Function function(String name, Symbol left, Symbol right) {
+        DataType leftType = left instanceof Function ? DataTypes.BOOLEAN : ((Reference) left).valueType();
+        DataType rightType = right instanceof Function ? DataTypes.BOOLEAN : ((Literal) right).valueType();
+        FunctionImplementation implementation = BenchmarkFunctions.get(name, leftType, rightType);
+        return new Function(implementation.info(), Arrays.asList(left, right));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.metadata.FunctionInfo;
+import io.crate.operation.AggregationContext;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.aggregation.impl.SumAggregation;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.CollectingProjector;
+import io.crate.operation.projectors.GroupingProjector;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.util.BigArrays;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * group by a single key with count(*) and sum(value), rows to FINAL
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GroupingProjectorBenchmark {
+
+    private static final int NUM_ROWS = 500000;
+
+    @Param({"STRING", "LONG"})
+    public String keyType;
+
+    @Param({"10", "10000", "250000"})
+    public int cardinality;
+
+    @Param({"true", "false"})
+    public boolean typedKeys;
+
+    private Object[][] rows;
+
+    @Setup
+    public void generateRows() {
+        RowGenerator generator = new RowGenerator();
+        Object[] keys;
+        if (keyType.equals("STRING")) {
+            keys = generator.strings(NUM_ROWS, cardinality);
+        } else {
+            keys = generator.longs(NUM_ROWS, cardinality);
+        }
+        rows = RowGenerator.rows(keys, generator.longs(NUM_ROWS, 1000000L));
+    }
+
+    @Benchmark
+    public Object[][] groupBy() throws Exception {
+        InputCollectExpression<Object> key = new InputCollectExpression<>(0);
+        InputCollectExpression<Object> value = new InputCollectExpression<>(1);
+
+        AggregationFunction count = BenchmarkFunctions.get(CountAggregation.NAME);
+        AggregationFunction sum = BenchmarkFunctions.get(SumAggregation.NAME, DataTypes.LONG);
+        AggregationContext countContext = aggregationContext(count, ImmutableList.<Symbol>of());
+        AggregationContext sumContext = aggregationContext(sum, ImmutableList.<Symbol>of(new InputColumn(1)));
+        sumContext.addInput(value);
+
+        DataType type = keyType.equals("STRING") ? DataTypes.STRING : DataTypes.LONG;
+        GroupingProjector projector = new GroupingProjector(
+                typedKeys ? Arrays.asList(type) : null,
+                ImmutableList.<Input<?>>of(key),
+                ImmutableList.<CollectExpression<?>>of(key, value),
+                new AggregationContext[]{countContext, sumContext},
+                BigArrays.NON_RECYCLING_INSTANCE
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        projector.registerUpstream(null);
+        projector.startProjection();
+        for (Object[] row : rows) {
+            projector.setNextRow(row);
+        }
+        projector.upstreamFinished();
+        return collectingProjector.result().get();
+    }
+
+    private static AggregationContext aggregationContext(AggregationFunction function, ImmutableList<Symbol> inputs) {
+        FunctionInfo info = function.info();
+        return new AggregationContext(function,
+                new Aggregation(info, inputs, Aggregation.Step.ITER, Aggregation.Step.FINAL));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import io.crate.operation.Input;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.operator.InOperator;
+import io.crate.operation.operator.LikeOperator;
+import io.crate.operation.operator.Operator;
+import io.crate.operation.operator.any.AnyEqOperator;
+import io.crate.planner.symbol.Literal;
+import io.crate.types.ArrayType;
+import io.crate.types.DataTypes;
+import io.crate.types.SetType;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * evaluates LIKE, IN and ANY against a column of generated values
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OperatorBenchmark {
+
+    private static final int NUM_ROWS = 100000;
+    private static final int CARDINALITY = 10000;
+
+    @Param({"value-1%", "%-1", "%ue-1%", "val_e-1%"})
+    public String likePattern;
+
+    @Param({"10", "1000"})
+    public int listSize;
+
+    private Object[][] stringRows;
+    private Object[][] intRows;
+    private Object[][] arrayRows;
+
+    private Operator likeOperator;
+    private Operator inOperator;
+    private Operator anyOperator;
+
+    private Literal<BytesRef> pattern;
+    private Literal<Object> inList;
+    private Literal<Integer> anyValue;
+
+    @Setup
+    public void setUp() {
+        RowGenerator generator = new RowGenerator();
+        stringRows = RowGenerator.rows(generator.strings(NUM_ROWS, CARDINALITY));
+        intRows = RowGenerator.rows(generator.integers(NUM_ROWS, CARDINALITY));
+        Object[] arrays = new Object[NUM_ROWS];
+        for (int i = 0; i < NUM_ROWS; i++) {
+            arrays[i] = generator.integers(listSize, CARDINALITY);
+        }
+        arrayRows = RowGenerator.rows(arrays);
+
+        likeOperator = BenchmarkFunctions.get(LikeOperator.NAME, DataTypes.STRING, DataTypes.STRING);
+        inOperator = BenchmarkFunctions.get(InOperator.NAME, DataTypes.INTEGER, new SetType(DataTypes.INTEGER));
+        anyOperator = BenchmarkFunctions.get(AnyEqOperator.NAME, new ArrayType(DataTypes.INTEGER), DataTypes.INTEGER);
+
+        pattern = Literal.newLiteral(likePattern);
+        Set<Integer> values = new HashSet<>(listSize);
+        for (Integer value : generator.integers(listSize, CARDINALITY)) {
+            values.add(value);
+        }
+        inList = Literal.newLiteral(new SetType(DataTypes.INTEGER), values);
+        anyValue = Literal.newLiteral(CARDINALITY / 2);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void like(Blackhole blackhole) {
+        InputCollectExpression<Object> value = new InputCollectExpression<>(0);
+        Input[] args = new Input[]{value, pattern};
+        for (Object[] row : stringRows) {
+            value.setNextRow(row);
+            blackhole.consume(likeOperator.evaluate(args));
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void in(Blackhole blackhole) {
+        InputCollectExpression<Object> value = new InputCollectExpression<>(0);
+        Input[] args = new Input[]{value, inList};
+        for (Object[] row : intRows) {
+            value.setNextRow(row);
+            blackhole.consume(inOperator.evaluate(args));
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void anyEq(Blackhole blackhole) {
+        InputCollectExpression<Object> array = new InputCollectExpression<>(0);
+        Input[] args = new Input[]{array, anyValue};
+        for (Object[] row : arrayRows) {
+            array.setNextRow(row);
+            blackhole.consume(anyOperator.evaluate(args));
+        }
+    }
+}
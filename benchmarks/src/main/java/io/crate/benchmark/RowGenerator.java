@@ -0,0 +1,99 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Random;
+
+/**
+ * generates columns of synthetic values with a fixed seed,
+ * so every benchmark run works on the same data
+ */
+public class RowGenerator {
+
+    public static final long SEED = 42L;
+
+    private final Random random;
+
+    public RowGenerator() {
+        this(SEED);
+    }
+
+    public RowGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param cardinality number of distinct values
+     */
+    public BytesRef[] strings(int numRows, int cardinality) {
+        BytesRef[] values = new BytesRef[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            values[i] = new BytesRef("value-" + i);
+        }
+        BytesRef[] column = new BytesRef[numRows];
+        for (int i = 0; i < numRows; i++) {
+            column[i] = values[random.nextInt(cardinality)];
+        }
+        return column;
+    }
+
+    public Integer[] integers(int numRows, int cardinality) {
+        Integer[] column = new Integer[numRows];
+        for (int i = 0; i < numRows; i++) {
+            column[i] = random.nextInt(cardinality);
+        }
+        return column;
+    }
+
+    public Long[] longs(int numRows, long cardinality) {
+        Long[] column = new Long[numRows];
+        for (int i = 0; i < numRows; i++) {
+            column[i] = Math.abs(random.nextLong() % cardinality);
+        }
+        return column;
+    }
+
+    public Double[] doubles(int numRows) {
+        Double[] column = new Double[numRows];
+        for (int i = 0; i < numRows; i++) {
+            column[i] = random.nextDouble();
+        }
+        return column;
+    }
+
+    /**
+     * combine columns of the same length into rows
+     */
+    public static Object[][] rows(Object[]... columns) {
+        int numRows = columns[0].length;
+        Object[][] rows = new Object[numRows][columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            assert columns[c].length == numRows : "columns must have the same length";
+            for (int r = 0; r < numRows; r++) {
+                rows[r][c] = columns[c][r];
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import io.crate.operation.Input;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.SortingTopNProjector;
+import io.crate.operation.projectors.TopN;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * order by a long column with different limits,
+ * NO_LIMIT sorts all rows, small limits use the bounded priority queue
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SortingTopNProjectorBenchmark {
+
+    private static final int NUM_ROWS = 500000;
+
+    @Param({"10", "10000", "-1"})
+    public int limit;
+
+    private Object[][] rows;
+
+    @Setup
+    public void generateRows() {
+        RowGenerator generator = new RowGenerator();
+        rows = RowGenerator.rows(
+                generator.longs(NUM_ROWS, Long.MAX_VALUE),
+                generator.strings(NUM_ROWS, 1000));
+    }
+
+    @Benchmark
+    public Object[][] orderBy() throws Exception {
+        InputCollectExpression<Object> orderBy = new InputCollectExpression<>(0);
+        InputCollectExpression<Object> payload = new InputCollectExpression<>(1);
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{orderBy, payload},
+                new CollectExpression<?>[]{orderBy, payload},
+                2,
+                new int[]{0},
+                new boolean[]{true},
+                limit < 0 ? TopN.NO_LIMIT : limit,
+                TopN.NO_OFFSET
+        );
+        projector.registerUpstream(null);
+        projector.startProjection();
+        for (Object[] row : rows) {
+            projector.setNextRow(row);
+        }
+        projector.upstreamFinished();
+        return projector.result().get();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parses statements of increasing complexity
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SqlParserBenchmark {
+
+    @Param({"SELECT_BY_ID", "GROUP_BY", "INSERT"})
+    public String statement;
+
+    private String sql;
+
+    @Setup
+    public void setUp() {
+        switch (statement) {
+            case "SELECT_BY_ID":
+                sql = "select id, name, kind from locations where id = ?";
+                break;
+            case "GROUP_BY":
+                sql = "select kind, count(*), avg(position), max(date) from locations " +
+                        "where name like 'A%' and position in (1, 2, 3, 4) and date > ? " +
+                        "group by kind having count(*) > 1 order by count(*) desc limit 10";
+                break;
+            case "INSERT":
+                sql = "insert into locations (id, name, kind, position, date) " +
+                        "values (?, ?, ?, ?, ?), (?, ?, ?, ?, ?), (?, ?, ?, ?, ?)";
+                break;
+            default:
+                throw new IllegalArgumentException("unknown statement " + statement);
+        }
+    }
+
+    @Benchmark
+    public Statement createStatement() {
+        return SqlParser.createStatement(sql);
+    }
+}
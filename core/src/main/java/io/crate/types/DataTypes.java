@@ -74,6 +74,25 @@ public class DataTypes {
             LONG
     );
 
+    /**
+     * types whose values can be stored as long without loss
+     */
+    public final static ImmutableList<DataType> INTEGRAL_TYPES = ImmutableList.<DataType>of(
+            BYTE,
+            SHORT,
+            INTEGER,
+            LONG,
+            TIMESTAMP
+    );
+
+    /**
+     * floating point types, their values can be stored as double without loss
+     */
+    public final static ImmutableList<DataType> FLOATING_POINT_TYPES = ImmutableList.<DataType>of(
+            DOUBLE,
+            FLOAT
+    );
+
     public static final ImmutableMap<Integer, DataTypeFactory> typeRegistry = ImmutableMap.<Integer, DataTypeFactory>builder()
         .put(NullType.ID, NULL)
         .put(NotSupportedType.ID, NOT_SUPPORTED)
@@ -0,0 +1,244 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql;
+
+import io.crate.analyze.AbstractDataAnalysis;
+import io.crate.analyze.Analysis;
+import io.crate.analyze.WhereClause;
+import io.crate.metadata.table.TableInfo;
+import io.crate.planner.Plan;
+import io.crate.planner.node.PlanNode;
+import io.crate.planner.node.dql.ESCountNode;
+import io.crate.planner.node.dql.ESSearchNode;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import io.crate.planner.symbol.SymbolVisitor;
+import io.crate.types.DataType;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * an analyzed and planned statement whose parameters can be rebound
+ * without analyzing and planning the statement again.
+ *
+ * A template is only created for plans consisting of a single
+ * {@link ESSearchNode} or {@link ESCountNode} on a table that isn't partitioned,
+ * where every parameter of the statement is compared to a column in the where clause.
+ * The where clause must not address primary keys, routing or versions,
+ * so the values of the parameters don't influence the plan but the literals
+ * they have been bound to, these literals are the parameter slots of the template.
+ */
+public class PlanTemplate {
+
+    private final String[] outputNames;
+    private final PlanNode node;
+    private final WhereClause whereClause;
+    private final Map<Literal, Integer> slots;
+    private final int numParameters;
+
+    private PlanTemplate(String[] outputNames,
+                         PlanNode node,
+                         WhereClause whereClause,
+                         Map<Literal, Integer> slots,
+                         int numParameters) {
+        this.outputNames = outputNames;
+        this.node = node;
+        this.whereClause = whereClause;
+        this.slots = slots;
+        this.numParameters = numParameters;
+    }
+
+    /**
+     * @return the template of the given plan or null if the plan depends on the values of its parameters
+     */
+    @Nullable
+    public static PlanTemplate create(Analysis analysis, Plan plan) {
+        if (!(analysis instanceof AbstractDataAnalysis)) {
+            return null;
+        }
+        AbstractDataAnalysis dataAnalysis = (AbstractDataAnalysis) analysis;
+        Iterator<PlanNode> nodes = plan.iterator();
+        if (!nodes.hasNext()) {
+            return null;
+        }
+        PlanNode node = nodes.next();
+        if (nodes.hasNext()) {
+            return null;
+        }
+        WhereClause whereClause;
+        if (node instanceof ESSearchNode) {
+            whereClause = ((ESSearchNode) node).whereClause();
+        } else if (node instanceof ESCountNode) {
+            whereClause = ((ESCountNode) node).whereClause();
+        } else {
+            return null;
+        }
+        TableInfo table = dataAnalysis.table();
+        if (table.isPartitioned()
+                || table.isAlias()
+                || !dataAnalysis.ids().isEmpty()
+                || !dataAnalysis.routingValues().isEmpty()
+                || whereClause.noMatch()
+                || whereClause.version().isPresent()
+                || whereClause.clusteredBy().isPresent()
+                || !whereClause.partitions().isEmpty()) {
+            return null;
+        }
+        Map<Literal, Integer> slots = dataAnalysis.parameterLiterals();
+        if (slots == null) {
+            return null;
+        }
+        if (!slots.isEmpty()) {
+            // every bound literal must still be part of the where clause,
+            // otherwise it has been evaluated or used elsewhere
+            Set<Literal> found = Collections.newSetFromMap(new IdentityHashMap<Literal, Boolean>());
+            if (whereClause.hasQuery()) {
+                new SlotCollector(slots).process(whereClause.query(), found);
+            }
+            if (found.size() != slots.size()) {
+                return null;
+            }
+        }
+        List<String> outputNames = analysis.outputNames();
+        return new PlanTemplate(
+                outputNames.toArray(new String[outputNames.size()]),
+                node,
+                whereClause,
+                slots,
+                analysis.parameters().length);
+    }
+
+    public String[] outputNames() {
+        return outputNames;
+    }
+
+    /**
+     * @return a new plan with the given arguments bound to the parameter slots,
+     *         or null if the arguments can't be bound, e.g. because one of them is null.
+     *         The statement must then be analyzed and planned with these arguments,
+     *         which also reports invalid arguments.
+     */
+    @Nullable
+    public Plan bind(Object[] args) {
+        if (args.length != numParameters) {
+            return null;
+        }
+        Map<Literal, Literal> boundLiterals = new IdentityHashMap<>(slots.size());
+        for (Map.Entry<Literal, Integer> slot : slots.entrySet()) {
+            Object arg = args[slot.getValue()];
+            if (arg == null) {
+                return null;
+            }
+            DataType type = slot.getKey().valueType();
+            Object value;
+            try {
+                value = type.value(arg);
+            } catch (Exception e) {
+                return null;
+            }
+            if (value == null) {
+                return null;
+            }
+            boundLiterals.put(slot.getKey(), Literal.newLiteral(type, value));
+        }
+
+        WhereClause boundWhereClause = whereClause;
+        if (!boundLiterals.isEmpty()) {
+            boundWhereClause = new WhereClause(SlotBinder.INSTANCE.process(whereClause.query(), boundLiterals));
+        }
+        Plan plan = new Plan();
+        if (node instanceof ESSearchNode) {
+            ESSearchNode searchNode = (ESSearchNode) node;
+            ESSearchNode boundNode = new ESSearchNode(
+                    searchNode.indices(),
+                    new ArrayList<Symbol>(searchNode.outputs()),
+                    searchNode.orderBy(),
+                    searchNode.reverseFlags(),
+                    searchNode.limit(),
+                    searchNode.offset(),
+                    boundWhereClause,
+                    searchNode.partitionBy());
+            boundNode.outputTypes(searchNode.outputTypes());
+            plan.add(boundNode);
+        } else {
+            plan.add(new ESCountNode(((ESCountNode) node).indices(), boundWhereClause));
+        }
+        plan.expectsAffectedRows(false);
+        return plan;
+    }
+
+    private static class SlotCollector extends SymbolVisitor<Set<Literal>, Void> {
+
+        private final Map<Literal, Integer> slots;
+
+        SlotCollector(Map<Literal, Integer> slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public Void visitFunction(Function symbol, Set<Literal> context) {
+            for (Symbol argument : symbol.arguments()) {
+                process(argument, context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(Literal symbol, Set<Literal> context) {
+            if (slots.containsKey(symbol)) {
+                context.add(symbol);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * copies the functions of a query, replacing the slot literals with their bound literals
+     */
+    private static class SlotBinder extends SymbolVisitor<Map<Literal, Literal>, Symbol> {
+
+        static final SlotBinder INSTANCE = new SlotBinder();
+
+        @Override
+        public Symbol visitFunction(Function symbol, Map<Literal, Literal> context) {
+            List<Symbol> arguments = new ArrayList<>(symbol.arguments().size());
+            for (Symbol argument : symbol.arguments()) {
+                arguments.add(process(argument, context));
+            }
+            return new Function(symbol.info(), arguments);
+        }
+
+        @Override
+        public Symbol visitLiteral(Literal symbol, Map<Literal, Literal> context) {
+            Literal bound = context.get(symbol);
+            return bound == null ? symbol : bound;
+        }
+
+        @Override
+        protected Symbol visitSymbol(Symbol symbol, Map<Literal, Literal> context) {
+            return symbol;
+        }
+    }
+}
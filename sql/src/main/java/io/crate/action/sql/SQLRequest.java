@@ -32,9 +32,11 @@ import java.util.Arrays;
 
 public class SQLRequest extends ActionRequest<SQLRequest> {
 
+    private static final Object[][] EMPTY_BULK_ARGS = new Object[0][];
 
     private String stmt;
     private Object[] args;
+    private Object[][] bulkArgs = EMPTY_BULK_ARGS;
     private long creationTime;
     private boolean includeTypesOnResponse = false;
 
@@ -68,6 +70,26 @@ public class SQLRequest extends ActionRequest<SQLRequest> {
         }
     }
 
+    /**
+     * rows of arguments, the statement is executed once per row.
+     * An empty array if this isn't a bulk request.
+     */
+    public Object[][] bulkArgs() {
+        return bulkArgs;
+    }
+
+    public void bulkArgs(Object[][] bulkArgs) {
+        if (bulkArgs == null) {
+            this.bulkArgs = EMPTY_BULK_ARGS;
+        } else {
+            this.bulkArgs = bulkArgs;
+        }
+    }
+
+    public boolean isBulk() {
+        return bulkArgs.length > 0;
+    }
+
     public SQLRequest stmt(String stmt){
         this.stmt = stmt;
         return this;
@@ -92,6 +114,11 @@ public class SQLRequest extends ActionRequest<SQLRequest> {
             e.addValidationError("Attribute 'stmt' must not be null");
             return e;
         }
+        if (args.length > 0 && bulkArgs.length > 0) {
+            ActionRequestValidationException e =  new ActionRequestValidationException();
+            e.addValidationError("Attributes 'args' and 'bulk_args' must not be used together");
+            return e;
+        }
         return null;
     }
 
@@ -106,6 +133,15 @@ public class SQLRequest extends ActionRequest<SQLRequest> {
         }
         creationTime = in.readVLong();
         includeTypesOnResponse = in.readBoolean();
+        int numBulkArgs = in.readVInt();
+        bulkArgs = new Object[numBulkArgs][];
+        for (int i = 0; i < numBulkArgs; i++) {
+            int numArgs = in.readVInt();
+            bulkArgs[i] = new Object[numArgs];
+            for (int j = 0; j < numArgs; j++) {
+                bulkArgs[i][j] = in.readGenericValue();
+            }
+        }
     }
 
     @Override
@@ -118,6 +154,13 @@ public class SQLRequest extends ActionRequest<SQLRequest> {
         }
         out.writeVLong(creationTime);
         out.writeBoolean(includeTypesOnResponse);
+        out.writeVInt(bulkArgs.length);
+        for (Object[] bulkArg : bulkArgs) {
+            out.writeVInt(bulkArg.length);
+            for (Object arg : bulkArg) {
+                out.writeGenericValue(arg);
+            }
+        }
     }
 
     @Override
@@ -125,6 +168,7 @@ public class SQLRequest extends ActionRequest<SQLRequest> {
         return Objects.toStringHelper(this)
                 .add("stmt", stmt)
                 .add("args", Arrays.asList(args))
+                .add("bulkArgs", bulkArgs.length)
                 .add("creationTime", creationTime).toString();
     }
 }
@@ -50,6 +50,10 @@ public class SQLRequestBuilder extends ActionRequestBuilder<SQLRequest, SQLRespo
         request.args(args);
     }
 
+    public void bulkArgs(Object[][] bulkArgs) {
+        request.bulkArgs(bulkArgs);
+    }
+
     public void includeTypesOnResponse(boolean includeTypes) {
         request.includeTypesOnResponse(includeTypes);
     }
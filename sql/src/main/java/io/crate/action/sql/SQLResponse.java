@@ -29,6 +29,7 @@ import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -40,8 +41,46 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
         static final XContentBuilderString ROWS = new XContentBuilderString("rows");
         static final XContentBuilderString ROWCOUNT = new XContentBuilderString("rowcount");
         static final XContentBuilderString DURATION = new XContentBuilderString("duration");
+        static final XContentBuilderString RESULTS = new XContentBuilderString("results");
+        static final XContentBuilderString ERROR_MESSAGE = new XContentBuilderString("error_message");
     }
     public static final long NO_ROW_COUNT = -1L;
+    public static final long ROW_COUNT_FAILED = -2L;
+
+    /**
+     * outcome of one row of bulk arguments
+     */
+    public static class BulkResult {
+
+        private final long rowCount;
+        private final String errorMessage;
+
+        public BulkResult(long rowCount) {
+            this(rowCount, null);
+        }
+
+        public BulkResult(long rowCount, @Nullable String errorMessage) {
+            this.rowCount = rowCount;
+            this.errorMessage = errorMessage;
+        }
+
+        public static BulkResult failed(String errorMessage) {
+            return new BulkResult(ROW_COUNT_FAILED, errorMessage);
+        }
+
+        public long rowCount() {
+            return rowCount;
+        }
+
+        @Nullable
+        public String errorMessage() {
+            return errorMessage;
+        }
+
+        public boolean failed() {
+            return errorMessage != null;
+        }
+    }
 
     private Object[][] rows;
     private String[] cols;
@@ -49,6 +88,7 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
     private long requestStartedTime = 0L;
     private DataType[] colTypes;
     private boolean includeTypes = false;
+    private BulkResult[] bulkResults;
 
     public SQLResponse() {
     }
@@ -106,6 +146,18 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
             builder.field(Fields.ROWCOUNT, rowCount());
         }
         builder.field(Fields.DURATION, duration());
+        if (bulkResults != null) {
+            builder.startArray(Fields.RESULTS);
+            for (BulkResult bulkResult : bulkResults) {
+                builder.startObject();
+                builder.field(Fields.ROWCOUNT, bulkResult.rowCount());
+                if (bulkResult.failed()) {
+                    builder.field(Fields.ERROR_MESSAGE, bulkResult.errorMessage());
+                }
+                builder.endObject();
+            }
+            builder.endArray();
+        }
 
         return builder;
     }
@@ -161,6 +213,18 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
         this.rows = rows;
     }
 
+    /**
+     * per row results of a bulk request, null if the request wasn't a bulk request
+     */
+    @Nullable
+    public BulkResult[] bulkResults() {
+        return bulkResults;
+    }
+
+    public void bulkResults(BulkResult[] bulkResults) {
+        this.bulkResults = bulkResults;
+    }
+
     public long duration() {
         if (requestStartedTime > 0) {
             return System.currentTimeMillis()- requestStartedTime;
@@ -199,6 +263,13 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
         } else {
             colTypes = new DataType[0];
         }
+        if (in.readBoolean()) {
+            int numBulkResults = in.readVInt();
+            bulkResults = new BulkResult[numBulkResults];
+            for (int i = 0; i < numBulkResults; i++) {
+                bulkResults[i] = new BulkResult(in.readLong(), in.readOptionalString());
+            }
+        }
     }
 
     @Override
@@ -221,6 +292,14 @@ public class SQLResponse extends ActionResponse implements ToXContent, SQLResult
                 DataTypes.toStream(colTypes[i], out);
             }
         }
+        out.writeBoolean(bulkResults != null);
+        if (bulkResults != null) {
+            out.writeVInt(bulkResults.length);
+            for (BulkResult bulkResult : bulkResults) {
+                out.writeLong(bulkResult.rowCount());
+                out.writeOptionalString(bulkResult.errorMessage());
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,202 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.crate.analyze.Analysis;
+import io.crate.planner.Plan;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded LRU caches of parsed statements and of plan templates, both keyed by the statement string.
+ *
+ * Parameters are kept as {@link io.crate.sql.tree.ParameterExpression} nodes inside the
+ * cached tree and are bound to the request arguments during analysis,
+ * so one entry serves every execution of the same parameterized statement.
+ * Parsed statements only depend on the statement string and are never invalidated.
+ *
+ * A {@link PlanTemplate} skips analysis and planning, the request arguments are bound
+ * to its parameter slots. Templates depend on the cluster metadata, so they are
+ * cleared whenever the metadata changes, the same way DocSchemaInfo drops its table infos.
+ * Statements that can't be templated are remembered as well, so they aren't checked again.
+ *
+ * The counters are exposed as <code>sys.nodes.stmt_cache</code>.
+ */
+@Singleton
+public class StatementCache implements ClusterStateListener {
+
+    public static final String SETTING_SIZE = "crate.sql.statement_cache.size";
+    public static final int DEFAULT_SIZE = 1000;
+
+    private final LoadingCache<String, Statement> cache;
+    private final Cache<String, Optional<PlanTemplate>> templates;
+    private final AtomicLong templateHits = new AtomicLong();
+    private final AtomicLong templateMisses = new AtomicLong();
+
+    /**
+     * incremented whenever the templates are cleared, templates of statements analyzed
+     * before are not cached anymore.
+     */
+    private long generation = 0L;
+
+    @Inject
+    public StatementCache(Settings settings, ClusterService clusterService) {
+        this(settings.getAsInt(SETTING_SIZE, DEFAULT_SIZE));
+        clusterService.add(this);
+    }
+
+    StatementCache(int maxSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build(
+                        new CacheLoader<String, Statement>() {
+                            @Override
+                            public Statement load(String key) throws Exception {
+                                return SqlParser.createStatement(key);
+                            }
+                        }
+                );
+        templates = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * return the parsed statement for <code>stmt</code>, parsing it on a cache miss.
+     * Parsing errors are thrown unwrapped as they would be by {@link SqlParser}.
+     */
+    public Statement get(String stmt) {
+        try {
+            return cache.getUnchecked(stmt);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public long hits() {
+        return cache.stats().hitCount();
+    }
+
+    public long misses() {
+        return cache.stats().missCount();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the plan of the template of <code>stmt</code> bound to <code>args</code> together with
+     *         its output names, or null if there is no template or the arguments can't be bound
+     */
+    @Nullable
+    public BoundPlan bind(String stmt, Object[] args) {
+        Optional<PlanTemplate> template = templates.getIfPresent(stmt);
+        if (template != null && template.isPresent()) {
+            Plan plan = template.get().bind(args);
+            if (plan != null) {
+                templateHits.incrementAndGet();
+                return new BoundPlan(plan, template.get().outputNames());
+            }
+        }
+        templateMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return the generation to pass to {@link #cacheTemplate(String, long, Analysis, Plan)}
+     *         for a statement analyzed after this call
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * create and cache the template of the given plan if the statement has no cache entry yet.
+     * Nothing is cached if the metadata changed since <code>generation</code> has been read,
+     * the analysis might be outdated.
+     */
+    public synchronized void cacheTemplate(String stmt, long generation, Analysis analysis, Plan plan) {
+        if (generation != this.generation || templates.getIfPresent(stmt) != null) {
+            return;
+        }
+        templates.put(stmt, Optional.fromNullable(PlanTemplate.create(analysis, plan)));
+    }
+
+    public long templateHits() {
+        return templateHits.get();
+    }
+
+    public long templateMisses() {
+        return templateMisses.get();
+    }
+
+    public long templateSize() {
+        return templates.size();
+    }
+
+    @Override
+    public synchronized void clusterChanged(ClusterChangedEvent event) {
+        if (event.metaDataChanged()) {
+            generation++;
+            templates.invalidateAll();
+        }
+    }
+
+    public static class BoundPlan {
+
+        private final Plan plan;
+        private final String[] outputNames;
+
+        BoundPlan(Plan plan, String[] outputNames) {
+            this.plan = plan;
+            this.outputNames = outputNames;
+        }
+
+        public Plan plan() {
+            return plan;
+        }
+
+        public String[] outputNames() {
+            return outputNames;
+        }
+    }
+}
@@ -29,14 +29,17 @@ import io.crate.Constants;
 import io.crate.types.DataType;
 import io.crate.analyze.Analysis;
 import io.crate.analyze.Analyzer;
+import io.crate.analyze.InsertAnalysis;
 import io.crate.exceptions.*;
 import io.crate.executor.*;
 import io.crate.planner.Plan;
 import io.crate.planner.PlanPrinter;
 import io.crate.planner.Planner;
 import io.crate.sql.parser.ParsingException;
-import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Delete;
+import io.crate.sql.tree.Insert;
 import io.crate.sql.tree.Statement;
+import io.crate.sql.tree.Update;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.ReduceSearchPhaseException;
 import org.elasticsearch.action.support.TransportAction;
@@ -57,15 +60,20 @@ import org.elasticsearch.transport.TransportService;
 import javax.annotation.Nullable;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse> {
 
+    private static final int MAX_CONCURRENT_BULK_ROWS = 16;
+
     private final Analyzer analyzer;
     private final Planner planner;
     private final Executor executor;
     private final DDLAnalysisDispatcher dispatcher;
+    private final StatementCache statementCache;
 
     @Inject
     protected TransportSQLAction(Settings settings, ThreadPool threadPool,
@@ -73,12 +81,14 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
             Planner planner,
             Executor executor,
             DDLAnalysisDispatcher dispatcher,
+            StatementCache statementCache,
             TransportService transportService) {
         super(settings, threadPool);
         this.analyzer = analyzer;
         this.planner = planner;
         this.executor = executor;
         this.dispatcher = dispatcher;
+        this.statementCache = statementCache;
         transportService.registerHandler(SQLAction.NAME, new TransportHandler());
     }
 
@@ -87,11 +97,21 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
         logger.debug("{}", request);
 
         try {
-            Statement statement = SqlParser.createStatement(request.stmt());
+            Statement statement = statementCache.get(request.stmt());
+            if (request.isBulk()) {
+                processBulk(statement, request, listener);
+                return;
+            }
+            StatementCache.BoundPlan boundPlan = statementCache.bind(request.stmt(), request.args());
+            if (boundPlan != null) {
+                execute(boundPlan.plan(), boundPlan.outputNames(), request, listener);
+                return;
+            }
+            long cacheGeneration = statementCache.generation();
             Analysis analysis = analyzer.analyze(statement, request.args());
 
             if (analysis.isData()) {
-                processWithPlanner(analysis, request, listener);
+                processWithPlanner(analysis, cacheGeneration, request, listener);
             } else {
                 processNonData(analysis, request, listener);
             }
@@ -125,7 +145,10 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
         });
     }
 
-    private void processWithPlanner(Analysis analysis, SQLRequest request, ActionListener<SQLResponse> listener) {
+    private void processWithPlanner(Analysis analysis,
+                                    long cacheGeneration,
+                                    SQLRequest request,
+                                    ActionListener<SQLResponse> listener) {
         final String[] outputNames = analysis.outputNames().toArray(new String[analysis.outputNames().size()]);
 
         if (analysis.hasNoResult()) {
@@ -133,6 +156,11 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
             return;
         }
         final Plan plan = planner.plan(analysis);
+        statementCache.cacheTemplate(request.stmt(), cacheGeneration, analysis, plan);
+        execute(plan, outputNames, request, listener);
+    }
+
+    private void execute(Plan plan, String[] outputNames, SQLRequest request, ActionListener<SQLResponse> listener) {
         if (logger.isTraceEnabled()) {
             PlanPrinter printer = new PlanPrinter();
             logger.trace(printer.print(plan));
@@ -144,6 +172,102 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
         addResultCallback(request, listener, outputNames, plan, responseBuilder, resultFuture);
     }
 
+    /**
+     * executes the statement once per row of bulk arguments, all rows share the parsed statement.
+     * Inserts are sent as a single bulk request, updates and deletes are planned per row
+     * and executed with a limited number of rows in flight.
+     */
+    private void processBulk(Statement statement, SQLRequest request, ActionListener<SQLResponse> listener) {
+        if (statement instanceof Insert) {
+            processBulkInsert(statement, request, listener);
+        } else if (statement instanceof Update || statement instanceof Delete) {
+            new BulkRowsOperation(statement, request, listener).start();
+        } else {
+            throw new UnsupportedFeatureException(
+                    "bulk_args are only supported for INSERT, UPDATE and DELETE statements");
+        }
+    }
+
+    private void processBulkInsert(Statement statement,
+                                   final SQLRequest request,
+                                   final ActionListener<SQLResponse> listener) {
+        Object[][] bulkArgs = request.bulkArgs();
+        final SQLResponse.BulkResult[] results = new SQLResponse.BulkResult[bulkArgs.length];
+        final List<InsertAnalysis> analyses = new ArrayList<>(bulkArgs.length);
+        final List<Integer> analyzedRows = new ArrayList<>(bulkArgs.length);
+        for (int i = 0; i < bulkArgs.length; i++) {
+            try {
+                analyses.add((InsertAnalysis) analyzer.analyze(statement, bulkArgs[i]));
+                analyzedRows.add(i);
+            } catch (Exception e) {
+                results[i] = bulkFailure(e);
+            }
+        }
+        if (analyses.isEmpty()) {
+            listener.onResponse(bulkResponse(request, results));
+            return;
+        }
+
+        Plan plan = planner.planBulkInsert(analyses);
+        Job job = executor.newJob(plan);
+        ListenableFuture<List<Object[][]>> resultFuture = Futures.allAsList(executor.execute(job));
+        Futures.addCallback(resultFuture, new FutureCallback<List<Object[][]>>() {
+            @Override
+            public void onSuccess(@Nullable List<Object[][]> result) {
+                assert result != null && result.size() == 1;
+                Object[][] items = result.get(0);
+                int item = 0;
+                for (int i = 0; i < analyses.size(); i++) {
+                    // one row of arguments may contain multiple documents
+                    long rowCount = 0L;
+                    String errorMessage = null;
+                    for (int doc = 0; doc < analyses.get(i).sourceMaps().size(); doc++, item++) {
+                        rowCount += (Long) items[item][0];
+                        if (items[item][1] != null) {
+                            errorMessage = (String) items[item][1];
+                        }
+                    }
+                    results[analyzedRows.get(i)] = errorMessage == null
+                            ? new SQLResponse.BulkResult(rowCount)
+                            : SQLResponse.BulkResult.failed(errorMessage);
+                }
+                listener.onResponse(bulkResponse(request, results));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.debug("Error processing bulk insert SQLRequest", t);
+                SQLResponse.BulkResult failure = bulkFailure(t);
+                for (Integer row : analyzedRows) {
+                    results[row] = failure;
+                }
+                listener.onResponse(bulkResponse(request, results));
+            }
+        });
+    }
+
+    private SQLResponse.BulkResult bulkFailure(Throwable t) {
+        Throwable cause = esToCrateException(t);
+        String message = cause.getMessage();
+        return SQLResponse.BulkResult.failed(message == null ? cause.getClass().getSimpleName() : message);
+    }
+
+    private static SQLResponse bulkResponse(SQLRequest request, SQLResponse.BulkResult[] results) {
+        long rowCount = 0L;
+        for (SQLResponse.BulkResult result : results) {
+            if (!result.failed()) {
+                rowCount += Math.max(0L, result.rowCount());
+            }
+        }
+        SQLResponse response = new SQLResponse(
+                new String[0],
+                Constants.EMPTY_RESULT,
+                rowCount,
+                request.creationTime());
+        response.bulkResults(results);
+        return response;
+    }
+
     private static void emptyResponse(SQLRequest request,
                                       Analysis analysis,
                                       final ActionListener<SQLResponse> listener) {
@@ -290,6 +414,81 @@ public class TransportSQLAction extends TransportAction<SQLRequest, SQLResponse>
         return new SQLActionException(message, errorCode, restStatus, stackTrace.toString());
     }
 
+    /**
+     * analyzes, plans and executes a statement once per row of bulk arguments,
+     * keeping at most {@link #MAX_CONCURRENT_BULK_ROWS} rows in flight.
+     */
+    private class BulkRowsOperation {
+
+        private final Statement statement;
+        private final SQLRequest request;
+        private final ActionListener<SQLResponse> listener;
+        private final SQLResponse.BulkResult[] results;
+        private final AtomicInteger nextRow = new AtomicInteger(0);
+        private final AtomicInteger pendingRows;
+
+        BulkRowsOperation(Statement statement, SQLRequest request, ActionListener<SQLResponse> listener) {
+            this.statement = statement;
+            this.request = request;
+            this.listener = listener;
+            this.results = new SQLResponse.BulkResult[request.bulkArgs().length];
+            this.pendingRows = new AtomicInteger(results.length);
+        }
+
+        void start() {
+            int concurrency = Math.min(MAX_CONCURRENT_BULK_ROWS, results.length);
+            for (int i = 0; i < concurrency; i++) {
+                executeNext();
+            }
+        }
+
+        private void executeNext() {
+            int row;
+            while ((row = nextRow.getAndIncrement()) < results.length) {
+                ListenableFuture<List<Object[][]>> resultFuture;
+                try {
+                    Analysis analysis = analyzer.analyze(statement, request.bulkArgs()[row]);
+                    if (analysis.hasNoResult()) {
+                        setResult(row, new SQLResponse.BulkResult(0L));
+                        continue;
+                    }
+                    Job job = executor.newJob(planner.plan(analysis));
+                    resultFuture = Futures.allAsList(executor.execute(job));
+                } catch (Exception e) {
+                    setResult(row, bulkFailure(e));
+                    continue;
+                }
+
+                final int currentRow = row;
+                Futures.addCallback(resultFuture, new FutureCallback<List<Object[][]>>() {
+                    @Override
+                    public void onSuccess(@Nullable List<Object[][]> result) {
+                        long rowCount = 0L;
+                        if (result != null && result.get(0).length > 0) {
+                            rowCount = ((Number) result.get(0)[0][0]).longValue();
+                        }
+                        setResult(currentRow, new SQLResponse.BulkResult(rowCount));
+                        executeNext();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        setResult(currentRow, bulkFailure(t));
+                        executeNext();
+                    }
+                });
+                return;
+            }
+        }
+
+        private void setResult(int row, SQLResponse.BulkResult result) {
+            results[row] = result;
+            if (pendingRows.decrementAndGet() == 0) {
+                listener.onResponse(bulkResponse(request, results));
+            }
+        }
+    }
+
     private class TransportHandler extends BaseTransportRequestHandler<SQLRequest> {
 
         @Override
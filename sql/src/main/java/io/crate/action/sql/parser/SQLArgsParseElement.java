@@ -41,7 +41,7 @@ public class SQLArgsParseElement implements SQLParseElement {
         context.args(params);
     }
 
-    private Object[] parseSubArray(SQLXContentSourceContext context, XContentParser parser)
+    protected Object[] parseSubArray(SQLXContentSourceContext context, XContentParser parser)
         throws IOException
     {
         XContentParser.Token token;
@@ -77,6 +77,9 @@ public abstract class AbstractDataAnalysis extends Analysis {
     protected boolean hasSysExpressions = false;
     protected boolean sysExpressionsAllowed = false;
 
+    private final Map<Parameter, Integer> parameterIndices = new IdentityHashMap<>();
+    private final Map<Literal, Parameter> parameterLiterals = new IdentityHashMap<>();
+
     public AbstractDataAnalysis(ReferenceInfos referenceInfos, Functions functions,
                                 Object[] parameters,
                                 ReferenceResolver referenceResolver) {
@@ -342,10 +345,7 @@ public abstract class AbstractDataAnalysis extends Analysis {
         try {
             // resolve parameter to literal
             if (parameterOrLiteral.symbolType() == SymbolType.PARAMETER) {
-                normalized = Literal.newLiteral(
-                        reference.info().type(),
-                        reference.info().type().value(((Parameter) parameterOrLiteral).value())
-                );
+                normalized = bindParameter((Parameter) parameterOrLiteral, reference.info().type());
             } else {
                 try {
                     normalized = (Literal) parameterOrLiteral;
@@ -391,7 +391,7 @@ public abstract class AbstractDataAnalysis extends Analysis {
         Literal normalized;
         Symbol processed = normalizer.process(inputValue, null);
         if (processed instanceof Parameter) {
-            normalized = Literal.newLiteral(dataType, dataType.value(((Parameter) processed).value()));
+            normalized = bindParameter((Parameter) processed, dataType);
         } else {
             try {
                 normalized = (Literal)processed;
@@ -407,6 +407,51 @@ public abstract class AbstractDataAnalysis extends Analysis {
     }
 
 
+    /**
+     * create the parameter symbol for the parameter at <code>index</code> of the statement
+     */
+    public Parameter newParameter(int index) {
+        Parameter parameter = new Parameter(parameterAt(index));
+        parameterIndices.put(parameter, index);
+        return parameter;
+    }
+
+    /**
+     * convert the value of the given parameter to a literal of the given type
+     * and remember the literal as bound to that parameter
+     */
+    public Literal bindParameter(Parameter parameter, DataType dataType) {
+        Literal literal = Literal.newLiteral(dataType, dataType.value(parameter.value()));
+        parameterLiterals.put(literal, parameter);
+        return literal;
+    }
+
+    /**
+     * the literals the parameters of the statement have been bound to by
+     * {@link #bindParameter(io.crate.planner.symbol.Parameter, io.crate.types.DataType)}.
+     * The map is keyed by literal identity, the values are parameter indices.
+     *
+     * @return null if any parameter has been used without being bound to a literal,
+     *         e.g. as a limit or function argument
+     */
+    @Nullable
+    public Map<Literal, Integer> parameterLiterals() {
+        Set<Parameter> boundParameters = Collections.newSetFromMap(new IdentityHashMap<Parameter, Boolean>());
+        Map<Literal, Integer> literals = new IdentityHashMap<>();
+        for (Map.Entry<Literal, Parameter> entry : parameterLiterals.entrySet()) {
+            Integer index = parameterIndices.get(entry.getValue());
+            if (index == null) {
+                return null;
+            }
+            boundParameters.add(entry.getValue());
+            literals.put(entry.getKey(), index);
+        }
+        if (boundParameters.size() != parameterIndices.size()) {
+            return null;
+        }
+        return literals;
+    }
+
     @SuppressWarnings("unchecked")
     private Map<String, Object> normalizeObjectValue(Map<String, Object> value, ReferenceInfo info) {
         for (Map.Entry<String, Object> entry : value.entrySet()) {
@@ -436,7 +436,7 @@ abstract class DataStatementAnalyzer<T extends AbstractDataAnalysis> extends Abs
 
     @Override
     public Symbol visitParameterExpression(ParameterExpression node, T context) {
-        return new Parameter(context.parameterAt(node.index()));
+        return context.newParameter(node.index());
     }
 
     static Literal toLiteral(Symbol symbol, DataType type) throws IllegalArgumentException {
@@ -482,7 +482,7 @@ abstract class DataStatementAnalyzer<T extends AbstractDataAnalysis> extends Abs
 
         void normalize(AbstractDataAnalysis context) {
             swapIfNecessary();
-            castTypes();
+            castTypes(context);
             rewriteNotEquals(context);
         }
 
@@ -509,11 +509,11 @@ abstract class DataStatementAnalyzer<T extends AbstractDataAnalysis> extends Abs
             rightType = tmpType;
         }
 
-        private void castTypes() {
+        private void castTypes(AbstractDataAnalysis context) {
             if (leftType == rightType) {
                 // change parameter to literals so that the guessed type isn't lost.
-                left = toDataTypeSymbol(left, leftType);
-                right = toDataTypeSymbol(right, rightType);
+                left = bindValue(left, leftType, context);
+                right = bindValue(right, rightType, context);
                 return;
             }
             if (left instanceof Reference && right instanceof Reference) {
@@ -523,8 +523,8 @@ abstract class DataStatementAnalyzer<T extends AbstractDataAnalysis> extends Abs
 
             assert right.symbolType().isValueSymbol();
             try {
-                left = toDataTypeSymbol(left, leftType);
-                right = toDataTypeSymbol(right, leftType);
+                left = bindValue(left, leftType, context);
+                right = bindValue(right, leftType, context);
             } catch (ClassCastException e) {
                 throw new IllegalArgumentException(SymbolFormatter.format(
                         "type of \"%s\" doesn't match type of \"%s\" and cannot be cast implicitly",
@@ -535,6 +535,13 @@ abstract class DataStatementAnalyzer<T extends AbstractDataAnalysis> extends Abs
             rightType = leftType;
         }
 
+        private static Symbol bindValue(Symbol symbol, DataType type, AbstractDataAnalysis context) {
+            if (symbol.symbolType() == SymbolType.PARAMETER) {
+                return context.bindParameter((Parameter) symbol, type);
+            }
+            return toDataTypeSymbol(symbol, type);
+        }
+
         /**
          * rewrite   exp1 != exp2  to not(eq(exp1, exp2))
          * does nothing if operator != not equals
@@ -0,0 +1,158 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.breaker;
+
+import io.crate.exceptions.QueryMemoryLimitExceededException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * node wide accounting of the memory held by running queries.
+ *
+ * Operations reserve the estimated size of the rows they buffer using a {@link RamAccountingContext}.
+ * If a reservation exceeds the memory limit of the node or of a single job
+ * a {@link QueryMemoryLimitExceededException} is thrown, which fails the job that made the reservation.
+ *
+ * Limits can be set as absolute size or relative to the maximum heap size, e.g. <code>60%</code>,
+ * a limit of <code>-1</code> disables the limit.
+ */
+@Singleton
+public class QueryMemoryBreaker {
+
+    public static final String SETTING_LIMIT = "crate.breaker.query.limit";
+    public static final String SETTING_JOB_LIMIT = "crate.breaker.query.job_limit";
+
+    public static final String DEFAULT_LIMIT = "60%";
+    public static final String DEFAULT_JOB_LIMIT = "-1";
+
+    public static final QueryMemoryBreaker UNLIMITED = new QueryMemoryBreaker(-1, -1);
+
+    private final long limit;
+    private final long jobLimit;
+    private final AtomicLong used = new AtomicLong(0);
+    private final ConcurrentMap<UUID, AtomicLong> usedByJob = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public QueryMemoryBreaker(Settings settings) {
+        this(parseLimit(settings.get(SETTING_LIMIT, DEFAULT_LIMIT)),
+             parseLimit(settings.get(SETTING_JOB_LIMIT, DEFAULT_JOB_LIMIT)));
+    }
+
+    public QueryMemoryBreaker(long limit, long jobLimit) {
+        this.limit = limit;
+        this.jobLimit = jobLimit;
+    }
+
+    static long parseLimit(String value) {
+        if (value.endsWith("%")) {
+            double percent = Double.parseDouble(value.substring(0, value.length() - 1));
+            return (long) (Runtime.getRuntime().maxMemory() * percent / 100.0);
+        }
+        if (value.equals("-1")) {
+            return -1;
+        }
+        return ByteSizeValue.parseBytesSizeValue(value).bytes();
+    }
+
+    public RamAccountingContext newContext(UUID jobId) {
+        return new RamAccountingContext(this, jobId);
+    }
+
+    /**
+     * reserve bytes for the given job
+     *
+     * @throws QueryMemoryLimitExceededException if the node or job limit would be exceeded,
+     *                                           nothing is reserved in that case
+     */
+    void addBytes(UUID jobId, long bytes) throws QueryMemoryLimitExceededException {
+        AtomicLong jobUsed = usedByJob.get(jobId);
+        if (jobUsed == null) {
+            AtomicLong newJobUsed = new AtomicLong(0);
+            jobUsed = usedByJob.putIfAbsent(jobId, newJobUsed);
+            if (jobUsed == null) {
+                jobUsed = newJobUsed;
+            }
+        }
+        long newJobUsed = jobUsed.addAndGet(bytes);
+        long newUsed = used.addAndGet(bytes);
+        if (bytes > 0) {
+            if (jobLimit >= 0 && newJobUsed > jobLimit) {
+                release(jobId, bytes);
+                throw new QueryMemoryLimitExceededException(jobId, bytes, newJobUsed, jobLimit);
+            }
+            if (limit >= 0 && newUsed > limit) {
+                release(jobId, bytes);
+                throw new QueryMemoryLimitExceededException(jobId, bytes, newUsed, limit);
+            }
+        }
+    }
+
+    void release(UUID jobId, long bytes) {
+        used.addAndGet(-bytes);
+        AtomicLong jobUsed = usedByJob.get(jobId);
+        if (jobUsed != null && jobUsed.addAndGet(-bytes) <= 0) {
+            usedByJob.remove(jobId, jobUsed);
+        }
+    }
+
+    /**
+     * @return the bytes currently reserved on this node
+     */
+    public long used() {
+        return used.get();
+    }
+
+    /**
+     * @return the node limit in bytes, -1 if unlimited
+     */
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * @return the job limit in bytes, -1 if unlimited
+     */
+    public long jobLimit() {
+        return jobLimit;
+    }
+
+    /**
+     * @return snapshot of the bytes reserved per job id
+     */
+    public Map<String, Long> usedByJob() {
+        Map<String, Long> result = new HashMap<>(usedByJob.size());
+        for (Map.Entry<UUID, AtomicLong> entry : usedByJob.entrySet()) {
+            result.put(entry.getKey().toString(), entry.getValue().get());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.breaker;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.crate.exceptions.QueryMemoryLimitExceededException;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the memory reservations of one operation of a job, e.g. a projector chain.
+ *
+ * Reservations are added to the {@link QueryMemoryBreaker} of the node,
+ * {@link #close()} gives back everything reserved through this context.
+ */
+public class RamAccountingContext {
+
+    /**
+     * context that doesn't account anything
+     */
+    public static final RamAccountingContext NOOP = new RamAccountingContext(null, null);
+
+    private final QueryMemoryBreaker breaker;
+    private final UUID jobId;
+    private final AtomicLong reserved = new AtomicLong(0);
+    private volatile boolean closed = false;
+
+    RamAccountingContext(QueryMemoryBreaker breaker, UUID jobId) {
+        this.breaker = breaker;
+        this.jobId = jobId;
+    }
+
+    /**
+     * reserve bytes, negative values release bytes previously reserved
+     *
+     * @throws QueryMemoryLimitExceededException if the query memory limit would be exceeded
+     */
+    public void addBytes(long bytes) throws QueryMemoryLimitExceededException {
+        if (breaker == null || bytes == 0 || closed) {
+            return;
+        }
+        breaker.addBytes(jobId, bytes);
+        reserved.addAndGet(bytes);
+        if (closed) {
+            // closed concurrently, close() might not have seen this reservation
+            long leaked = reserved.getAndSet(0);
+            if (leaked != 0) {
+                breaker.release(jobId, leaked);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes currently reserved by this context
+     */
+    public long reservedBytes() {
+        return reserved.get();
+    }
+
+    /**
+     * {@link #close()} this context once the given future is done
+     */
+    public void closeWhenDone(ListenableFuture<?> future) {
+        if (breaker == null) {
+            return;
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * release everything reserved by this context, later reservations are ignored
+     */
+    public void close() {
+        if (breaker == null) {
+            return;
+        }
+        closed = true;
+        long bytes = reserved.getAndSet(0);
+        if (bytes != 0) {
+            breaker.release(jobId, bytes);
+        }
+    }
+}
@@ -27,6 +27,10 @@ public class VersionConflictException extends ConflictException {
         super(e);
     }
 
+    public VersionConflictException(String message) {
+        super(message);
+    }
+
     @Override
     public int errorCode() {
         return 2;
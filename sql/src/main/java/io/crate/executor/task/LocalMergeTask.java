@@ -30,8 +30,10 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.crate.Constants;
 import io.crate.executor.Task;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.merge.MergeOperation;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Provider;
@@ -57,6 +59,8 @@ public class LocalMergeTask implements Task<Object[][]> {
     private final SettableFuture<Object[][]> result;
     private final List<ListenableFuture<Object[][]>> resultList;
     private final Provider<Client> clientProvider;
+    private final SpillSettings spillSettings;
+    private final RamAccountingContext ramAccountingContext;
 
     private List<ListenableFuture<Object[][]>> upstreamResults;
 
@@ -69,7 +73,27 @@ public class LocalMergeTask implements Task<Object[][]> {
                           Provider<Client> clientProvider,
                           ImplementationSymbolVisitor implementationSymbolVisitor,
                           MergeNode mergeNode) {
+        this(threadPool, clientProvider, implementationSymbolVisitor, mergeNode, SpillSettings.DEFAULT);
+    }
+
+    public LocalMergeTask(ThreadPool threadPool,
+                          Provider<Client> clientProvider,
+                          ImplementationSymbolVisitor implementationSymbolVisitor,
+                          MergeNode mergeNode,
+                          SpillSettings spillSettings) {
+        this(threadPool, clientProvider, implementationSymbolVisitor, mergeNode, spillSettings,
+                RamAccountingContext.NOOP);
+    }
+
+    public LocalMergeTask(ThreadPool threadPool,
+                          Provider<Client> clientProvider,
+                          ImplementationSymbolVisitor implementationSymbolVisitor,
+                          MergeNode mergeNode,
+                          SpillSettings spillSettings,
+                          RamAccountingContext ramAccountingContext) {
         this.clientProvider = clientProvider;
+        this.spillSettings = spillSettings;
+        this.ramAccountingContext = ramAccountingContext;
         this.threadPool = threadPool;
         this.symbolVisitor = implementationSymbolVisitor;
         this.mergeNode = mergeNode;
@@ -90,7 +114,8 @@ public class LocalMergeTask implements Task<Object[][]> {
             return;
         }
 
-        final MergeOperation mergeOperation = new MergeOperation(clientProvider, symbolVisitor, mergeNode);
+        final MergeOperation mergeOperation = new MergeOperation(clientProvider, symbolVisitor, mergeNode, spillSettings,
+                ramAccountingContext);
         final AtomicInteger countdown = new AtomicInteger(upstreamResults.size());
 
         Futures.addCallback(mergeOperation.result(), new FutureCallback<Object[][]>() {
@@ -0,0 +1,235 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport;
+
+import io.crate.Streamer;
+import io.crate.types.IntegerType;
+import io.crate.types.LongType;
+import io.crate.types.StringType;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * streams rows column by column instead of row by row.
+ *
+ * Every column is encoded on its own, depending on its streamer and values:
+ * <ul>
+ *     <li>string columns with repeated values are dictionary encoded,
+ *     every row only references its value in the dictionary</li>
+ *     <li>long, timestamp and integer columns are frame of reference encoded,
+ *     every value is written as variable length offset to the smallest value of the column
+ *     and nulls are marked in a bitmap</li>
+ *     <li>all other columns are written using their streamer</li>
+ * </ul>
+ *
+ * The first byte of a stream marks its format, so the encoding can be changed later on.
+ */
+public class ColumnarRowStreamer {
+
+    static final byte FORMAT_COLUMNAR = 1;
+
+    static final byte ENCODING_STREAMER = 0;
+    static final byte ENCODING_DICTIONARY = 1;
+    static final byte ENCODING_FRAME_OF_REFERENCE = 2;
+
+    public static void writeRows(StreamOutput out, Streamer<?>[] streamers, Object[][] rows) throws IOException {
+        out.writeByte(FORMAT_COLUMNAR);
+        out.writeVInt(rows.length);
+        if (rows.length == 0) {
+            return;
+        }
+        for (int c = 0; c < streamers.length; c++) {
+            Streamer<?> streamer = streamers[c];
+            if (streamer instanceof StringType && writeDictionary(out, rows, c)) {
+                continue;
+            }
+            if ((streamer instanceof LongType || streamer instanceof IntegerType)
+                    && writeFrameOfReference(out, rows, c, streamer instanceof IntegerType)) {
+                continue;
+            }
+            out.writeByte(ENCODING_STREAMER);
+            for (Object[] row : rows) {
+                streamer.writeValueTo(out, row[c]);
+            }
+        }
+    }
+
+    public static Object[][] readRows(StreamInput in, Streamer<?>[] streamers) throws IOException {
+        byte format = in.readByte();
+        if (format != FORMAT_COLUMNAR) {
+            throw new IOException("unknown row format " + format);
+        }
+        Object[][] rows = new Object[in.readVInt()][];
+        for (int r = 0; r < rows.length; r++) {
+            rows[r] = new Object[streamers.length];
+        }
+        if (rows.length == 0) {
+            return rows;
+        }
+        for (int c = 0; c < streamers.length; c++) {
+            byte encoding = in.readByte();
+            switch (encoding) {
+                case ENCODING_STREAMER:
+                    for (Object[] row : rows) {
+                        row[c] = streamers[c].readValueFrom(in);
+                    }
+                    break;
+                case ENCODING_DICTIONARY:
+                    readDictionary(in, rows, c);
+                    break;
+                case ENCODING_FRAME_OF_REFERENCE:
+                    readFrameOfReference(in, rows, c, streamers[c] instanceof IntegerType);
+                    break;
+                default:
+                    throw new IOException("unknown column encoding " + encoding);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return false if the values of the column are too distinct to be worth a dictionary
+     */
+    private static boolean writeDictionary(StreamOutput out, Object[][] rows, int column) throws IOException {
+        Map<BytesRef, Integer> ordinals = new HashMap<>();
+        List<BytesRef> dictionary = new ArrayList<>();
+        int[] rowOrdinals = new int[rows.length];
+        for (int r = 0; r < rows.length; r++) {
+            BytesRef value = (BytesRef) rows[r][column];
+            if (value == null) {
+                continue;
+            }
+            Integer ordinal = ordinals.get(value);
+            if (ordinal == null) {
+                ordinal = dictionary.size();
+                dictionary.add(value);
+                ordinals.put(value, ordinal);
+                if (dictionary.size() > rows.length / 2) {
+                    return false;
+                }
+            }
+            // 0 marks null
+            rowOrdinals[r] = ordinal + 1;
+        }
+        out.writeByte(ENCODING_DICTIONARY);
+        out.writeVInt(dictionary.size());
+        for (BytesRef value : dictionary) {
+            out.writeBytesRef(value);
+        }
+        for (int ordinal : rowOrdinals) {
+            out.writeVInt(ordinal);
+        }
+        return true;
+    }
+
+    private static void readDictionary(StreamInput in, Object[][] rows, int column) throws IOException {
+        BytesRef[] dictionary = new BytesRef[in.readVInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readBytesRef();
+        }
+        for (Object[] row : rows) {
+            int ordinal = in.readVInt();
+            // rows share the values of the dictionary, values are never modified after being read
+            row[column] = ordinal == 0 ? null : dictionary[ordinal - 1];
+        }
+    }
+
+    /**
+     * @param integers if true all values must be Integers, Longs otherwise,
+     *                 so that reading the column restores values of the same class
+     * @return false if the column contains values of another class
+     *         or the range of values doesn't fit into a positive long
+     */
+    private static boolean writeFrameOfReference(StreamOutput out, Object[][] rows, int column, boolean integers)
+            throws IOException {
+        Class<?> valueClass = integers ? Integer.class : Long.class;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean hasNulls = false;
+        for (Object[] row : rows) {
+            Object value = row[column];
+            if (value == null) {
+                hasNulls = true;
+            } else if (value.getClass() == valueClass) {
+                long longValue = ((Number) value).longValue();
+                min = Math.min(min, longValue);
+                max = Math.max(max, longValue);
+            } else {
+                return false;
+            }
+        }
+        if (min > max) {
+            // only nulls
+            min = max = 0;
+        }
+        if (max - min < 0) {
+            return false;
+        }
+        out.writeByte(ENCODING_FRAME_OF_REFERENCE);
+        out.writeBoolean(hasNulls);
+        if (hasNulls) {
+            byte[] nulls = new byte[(rows.length + 7) / 8];
+            for (int r = 0; r < rows.length; r++) {
+                if (rows[r][column] == null) {
+                    nulls[r >>> 3] |= 1 << (r & 7);
+                }
+            }
+            out.writeBytes(nulls);
+        }
+        out.writeLong(min);
+        for (Object[] row : rows) {
+            if (row[column] != null) {
+                out.writeVLong(((Number) row[column]).longValue() - min);
+            }
+        }
+        return true;
+    }
+
+    private static void readFrameOfReference(StreamInput in, Object[][] rows, int column, boolean integers)
+            throws IOException {
+        byte[] nulls = null;
+        if (in.readBoolean()) {
+            nulls = new byte[(rows.length + 7) / 8];
+            in.readBytes(nulls, 0, nulls.length);
+        }
+        long min = in.readLong();
+        for (int r = 0; r < rows.length; r++) {
+            if (nulls != null && (nulls[r >>> 3] & (1 << (r & 7))) != 0) {
+                continue;
+            }
+            long value = min + in.readVLong();
+            if (integers) {
+                rows[r][column] = (int) value;
+            } else {
+                rows[r][column] = value;
+            }
+        }
+    }
+}
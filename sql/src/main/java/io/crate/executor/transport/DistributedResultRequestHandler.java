@@ -44,15 +44,19 @@ public class DistributedResultRequestHandler extends BaseTransportRequestHandler
     @Override
     public void messageReceived(DistributedResultRequest request, TransportChannel channel) throws Exception {
         try {
-            contextManager.addToContext(request);
-            channel.sendResponse(new DistributedResultResponse());
+            boolean needMore = contextManager.addToContext(request);
+            channel.sendResponse(new DistributedResultResponse(needMore));
         } catch (Exception ex) {
             channel.sendResponse(ex);
         }
     }
 
+    /**
+     * not SEARCH, the collecting threads of this node might all be blocked
+     * until pages they sent to this node are processed
+     */
     @Override
     public String executor() {
-        return ThreadPool.Names.SEARCH;
+        return ThreadPool.Names.GENERIC;
     }
 }
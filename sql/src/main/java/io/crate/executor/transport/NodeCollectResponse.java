@@ -49,23 +49,12 @@ public class NodeCollectResponse extends TransportResponse {
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
-        rows = new Object[in.readVInt()][];
-        for (int r = 0; r < rows.length; r++) {
-            rows[r] = new Object[streamers.length];
-            for (int c = 0; c < rows[r].length; c++) {
-                rows[r][c] = streamers[c].readValueFrom(in);
-            }
-        }
+        rows = ColumnarRowStreamer.readRows(in, streamers);
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
-        out.writeVInt(rows.length);
-        for (Object[] row : rows) {
-            for (int c = 0; c < streamers.length; c++) {
-                streamers[c].writeValueTo(out, row[c]);
-            }
-        }
+        ColumnarRowStreamer.writeRows(out, streamers, rows);
     }
 }
@@ -26,6 +26,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.Streamer;
+import io.crate.operation.collect.CollectSettings;
 import io.crate.operation.collect.DistributingCollectOperation;
 import io.crate.operation.collect.MapSideDataCollectOperation;
 import io.crate.planner.node.PlanNodeStreamerVisitor;
@@ -57,6 +58,7 @@ public class TransportCollectNodeAction {
     private final PlanNodeStreamerVisitor planNodeStreamerVisitor;
     private final String executor = ThreadPool.Names.SEARCH;
     private final DistributingCollectOperation distributingCollectOperation;
+    private final TransportResponseOptions responseOptions;
 
     @Inject
     public TransportCollectNodeAction(ThreadPool threadPool,
@@ -64,13 +66,15 @@ public class TransportCollectNodeAction {
                                       TransportService transportService,
                                       MapSideDataCollectOperation localDataCollector,
                                       DistributingCollectOperation distributingCollectOperation,
-                                      PlanNodeStreamerVisitor planNodeStreamerVisitor) {
+                                      PlanNodeStreamerVisitor planNodeStreamerVisitor,
+                                      CollectSettings collectSettings) {
         this.threadPool = threadPool;
         this.transportService = transportService;
         this.clusterService = clusterService;
         this.localDataCollector = localDataCollector;
         this.distributingCollectOperation = distributingCollectOperation;
         this.planNodeStreamerVisitor = planNodeStreamerVisitor;
+        this.responseOptions = TransportResponseOptions.options().withCompress(collectSettings.compressRows());
 
         transportService.registerHandler(transportAction, new TransportHandler());
     }
@@ -213,7 +217,7 @@ public class TransportCollectNodeAction {
                     @Override
                     public void onResponse(NodeCollectResponse response) {
                         try {
-                            channel.sendResponse(response);
+                            channel.sendResponse(response, responseOptions);
                         } catch (IOException e) {
                             logger.error("Error sending collect response", e);
                         }
@@ -22,6 +22,7 @@
 package io.crate.executor.transport;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.QueryMemoryBreaker;
 import io.crate.executor.Executor;
 import io.crate.executor.Job;
 import io.crate.executor.Task;
@@ -35,6 +36,7 @@ import io.crate.metadata.Functions;
 import io.crate.metadata.ReferenceResolver;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.collect.HandlerSideDataCollectOperation;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.planner.Plan;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.PlanNode;
@@ -93,6 +95,8 @@ public class TransportExecutor implements Executor {
     private final TransportIndicesAliasesAction transportCreateAliasAction;
     // operation for handler side collecting
     private final HandlerSideDataCollectOperation handlerSideDataCollectOperation;
+    private final SpillSettings spillSettings;
+    private final QueryMemoryBreaker queryMemoryBreaker;
     private final Provider<Client> clientProvider;
 
     @Inject
@@ -117,7 +121,9 @@ public class TransportExecutor implements Executor {
                              TransportPutIndexTemplateAction transportPutIndexTemplateAction,
                              TransportDeleteIndexTemplateAction transportDeleteIndexTemplateAction,
                              TransportIndicesAliasesAction transportCreateAliasAction,
-                             HandlerSideDataCollectOperation handlerSideDataCollectOperation) {
+                             HandlerSideDataCollectOperation handlerSideDataCollectOperation,
+                             SpillSettings spillSettings,
+                             QueryMemoryBreaker queryMemoryBreaker) {
         this.transportGetAction = transportGetAction;
         this.transportMultiGetAction = transportMultiGetAction;
         this.transportCollectNodeAction = transportCollectNodeAction;
@@ -138,6 +144,8 @@ public class TransportExecutor implements Executor {
         this.clientProvider = clientProvider;
 
         this.handlerSideDataCollectOperation = handlerSideDataCollectOperation;
+        this.spillSettings = spillSettings;
+        this.queryMemoryBreaker = queryMemoryBreaker;
         this.threadPool = threadPool;
         this.functions = functions;
         this.referenceResolver = referenceResolver;
@@ -195,7 +203,9 @@ public class TransportExecutor implements Executor {
                         threadPool,
                         clientProvider,
                         new ImplementationSymbolVisitor(referenceResolver, functions, RowGranularity.CLUSTER),
-                        node));
+                        node,
+                        spillSettings,
+                        queryMemoryBreaker.newContext(node.jobId())));
             } else {
                 context.addTask(new DistributedMergeTask(transportMergeNodeAction, node));
             }
@@ -259,7 +269,7 @@ public class TransportExecutor implements Executor {
 
         @Override
         public Void visitESIndexNode(ESIndexNode node, Job context) {
-            if (node.sourceMaps().size() > 1) {
+            if (node.sourceMaps().size() > 1 || node.itemResults()) {
                 context.addTask(new ESBulkIndexTask(transportBulkAction, node));
             } else {
                 context.addTask(new ESIndexTask(transportIndexAction, node));
@@ -25,6 +25,8 @@ import com.google.common.base.Optional;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
+import io.crate.breaker.QueryMemoryBreaker;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.executor.transport.merge.NodeMergeResponse;
 import io.crate.metadata.Functions;
 import io.crate.operation.DownstreamOperationFactory;
@@ -55,23 +57,38 @@ import java.util.*;
  *
  * this class is also responsible for this lazy-de-serialization.
  *
+ * every upstream may send its rows in multiple pages (see {@link DistributedResultRequest#isLast()}),
+ * pages are merged as they arrive.
+ *
  * the merge itself is done inside {@link DownstreamOperationContext}
+ *
+ * the size of the buffered memoryStreams is accounted to the {@link QueryMemoryBreaker} of the node
+ * until the context is created.
  */
 public class DistributedRequestContextManager {
 
     private final ESLogger logger = Loggers.getLogger(getClass());
 
     private final Map<UUID, DownstreamOperationContext> activeMergeOperations = new HashMap<>();
-    private final Map<UUID, List<BytesReference>> unreadStreams = new HashMap<>();
+    private final Map<UUID, List<DistributedResultRequest>> unreadStreams = new HashMap<>();
+    private final Map<UUID, RamAccountingContext> unreadStreamsAccounting = new HashMap<>();
     private final Set<UUID> unreadFailures = new HashSet<>();
     private final Object lock = new Object();
     private final DownstreamOperationFactory downstreamOperationFactory;
     private final PlanNodeStreamerVisitor planNodeStreamerVisitor;
+    private final QueryMemoryBreaker queryMemoryBreaker;
 
     public DistributedRequestContextManager(DownstreamOperationFactory downstreamOperationFactory,
                                             Functions functions) {
+        this(downstreamOperationFactory, functions, QueryMemoryBreaker.UNLIMITED);
+    }
+
+    public DistributedRequestContextManager(DownstreamOperationFactory downstreamOperationFactory,
+                                            Functions functions,
+                                            QueryMemoryBreaker queryMemoryBreaker) {
         this.downstreamOperationFactory = downstreamOperationFactory;
         this.planNodeStreamerVisitor = new PlanNodeStreamerVisitor(functions);
+        this.queryMemoryBreaker = queryMemoryBreaker;
     }
 
     /**
@@ -117,21 +134,24 @@ public class DistributedRequestContextManager {
 
     /**
      * merge to rows inside the request
+     *
+     * @return false if the context doesn't need any more rows
      */
-    public void addToContext(DistributedResultRequest request) throws Exception {
+    public boolean addToContext(DistributedResultRequest request) throws Exception {
         logger.trace("addToContext: hasrows: {}", request.rowsRead());
         DownstreamOperationContext operationContext;
         if (request.rowsRead()) {
             operationContext = activeMergeOperations.get(request.contextId());
             assert operationContext != null;
             logger.trace("addToContext rowsRead: {}", operationContext);
+            boolean needMore = false;
             if (request.failure()) {
                 operationContext.addFailure(null);
             } else {
-                operationContext.add(request.rows());
+                needMore = operationContext.add(request.rows(), request.isLast());
             }
             logger.trace("addToContext rowsRead succes");
-            return;
+            return needMore;
         }
         synchronized (lock) {
             operationContext = activeMergeOperations.get(request.contextId());
@@ -144,25 +164,33 @@ public class DistributedRequestContextManager {
                     logger.error("adding unread failure from distributed result for context: ", request.contextId());
                 } else {
                     assert request.memoryStream() != null;
-                    List<BytesReference> bytesStreamOutputs = unreadStreams.get(request.contextId());
-                    if (bytesStreamOutputs == null) {
-                        bytesStreamOutputs = new ArrayList<>();
-                        unreadStreams.put(request.contextId(), bytesStreamOutputs);
+                    RamAccountingContext ramAccountingContext = unreadStreamsAccounting.get(request.contextId());
+                    if (ramAccountingContext == null) {
+                        ramAccountingContext = queryMemoryBreaker.newContext(request.jobId());
+                        unreadStreamsAccounting.put(request.contextId(), ramAccountingContext);
                     }
-                    bytesStreamOutputs.add(request.memoryStream().bytes());
+                    // fails the upstream if the limit is hit
+                    ramAccountingContext.addBytes(request.memoryStream().bytes().length());
+                    List<DistributedResultRequest> unreadRequests = unreadStreams.get(request.contextId());
+                    if (unreadRequests == null) {
+                        unreadRequests = new ArrayList<>();
+                        unreadStreams.put(request.contextId(), unreadRequests);
+                    }
+                    unreadRequests.add(request);
                 }
             } else {
                 logger.trace("addToContext: with context norows failure: {}", request.failure());
                 if (request.failure()) {
                     operationContext.addFailure(null);
                     logger.error("addToContext: failure in distributed result");
-                    return;
+                    return false;
                 }
                 logger.trace("addToContext: using memory stream: ", request.memoryStream());
-                addFromBytesReference(request.memoryStream().bytes(), operationContext);
+                return addFromBytesReference(request.memoryStream().bytes(), request.isLast(), operationContext);
             }
         }
         logger.trace("addToContext: finished");
+        return true;
     }
 
     private SettableFuture<Object[][]> wrapActionListener(final Streamer<?>[] streamers,
@@ -183,24 +211,28 @@ public class DistributedRequestContextManager {
     }
 
     private void put(UUID contextId, DownstreamOperationContext downstreamOperationContext) {
-        List<BytesReference> bytesReferences;
+        List<DistributedResultRequest> unreadRequests;
         synchronized (lock) {
             logger.trace("put: {} {}", contextId, downstreamOperationContext);
             activeMergeOperations.put(contextId, downstreamOperationContext);
-            bytesReferences = unreadStreams.remove(contextId);
+            unreadRequests = unreadStreams.remove(contextId);
+            RamAccountingContext ramAccountingContext = unreadStreamsAccounting.remove(contextId);
+            if (ramAccountingContext != null) {
+                ramAccountingContext.close();
+            }
             if (unreadFailures.contains(contextId)) {
                 unreadFailures.remove(contextId);
                 downstreamOperationContext.addFailure(null);
             }
         }
-        if (bytesReferences != null) {
-            for (BytesReference bytes : bytesReferences) {
-                addFromBytesReference(bytes, downstreamOperationContext);
+        if (unreadRequests != null) {
+            for (DistributedResultRequest request : unreadRequests) {
+                addFromBytesReference(request.memoryStream().bytes(), request.isLast(), downstreamOperationContext);
             }
         }
     }
 
-    private void addFromBytesReference(BytesReference bytesReference, DownstreamOperationContext ctx) {
+    private boolean addFromBytesReference(BytesReference bytesReference, boolean isLast, DownstreamOperationContext ctx) {
         // bytesReference must be wrapped into HandlesStreamInput because it has a different readString()
         // implementation than BytesStreamInput alone.
         // and the memoryOutputStream originates from a HandlesStreamOutput.
@@ -211,10 +243,10 @@ public class DistributedRequestContextManager {
         } catch (IOException e) {
             ctx.addFailure(e);
             logger.error("unable to deserialize upstream result", e);
-            return;
+            return false;
         }
         assert rows != null;
-        ctx.add(rows);
+        return ctx.add(rows, isLast);
     }
 
     public interface DoneCallback {
@@ -23,6 +23,7 @@ package io.crate.executor.transport.distributed;
 
 import com.google.common.base.Optional;
 import io.crate.Streamer;
+import io.crate.executor.transport.ColumnarRowStreamer;
 import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -32,6 +33,14 @@ import org.elasticsearch.transport.TransportRequest;
 import java.io.IOException;
 import java.util.UUID;
 
+/**
+ * a page of rows sent from an upstream to a downstream.
+ *
+ * every upstream sends its rows as a sequence of pages, the last page of the sequence
+ * (or a failure) marks the end of the stream of this upstream.
+ * The next page must only be sent after the response to the previous page has been received,
+ * so pages of one upstream are processed in order.
+ */
 public class DistributedResultRequest extends TransportRequest {
 
     private DistributedRequestContextManager contextManager;
@@ -43,6 +52,7 @@ public class DistributedResultRequest extends TransportRequest {
     // TODO: change failure flag to string or enum so that the receiver can recreate the
     // exception and the error handling in the DistributedMergeTask can be simplified.
     private boolean failure = false;
+    private boolean isLast = true;
 
     public DistributedResultRequest(DistributedRequestContextManager contextManager) {
         this.contextManager = contextManager;
@@ -57,6 +67,14 @@ public class DistributedResultRequest extends TransportRequest {
         return contextId;
     }
 
+    /**
+     * the merge context of a job is identified by the id of the job,
+     * see {@link io.crate.planner.node.dql.MergeNode#jobId()}
+     */
+    public UUID jobId() {
+        return contextId;
+    }
+
     public BytesStreamOutput memoryStream() {
         return memoryStream;
     }
@@ -82,19 +100,11 @@ public class DistributedResultRequest extends TransportRequest {
             failure= true;
             return;
         }
+        isLast = in.readBoolean();
 
         final Optional<Streamer<?>[]> optStreamer = contextManager.getStreamer(contextId);
         if (optStreamer.isPresent()) {
-            final Streamer<?>[] streamers = optStreamer.get();
-            final int numColumns = streamers.length;
-
-            rows = new Object[in.readVInt()][];
-            for (int r = 0; r < rows.length; r++) {
-                rows[r] = new Object[numColumns];
-                for (int c = 0; c < numColumns; c++) {
-                    rows[r][c] = streamers[c].readValueFrom(in);
-                }
-            }
+            rows = ColumnarRowStreamer.readRows(in, optStreamer.get());
         } else {
             memoryStream = new BytesStreamOutput();
             Streams.copy(in, memoryStream);
@@ -102,16 +112,7 @@ public class DistributedResultRequest extends TransportRequest {
     }
 
     public static Object[][] readRemaining(Streamer<?>[] streamers, StreamInput input) throws IOException {
-        final int numColumns = streamers.length;
-        final Object[][] rows = new Object[input.readVInt()][];
-        for (int r = 0; r < rows.length; r++) {
-            rows[r] = new Object[numColumns];
-            for (int c = 0; c < numColumns; c++) {
-                rows[r][c] = streamers[c].readValueFrom(input);
-            }
-        }
-
-        return rows;
+        return ColumnarRowStreamer.readRows(input, streamers);
     }
 
     @Override
@@ -125,16 +126,10 @@ public class DistributedResultRequest extends TransportRequest {
             return;
         }
         out.writeBoolean(false);
+        out.writeBoolean(isLast);
 
         assert streamers != null;
-        final int numColumns = streamers.length;
-
-        out.writeVInt(rows.length);
-        for (Object[] row : rows) {
-            for (int i = 0; i < numColumns; i++) {
-                streamers[i].writeValueTo(out, row[i]);
-            }
-        }
+        ColumnarRowStreamer.writeRows(out, streamers, rows);
     }
 
     public void failure(boolean failure) {
@@ -144,4 +139,15 @@ public class DistributedResultRequest extends TransportRequest {
     public boolean failure() {
         return this.failure;
     }
+
+    /**
+     * @return true if this is the last page of the upstream that sent it
+     */
+    public boolean isLast() {
+        return isLast;
+    }
+
+    public void isLast(boolean isLast) {
+        this.isLast = isLast;
+    }
 }
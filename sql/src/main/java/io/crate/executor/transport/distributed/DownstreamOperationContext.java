@@ -85,24 +85,38 @@ public class DownstreamOperationContext {
         }
     }
 
-    public void add(Object[][] rows) {
+    public boolean add(Object[][] rows) {
+        return add(rows, true);
+    }
+
+    /**
+     * add a page of rows of one upstream
+     *
+     * @param isLast true if this is the last page of the upstream
+     * @return false if the downstreamOperation doesn't need any more rows
+     */
+    public boolean add(Object[][] rows, boolean isLast) {
         assert rows != null;
-        logger.trace("add rows.size: {}", rows.length);
+        logger.trace("add rows.size: {} isLast: {}", rows.length, isLast);
+        boolean needMore;
         synchronized (lock) {
             if (needsMoreRows) {
                 try {
                     needsMoreRows = downstreamOperation.addRows(rows);
                 } catch (Exception e) {
                     logger.error("failed to add rows to downstreamOperation", e);
+                    needsMoreRows = false;
                     listener.setException(e);
                 }
             }
+            needMore = needsMoreRows;
         }
 
-        if (mergeOperationsLeft.decrementAndGet() == 0) {
+        if (isLast && mergeOperationsLeft.decrementAndGet() == 0) {
             doneCallback.finished();
             downstreamOperation.finished();
         }
+        return needMore;
     }
 
     public Streamer<?>[] streamers() {
@@ -22,6 +22,7 @@
 package io.crate.executor.transport.merge;
 
 import io.crate.Streamer;
+import io.crate.breaker.QueryMemoryBreaker;
 import io.crate.executor.transport.DistributedResultRequestHandler;
 import io.crate.executor.transport.distributed.DistributedRequestContextManager;
 import io.crate.executor.transport.distributed.DistributedResultRequest;
@@ -32,6 +33,7 @@ import io.crate.operation.DownstreamOperation;
 import io.crate.operation.DownstreamOperationFactory;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.merge.MergeOperation;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.PlanNodeStreamerVisitor;
 import io.crate.planner.node.dql.MergeNode;
@@ -67,7 +69,9 @@ public class TransportMergeNodeAction {
                                     ClusterService clusterService,
                                     ReferenceResolver referenceResolver,
                                     Functions functions,
-                                    ThreadPool threadPool) {
+                                    ThreadPool threadPool,
+                                    final SpillSettings spillSettings,
+                                    final QueryMemoryBreaker queryMemoryBreaker) {
         this.transportService = transportService;
         this.clusterService = clusterService;
         this.threadPool = threadPool;
@@ -80,9 +84,10 @@ public class TransportMergeNodeAction {
         this.contextManager = new DistributedRequestContextManager(new DownstreamOperationFactory<MergeNode>() {
             @Override
             public DownstreamOperation create(MergeNode node) {
-                return new MergeOperation(clientProvider, implementationSymbolVisitor, node);
+                return new MergeOperation(clientProvider, implementationSymbolVisitor, node, spillSettings,
+                        queryMemoryBreaker.newContext(node.jobId()));
             }
-        }, functions);
+        }, functions, queryMemoryBreaker);
 
         transportService.registerHandler(startMergeAction, new StartMergeHandler());
         transportService.registerHandler(mergeRowsAction, new DistributedResultRequestHandler(contextManager));
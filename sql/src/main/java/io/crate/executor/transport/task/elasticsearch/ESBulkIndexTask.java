@@ -42,14 +42,28 @@ public class ESBulkIndexTask extends AbstractESIndexTask {
     static class BulkIndexResponseListener implements ActionListener<BulkResponse> {
 
         private final SettableFuture<Object[][]> result;
+        private final boolean itemResults;
 
-        BulkIndexResponseListener(SettableFuture<Object[][]> result) {
+        BulkIndexResponseListener(SettableFuture<Object[][]> result, boolean itemResults) {
             this.result = result;
+            this.itemResults = itemResults;
         }
 
         @Override
         public void onResponse(BulkResponse bulkItemResponses) {
             BulkItemResponse[] responses = bulkItemResponses.getItems();
+            if (itemResults) {
+                Object[][] rows = new Object[responses.length][];
+                for (int i = 0; i < responses.length; i++) {
+                    if (responses[i].isFailed()) {
+                        rows[i] = new Object[]{0L, responses[i].getFailureMessage()};
+                    } else {
+                        rows[i] = new Object[]{1L, null};
+                    }
+                }
+                result.set(rows);
+                return;
+            }
             long rowsAffected = 0L;
             for (BulkItemResponse response : responses) {
                 if (!response.isFailed()) {
@@ -92,7 +106,7 @@ public class ESBulkIndexTask extends AbstractESIndexTask {
             this.request.add(indexRequest);
         }
 
-        this.listener = new BulkIndexResponseListener(result);
+        this.listener = new BulkIndexResponseListener(result, node.itemResults());
     }
 
     @Override
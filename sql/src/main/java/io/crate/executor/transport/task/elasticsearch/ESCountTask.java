@@ -40,15 +40,18 @@ public class ESCountTask implements Task<Object[][]> {
     private final List<ListenableFuture<Object[][]>> results;
     private final CountRequest request;
     private final ActionListener<CountResponse> listener;
+    private final SettableFuture<Object[][]> result;
+    private final boolean countsNothing;
     private final static ESQueryBuilder queryBuilder = new ESQueryBuilder();
 
     public ESCountTask(ESCountNode node, TransportCountAction transportCountAction) {
         this.transportCountAction = transportCountAction;
         assert node != null;
 
-        final SettableFuture<Object[][]> result = SettableFuture.create();
+        result = SettableFuture.create();
         results = Arrays.<ListenableFuture<Object[][]>>asList(result);
-        request = new CountRequest(node.indexName());
+        countsNothing = node.indices().length == 0 || node.whereClause().noMatch();
+        request = new CountRequest(node.indices());
         try {
             request.source(queryBuilder.convert(node.whereClause()), false);
         } catch (IOException e) {
@@ -70,6 +73,10 @@ public class ESCountTask implements Task<Object[][]> {
 
     @Override
     public void start() {
+        if (countsNothing) {
+            result.set(new Object[][] { new Object[] { 0L }});
+            return;
+        }
         transportCountAction.execute(request, listener);
     }
 
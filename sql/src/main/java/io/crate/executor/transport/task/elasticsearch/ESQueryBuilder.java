@@ -82,6 +82,23 @@ public class ESQueryBuilder {
         return context.builder.bytes();
     }
 
+    /**
+     * use to generate the "query" xcontent together with sorting and size,
+     * for collectors that only need the first <code>size</code> documents in that order
+     */
+    public BytesReference convert(WhereClause whereClause,
+                                  List<Reference> orderBy,
+                                  boolean[] reverseFlags,
+                                  int size) throws IOException {
+        Context context = new Context();
+        context.builder = XContentFactory.jsonBuilder().startObject();
+        whereClause(context, whereClause);
+        addSorting(orderBy, reverseFlags, context.builder);
+        context.builder.field("size", size);
+        context.builder.endObject();
+        return context.builder.bytes();
+    }
+
     static Set<String> commonAncestors(List<String> fields){
         int idx = 0;
         String previous = null;
@@ -22,6 +22,7 @@
 package io.crate.executor.transport.task.elasticsearch;
 
 import com.google.common.util.concurrent.SettableFuture;
+import io.crate.exceptions.VersionConflictException;
 import io.crate.executor.transport.task.elasticsearch.facet.InternalUpdateFacet;
 import io.crate.executor.transport.task.elasticsearch.facet.UpdateFacet;
 import io.crate.planner.node.dml.ESUpdateNode;
@@ -32,6 +33,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.TransportSearchAction;
 
 import java.io.IOException;
+import java.util.Locale;
 
 public class ESUpdateByQueryTask extends AbstractESUpdateTask {
 
@@ -47,6 +49,12 @@ public class ESUpdateByQueryTask extends AbstractESUpdateTask {
         public void onResponse(SearchResponse searchResponse) {
             InternalUpdateFacet facet = searchResponse.getFacets().facet(InternalUpdateFacet.class, UpdateFacet.TYPE);
             facet.reduce();
+            if (facet.versionConflicts() > 0) {
+                future.setException(new VersionConflictException(String.format(Locale.ENGLISH,
+                        "%d documents could not be updated because of version conflicts, %d documents were updated",
+                        facet.versionConflicts(), facet.rowCount())));
+                return;
+            }
             future.set(new Object[][]{new Object[]{facet.rowCount()}});
         }
 
@@ -39,6 +39,7 @@ public class InternalUpdateFacet extends InternalFacet implements UpdateFacet {
     private ReduceContext reduceContext;
     private Object[][] rows;
     private long rowCount;
+    private long versionConflicts;
 
     public InternalUpdateFacet(String facetName) {
         super(facetName);
@@ -78,6 +79,7 @@ public class InternalUpdateFacet extends InternalFacet implements UpdateFacet {
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         rowCount = in.readVLong();
+        versionConflicts = in.readVLong();
         if (rowCount == 0) return;
         int numRows = in.readInt();
         if (numRows == 0) return;
@@ -95,6 +97,7 @@ public class InternalUpdateFacet extends InternalFacet implements UpdateFacet {
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeVLong(rowCount);
+        out.writeVLong(versionConflicts);
         if (rowCount == 0) return;
         int numCols = 0;
         if (rows == null || rows.length == 0) {
@@ -125,10 +128,11 @@ public class InternalUpdateFacet extends InternalFacet implements UpdateFacet {
 
     @Override
     public void reduce() {
-        // Currently only the rowcount gets accumulated
+        // Currently only the rowcount and the version conflicts get accumulated
         for (Facet facet : reduceContext.facets()) {
             if (facet != this) {
                 rowCount += ((InternalUpdateFacet) facet).rowCount();
+                versionConflicts += ((InternalUpdateFacet) facet).versionConflicts();
             }
         }
     }
@@ -145,6 +149,17 @@ public class InternalUpdateFacet extends InternalFacet implements UpdateFacet {
         this.rowCount = rowCount;
     }
 
+    /**
+     * number of documents which weren't updated because of a version conflict
+     */
+    public long versionConflicts() {
+        return versionConflicts;
+    }
+
+    public void versionConflicts(long versionConflicts) {
+        this.versionConflicts = versionConflicts;
+    }
+
     private static class SQLFacetStream implements InternalFacet.Stream {
 
         @Override
@@ -22,41 +22,101 @@
 package io.crate.executor.transport.task.elasticsearch.facet;
 
 import io.crate.Constants;
+import io.crate.exceptions.UnhandledServerException;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Scorer;
-import org.elasticsearch.action.update.TransportUpdateAction;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkShardRequests;
+import org.elasticsearch.action.bulk.BulkShardResponse;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.facet.FacetExecutor;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SearchLookup;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * A Collector which generates elasticsearch update requests for every document it collects
+ * A Collector which generates elasticsearch update requests for every document it collects.
+ *
+ * The requests of a shard are sent in bulks of {@link #BULK_SIZE} to the shard itself, with at most
+ * {@link #MAX_CONCURRENT_REQUESTS} bulks in flight. {@link #postCollection()} waits until all of them are done.
+ * After the first version conflict no more updates are sent, the documents updated so far and
+ * the version conflicts are reported together with the update facet.
+ * Any other failure stops the collection once all bulks in flight are done.
  */
 public class UpdateCollector extends FacetExecutor.Collector {
 
+    private static final ESLogger logger = Loggers.getLogger(UpdateCollector.class);
+
+    /**
+     * number of update requests per bulk
+     */
+    public static final int BULK_SIZE = 100;
+
+    /**
+     * maximum number of bulks in flight per shard
+     */
+    public static final int MAX_CONCURRENT_REQUESTS = 4;
+
     private final SearchLookup lookup;
-    private final TransportUpdateAction updateAction;
+    private final TransportShardBulkAction bulkAction;
     private final Map<String, Object> updateDoc;
     private final ShardId shardId;
-    private long rowCount;
+    private final Semaphore inFlight = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    private final AtomicLong rowCount = new AtomicLong(0);
+    private final AtomicLong versionConflicts = new AtomicLong(0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ActionListener<BulkShardResponse> responseListener = new ActionListener<BulkShardResponse>() {
+        @Override
+        public void onResponse(BulkShardResponse response) {
+            for (BulkItemResponse item : response.getResponses()) {
+                if (!item.isFailed()) {
+                    rowCount.incrementAndGet();
+                } else if (item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                    versionConflicts.incrementAndGet();
+                } else {
+                    failure.compareAndSet(null, new UnhandledServerException(item.getFailureMessage()));
+                }
+            }
+            inFlight.release();
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            failure.compareAndSet(null, e);
+            inFlight.release();
+        }
+    };
     private Long requiredVersion;
+    private List<UpdateRequest> requests = new ArrayList<>(BULK_SIZE);
 
     public long rowCount() {
-        return rowCount;
+        return rowCount.get();
+    }
+
+    public long versionConflicts() {
+        return versionConflicts.get();
     }
 
     class CollectorUpdateRequest extends UpdateRequest {
 
         CollectorUpdateRequest(ShardId shardId, Uid uid) {
             super(shardId.getIndex(), uid.type(), uid.id());
-            this.shardId = shardId.id();
             if (requiredVersion != null) {
                 version(requiredVersion);
             } else {
@@ -69,14 +129,13 @@ public class UpdateCollector extends FacetExecutor.Collector {
     public UpdateCollector(
             Map<String, Object> doc,
             Long requiredVersion,
-            TransportUpdateAction updateAction,
+            TransportShardBulkAction bulkAction,
             SearchContext context
             ) {
         this.shardId = context.indexShard().shardId();
-        this.updateAction = updateAction;
+        this.bulkAction = bulkAction;
         this.lookup = context.lookup();
         this.updateDoc = doc;
-        this.rowCount = 0;
         this.requiredVersion = requiredVersion;
     }
 
@@ -91,9 +150,20 @@ public class UpdateCollector extends FacetExecutor.Collector {
     }
 
 
+    /**
+     * send the last bulk and wait for all pending bulks
+     */
     @Override
     public void postCollection() {
-        // nothing to do
+        if (!requests.isEmpty() && versionConflicts.get() == 0 && failure.get() == null) {
+            send();
+        }
+        waitForPendingRequests();
+        if (versionConflicts.get() > 0) {
+            logger.debug("[{}] update stopped after {} version conflicts, {} documents updated",
+                    shardId, versionConflicts.get(), rowCount.get());
+        }
+        throwOnFailure();
     }
 
     @Override
@@ -103,9 +173,44 @@ public class UpdateCollector extends FacetExecutor.Collector {
         collect(uid);
     }
 
-    private void collect(Uid uid) {
-        UpdateRequest request = new CollectorUpdateRequest(shardId, uid);
-        updateAction.execute(request).actionGet();
-        rowCount++;
+    void collect(Uid uid) {
+        if (failure.get() != null) {
+            waitForPendingRequests();
+            throwOnFailure();
+        }
+        if (versionConflicts.get() > 0) {
+            // stop updating like a single update does, the documents collected so far are dropped
+            requests.clear();
+            return;
+        }
+        requests.add(new CollectorUpdateRequest(shardId, uid));
+        if (requests.size() >= BULK_SIZE) {
+            send();
+        }
+    }
+
+    private void send() {
+        List<UpdateRequest> bulk = requests;
+        requests = new ArrayList<>(BULK_SIZE);
+        inFlight.acquireUninterruptibly();
+        try {
+            bulkAction.execute(BulkShardRequests.create(shardId, bulk), responseListener);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            waitForPendingRequests();
+            throw e;
+        }
+    }
+
+    private void waitForPendingRequests() {
+        inFlight.acquireUninterruptibly(MAX_CONCURRENT_REQUESTS);
+        inFlight.release(MAX_CONCURRENT_REQUESTS);
+    }
+
+    private void throwOnFailure() {
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw ExceptionsHelper.convertToRuntime(throwable);
+        }
     }
 }
@@ -22,7 +22,7 @@
 package io.crate.executor.transport.task.elasticsearch.facet;
 
 import com.google.common.base.Optional;
-import org.elasticsearch.action.update.TransportUpdateAction;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.search.facet.FacetExecutor;
 import org.elasticsearch.search.facet.InternalFacet;
 import org.elasticsearch.search.internal.SearchContext;
@@ -37,11 +37,11 @@ public class UpdateFacetExecutor extends FacetExecutor {
             Map<String, Object> doc,
             Optional<Long> version,
             SearchContext searchContext,
-            TransportUpdateAction updateAction) {
+            TransportShardBulkAction bulkAction) {
         this.collector = new UpdateCollector(
                 doc,
                 version.orNull(),
-                updateAction,
+                bulkAction,
                 searchContext);
     }
 
@@ -52,6 +52,7 @@ public class UpdateFacetExecutor extends FacetExecutor {
     public InternalFacet buildFacet(String facetName) {
         InternalUpdateFacet facet = new InternalUpdateFacet(facetName);
         facet.rowCount(collector.rowCount());
+        facet.versionConflicts(collector.versionConflicts());
         return facet;
     }
 
@@ -76,6 +76,17 @@ public class SysNodesTableInfo extends SysTableInfo {
         register("version", StringType.INSTANCE, ImmutableList.of("number"));
         register("version", StringType.INSTANCE, ImmutableList.of("build_hash"));
         register("version", DataTypes.BOOLEAN, ImmutableList.of("build_snapshot"));
+        register("query_memory", DataTypes.OBJECT, null);
+        register("query_memory", DataTypes.LONG, ImmutableList.of("used"));
+        register("query_memory", DataTypes.LONG, ImmutableList.of("limit"));
+        register("query_memory", DataTypes.OBJECT, ImmutableList.of("jobs"));
+        register("stmt_cache", DataTypes.OBJECT, null);
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("hits"));
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("misses"));
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("size"));
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("plan_hits"));
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("plan_misses"));
+        register("stmt_cache", DataTypes.LONG, ImmutableList.of("plan_size"));
     }
 
     private final ClusterService clusterService;
@@ -22,8 +22,14 @@
 package io.crate.operation.aggregation;
 
 import io.crate.operation.Input;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.RowBlock;
+import io.crate.operation.collect.InputCollectExpression;
 import io.crate.operation.collect.RowCollector;
 import io.crate.planner.symbol.Aggregation;
+import org.elasticsearch.common.util.BigArrays;
+
+import javax.annotation.Nullable;
 
 public class AggregationCollector implements RowCollector {
 
@@ -31,6 +37,8 @@ public class AggregationCollector implements RowCollector {
     private final AggregationFunction aggregationFunction;
     private final FromImpl fromImpl;
     private final ToImpl toImpl;
+    private final int[] inputPositions;
+    private final ColumnVector[] inputVectors;
 
     private AggregationState aggregationState;
 
@@ -67,6 +75,25 @@ public class AggregationCollector implements RowCollector {
 
         this.inputs = inputs;
         this.aggregationFunction = aggregationFunction;
+        this.inputPositions = inputPositions(a, inputs);
+        this.inputVectors = inputPositions == null ? null : new ColumnVector[inputs.length];
+    }
+
+    /**
+     * @return the row positions of the inputs, null if not all inputs are plain row columns
+     */
+    private static int[] inputPositions(Aggregation a, Input... inputs) {
+        if (a.fromStep() != Aggregation.Step.ITER) {
+            return null;
+        }
+        int[] positions = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            if (!(inputs[i] instanceof InputCollectExpression)) {
+                return null;
+            }
+            positions[i] = ((InputCollectExpression) inputs[i]).position();
+        }
+        return positions;
     }
 
 
@@ -79,11 +106,70 @@ public class AggregationCollector implements RowCollector {
         return fromImpl.processRow();
     }
 
+    /**
+     * process all rows of the block at once using the column vectors of the inputs
+     *
+     * @return false if the block can't be processed this way, its rows have to be processed one by one then
+     */
+    @SuppressWarnings("unchecked")
+    public boolean processBlock(RowBlock block) {
+        if (inputVectors == null) {
+            return false;
+        }
+        for (int i = 0; i < inputPositions.length; i++) {
+            inputVectors[i] = block.column(inputPositions[i]);
+        }
+        return aggregationFunction.iterate(aggregationState, block.size(), inputVectors);
+    }
+
 
     public Object finishCollect() {
         return toImpl.finishCollect();
     }
 
+    /**
+     * @return the row positions of the inputs if all inputs are plain row columns and the aggregation
+     *         starts from ITER, null otherwise
+     */
+    @Nullable
+    public int[] inputPositions() {
+        return inputPositions;
+    }
+
+    public boolean hasFixedWidthState() {
+        return aggregationFunction.hasFixedWidthState();
+    }
+
+    public StateColumns newStateColumns(BigArrays bigArrays) {
+        return new StateColumns(aggregationFunction.longSlots(), aggregationFunction.doubleSlots(), bigArrays);
+    }
+
+    /**
+     * start collecting into the fixed width state of a new group
+     */
+    public void startCollect(StateColumns columns, long group) {
+        aggregationFunction.newState(columns, group);
+    }
+
+    public void processRow(StateColumns columns, long group) {
+        fromImpl.processRow(columns, group);
+    }
+
+    public Object finishCollect(StateColumns columns, long group) {
+        return toImpl.finishCollect(columns, group);
+    }
+
+    /**
+     * @return the fixed width state of the given group as partial state, independent of the target step
+     */
+    public AggregationState partialState(StateColumns columns, long group) {
+        return aggregationFunction.partialState(columns, group);
+    }
+
+    public AggregationFunction aggregationFunction() {
+        return aggregationFunction;
+    }
+
     public AggregationState state() {
         return aggregationState;
     }
@@ -99,6 +185,8 @@ public class AggregationCollector implements RowCollector {
         }
 
         public abstract boolean processRow();
+
+        public abstract void processRow(StateColumns columns, long group);
     }
 
     class FromIter extends FromImpl {
@@ -108,6 +196,11 @@ public class AggregationCollector implements RowCollector {
         public boolean processRow() {
             return aggregationFunction.iterate(aggregationState, inputs);
         }
+
+        @Override
+        public void processRow(StateColumns columns, long group) {
+            aggregationFunction.iterate(columns, group, inputs);
+        }
     }
 
     class FromPartial extends FromImpl {
@@ -118,10 +211,18 @@ public class AggregationCollector implements RowCollector {
             aggregationState.reduce((AggregationState)inputs[0].value());
             return true;
         }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void processRow(StateColumns columns, long group) {
+            aggregationFunction.reduce(columns, group, (AggregationState)inputs[0].value());
+        }
     }
 
-    static abstract class ToImpl {
+    abstract class ToImpl {
         public abstract Object finishCollect();
+
+        public abstract Object finishCollect(StateColumns columns, long group);
     }
 
     class ToPartial extends ToImpl {
@@ -129,6 +230,11 @@ public class AggregationCollector implements RowCollector {
         public Object finishCollect() {
             return aggregationState;
         }
+
+        @Override
+        public Object finishCollect(StateColumns columns, long group) {
+            return aggregationFunction.partialState(columns, group);
+        }
     }
 
     class ToFinal extends ToImpl {
@@ -137,5 +243,10 @@ public class AggregationCollector implements RowCollector {
             aggregationState.terminatePartial();
             return aggregationState.value();
         }
+
+        @Override
+        public Object finishCollect(StateColumns columns, long group) {
+            return aggregationFunction.value(columns, group);
+        }
     }
 }
@@ -23,6 +23,7 @@ package io.crate.operation.aggregation;
 
 import io.crate.metadata.FunctionImplementation;
 import io.crate.operation.Input;
+import io.crate.operation.block.ColumnVector;
 import io.crate.planner.symbol.Function;
 import io.crate.planner.symbol.Symbol;
 
@@ -39,6 +40,17 @@ public abstract class AggregationFunction<T extends AggregationState> implements
     public abstract boolean iterate(T state, Input... args);
 
 
+    /**
+     * Apply the first <code>size</code> values of the column vectors to the state at once.
+     *
+     * @param args the vectors of the arguments according to FunctionInfo.argumentTypes
+     * @return false if the vectors aren't supported by this aggregation,
+     *         the values are applied one by one using {@link #iterate(AggregationState, Input[])} then
+     */
+    public boolean iterate(T state, int size, ColumnVector... args) {
+        return false;
+    }
+
     /**
      * Creates a new state for this aggregation
      *
@@ -47,6 +59,62 @@ public abstract class AggregationFunction<T extends AggregationState> implements
     public abstract T newState();
 
 
+    /**
+     * Whether the state of this aggregation can be kept in {@link StateColumns}.
+     * If so the fixed width variants of the methods in this class have to be implemented as well.
+     */
+    public boolean hasFixedWidthState() {
+        return false;
+    }
+
+    /**
+     * @return number of long slots of the fixed width state
+     */
+    public int longSlots() {
+        return 0;
+    }
+
+    /**
+     * @return number of double slots of the fixed width state
+     */
+    public int doubleSlots() {
+        return 0;
+    }
+
+    /**
+     * Initialize the fixed width state of a new group, the slots are 0 already.
+     */
+    public void newState(StateColumns columns, long group) {
+    }
+
+    /**
+     * Apply the columnValue to the fixed width state of the given group
+     */
+    public void iterate(StateColumns columns, long group, Input... args) {
+        throw new UnsupportedOperationException("fixed width state not supported");
+    }
+
+    /**
+     * Merge a partial state into the fixed width state of the given group
+     */
+    public void reduce(StateColumns columns, long group, T partialState) {
+        throw new UnsupportedOperationException("fixed width state not supported");
+    }
+
+    /**
+     * @return the fixed width state of the given group as partial state that can be sent to other nodes
+     */
+    public T partialState(StateColumns columns, long group) {
+        throw new UnsupportedOperationException("fixed width state not supported");
+    }
+
+    /**
+     * @return the final value of the fixed width state of the given group
+     */
+    public Object value(StateColumns columns, long group) {
+        throw new UnsupportedOperationException("fixed width state not supported");
+    }
+
     @Override
     public Symbol normalizeSymbol(Function symbol) {
         return symbol;
@@ -0,0 +1,105 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation;
+
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.common.util.LongArray;
+
+/**
+ * fixed width states of one aggregation for many groups.
+ *
+ * The state of a group consists of {@link AggregationFunction#longSlots()} longs and
+ * {@link AggregationFunction#doubleSlots()} doubles, every slot is stored in its own
+ * column which is indexed by the group id. New slots are initialized with 0.
+ */
+public class StateColumns {
+
+    private static final long INITIAL_SIZE = 16;
+
+    private final BigArrays bigArrays;
+    private final LongArray[] longs;
+    private final DoubleArray[] doubles;
+    private long size = INITIAL_SIZE;
+
+    public StateColumns(int longSlots, int doubleSlots, BigArrays bigArrays) {
+        this.bigArrays = bigArrays;
+        this.longs = new LongArray[longSlots];
+        this.doubles = new DoubleArray[doubleSlots];
+        for (int i = 0; i < longSlots; i++) {
+            longs[i] = bigArrays.newLongArray(size);
+        }
+        for (int i = 0; i < doubleSlots; i++) {
+            doubles[i] = bigArrays.newDoubleArray(size);
+        }
+    }
+
+    /**
+     * make sure there is room for the state of the given group
+     */
+    public void ensureCapacity(long group) {
+        if (group < size) {
+            return;
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = bigArrays.grow(longs[i], group + 1);
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = bigArrays.grow(doubles[i], group + 1);
+        }
+        size = longs.length > 0 ? longs[0].size() : doubles[0].size();
+    }
+
+    public long getLong(int slot, long group) {
+        return longs[slot].get(group);
+    }
+
+    public void setLong(int slot, long group, long value) {
+        longs[slot].set(group, value);
+    }
+
+    public void incrementLong(int slot, long group, long inc) {
+        longs[slot].increment(group, inc);
+    }
+
+    public double getDouble(int slot, long group) {
+        return doubles[slot].get(group);
+    }
+
+    public void setDouble(int slot, long group, double value) {
+        doubles[slot].set(group, value);
+    }
+
+    public void incrementDouble(int slot, long group, double inc) {
+        doubles[slot].increment(group, inc);
+    }
+
+    public void release() {
+        for (LongArray column : longs) {
+            column.release();
+        }
+        for (DoubleArray column : doubles) {
+            column.release();
+        }
+    }
+}
@@ -27,6 +27,10 @@ import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.DoubleVector;
+import io.crate.operation.block.LongVector;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -118,11 +122,87 @@ public class AverageAggregation extends AggregationFunction<AverageAggregation.A
         return true;
     }
 
+    @Override
+    public boolean iterate(AverageAggState state, int size, ColumnVector... args) {
+        if (args[0] instanceof LongVector) {
+            LongVector vector = (LongVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i)) {
+                    state.sum += vector.get(i);
+                    state.count++;
+                }
+            }
+        } else if (args[0] instanceof DoubleVector) {
+            DoubleVector vector = (DoubleVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i)) {
+                    state.sum += vector.get(i);
+                    state.count++;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public AverageAggState newState() {
         return new AverageAggState();
     }
 
+    /**
+     * fixed width state: the count (long slot 0) and the sum (double slot 0)
+     */
+    @Override
+    public boolean hasFixedWidthState() {
+        return true;
+    }
+
+    @Override
+    public int longSlots() {
+        return 1;
+    }
+
+    @Override
+    public int doubleSlots() {
+        return 1;
+    }
+
+    @Override
+    public void iterate(StateColumns columns, long group, Input... args) {
+        Object value = args[0].value();
+        if (value != null) {
+            columns.incrementDouble(0, group, ((Number) value).doubleValue());
+            columns.incrementLong(0, group, 1L);
+        }
+    }
+
+    @Override
+    public void reduce(StateColumns columns, long group, AverageAggState partialState) {
+        if (partialState != null) {
+            columns.incrementDouble(0, group, partialState.sum);
+            columns.incrementLong(0, group, partialState.count);
+        }
+    }
+
+    @Override
+    public AverageAggState partialState(StateColumns columns, long group) {
+        AverageAggState state = new AverageAggState();
+        state.sum = columns.getDouble(0, group);
+        state.count = columns.getLong(0, group);
+        return state;
+    }
+
+    @Override
+    public Object value(StateColumns columns, long group) {
+        long count = columns.getLong(0, group);
+        if (count > 0) {
+            return columns.getDouble(0, group) / count;
+        }
+        return null;
+    }
+
     @Override
     public FunctionInfo info() {
         return info;
@@ -30,6 +30,8 @@ import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.ColumnVector;
 import io.crate.planner.symbol.Function;
 import io.crate.planner.symbol.Literal;
 import io.crate.planner.symbol.Symbol;
@@ -116,11 +118,62 @@ public class CountAggregation extends AggregationFunction<CountAggregation.Count
         return true;
     }
 
+    @Override
+    public boolean iterate(CountAggState state, int size, ColumnVector... args) {
+        if (!hasArgs) {
+            state.value += size;
+            return true;
+        }
+        ColumnVector vector = args[0];
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!vector.isNull(i)) {
+                count++;
+            }
+        }
+        state.value += count;
+        return true;
+    }
+
     @Override
     public CountAggState newState() {
         return new CountAggState();
     }
 
+    @Override
+    public boolean hasFixedWidthState() {
+        return true;
+    }
+
+    @Override
+    public int longSlots() {
+        return 1;
+    }
+
+    @Override
+    public void iterate(StateColumns columns, long group, Input... args) {
+        if (!hasArgs || args[0].value() != null) {
+            columns.incrementLong(0, group, 1L);
+        }
+    }
+
+    @Override
+    public void reduce(StateColumns columns, long group, CountAggState partialState) {
+        columns.incrementLong(0, group, partialState.value);
+    }
+
+    @Override
+    public CountAggState partialState(StateColumns columns, long group) {
+        CountAggState state = new CountAggState();
+        state.value = columns.getLong(0, group);
+        return state;
+    }
+
+    @Override
+    public Object value(StateColumns columns, long group) {
+        return columns.getLong(0, group);
+    }
+
     @Override
     public FunctionInfo info() {
         return info;
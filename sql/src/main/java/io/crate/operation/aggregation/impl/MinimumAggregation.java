@@ -27,6 +27,10 @@ import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.DoubleVector;
+import io.crate.operation.block.LongVector;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -39,6 +43,7 @@ public abstract class MinimumAggregation extends AggregationFunction<MinimumAggr
     public static final String NAME = "min";
 
     private final FunctionInfo info;
+    private final boolean integral;
 
     public static void register(AggregationImplModule mod) {
         for (final DataType dataType : DataTypes.PRIMITIVE_TYPES) {
@@ -74,6 +79,7 @@ public abstract class MinimumAggregation extends AggregationFunction<MinimumAggr
 
     MinimumAggregation(FunctionInfo info) {
         this.info = info;
+        this.integral = DataTypes.INTEGRAL_TYPES.contains(info.returnType());
     }
 
     @Override
@@ -81,6 +87,102 @@ public abstract class MinimumAggregation extends AggregationFunction<MinimumAggr
         return info;
     }
 
+    /**
+     * fixed width state for numeric types: a flag (long slot 0) if any value was seen and
+     * the value itself in long slot 1 for integral or double slot 0 for floating point types
+     */
+    @Override
+    public boolean hasFixedWidthState() {
+        return integral || DataTypes.FLOATING_POINT_TYPES.contains(info.returnType());
+    }
+
+    @Override
+    public int longSlots() {
+        return integral ? 2 : 1;
+    }
+
+    @Override
+    public int doubleSlots() {
+        return integral ? 0 : 1;
+    }
+
+    @Override
+    public void iterate(StateColumns columns, long group, Input... args) {
+        add(columns, group, args[0].value());
+    }
+
+    @Override
+    public void reduce(StateColumns columns, long group, MinimumAggState partialState) {
+        add(columns, group, partialState.value());
+    }
+
+    private void add(StateColumns columns, long group, Object value) {
+        if (value == null) {
+            return;
+        }
+        boolean seen = columns.getLong(0, group) != 0L;
+        if (integral) {
+            long longValue = ((Number) value).longValue();
+            if (!seen || longValue < columns.getLong(1, group)) {
+                columns.setLong(1, group, longValue);
+            }
+        } else {
+            double doubleValue = ((Number) value).doubleValue();
+            // Double.compare like the comparable state, NaN is larger than any other value
+            if (!seen || Double.compare(doubleValue, columns.getDouble(0, group)) < 0) {
+                columns.setDouble(0, group, doubleValue);
+            }
+        }
+        columns.setLong(0, group, 1L);
+    }
+
+    @Override
+    public MinimumAggState partialState(StateColumns columns, long group) {
+        MinimumAggState state = newState();
+        state.setValue((Comparable) value(columns, group));
+        return state;
+    }
+
+    @Override
+    public Object value(StateColumns columns, long group) {
+        if (columns.getLong(0, group) == 0L) {
+            return null;
+        }
+        if (integral) {
+            return info.returnType().value(columns.getLong(1, group));
+        }
+        return info.returnType().value(columns.getDouble(0, group));
+    }
+
+    /**
+     * only the smallest value of the block is converted to an object and added to the state
+     */
+    @Override
+    public boolean iterate(MinimumAggState state, int size, ColumnVector... args) {
+        int found = -1;
+        if (args[0] instanceof LongVector) {
+            LongVector vector = (LongVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i) && (found < 0 || vector.get(i) < vector.get(found))) {
+                    found = i;
+                }
+            }
+        } else if (args[0] instanceof DoubleVector) {
+            DoubleVector vector = (DoubleVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i) && (found < 0 || Double.compare(vector.get(i), vector.get(found)) < 0)) {
+                    found = i;
+                }
+            }
+        } else {
+            return false;
+        }
+        if (found >= 0) {
+            state.add((Comparable) args[0].value(found));
+        }
+        return true;
+    }
+
     @Override
     public boolean iterate(MinimumAggState state, Input... args) {
         Object value = args[0].value();
@@ -27,6 +27,10 @@ import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.DoubleVector;
+import io.crate.operation.block.LongVector;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -106,11 +110,91 @@ public class SumAggregation extends AggregationFunction<SumAggregation.SumAggSta
         return true;
     }
 
+    @Override
+    public boolean iterate(SumAggState state, int size, ColumnVector... args) {
+        double sum = 0;
+        boolean seen = false;
+        if (args[0] instanceof LongVector) {
+            LongVector vector = (LongVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i)) {
+                    sum += vector.get(i);
+                    seen = true;
+                }
+            }
+        } else if (args[0] instanceof DoubleVector) {
+            DoubleVector vector = (DoubleVector) args[0];
+            for (int i = 0; i < size; i++) {
+                if (!vector.isNull(i)) {
+                    sum += vector.get(i);
+                    seen = true;
+                }
+            }
+        } else {
+            return false;
+        }
+        if (seen) {
+            state.add(sum);
+        }
+        return true;
+    }
+
     @Override
     public SumAggState newState() {
         return new SumAggState();
     }
 
+    /**
+     * fixed width state: the sum and a flag (long slot 0) if any value was added,
+     * since a sum that aggregates nothing returns null
+     */
+    @Override
+    public boolean hasFixedWidthState() {
+        return true;
+    }
+
+    @Override
+    public int longSlots() {
+        return 1;
+    }
+
+    @Override
+    public int doubleSlots() {
+        return 1;
+    }
+
+    @Override
+    public void iterate(StateColumns columns, long group, Input... args) {
+        Object value = args[0].value();
+        if (value != null) {
+            columns.incrementDouble(0, group, ((Number) value).doubleValue());
+            columns.setLong(0, group, 1L);
+        }
+    }
+
+    @Override
+    public void reduce(StateColumns columns, long group, SumAggState partialState) {
+        if (partialState.value != null) {
+            columns.incrementDouble(0, group, partialState.value);
+            columns.setLong(0, group, 1L);
+        }
+    }
+
+    @Override
+    public SumAggState partialState(StateColumns columns, long group) {
+        SumAggState state = new SumAggState();
+        state.value = (Double) value(columns, group);
+        return state;
+    }
+
+    @Override
+    public Object value(StateColumns columns, long group) {
+        if (columns.getLong(0, group) == 0L) {
+            return null;
+        }
+        return columns.getDouble(0, group);
+    }
+
     @Override
     public FunctionInfo info() {
         return info;
@@ -0,0 +1,59 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.block;
+
+import io.crate.types.DataType;
+
+/**
+ * column vector of decimal values, stored as primitive doubles
+ */
+public class DoubleVector extends ColumnVector {
+
+    private final double[] values;
+    private final DataType type;
+
+    /**
+     * @param type the type {@link #value(int)} converts the doubles to
+     */
+    public DoubleVector(int capacity, DataType type) {
+        super(capacity);
+        this.values = new double[capacity];
+        this.type = type;
+    }
+
+    public void set(int index, double value) {
+        values[index] = value;
+        nulls[index] = false;
+    }
+
+    public double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public Object value(int index) {
+        if (nulls[index]) {
+            return null;
+        }
+        return type.value(values[index]);
+    }
+}
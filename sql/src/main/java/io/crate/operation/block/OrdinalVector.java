@@ -0,0 +1,85 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.block;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+
+/**
+ * column vector of string values, stored as the field data ordinals of a single segment.
+ *
+ * Terms are only looked up if {@link #value(int)} is called,
+ * consumers can use the ordinals as dense per segment ids of the values instead.
+ */
+public class OrdinalVector extends ColumnVector {
+
+    private final long[] ords;
+    private BytesValues.WithOrdinals values;
+
+    public OrdinalVector(int capacity) {
+        super(capacity);
+        this.ords = new long[capacity];
+    }
+
+    /**
+     * set the values of the segment the ordinals of this vector refer to
+     */
+    public void values(BytesValues.WithOrdinals values) {
+        this.values = values;
+    }
+
+    /**
+     * @return the values of the segment the ordinals refer to,
+     *         the same instance for all vectors of a segment
+     */
+    public BytesValues.WithOrdinals values() {
+        return values;
+    }
+
+    /**
+     * @return the maximum ordinal of the current segment
+     */
+    public long maxOrd() {
+        return values.ordinals().getMaxOrd();
+    }
+
+    /**
+     * @param ord the ordinal, {@link Ordinals#MISSING_ORDINAL} for null
+     */
+    public void set(int index, long ord) {
+        ords[index] = ord;
+        nulls[index] = ord == Ordinals.MISSING_ORDINAL;
+    }
+
+    public long get(int index) {
+        return ords[index];
+    }
+
+    @Override
+    public Object value(int index) {
+        if (nulls[index]) {
+            return null;
+        }
+        return BytesRef.deepCopyOf(values.getValueByOrd(ords[index]));
+    }
+}
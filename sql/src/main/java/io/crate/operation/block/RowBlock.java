@@ -0,0 +1,70 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.block;
+
+/**
+ * a block of rows stored column wise.
+ *
+ * Blocks are filled and reused by their producer,
+ * consumers must not hold on to a block or its vectors after they processed it.
+ */
+public class RowBlock {
+
+    private final ColumnVector[] columns;
+    private int size = 0;
+
+    public RowBlock(ColumnVector... columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @return the number of rows in this block
+     */
+    public int size() {
+        return size;
+    }
+
+    public void size(int size) {
+        assert columns.length == 0 || size <= columns[0].capacity() : "size exceeds capacity of the columns";
+        this.size = size;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public ColumnVector column(int index) {
+        return columns[index];
+    }
+
+    /**
+     * copy the values of a single row into the given array
+     *
+     * @return the given array
+     */
+    public Object[] row(int index, Object[] row) {
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = columns[i].value(index);
+        }
+        return row;
+    }
+}
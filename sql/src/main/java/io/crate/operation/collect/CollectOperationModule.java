@@ -21,6 +21,8 @@
 
 package io.crate.operation.collect;
 
+import io.crate.breaker.QueryMemoryBreaker;
+import io.crate.operation.projectors.spill.SpillSettings;
 import org.elasticsearch.common.inject.AbstractModule;
 
 public class CollectOperationModule extends AbstractModule {
@@ -30,5 +32,8 @@ public class CollectOperationModule extends AbstractModule {
         bind(HandlerSideDataCollectOperation.class).asEagerSingleton();
         bind(InformationSchemaCollectService.class).asEagerSingleton();
         bind(UnassignedShardsCollectService.class).asEagerSingleton();
+        bind(SpillSettings.class).asEagerSingleton();
+        bind(QueryMemoryBreaker.class).asEagerSingleton();
+        bind(CollectSettings.class).asEagerSingleton();
     }
 }
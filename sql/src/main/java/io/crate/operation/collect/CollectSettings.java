@@ -0,0 +1,120 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+/**
+ * settings for collecting shards on this node
+ */
+@Singleton
+public class CollectSettings {
+
+    public static final String SETTING_SHARD_PARALLELISM = "crate.sql.collect.shard_parallelism";
+    public static final String SETTING_MIN_DOCS_PER_SLICE = "crate.sql.collect.min_docs_per_slice";
+    public static final String SETTING_COMPRESS_ROWS = "crate.sql.collect.compress_rows";
+    public static final String SETTING_FILE_PARALLELISM = "crate.sql.collect.file_parallelism";
+    public static final String SETTING_MIN_FILE_RANGE_SIZE = "crate.sql.collect.min_file_range_size";
+
+    public static final int DEFAULT_SHARD_PARALLELISM = 1;
+    public static final int DEFAULT_MIN_DOCS_PER_SLICE = 100000;
+    public static final boolean DEFAULT_COMPRESS_ROWS = false;
+    public static final int DEFAULT_FILE_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+    public static final long DEFAULT_MIN_FILE_RANGE_SIZE = new ByteSizeValue(64, ByteSizeUnit.MB).bytes();
+
+    public static final CollectSettings DEFAULT = new CollectSettings(ImmutableSettings.EMPTY);
+
+    private final int shardParallelism;
+    private final int minDocsPerSlice;
+    private final boolean compressRows;
+    private final int fileParallelism;
+    private final long minFileRangeSize;
+
+    @Inject
+    public CollectSettings(Settings settings) {
+        this(settings.getAsInt(SETTING_SHARD_PARALLELISM, DEFAULT_SHARD_PARALLELISM),
+             settings.getAsInt(SETTING_MIN_DOCS_PER_SLICE, DEFAULT_MIN_DOCS_PER_SLICE),
+             settings.getAsBoolean(SETTING_COMPRESS_ROWS, DEFAULT_COMPRESS_ROWS),
+             settings.getAsInt(SETTING_FILE_PARALLELISM, DEFAULT_FILE_PARALLELISM),
+             settings.getAsBytesSize(SETTING_MIN_FILE_RANGE_SIZE,
+                     new ByteSizeValue(DEFAULT_MIN_FILE_RANGE_SIZE)).bytes());
+    }
+
+    public CollectSettings(int shardParallelism,
+                           int minDocsPerSlice,
+                           boolean compressRows,
+                           int fileParallelism,
+                           long minFileRangeSize) {
+        this.shardParallelism = Math.max(1, shardParallelism);
+        this.minDocsPerSlice = Math.max(1, minDocsPerSlice);
+        this.compressRows = compressRows;
+        this.fileParallelism = Math.max(1, fileParallelism);
+        this.minFileRangeSize = Math.max(1, minFileRangeSize);
+    }
+
+    /**
+     * the maximum number of tasks collecting the documents of a single shard concurrently
+     */
+    public int shardParallelism() {
+        return shardParallelism;
+    }
+
+    /**
+     * a shard is only split into as many slices as each of them gets at least this many documents
+     */
+    public int minDocsPerSlice() {
+        return minDocsPerSlice;
+    }
+
+    /**
+     * if true, the collected rows sent to other nodes are compressed by the transport layer
+     */
+    public boolean compressRows() {
+        return compressRows;
+    }
+
+    /**
+     * the maximum number of threads reading the files of a single COPY FROM on this node concurrently
+     */
+    public int fileParallelism() {
+        return fileParallelism;
+    }
+
+    /**
+     * uncompressed files are only split into as many byte ranges as each of them is at least this large
+     */
+    public long minFileRangeSize() {
+        return minFileRangeSize;
+    }
+
+    /**
+     * @return the number of slices a shard with <code>maxDoc</code> documents is collected in
+     */
+    public int numSlices(int maxDoc) {
+        return Math.max(1, Math.min(shardParallelism, maxDoc / minDocsPerSlice));
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.Constants;
+import io.crate.Streamer;
+import io.crate.executor.transport.distributed.DistributedResultRequest;
+import io.crate.executor.transport.distributed.DistributedResultResponse;
+import io.crate.executor.transport.merge.TransportMergeNodeAction;
+import io.crate.operation.ProjectorUpstream;
+import io.crate.operation.projectors.Projector;
+import io.crate.operation.projectors.ResultProvider;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.BaseTransportResponseHandler;
+import org.elasticsearch.transport.TransportException;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportService;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * projector which distributes the rows it receives to the downstream nodes
+ * by the hashcode of the first column (see {@link ModuloBucketingIterator}).
+ *
+ * Rows are sent as soon as a bucket holds <code>pageSize</code> rows, the remaining rows are sent
+ * as last page once all upstreams finished. Every downstream receives its pages in order,
+ * the next page is only sent after the previous one got acknowledged.
+ * If a downstream has {@link #MAX_PENDING_PAGES} pages waiting, the upstream adding
+ * a row for it blocks until a page was sent. Upstreams are the shard collectors running
+ * on the SEARCH thread pool, requests are always submitted without holding a bucket lock.
+ *
+ * The result is set once all last pages are acknowledged and is always empty.
+ */
+public class DistributingProjector implements Projector, ResultProvider {
+
+    /**
+     * maximum number of rows sent to a downstream in one request
+     */
+    public static final int PAGE_SIZE = 10000;
+
+    /**
+     * maximum number of pages per downstream waiting to be sent
+     */
+    static final int MAX_PENDING_PAGES = 2;
+
+    private final ESLogger logger = Loggers.getLogger(getClass());
+
+    private final UUID jobId;
+    private final Streamer<?>[] streamers;
+    private final TransportService transportService;
+    private final int pageSize;
+    private final TransportRequestOptions requestOptions;
+    private final Bucket[] buckets;
+    private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
+    private final AtomicInteger remainingDownstreams;
+    private final SettableFuture<Object[][]> result = SettableFuture.create();
+
+    /**
+     * @param pageSize maximum number of rows sent to a downstream in one request, usually {@link #PAGE_SIZE}
+     * @param compress if true, the pages are compressed by the transport layer
+     */
+    public DistributingProjector(UUID jobId,
+                                 List<DiscoveryNode> downStreams,
+                                 TransportService transportService,
+                                 Streamer<?>[] streamers,
+                                 int pageSize,
+                                 boolean compress) {
+        Preconditions.checkNotNull(downStreams);
+        Preconditions.checkNotNull(jobId);
+        Preconditions.checkArgument(pageSize > 0, "pageSize must be greater than 0");
+        this.jobId = jobId;
+        this.transportService = transportService;
+        this.streamers = streamers;
+        this.pageSize = pageSize;
+        this.requestOptions = TransportRequestOptions.options().withCompress(compress);
+        this.buckets = new Bucket[downStreams.size()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(downStreams.get(i));
+        }
+        this.remainingDownstreams = new AtomicInteger(buckets.length);
+    }
+
+    @Override
+    public void startProjection() {
+        if (remainingUpstreams.get() <= 0) {
+            upstreamFinished();
+        }
+    }
+
+    @Override
+    public boolean setNextRow(Object... row) {
+        // same bucketing as the ModuloBucketingIterator
+        int bucketIdx;
+        if (row == null || row.length == 0 || row[0] == null) {
+            bucketIdx = 0;
+        } else {
+            bucketIdx = Math.abs(row[0].hashCode()) % buckets.length;
+        }
+        return buckets[bucketIdx].add(row);
+    }
+
+    @Override
+    public void registerUpstream(ProjectorUpstream upstream) {
+        remainingUpstreams.incrementAndGet();
+    }
+
+    @Override
+    public void upstreamFinished() {
+        if (remainingUpstreams.decrementAndGet() <= 0) {
+            for (Bucket bucket : buckets) {
+                bucket.close();
+            }
+        }
+    }
+
+    @Override
+    public void upstreamFailed(Throwable throwable) {
+        if (remainingUpstreams.decrementAndGet() <= 0) {
+            fail(throwable);
+        }
+    }
+
+    /**
+     * send a failure to all downstreams which didn't get their last page yet
+     */
+    public void fail(Throwable throwable) {
+        result.setException(throwable);
+        for (Bucket bucket : buckets) {
+            bucket.fail();
+        }
+    }
+
+    @Override
+    public void downstream(Projector downstream) {
+        throw new UnsupportedOperationException("DistributingProjector doesn't support downstreams");
+    }
+
+    @Override
+    public Projector downstream() {
+        return null;
+    }
+
+    @Override
+    public ListenableFuture<Object[][]> result() {
+        return result;
+    }
+
+    @Override
+    public Iterator<Object[]> iterator() throws IllegalStateException {
+        if (!result.isDone()) {
+            throw new IllegalStateException("result not ready yet");
+        }
+        return Collections.emptyIterator();
+    }
+
+    /**
+     * the rows and the queue of pages of one downstream
+     */
+    private class Bucket extends BaseTransportResponseHandler<DistributedResultResponse> {
+
+        private final DiscoveryNode node;
+        private final ArrayDeque<DistributedResultRequest> pages = new ArrayDeque<>();
+        private List<Object[]> rows = new ArrayList<>();
+        private boolean inFlight = false;
+        private boolean needMore = true;
+        private boolean closed = false;
+        private boolean lastSent = false;
+        private boolean failed = false;
+
+        private Bucket(DiscoveryNode node) {
+            this.node = node;
+        }
+
+        /**
+         * blocks while too many pages are pending.
+         * Rows are added by the collecting threads (usually the SEARCH pool), which are therefore the
+         * only threads parked here. Pages are taken off the queue by {@link #handleResponse(DistributedResultResponse)}
+         * which runs on the transport thread and never waits for this monitor longer than
+         * it takes to queue or poll a page.
+         *
+         * @return false if the bucket failed and no more rows should be added
+         */
+        boolean add(Object[] row) {
+            DistributedResultRequest toSend = null;
+            synchronized (this) {
+                while (pages.size() >= MAX_PENDING_PAGES && !closed && needMore) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                if (closed || !needMore) {
+                    return !failed;
+                }
+                rows.add(row);
+                if (rows.size() >= pageSize) {
+                    toSend = enqueue(newPage(false));
+                }
+            }
+            send(toSend);
+            return true;
+        }
+
+        void close() {
+            DistributedResultRequest toSend;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                toSend = enqueue(newPage(true));
+            }
+            send(toSend);
+        }
+
+        void fail() {
+            DistributedResultRequest toSend;
+            synchronized (this) {
+                if (lastSent) {
+                    return;
+                }
+                closed = true;
+                failed = true;
+                rows.clear();
+                pages.clear();
+                notifyAll();
+                DistributedResultRequest request = new DistributedResultRequest(jobId, streamers);
+                request.failure(true);
+                toSend = enqueue(request);
+            }
+            send(toSend);
+        }
+
+        private DistributedResultRequest newPage(boolean isLast) {
+            DistributedResultRequest request = new DistributedResultRequest(jobId, streamers);
+            request.rows(rows.toArray(new Object[rows.size()][]));
+            request.isLast(isLast);
+            rows = new ArrayList<>();
+            return request;
+        }
+
+        /**
+         * must be called while holding the monitor of this bucket
+         *
+         * @return the page to send once the monitor is released or null if a page is already in flight
+         */
+        private DistributedResultRequest enqueue(DistributedResultRequest request) {
+            pages.add(request);
+            if (!inFlight) {
+                return pollNext();
+            }
+            return null;
+        }
+
+        /**
+         * must be called while holding the monitor of this bucket
+         *
+         * @return the page to send once the monitor is released or null if there is none
+         */
+        private DistributedResultRequest pollNext() {
+            DistributedResultRequest request = pages.poll();
+            if (request == null) {
+                return null;
+            }
+            notifyAll();
+            inFlight = true;
+            lastSent = request.isLast() || request.failure();
+            return request;
+        }
+
+        /**
+         * must be called without holding the monitor of this bucket,
+         * submitting a request might block or call the response handler on the calling thread
+         */
+        private void send(@Nullable DistributedResultRequest request) {
+            if (request == null) {
+                return;
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("[{}] sending distributing collect request to {} ...",
+                        jobId.toString(),
+                        node.id());
+            }
+            transportService.submitRequest(
+                    node,
+                    TransportMergeNodeAction.mergeRowsAction, // NOTICE: hard coded transport action, should be delivered by collectNode
+                    request,
+                    requestOptions,
+                    this
+            );
+        }
+
+        @Override
+        public DistributedResultResponse newInstance() {
+            return new DistributedResultResponse();
+        }
+
+        @Override
+        public void handleResponse(DistributedResultResponse response) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("[{}] successfully sent distributing collect request to {}",
+                        jobId.toString(),
+                        node.id());
+            }
+            DistributedResultRequest toSend;
+            synchronized (this) {
+                inFlight = false;
+                if (lastSent) {
+                    if (remainingDownstreams.decrementAndGet() == 0) {
+                        result.set(Constants.EMPTY_RESULT);
+                    }
+                    return;
+                }
+                if (!response.needMore()) {
+                    // downstream is done, the stream only needs to be closed
+                    needMore = false;
+                    notifyAll();
+                    rows.clear();
+                    DistributedResultRequest last = pages.peekLast();
+                    pages.clear();
+                    if (last != null && (last.isLast() || last.failure())) {
+                        if (!last.failure()) {
+                            last.rows(new Object[0][]);
+                        }
+                        pages.add(last);
+                    }
+                }
+                toSend = pollNext();
+            }
+            send(toSend);
+        }
+
+        @Override
+        public void handleException(TransportException exp) {
+            logger.error("[{}] Exception sending distributing collect request to {}",
+                    exp,
+                    jobId.toString(),
+                    node.id());
+            result.setException(exp.getCause() != null ? exp.getCause() : exp);
+            boolean sendFailure;
+            synchronized (this) {
+                inFlight = false;
+                sendFailure = !lastSent;
+            }
+            if (sendFailure) {
+                fail();
+            }
+        }
+
+        /**
+         * responses are handled on the transport thread, the SEARCH threads
+         * might all be blocked adding rows to full buckets
+         */
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SAME;
+        }
+    }
+}
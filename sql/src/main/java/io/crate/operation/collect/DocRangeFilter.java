@@ -0,0 +1,125 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+
+/**
+ * filter matching the documents within a range of doc ids of the top level reader,
+ * used to split the collection of a shard into slices which are collected concurrently.
+ */
+public class DocRangeFilter extends Filter {
+
+    private final int fromDoc;
+    private final int toDoc;
+
+    /**
+     * @param fromDoc first top level doc id, inclusive
+     * @param toDoc   last top level doc id, exclusive
+     */
+    public DocRangeFilter(int fromDoc, int toDoc) {
+        this.fromDoc = fromDoc;
+        this.toDoc = toDoc;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+        final int from = Math.max(fromDoc - context.docBase, 0);
+        final int to = Math.min(toDoc - context.docBase, context.reader().maxDoc());
+        if (from >= to) {
+            return null;
+        }
+        return new DocIdSet() {
+            @Override
+            public DocIdSetIterator iterator() throws IOException {
+                return new RangeIterator(from, to, acceptDocs);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DocRangeFilter that = (DocRangeFilter) o;
+        return fromDoc == that.fromDoc && toDoc == that.toDoc;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * fromDoc + toDoc;
+    }
+
+    @Override
+    public String toString() {
+        return "DocRangeFilter[" + fromDoc + " TO " + toDoc + "}";
+    }
+
+    private static class RangeIterator extends DocIdSetIterator {
+
+        private final int from;
+        private final int to;
+        private final Bits acceptDocs;
+        private int doc = -1;
+
+        private RangeIterator(int from, int to, Bits acceptDocs) {
+            this.from = from;
+            this.to = to;
+            this.acceptDocs = acceptDocs;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            int next = Math.max(target, from);
+            while (next < to && acceptDocs != null && !acceptDocs.get(next)) {
+                next++;
+            }
+            doc = next < to ? next : NO_MORE_DOCS;
+            return doc;
+        }
+
+        @Override
+        public long cost() {
+            return to - from;
+        }
+    }
+}
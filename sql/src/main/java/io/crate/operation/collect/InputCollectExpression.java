@@ -36,6 +36,10 @@ public class InputCollectExpression<ReturnType> extends CollectExpression<Return
         return true;
     }
 
+    public int position() {
+        return position;
+    }
+
     @Override
     public ReturnType value() {
         return value;
@@ -22,20 +22,29 @@
 package io.crate.operation.collect;
 
 import io.crate.operation.Input;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.ObjectVector;
+import io.crate.operation.block.RowBlock;
+import io.crate.operation.projectors.BlockProjector;
 import io.crate.operation.projectors.Projector;
+import io.crate.operation.reference.doc.lucene.BlockCollectorExpression;
 import io.crate.operation.reference.doc.lucene.CollectorContext;
 import io.crate.operation.reference.doc.lucene.LuceneCollectorExpression;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.*;
 import io.crate.Constants;
 import io.crate.action.SQLXContentQueryParser;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
 import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
 import org.elasticsearch.index.service.IndexService;
@@ -47,18 +56,35 @@ import org.elasticsearch.search.internal.DefaultSearchContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * collect documents from ES shard, a lucene index
+ *
+ * If the downstream is a {@link BlockProjector} the ids of matching documents are buffered
+ * and the rows are sent as blocks of up to {@link #BLOCK_SIZE} rows.
+ * Columns backed by field data fill primitive vectors for the whole block,
+ * all other inputs are evaluated document by document.
  */
 public class LuceneDocCollector extends Collector implements CrateCollector {
 
+    public static final int BLOCK_SIZE = 1024;
+
     private final CollectorFieldsVisitor fieldsVisitor;
     private boolean visitorEnabled = false;
     private AtomicReader currentReader;
+    private boolean terminated = false;
+
+    private BlockProjector blockDownstream;
+    private RowBlock block;
+    private int[] bufferedDocs;
+    private int numBufferedDocs = 0;
+    private boolean[] blockInputs;
+    private boolean rowWiseInputs;
 
     public static class CollectorFieldsVisitor extends FieldsVisitor {
 
@@ -91,7 +117,49 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
         }
     }
 
+    /**
+     * an engine searcher shared by the slices of a shard, so all of them collect the same point in time
+     * of the shard. Every slice has its own {@link SearchContext}, lookups and the
+     * {@link org.elasticsearch.search.internal.ContextIndexSearcher} aren't thread safe,
+     * only the thread safe {@link IndexReader} is shared.
+     * The searcher is released once the search contexts of all slices are released.
+     */
+    static class SharedSearcher implements Engine.Searcher {
+
+        private final Engine.Searcher searcher;
+        private final AtomicInteger refs;
+
+        SharedSearcher(Engine.Searcher searcher, int numSlices) {
+            this.searcher = searcher;
+            this.refs = new AtomicInteger(numSlices);
+        }
+
+        @Override
+        public String source() {
+            return searcher.source();
+        }
+
+        @Override
+        public IndexReader reader() {
+            return searcher.reader();
+        }
+
+        @Override
+        public IndexSearcher searcher() {
+            return searcher.searcher();
+        }
+
+        @Override
+        public boolean release() throws ElasticsearchException {
+            if (refs.decrementAndGet() == 0) {
+                return searcher.release();
+            }
+            return true;
+        }
+    }
+
     private final SearchContext searchContext;
+    private final Filter sliceFilter;
     private Projector downstream;
     private final List<Input<?>> topLevelInputs;
     private final List<LuceneCollectorExpression<?>> collectorExpressions;
@@ -108,20 +176,48 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
                               List<LuceneCollectorExpression<?>> collectorExpressions,
                               BytesReference querySource,
                               Projector downStreamProjector) throws Exception {
+        this(createSearchContext(clusterService, shardId, indexService, scriptService,
+                        cacheRecycler, pageCacheRecycler, bigArrays, sqlxContentQueryParser,
+                        indexService.shardSafe(shardId.id()).acquireSearcher("search"), querySource),
+                null, inputs, collectorExpressions, downStreamProjector);
+    }
+
+    /**
+     * @param searchContext used by this collector only, it is released once the collection finished
+     * @param sliceFilter if not null only the documents matching this filter are collected
+     */
+    LuceneDocCollector(SearchContext searchContext,
+                       @Nullable Filter sliceFilter,
+                       List<Input<?>> inputs,
+                       List<LuceneCollectorExpression<?>> collectorExpressions,
+                       Projector downStreamProjector) {
         downstream(downStreamProjector);
-        SearchShardTarget searchShardTarget = new SearchShardTarget(
-                clusterService.localNode().id(), shardId.getIndex(), shardId.id());
+        this.searchContext = searchContext;
+        this.sliceFilter = sliceFilter;
         this.topLevelInputs = inputs;
         this.collectorExpressions = collectorExpressions;
         this.fieldsVisitor = new CollectorFieldsVisitor(collectorExpressions.size());
+    }
 
+    static SearchContext createSearchContext(ClusterService clusterService,
+                                             ShardId shardId,
+                                             IndexService indexService,
+                                             ScriptService scriptService,
+                                             CacheRecycler cacheRecycler,
+                                             PageCacheRecycler pageCacheRecycler,
+                                             BigArrays bigArrays,
+                                             SQLXContentQueryParser sqlxContentQueryParser,
+                                             Engine.Searcher engineSearcher,
+                                             BytesReference querySource) throws Exception {
+        SearchShardTarget searchShardTarget = new SearchShardTarget(
+                clusterService.localNode().id(), shardId.getIndex(), shardId.id());
         ShardSearchRequest shardSearchRequest = new ShardSearchRequest();
         shardSearchRequest.types(new String[]{Constants.DEFAULT_MAPPING_TYPE});
         shardSearchRequest.source(querySource);
         IndexShard indexShard = indexService.shardSafe(shardId.id());
-        searchContext = new DefaultSearchContext(0, shardSearchRequest,
+        SearchContext searchContext = new DefaultSearchContext(0, shardSearchRequest,
                 searchShardTarget,
-                indexShard.acquireSearcher("search"),
+                engineSearcher,
                 indexService,
                 indexShard,
                 scriptService,
@@ -129,7 +225,21 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
                 pageCacheRecycler,
                 bigArrays
         );
-        sqlxContentQueryParser.parse(searchContext, querySource);
+        try {
+            sqlxContentQueryParser.parse(searchContext, querySource);
+        } catch (Exception e) {
+            searchContext.release();
+            throw e;
+        }
+        return searchContext;
+    }
+
+    /**
+     * @return the sort of the lucene top-docs search or null if the documents are collected unsorted
+     */
+    @Nullable
+    Sort sort() {
+        return searchContext.sort();
     }
 
     @Override
@@ -148,6 +258,16 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
 
     @Override
     public void collect(int doc) throws IOException {
+        if (terminated) {
+            throw new CollectionTerminatedException();
+        }
+        if (blockDownstream != null) {
+            bufferedDocs[numBufferedDocs++] = doc;
+            if (numBufferedDocs == BLOCK_SIZE) {
+                flushBlock();
+            }
+            return;
+        }
         Object[] newRow = new Object[topLevelInputs.size()];
         if (visitorEnabled){
             fieldsVisitor.reset();
@@ -162,12 +282,77 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
         }
         if (!downstream.setNextRow(newRow)) {
             // no more rows required, we can stop here
+            terminated = true;
+            throw new CollectionTerminatedException();
+        }
+    }
+
+    private void startBlocks() {
+        ColumnVector[] columns = new ColumnVector[topLevelInputs.size()];
+        blockInputs = new boolean[columns.length];
+        rowWiseInputs = visitorEnabled;
+        for (int i = 0; i < columns.length; i++) {
+            Input<?> input = topLevelInputs.get(i);
+            if (input instanceof BlockCollectorExpression) {
+                columns[i] = ((BlockCollectorExpression) input).newVector(BLOCK_SIZE);
+                blockInputs[i] = true;
+            } else {
+                columns[i] = new ObjectVector(BLOCK_SIZE);
+                rowWiseInputs = true;
+            }
+        }
+        block = new RowBlock(columns);
+        bufferedDocs = new int[BLOCK_SIZE];
+        blockDownstream = (BlockProjector) downstream;
+    }
+
+    /**
+     * evaluate the inputs for all buffered docs of the current reader and send them downstream
+     */
+    private void flushBlock() throws IOException {
+        int count = numBufferedDocs;
+        if (count == 0) {
+            return;
+        }
+        numBufferedDocs = 0;
+        for (int i = 0; i < blockInputs.length; i++) {
+            if (blockInputs[i]) {
+                ((BlockCollectorExpression) topLevelInputs.get(i)).fill(bufferedDocs, count, block.column(i));
+            }
+        }
+        if (rowWiseInputs) {
+            for (int d = 0; d < count; d++) {
+                int doc = bufferedDocs[d];
+                if (visitorEnabled) {
+                    fieldsVisitor.reset();
+                    currentReader.document(doc, fieldsVisitor);
+                }
+                for (LuceneCollectorExpression e : collectorExpressions) {
+                    e.setNextDocId(doc);
+                }
+                for (int i = 0; i < blockInputs.length; i++) {
+                    if (!blockInputs[i]) {
+                        ((ObjectVector) block.column(i)).set(d, topLevelInputs.get(i).value());
+                    }
+                }
+            }
+        }
+        block.size(count);
+        if (!blockDownstream.setNextBlock(block)) {
+            terminated = true;
             throw new CollectionTerminatedException();
         }
     }
 
     @Override
     public void setNextReader(AtomicReaderContext context) throws IOException {
+        if (terminated) {
+            throw new CollectionTerminatedException();
+        }
+        if (blockDownstream != null) {
+            // the buffered docs belong to the previous reader
+            flushBlock();
+        }
         this.currentReader = context.reader();
         for (LuceneCollectorExpression expr : collectorExpressions) {
             expr.setNextReader(context);
@@ -194,14 +379,54 @@ public class LuceneDocCollector extends Collector implements CrateCollector {
         if (query == null) {
             query = new MatchAllDocsQuery();
         }
+        if (sliceFilter != null) {
+            query = new FilteredQuery(query, sliceFilter, FilteredQuery.LEAP_FROG_FILTER_FIRST_STRATEGY);
+        }
 
         // do the lucene search
         try {
-            searchContext.searcher().search(query, this);
+            Sort sort = searchContext.sort();
+            if (sort == null) {
+                if (downstream instanceof BlockProjector) {
+                    startBlocks();
+                }
+                searchContext.searcher().search(query, this);
+                if (blockDownstream != null && !terminated) {
+                    try {
+                        flushBlock();
+                    } catch (CollectionTerminatedException e) {
+                        // downstream doesn't need more rows
+                    }
+                }
+            } else {
+                collectTopDocs(query, sort, searchContext.size());
+            }
         } finally {
             searchContext.release();
             SearchContext.removeCurrent();
             downstream.upstreamFinished();
         }
     }
+
+    /**
+     * let lucene gather the first <code>size</code> documents in sort order,
+     * documents not competitive with them are never loaded or turned into rows.
+     */
+    private void collectTopDocs(Query query, Sort sort, int size) throws IOException {
+        TopFieldDocs topDocs = searchContext.searcher().search(query, size, sort);
+        List<AtomicReaderContext> leaves = searchContext.searcher().getIndexReader().leaves();
+        AtomicReaderContext currentLeaf = null;
+        try {
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+                if (leaf != currentLeaf) {
+                    setNextReader(leaf);
+                    currentLeaf = leaf;
+                }
+                collect(scoreDoc.doc - leaf.docBase);
+            }
+        } catch (CollectionTerminatedException e) {
+            // downstream doesn't need more rows
+        }
+    }
 }
@@ -21,12 +21,15 @@
 
 package io.crate.operation.collect;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.crate.Constants;
 import io.crate.analyze.EvaluatingNormalizer;
+import io.crate.breaker.QueryMemoryBreaker;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.exceptions.TableUnknownException;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.metadata.Functions;
@@ -41,7 +44,9 @@ import io.crate.operation.reference.file.FileLineReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.FileUriCollectNode;
+import io.crate.planner.projection.TopNProjection;
 import io.crate.planner.symbol.StringValueSymbolVisitor;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
@@ -65,7 +70,7 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
 
     private final FileCollectInputSymbolVisitor fileInputSymbolVisitor;
     private ESLogger logger = Loggers.getLogger(getClass());
-    private final ProjectionToProjectorVisitor projectorVisitor;
+    protected final ProjectionToProjectorVisitor projectorVisitor;
 
 
     private static class SimpleShardCollectFuture extends ShardCollectFuture {
@@ -93,17 +98,27 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
     private final IndicesService indicesService;
     protected final EvaluatingNormalizer nodeNormalizer;
     private final ThreadPool threadPool;
+    private final QueryMemoryBreaker queryMemoryBreaker;
+    private final CollectSettings collectSettings;
     protected final ClusterService clusterService;
     private final ImplementationSymbolVisitor nodeImplementationSymbolVisitor;
 
+    /**
+     * @param transportShardBulkAction used by index writer projections, may be null if there are none
+     */
     @Inject
     public MapSideDataCollectOperation(Provider<Client> clientProvider,
                                        ClusterService clusterService,
                                        Functions functions,
                                        ReferenceResolver referenceResolver,
                                        IndicesService indicesService,
-                                       ThreadPool threadPool) {
+                                       ThreadPool threadPool,
+                                       QueryMemoryBreaker queryMemoryBreaker,
+                                       CollectSettings collectSettings,
+                                       @Nullable TransportShardBulkAction transportShardBulkAction) {
         this.clusterService = clusterService;
+        this.queryMemoryBreaker = queryMemoryBreaker;
+        this.collectSettings = collectSettings;
         this.indicesService = indicesService;
         this.nodeNormalizer = new EvaluatingNormalizer(functions, RowGranularity.NODE, referenceResolver);
         this.threadPool = threadPool;
@@ -114,7 +129,8 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
         );
         this.fileInputSymbolVisitor =
                 new FileCollectInputSymbolVisitor(functions, FileLineReferenceResolver.INSTANCE);
-        this.projectorVisitor = new ProjectionToProjectorVisitor(clientProvider, nodeImplementationSymbolVisitor);
+        this.projectorVisitor = new ProjectionToProjectorVisitor(
+                clientProvider, clusterService, threadPool, transportShardBulkAction, nodeImplementationSymbolVisitor);
     }
 
 
@@ -158,8 +174,10 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
         }
         assert collectNode.toCollect().size() > 0;
 
+        RamAccountingContext ramAccountingContext = newRamAccountingContext(collectNode);
         FlatProjectorChain projectorChain = new FlatProjectorChain(
-                collectNode.projections(), projectorVisitor);
+                collectNode.projections(), projectorVisitor, ramAccountingContext);
+        ramAccountingContext.closeWhenDone(projectorChain.result());
         CrateCollector collector;
         try {
             collector = getCollector(collectNode, projectorChain);
@@ -179,7 +197,7 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
                                         FlatProjectorChain projectorChain) throws Exception {
         if (collectNode instanceof FileUriCollectNode) {
             FileCollectInputSymbolVisitor.Context context = fileInputSymbolVisitor.process(collectNode);
-            FileUriCollectNode fileUriCollectNode = (FileUriCollectNode)collectNode;
+            final FileUriCollectNode fileUriCollectNode = (FileUriCollectNode)collectNode;
 
             String[] readers = fileUriCollectNode.executionNodes().toArray(
                     new String[fileUriCollectNode.executionNodes().size()]);
@@ -188,13 +206,21 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
                     StringValueSymbolVisitor.INSTANCE.process(fileUriCollectNode.targetUri()),
                     context.topLevelInputs(),
                     context.expressions(),
+                    new Supplier<FileCollectInputSymbolVisitor.Context>() {
+                        @Override
+                        public FileCollectInputSymbolVisitor.Context get() {
+                            return fileInputSymbolVisitor.process(fileUriCollectNode);
+                        }
+                    },
                     projectorChain.firstProjector(),
                     fileUriCollectNode.fileFormat(),
                     fileUriCollectNode.compression(),
                     ImmutableMap.<String, FileInputFactory>of(),
                     fileUriCollectNode.sharedStorage(),
                     readers.length,
-                    Arrays.binarySearch(readers, clusterService.localNode().id())
+                    Arrays.binarySearch(readers, clusterService.localNode().id()),
+                    threadPool.executor(ThreadPool.Names.SEARCH),
+                    collectSettings
             );
         } else {
             ImplementationSymbolVisitor.Context ctx = nodeImplementationSymbolVisitor.process(collectNode);
@@ -209,6 +235,8 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
      * <p/>
      * collects data from each shard in a separate thread,
      * collecting the data into a single state through an {@link java.util.concurrent.ArrayBlockingQueue}.
+     * Large shards may be split into slices of documents which are collected by separate threads,
+     * see {@link CollectSettings#shardParallelism()}.
      *
      * @param collectNode {@link io.crate.planner.node.dql.CollectNode} containing routing information and symbols to collect
      * @return the collect results from all shards on this node that were given in {@link io.crate.planner.node.dql.CollectNode#routing}
@@ -216,12 +244,15 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
     protected ListenableFuture<Object[][]> handleShardCollect(CollectNode collectNode) {
 
         String localNodeId = clusterService.localNode().id();
-        final int numShards = collectNode.routing().numShards(localNodeId);
 
         collectNode = collectNode.normalize(nodeNormalizer);
-        ShardProjectorChain projectorChain = new ShardProjectorChain(numShards, collectNode.projections(), projectorVisitor);
+        final int slicesPerShard = slicesPerShard(collectNode);
+        final int numCollectors = collectNode.routing().numShards(localNodeId) * slicesPerShard;
+        RamAccountingContext ramAccountingContext = newRamAccountingContext(collectNode);
+        ShardProjectorChain projectorChain = newProjectorChain(numCollectors, collectNode, ramAccountingContext);
 
-        final ShardCollectFuture result = getShardCollectFuture(numShards, projectorChain, collectNode);
+        final ShardCollectFuture result = getShardCollectFuture(numCollectors, projectorChain, collectNode);
+        ramAccountingContext.closeWhenDone(result);
 
         if (collectNode.whereClause().noMatch()) {
             projectorChain.startProjections();
@@ -229,7 +260,7 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
             return result;
         }
 
-        List<CrateCollector> shardCollectors = new ArrayList<>(numShards);
+        List<CrateCollector> shardCollectors = new ArrayList<>(numCollectors);
 
         // get shardCollectors from single shards
         Map<String, Set<Integer>> shardIdMap = collectNode.routing().locations().get(localNodeId);
@@ -247,11 +278,11 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
                 try {
                     shardInjector = indexService.shardInjectorSafe(shardId);
                     ShardCollectService shardCollectService = shardInjector.getInstance(ShardCollectService.class);
-                    CrateCollector collector = shardCollectService.getCollector(
+                    shardCollectors.addAll(shardCollectService.getCollectors(
                             collectNode,
-                            projectorChain
-                    );
-                    shardCollectors.add(collector);
+                            projectorChain,
+                            slicesPerShard
+                    ));
                 } catch (IndexShardMissingException e) {
                     throw new UnhandledServerException(
                             String.format("unknown shard id %d on index '%s'",
@@ -285,12 +316,48 @@ public class MapSideDataCollectOperation implements CollectOperation<Object[][]>
         }
 
         if (logger.isTraceEnabled()) {
-            logger.trace("started {} shardCollectors", numShards);
+            logger.trace("started {} shardCollectors", numCollectors);
         }
 
         return result;
     }
 
+    /**
+     * documents are collected in slices if there is no ordered top-n which could be pushed down to lucene
+     */
+    private int slicesPerShard(CollectNode collectNode) {
+        if (collectSettings.shardParallelism() <= 1 || collectNode.maxRowGranularity() != RowGranularity.DOC) {
+            return 1;
+        }
+        if (!collectNode.projections().isEmpty() && collectNode.projections().get(0) instanceof TopNProjection
+                && ((TopNProjection) collectNode.projections().get(0)).isOrdered()) {
+            return 1;
+        }
+        return collectSettings.shardParallelism();
+    }
+
+    /**
+     * the memory used by the projectors of a collect is accounted to the job of the collectNode,
+     * or to a new job id if the collectNode has none.
+     */
+    private RamAccountingContext newRamAccountingContext(CollectNode collectNode) {
+        return queryMemoryBreaker.newContext(collectNode.jobId().or(UUID.randomUUID()));
+    }
+
+    /**
+     * create the projector chain for a shard collect
+     *
+     * @param numShards   number of shard collectors on this node
+     * @param collectNode the normalized collectNode containing the projections
+     * @param ramAccountingContext context the projectors account their memory to
+     */
+    protected ShardProjectorChain newProjectorChain(int numShards,
+                                                    CollectNode collectNode,
+                                                    RamAccountingContext ramAccountingContext) {
+        return new ShardProjectorChain(numShards, collectNode.projections(), projectorVisitor, null,
+                ramAccountingContext);
+    }
+
     /**
      * chose the right ShardCollectFuture for this class
      *
@@ -0,0 +1,266 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect;
+
+import com.google.common.collect.ImmutableSet;
+import io.crate.operation.projectors.Projector;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.index.fielddata.IndexFieldDataService;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.shard.service.IndexShard;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collector answering min and max aggregations over all documents of a shard
+ * without visiting the documents.
+ *
+ * For every segment it emits two rows, the first one containing the smallest,
+ * the second one containing the largest value of every column. Aggregating these rows
+ * with min or max gives the same result as aggregating all documents.
+ *
+ * The bounds are read from the numeric terms of a segment. Segments with deleted documents
+ * still contain the terms of the deleted documents, their live documents are scanned instead.
+ */
+public class SegmentMinMaxCollector implements CrateCollector {
+
+    /**
+     * types indexed as numeric terms whose order is the same as the order of their values
+     */
+    public static final Set<DataType> SUPPORTED_TYPES = ImmutableSet.<DataType>of(
+            DataTypes.BYTE, DataTypes.SHORT, DataTypes.INTEGER, DataTypes.LONG,
+            DataTypes.FLOAT, DataTypes.DOUBLE, DataTypes.TIMESTAMP);
+
+    private final IndexShard indexShard;
+    private final IndexFieldDataService fieldDataService;
+    private final List<FieldMapper> fieldMappers;
+    private final List<DataType> types;
+    private Projector downstream;
+
+    public SegmentMinMaxCollector(IndexShard indexShard,
+                                  IndexFieldDataService fieldDataService,
+                                  List<FieldMapper> fieldMappers,
+                                  List<DataType> types,
+                                  Projector downstream) {
+        assert fieldMappers.size() == types.size();
+        this.indexShard = indexShard;
+        this.fieldDataService = fieldDataService;
+        this.fieldMappers = fieldMappers;
+        this.types = types;
+        downstream(downstream);
+    }
+
+    @Override
+    public void downstream(Projector downstream) {
+        downstream.registerUpstream(this);
+        this.downstream = downstream;
+    }
+
+    @Override
+    public Projector downstream() {
+        return downstream;
+    }
+
+    @Override
+    public void doCollect() throws Exception {
+        Engine.Searcher searcher = indexShard.acquireSearcher("min_max");
+        try {
+            for (AtomicReaderContext leaf : searcher.reader().leaves()) {
+                if (!collectSegment(leaf)) {
+                    break;
+                }
+            }
+        } finally {
+            searcher.release();
+            downstream.upstreamFinished();
+        }
+    }
+
+    private boolean collectSegment(AtomicReaderContext leaf) throws IOException {
+        AtomicReader reader = leaf.reader();
+        if (reader.numDocs() == 0) {
+            return true;
+        }
+        Object[] lower = new Object[types.size()];
+        Object[] upper = new Object[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            DataType type = types.get(i);
+            Number[] bounds;
+            if (reader.hasDeletions()) {
+                bounds = scanBounds(leaf, fieldMappers.get(i), type);
+            } else {
+                bounds = termBounds(reader.terms(fieldMappers.get(i).names().indexName()), type);
+            }
+            if (bounds != null) {
+                lower[i] = type.value(bounds[0]);
+                upper[i] = type.value(bounds[1]);
+            }
+        }
+        return downstream.setNextRow(lower) && downstream.setNextRow(upper);
+    }
+
+    private Number[] scanBounds(AtomicReaderContext leaf, FieldMapper mapper, DataType type) {
+        IndexNumericFieldData fieldData = (IndexNumericFieldData) fieldDataService.getForField(mapper);
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        int maxDoc = leaf.reader().maxDoc();
+        if (type != DataTypes.DOUBLE && type != DataTypes.FLOAT) {
+            LongValues values = fieldData.load(leaf).getLongValues();
+            Long min = null;
+            Long max = null;
+            for (int doc = 0; doc < maxDoc; doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                int numValues = values.setDocument(doc);
+                for (int j = 0; j < numValues; j++) {
+                    long value = values.nextValue();
+                    if (min == null || value < min) {
+                        min = value;
+                    }
+                    if (max == null || value > max) {
+                        max = value;
+                    }
+                }
+            }
+            return min == null ? null : new Number[]{min, max};
+        } else {
+            DoubleValues values = fieldData.load(leaf).getDoubleValues();
+            Double min = null;
+            Double max = null;
+            for (int doc = 0; doc < maxDoc; doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                int numValues = values.setDocument(doc);
+                for (int j = 0; j < numValues; j++) {
+                    double value = values.nextValue();
+                    if (min == null || Double.compare(value, min) < 0) {
+                        min = value;
+                    }
+                    if (max == null || Double.compare(value, max) > 0) {
+                        max = value;
+                    }
+                }
+            }
+            return min == null ? null : new Number[]{min, max};
+        }
+    }
+
+    /**
+     * @return the smallest and largest value of the numeric terms
+     *         or null if there are no terms
+     */
+    @Nullable
+    static Number[] termBounds(@Nullable Terms terms, DataType type) throws IOException {
+        if (terms == null) {
+            return null;
+        }
+        TermsEnum termsEnum = terms.iterator(null);
+        // terms with full precision (shift 0) are sorted first and by value
+        BytesRef first = termsEnum.next();
+        if (first == null) {
+            return null;
+        }
+        if (isLongEncoded(type)) {
+            if (NumericUtils.getPrefixCodedLongShift(first) != 0) {
+                return null;
+            }
+            long min = NumericUtils.prefixCodedToLong(first);
+            long max = maxLong(termsEnum, min);
+            if (type == DataTypes.DOUBLE) {
+                return new Number[]{
+                        NumericUtils.sortableLongToDouble(min), NumericUtils.sortableLongToDouble(max)};
+            }
+            return new Number[]{min, max};
+        } else {
+            if (NumericUtils.getPrefixCodedIntShift(first) != 0) {
+                return null;
+            }
+            int min = NumericUtils.prefixCodedToInt(first);
+            int max = maxInt(termsEnum, min);
+            if (type == DataTypes.FLOAT) {
+                return new Number[]{
+                        NumericUtils.sortableIntToFloat(min), NumericUtils.sortableIntToFloat(max)};
+            }
+            return new Number[]{min, max};
+        }
+    }
+
+    private static boolean isLongEncoded(DataType type) {
+        return type == DataTypes.LONG || type == DataTypes.TIMESTAMP || type == DataTypes.DOUBLE;
+    }
+
+    /**
+     * binary search for the largest full precision term,
+     * the terms enum can only seek forward to the next term greater or equal to a value
+     */
+    private static long maxLong(TermsEnum termsEnum, long min) throws IOException {
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+        long lo = min;
+        long hi = Long.MAX_VALUE;
+        while (lo < hi) {
+            // ceiled average without overflow
+            long mid = (lo | hi) - ((lo ^ hi) >> 1);
+            NumericUtils.longToPrefixCodedBytes(mid, 0, bytes);
+            if (termsEnum.seekCeil(bytes) != TermsEnum.SeekStatus.END
+                    && NumericUtils.getPrefixCodedLongShift(termsEnum.term()) == 0) {
+                lo = NumericUtils.prefixCodedToLong(termsEnum.term());
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static int maxInt(TermsEnum termsEnum, int min) throws IOException {
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
+        int lo = min;
+        int hi = Integer.MAX_VALUE;
+        while (lo < hi) {
+            int mid = (lo | hi) - ((lo ^ hi) >> 1);
+            NumericUtils.intToPrefixCodedBytes(mid, 0, bytes);
+            if (termsEnum.seekCeil(bytes) != TermsEnum.SeekStatus.END
+                    && NumericUtils.getPrefixCodedIntShift(termsEnum.term()) == 0) {
+                lo = NumericUtils.prefixCodedToInt(termsEnum.term());
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
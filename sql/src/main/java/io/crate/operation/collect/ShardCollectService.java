@@ -21,24 +21,40 @@
 
 package io.crate.operation.collect;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.crate.Constants;
 import io.crate.action.SQLXContentQueryParser;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.blob.v2.BlobIndices;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.executor.transport.task.elasticsearch.ESQueryBuilder;
 import io.crate.metadata.Functions;
+import io.crate.metadata.ReferenceInfo;
 import io.crate.metadata.shard.ShardReferenceResolver;
 import io.crate.metadata.shard.blob.BlobShardReferenceResolver;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.Input;
+import io.crate.operation.aggregation.impl.MaximumAggregation;
+import io.crate.operation.aggregation.impl.MinimumAggregation;
 import io.crate.operation.collect.blobs.BlobDocCollector;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.operation.projectors.Projector;
+import io.crate.operation.projectors.TopN;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.operation.reference.doc.blob.BlobReferenceResolver;
 import io.crate.operation.reference.doc.lucene.LuceneDocLevelReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.AggregationProjection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.client.Client;
@@ -47,12 +63,30 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.internal.SearchContext;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public class ShardCollectService {
 
+    private static final String[] DEFAULT_MAPPING_TYPES = new String[]{Constants.DEFAULT_MAPPING_TYPE};
+
+    /**
+     * types whose lucene sort order is the same as the order of their values,
+     * ip addresses for example are indexed as numbers but ordered as strings.
+     */
+    private static final Set<DataType> LUCENE_SORTABLE_TYPES = ImmutableSet.<DataType>of(
+            DataTypes.STRING, DataTypes.BOOLEAN, DataTypes.BYTE, DataTypes.SHORT, DataTypes.INTEGER,
+            DataTypes.LONG, DataTypes.FLOAT, DataTypes.DOUBLE, DataTypes.TIMESTAMP);
+
     private final CollectInputSymbolVisitor<?> docInputSymbolVisitor;
     private final ClusterService clusterService;
     private final ShardId shardId;
@@ -68,6 +102,7 @@ public class ShardCollectService {
     private final ProjectionToProjectorVisitor projectorVisitor;
     private final boolean isBlobShard;
     private final BlobIndices blobIndices;
+    private final CollectSettings collectSettings;
 
     @Inject
     public ShardCollectService(Provider<Client> clientProvider,
@@ -82,8 +117,11 @@ public class ShardCollectService {
                                Functions functions,
                                ShardReferenceResolver referenceResolver,
                                BlobIndices blobIndices,
-                               BlobShardReferenceResolver blobShardReferenceResolver) {
+                               BlobShardReferenceResolver blobShardReferenceResolver,
+                               SpillSettings spillSettings,
+                               CollectSettings collectSettings) {
         this.clusterService = clusterService;
+        this.collectSettings = collectSettings;
         this.shardId = shardId;
 
         this.indexService = indexService;
@@ -112,7 +150,7 @@ public class ShardCollectService {
                 (isBlobShard ? blobShardReferenceResolver : referenceResolver)
         );
         this.projectorVisitor = new ProjectionToProjectorVisitor(clientProvider,
-                shardImplementationSymbolVisitor, shardNormalizer);
+                shardImplementationSymbolVisitor, shardNormalizer, bigArrays, spillSettings);
     }
 
     /**
@@ -135,6 +173,19 @@ public class ShardCollectService {
             if (granularity == RowGranularity.DOC) {
                 if (isBlobShard) {
                     return getBlobIndexCollector(normalizedCollectNode, downstream);
+                }
+                List<FieldMapper> minMaxMappers = minMaxFieldMappers(normalizedCollectNode);
+                if (minMaxMappers != null) {
+                    List<DataType> types = new ArrayList<>(minMaxMappers.size());
+                    for (Symbol symbol : normalizedCollectNode.toCollect()) {
+                        types.add(((Reference) symbol).valueType());
+                    }
+                    return new SegmentMinMaxCollector(
+                            indexService.shardSafe(shardId.id()),
+                            indexService.fieldData(),
+                            minMaxMappers,
+                            types,
+                            downstream);
                 } else {
                     return getLuceneIndexCollector(normalizedCollectNode, downstream);
                 }
@@ -146,6 +197,90 @@ public class ShardCollectService {
         }
     }
 
+    /**
+     * get collectors for up to <code>numSlices</code> slices of this shard,
+     * which may collect concurrently.
+     *
+     * Every slice collects a range of doc ids into its own shard downstream.
+     * A shard that can't be sliced or has too few documents for all slices is collected by
+     * the first collector, the remaining collectors don't collect anything.
+     *
+     * @return exactly <code>numSlices</code> collectors
+     */
+    public List<CrateCollector> getCollectors(CollectNode collectNode,
+                                              ShardProjectorChain projectorChain,
+                                              int numSlices) throws Exception {
+        if (numSlices <= 1) {
+            return ImmutableList.of(getCollector(collectNode, projectorChain));
+        }
+        CollectNode normalizedCollectNode = collectNode.normalize(shardNormalizer);
+        List<CrateCollector> collectors = new ArrayList<>(numSlices);
+        if (isBlobShard
+                || normalizedCollectNode.whereClause().noMatch()
+                || normalizedCollectNode.maxRowGranularity() != RowGranularity.DOC
+                || luceneOrderBy(normalizedCollectNode) != null
+                || minMaxFieldMappers(normalizedCollectNode) != null) {
+            collectors.add(getCollector(collectNode, projectorChain));
+        } else {
+            collectors.addAll(getLuceneIndexSliceCollectors(normalizedCollectNode, projectorChain, numSlices));
+        }
+        while (collectors.size() < numSlices) {
+            // the downstream has no upstream and finishes once the projections are started
+            projectorChain.newShardDownstreamProjector(projectorVisitor);
+            collectors.add(CrateCollector.NOOP);
+        }
+        return collectors;
+    }
+
+    private List<CrateCollector> getLuceneIndexSliceCollectors(CollectNode collectNode,
+                                                               ShardProjectorChain projectorChain,
+                                                               int maxSlices) throws Exception {
+        BytesReference querySource = queryBuilder.convert(collectNode.whereClause());
+        Engine.Searcher engineSearcher = indexService.shardSafe(shardId.id()).acquireSearcher("search");
+        int maxDoc = engineSearcher.reader().maxDoc();
+        int numSlices = Math.min(maxSlices, collectSettings.numSlices(maxDoc));
+        LuceneDocCollector.SharedSearcher sharedSearcher = new LuceneDocCollector.SharedSearcher(engineSearcher, numSlices);
+
+        List<CrateCollector> collectors = new ArrayList<>(numSlices);
+        List<SearchContext> searchContexts = new ArrayList<>(numSlices);
+        try {
+            for (int i = 0; i < numSlices; i++) {
+                // every slice needs its own search context and expressions
+                SearchContext searchContext = LuceneDocCollector.createSearchContext(
+                        clusterService,
+                        shardId,
+                        indexService,
+                        scriptService,
+                        cacheRecycler,
+                        pageCacheRecycler,
+                        bigArrays,
+                        sqlxContentQueryParser,
+                        sharedSearcher,
+                        querySource);
+                searchContexts.add(searchContext);
+                CollectInputSymbolVisitor.Context docCtx = docInputSymbolVisitor.process(collectNode);
+                collectors.add(new LuceneDocCollector(
+                        searchContext,
+                        new DocRangeFilter(
+                                (int) ((long) maxDoc * i / numSlices),
+                                (int) ((long) maxDoc * (i + 1) / numSlices)),
+                        docCtx.topLevelInputs(),
+                        docCtx.docLevelExpressions(),
+                        projectorChain.newShardDownstreamProjector(projectorVisitor)));
+            }
+        } catch (Exception e) {
+            for (SearchContext searchContext : searchContexts) {
+                searchContext.release();
+            }
+            // the slices which didn't get a search context
+            for (int i = searchContexts.size(); i < numSlices; i++) {
+                sharedSearcher.release();
+            }
+            throw e;
+        }
+        return collectors;
+    }
+
     private CrateCollector getBlobIndexCollector(CollectNode collectNode, Projector downstream) {
         CollectInputSymbolVisitor.Context ctx = docInputSymbolVisitor.process(collectNode);
         Input<Boolean> condition;
@@ -165,7 +300,15 @@ public class ShardCollectService {
 
     private CrateCollector getLuceneIndexCollector(CollectNode collectNode, Projector downstream) throws Exception {
         CollectInputSymbolVisitor.Context docCtx = docInputSymbolVisitor.process(collectNode);
-        BytesReference querySource = queryBuilder.convert(collectNode.whereClause());
+        BytesReference querySource;
+        List<Reference> orderBy = luceneOrderBy(collectNode);
+        if (orderBy == null) {
+            querySource = queryBuilder.convert(collectNode.whereClause());
+        } else {
+            TopNProjection topN = (TopNProjection) collectNode.projections().get(0);
+            querySource = queryBuilder.convert(
+                    collectNode.whereClause(), orderBy, topN.reverseFlags(), topN.offset() + topN.limit());
+        }
         return new LuceneDocCollector(
                 clusterService,
                 shardId,
@@ -180,4 +323,90 @@ public class ShardCollectService {
                 querySource,
                 downstream);
     }
+
+    /**
+     * If the first projection is an ordered top-n on indexed columns, the lucene search can
+     * sort and limit the documents itself, so only the top-n documents are turned into rows.
+     * The top-n projection stays in place and orders the remaining rows.
+     *
+     * @return the references to sort by or null if the top-n can't be pushed down
+     */
+    @Nullable
+    private List<Reference> luceneOrderBy(CollectNode collectNode) {
+        if (collectNode.projections().isEmpty()
+                || !(collectNode.projections().get(0) instanceof TopNProjection)) {
+            return null;
+        }
+        TopNProjection topN = (TopNProjection) collectNode.projections().get(0);
+        if (!topN.isOrdered() || topN.limit() == TopN.NO_LIMIT) {
+            return null;
+        }
+        List<Reference> orderBy = new ArrayList<>(topN.orderBy().size());
+        for (Symbol symbol : topN.orderBy()) {
+            if (!(symbol instanceof InputColumn)) {
+                return null;
+            }
+            Symbol collected = collectNode.toCollect().get(((InputColumn) symbol).index());
+            if (!(collected instanceof Reference) || !isSortable((Reference) collected)) {
+                return null;
+            }
+            orderBy.add((Reference) collected);
+        }
+        return orderBy;
+    }
+
+    /**
+     * Global min and max aggregations over all documents of the shard are answered
+     * by the {@link SegmentMinMaxCollector} if all collected columns are indexed numbers.
+     *
+     * @return the mappers of the collected columns or null if the documents must be collected
+     */
+    @Nullable
+    private List<FieldMapper> minMaxFieldMappers(CollectNode collectNode) {
+        if (collectNode.whereClause().hasQuery()
+                || collectNode.projections().isEmpty()
+                || !(collectNode.projections().get(0) instanceof AggregationProjection)
+                || collectNode.toCollect().isEmpty()) {
+            return null;
+        }
+        AggregationProjection projection = (AggregationProjection) collectNode.projections().get(0);
+        for (Aggregation aggregation : projection.aggregations()) {
+            String name = aggregation.functionIdent().name();
+            if (!name.equals(MinimumAggregation.NAME) && !name.equals(MaximumAggregation.NAME)) {
+                return null;
+            }
+        }
+        List<FieldMapper> mappers = new ArrayList<>(collectNode.toCollect().size());
+        for (Symbol symbol : collectNode.toCollect()) {
+            if (!(symbol instanceof Reference)) {
+                return null;
+            }
+            ReferenceInfo info = ((Reference) symbol).info();
+            if (info.granularity() != RowGranularity.DOC
+                    || info.ident().columnIdent().isSystemColumn()
+                    || !SegmentMinMaxCollector.SUPPORTED_TYPES.contains(info.type())) {
+                return null;
+            }
+            FieldMapper mapper = indexService.mapperService().smartNameFieldMapper(
+                    info.ident().columnIdent().fqn(), DEFAULT_MAPPING_TYPES);
+            if (mapper == null || !mapper.fieldType().indexed()) {
+                return null;
+            }
+            mappers.add(mapper);
+        }
+        return mappers;
+    }
+
+    private boolean isSortable(Reference reference) {
+        ReferenceInfo info = reference.info();
+        if (info.granularity() != RowGranularity.DOC
+                || info.ident().columnIdent().isSystemColumn()
+                || !LUCENE_SORTABLE_TYPES.contains(info.type())) {
+            return false;
+        }
+        // partitioned by columns have no mapping, fulltext columns are sorted by their terms
+        FieldMapper mapper = indexService.mapperService().smartNameFieldMapper(
+                info.ident().columnIdent().fqn(), DEFAULT_MAPPING_TYPES);
+        return mapper != null && mapper.fieldType().indexed() && !mapper.fieldType().tokenized();
+    }
 }
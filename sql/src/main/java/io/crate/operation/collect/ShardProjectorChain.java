@@ -21,18 +21,34 @@
 
 package io.crate.operation.collect;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.projectors.CollectingProjector;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.operation.projectors.Projector;
 import io.crate.planner.RowGranularity;
+import io.crate.planner.projection.GroupProjection;
 import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A chain of projectors which runs some projections on shard level (one projector per shard) and
+ * the rest on node level (one projector shared by all shards of a node).
+ *
+ * If a node level {@link GroupProjection} aggregates from raw rows and the node collects more than one shard,
+ * the grouping is split up: every shard collector aggregates into its own thread-confined partial
+ * {@link io.crate.operation.projectors.GroupingProjector} and only the partial groups of each shard are merged
+ * into the node level projector once the shard is finished.
+ */
 public class ShardProjectorChain {
 
     private final List<Projection> projections;
@@ -41,17 +57,31 @@ public class ShardProjectorChain {
     private Projector firstNodeProjector;
     private ResultProvider lastProjector;
     private int shardProjectionsIndex = -1;
+    private final RamAccountingContext ramAccountingContext;
 
 
-    public ShardProjectorChain(int numShards, List<Projection> projections, ProjectionToProjectorVisitor nodeProjectorVisitor) {
-        this.projections = projections;
+    /**
+     * @param finalProjector projector appended to the node projectors which provides the result of the chain,
+     *                       must be a {@link ResultProvider}.
+     *                       If null, a {@link CollectingProjector} is used if required.
+     * @param ramAccountingContext the memory used by the projectors of this chain is accounted to this context
+     */
+    public ShardProjectorChain(int numShards,
+                               List<Projection> projections,
+                               ProjectionToProjectorVisitor nodeProjectorVisitor,
+                               @Nullable Projector finalProjector,
+                               RamAccountingContext ramAccountingContext) {
+        this.ramAccountingContext = ramAccountingContext;
+        Preconditions.checkArgument(finalProjector == null || finalProjector instanceof ResultProvider,
+                "finalProjector must be a ResultProvider");
         nodeProjectors = new ArrayList<>();
 
         if (projections.size() == 0) {
-            firstNodeProjector = new CollectingProjector();
+            firstNodeProjector = finalProjector == null ? new CollectingProjector(ramAccountingContext) : finalProjector;
             lastProjector = (ResultProvider) firstNodeProjector;
             nodeProjectors.add(firstNodeProjector);
             shardProjectors = null;
+            this.projections = projections;
             return;
         }
 
@@ -62,11 +92,16 @@ public class ShardProjectorChain {
                 break;
             }
         }
+        if (shardProjectionsIndex < 0 && numShards > 1 && canPreAggregate(projections.get(0))) {
+            projections = splitGroupProjection(projections);
+            shardProjectionsIndex = 0;
+        }
+        this.projections = projections;
 
         Projector previousProjector = null;
         // create the node level projectors
         for (int i = shardProjectionsIndex + 1; i < projections.size(); i++) {
-            Projector projector = nodeProjectorVisitor.process(projections.get(i));
+            Projector projector = nodeProjectorVisitor.process(projections.get(i), ramAccountingContext);
             nodeProjectors.add(projector);
             if (previousProjector != null) {
                 previousProjector.downstream(projector);
@@ -77,23 +112,73 @@ public class ShardProjectorChain {
         }
         if (shardProjectionsIndex >= 0) {
             shardProjectors = new ArrayList<>((shardProjectionsIndex + 1) * numShards);
-            if (shardProjectionsIndex == 0) {
+            if (nodeProjectors.isEmpty()) {
                 // no node projectors
-                previousProjector = firstNodeProjector = new CollectingProjector();
+                previousProjector = firstNodeProjector =
+                        finalProjector == null ? new CollectingProjector(ramAccountingContext) : finalProjector;
+                nodeProjectors.add(firstNodeProjector);
+                finalProjector = null;
             }
         } else {
             shardProjectors = null;
         }
         assert previousProjector != null;
-        if (previousProjector instanceof ResultProvider) {
+        if (finalProjector != null) {
+            // sorting projectors pass their result on, other result providers don't support downstreams
+            previousProjector.downstream(finalProjector);
+            nodeProjectors.add(finalProjector);
+            lastProjector = (ResultProvider) finalProjector;
+        } else if (previousProjector instanceof ResultProvider) {
             lastProjector = (ResultProvider) previousProjector;
         } else {
-            lastProjector = new CollectingProjector();
+            lastProjector = new CollectingProjector(ramAccountingContext);
             previousProjector.downstream((Projector) lastProjector);
         }
     }
 
 
+    private static boolean canPreAggregate(Projection projection) {
+        if (!(projection instanceof GroupProjection)) {
+            return false;
+        }
+        for (Aggregation aggregation : ((GroupProjection) projection).values()) {
+            if (aggregation.fromStep() != Aggregation.Step.ITER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * replace the first (group) projection with a shard level projection aggregating to PARTIAL
+     * and a node level projection merging the partial states of all shards
+     */
+    private static List<Projection> splitGroupProjection(List<Projection> projections) {
+        GroupProjection groupProjection = (GroupProjection) projections.get(0);
+        int numKeys = groupProjection.keys().size();
+
+        List<Aggregation> shardAggregations = new ArrayList<>(groupProjection.values().size());
+        List<Aggregation> nodeAggregations = new ArrayList<>(groupProjection.values().size());
+        for (int i = 0; i < groupProjection.values().size(); i++) {
+            Aggregation aggregation = groupProjection.values().get(i);
+            shardAggregations.add(new Aggregation(aggregation.functionInfo(), aggregation.inputs(),
+                    Aggregation.Step.ITER, Aggregation.Step.PARTIAL));
+            nodeAggregations.add(new Aggregation(aggregation.functionInfo(),
+                    Lists.<Symbol>newArrayList(new InputColumn(numKeys + i)),
+                    Aggregation.Step.PARTIAL, aggregation.toStep()));
+        }
+        List<Symbol> nodeKeys = new ArrayList<>(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            nodeKeys.add(new InputColumn(i));
+        }
+
+        List<Projection> splitProjections = new ArrayList<>(projections.size() + 1);
+        splitProjections.add(new GroupProjection(groupProjection.keys(), shardAggregations, groupProjection.keyTypes()));
+        splitProjections.add(new GroupProjection(nodeKeys, nodeAggregations, groupProjection.keyTypes()));
+        splitProjections.addAll(projections.subList(1, projections.size()));
+        return splitProjections;
+    }
+
     /**
      * Creates a new shard downstream chain if needed and returns a projector to be used as downstream
      * this method also calls startProjection on newly created shard level projectors.
@@ -108,7 +193,7 @@ public class ShardProjectorChain {
         Projector previousProjector = firstNodeProjector;
         Projector projector = null;
         for (int i = shardProjectionsIndex; i >= 0; i--) {
-            projector = projectorVisitor.process(projections.get(i));
+            projector = projectorVisitor.process(projections.get(i), ramAccountingContext);
             projector.downstream(previousProjector);
             shardProjectors.add(projector);
             previousProjector = projector;
@@ -23,9 +23,11 @@ package io.crate.operation.collect.files;
 
 import com.google.common.base.Predicate;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 public interface FileInput {
@@ -44,5 +46,12 @@ public interface FileInput {
 
     InputStream getStream(URI uri) throws IOException;
 
+    /**
+     * @return a channel that allows reading parts of the file at <code>uri</code>,
+     *         or null if the file can only be read as a stream or doesn't exist
+     */
+    @Nullable
+    FileChannel getChannel(URI uri) throws IOException;
+
     boolean sharedStorageDefault();
 }
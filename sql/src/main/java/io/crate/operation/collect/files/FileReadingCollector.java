@@ -23,23 +23,27 @@ package io.crate.operation.collect.files;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.crate.operation.Input;
+import io.crate.operation.collect.CollectSettings;
 import io.crate.operation.collect.CrateCollector;
 import io.crate.operation.projectors.Projector;
 import org.apache.lucene.search.CollectionTerminatedException;
 
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -57,14 +61,16 @@ public class FileReadingCollector implements CrateCollector {
     private final boolean compressed;
     private final List<Input<?>> inputs;
     private final List<LineCollectorExpression<?>> collectorExpressions;
+    private final Supplier<FileCollectInputSymbolVisitor.Context> contextSupplier;
+    private final Executor executor;
+    private final int parallelism;
+    private final long minRangeSize;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean terminated = false;
 
     private static final Pattern HAS_GLOBS_PATTERN = Pattern.compile("(.*)[^\\\\]\\*.*");
-    private static final Predicate<URI> MATCH_ALL_PREDICATE = new Predicate<URI>() {
-        @Override
-        public boolean apply(@Nullable URI input) {
-            return true;
-        }
-    };
 
     private static final Map<String, FileInputFactory> builtInFileInputFactories =
             ImmutableMap.<String, FileInputFactory>of(
@@ -97,6 +103,28 @@ public class FileReadingCollector implements CrateCollector {
                                 Boolean shared,
                                 int numReaders,
                                 int readerNumber) {
+        this(fileUri, inputs, collectorExpressions, null, downstream, format, compression,
+                additionalFileInputFactories, shared, numReaders, readerNumber, null, CollectSettings.DEFAULT);
+    }
+
+    /**
+     * @param contextSupplier creates the inputs and expressions for every additional thread,
+     *                        <code>inputs</code> and <code>collectorExpressions</code> are used by the calling thread
+     * @param executor runs the additional threads, if null all files are read on the calling thread
+     */
+    public FileReadingCollector(String fileUri,
+                                List<Input<?>> inputs,
+                                List<LineCollectorExpression<?>> collectorExpressions,
+                                @Nullable Supplier<FileCollectInputSymbolVisitor.Context> contextSupplier,
+                                Projector downstream,
+                                FileFormat format,
+                                String compression,
+                                Map<String, FileInputFactory> additionalFileInputFactories,
+                                Boolean shared,
+                                int numReaders,
+                                int readerNumber,
+                                @Nullable Executor executor,
+                                CollectSettings collectSettings) {
         if (fileUri.startsWith("/")) {
             this.fileUri = URI.create("file://" + fileUri);
         } else {
@@ -117,6 +145,10 @@ public class FileReadingCollector implements CrateCollector {
         this.shared = shared;
         this.numReaders = numReaders;
         this.readerNumber = readerNumber;
+        this.contextSupplier = contextSupplier;
+        this.executor = executor;
+        this.parallelism = collectSettings.fileParallelism();
+        this.minRangeSize = collectSettings.minFileRangeSize();
         Matcher hasGlobMatcher = HAS_GLOBS_PATTERN.matcher(this.fileUri.toString());
         if (!hasGlobMatcher.matches()) {
             globPredicate = null;
@@ -158,89 +190,208 @@ public class FileReadingCollector implements CrateCollector {
             }
             return;
         }
-        Predicate<URI> uriPredicate = generateUriPredicate(fileInput);
+        Queue<FileRange> ranges;
+        try {
+            ranges = getRanges(fileInput);
+        } catch (IOException e) {
+            downstream.upstreamFinished();
+            throw e;
+        }
 
-        CollectorContext collectorContext = new CollectorContext();
-        for (LineCollectorExpression<?> collectorExpression : collectorExpressions) {
-            collectorExpression.startCollect(collectorContext);
+        int numWorkers = 1;
+        if (executor != null && contextSupplier != null) {
+            numWorkers = Math.max(1, Math.min(parallelism, ranges.size()));
+        }
+        List<Worker> workers = new ArrayList<>(numWorkers);
+        workers.add(new Worker(fileInput, ranges, inputs, collectorExpressions));
+        for (int i = 1; i < numWorkers; i++) {
+            FileCollectInputSymbolVisitor.Context context = contextSupplier.get();
+            workers.add(new Worker(fileInput, ranges, context.topLevelInputs(), context.expressions()));
+        }
+        activeWorkers.set(numWorkers);
+        for (int i = 1; i < numWorkers; i++) {
+            executor.execute(workers.get(i));
         }
-        Object[] newRow;
-        String line;
-        List<URI> uris;
-        uris = getUris(fileInput, uriPredicate);
-        try {
-            for (URI uri : uris) {
-                InputStream inputStream = fileInput.getStream(uri);
-                if (inputStream == null) {
-                    continue;
-                }
-                BufferedReader reader;
-                reader = createReader(inputStream);
 
-                try {
-                    while ((line = reader.readLine()) != null) {
-                        collectorContext.lineContext().rawSource(line.getBytes());
-                        newRow = new Object[inputs.size()];
-                        for (LineCollectorExpression expression : collectorExpressions) {
-                            expression.setNextLine(line);
-                        }
-                        int i = 0;
-                        for (Input<?> input : inputs) {
-                            newRow[i++] = input.value();
-                        }
-                        if (!downstream.setNextRow(newRow)) {
-                            throw new CollectionTerminatedException();
-                        }
-                    }
-                } finally {
-                    reader.close();
-                }
+        // the first worker runs on the calling thread and propagates the first failure of any worker.
+        // It is terminated if another worker failed, this isn't a failure of its own.
+        workers.get(0).collect();
+        Throwable firstFailure = failure.get();
+        if (firstFailure != null) {
+            Throwables.propagateIfInstanceOf(firstFailure, IOException.class);
+            throw Throwables.propagate(firstFailure);
+        }
+    }
+
+    private void workerFinished(@Nullable Throwable t) {
+        if (t != null) {
+            if (!(t instanceof CollectionTerminatedException)) {
+                failure.compareAndSet(null, t);
+            }
+            // set after the failure, a worker terminated by it must see the failure
+            terminated = true;
+        }
+        if (activeWorkers.decrementAndGet() == 0) {
+            Throwable firstFailure = failure.get();
+            if (firstFailure == null) {
+                downstream.upstreamFinished();
+            } else {
+                downstream.upstreamFailed(firstFailure);
             }
-        } finally {
-            downstream.upstreamFinished();
         }
     }
 
-    private BufferedReader createReader(InputStream inputStream) throws IOException {
-        BufferedReader reader;
-        if (compressed) {
-            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream)));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(inputStream));
+    /**
+     * Uncompressed files which can be read by position are split into line-aligned byte ranges
+     * of at least <code>minRangeSize</code> bytes, all other files are read as a whole.
+     * On shared storage the files and ranges are distributed among the readers.
+     */
+    private Queue<FileRange> getRanges(FileInput fileInput) throws IOException {
+        boolean sharedStorage = Objects.firstNonNull(shared, fileInput.sharedStorageDefault());
+        Queue<FileRange> ranges = new ConcurrentLinkedQueue<>();
+        for (URI uri : getUris(fileInput)) {
+            long size = -1;
+            if (!compressed) {
+                FileChannel channel = fileInput.getChannel(uri);
+                if (channel != null) {
+                    try {
+                        size = channel.size();
+                    } finally {
+                        channel.close();
+                    }
+                }
+            }
+            if (size < 2 * minRangeSize) {
+                if (!sharedStorage || Math.abs(uri.hashCode()) % numReaders == readerNumber) {
+                    ranges.add(new FileRange(uri, 0, size));
+                }
+                continue;
+            }
+            long numRanges = size / minRangeSize;
+            long rangeSize = size / numRanges;
+            int firstReader = Math.abs(uri.hashCode() % numReaders);
+            for (long i = 0; i < numRanges; i++) {
+                if (!sharedStorage || (firstReader + i) % numReaders == readerNumber) {
+                    long start = i * rangeSize;
+                    ranges.add(new FileRange(uri, start, i == numRanges - 1 ? size : start + rangeSize));
+                }
+            }
         }
-        return reader;
+        return ranges;
     }
 
-    private List<URI> getUris(FileInput fileInput, Predicate<URI> uriPredicate) throws IOException {
+    private List<URI> getUris(FileInput fileInput) throws IOException {
         List<URI> uris;
         if (preGlobUri != null) {
-            uris = fileInput.listUris(preGlobUri, uriPredicate);
-        } else if (uriPredicate.apply(fileUri)) {
-            uris = ImmutableList.of(fileUri);
+            uris = fileInput.listUris(preGlobUri, globPredicate);
         } else {
-            uris = ImmutableList.of();
+            uris = ImmutableList.of(fileUri);
         }
         return uris;
     }
 
-    private Predicate<URI> generateUriPredicate(FileInput fileInput) {
-        Predicate<URI> moduloPredicate;
-        boolean sharedStorage = Objects.firstNonNull(shared, fileInput.sharedStorageDefault());
-        if (sharedStorage) {
-            moduloPredicate = new Predicate<URI>() {
-                @Override
-                public boolean apply(URI input) {
-                    return Math.abs(input.hashCode()) % numReaders == readerNumber;
+    /**
+     * a part of a file, <code>end</code> is -1 if the whole file is read sequentially
+     */
+    private static class FileRange {
+
+        private final URI uri;
+        private final long start;
+        private final long end;
+
+        private FileRange(URI uri, long start, long end) {
+            this.uri = uri;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * reads ranges from the shared queue until it is empty, each worker uses its own expressions
+     */
+    private class Worker implements Runnable {
+
+        private final FileInput fileInput;
+        private final Queue<FileRange> ranges;
+        private final List<Input<?>> inputs;
+        private final List<LineCollectorExpression<?>> collectorExpressions;
+        private final CollectorContext collectorContext = new CollectorContext();
+
+        private Worker(FileInput fileInput,
+                       Queue<FileRange> ranges,
+                       List<Input<?>> inputs,
+                       List<LineCollectorExpression<?>> collectorExpressions) {
+            this.fileInput = fileInput;
+            this.ranges = ranges;
+            this.inputs = inputs;
+            this.collectorExpressions = collectorExpressions;
+        }
+
+        @Override
+        public void run() {
+            collect();
+        }
+
+        private void collect() {
+            Throwable failure = null;
+            try {
+                for (LineCollectorExpression<?> collectorExpression : collectorExpressions) {
+                    collectorExpression.startCollect(collectorContext);
                 }
-            };
-        } else {
-            moduloPredicate = MATCH_ALL_PREDICATE;
+                FileRange range;
+                while ((range = ranges.poll()) != null) {
+                    LineReader reader = createReader(range);
+                    if (reader == null) {
+                        continue;
+                    }
+                    try {
+                        collect(reader);
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            workerFinished(failure);
         }
 
-        if (globPredicate != null) {
-            return Predicates.and(moduloPredicate, globPredicate);
+        private void collect(LineReader reader) throws IOException {
+            byte[] line;
+            while ((line = reader.readLine()) != null) {
+                if (terminated) {
+                    throw new CollectionTerminatedException();
+                }
+                collectorContext.lineContext().rawSource(line);
+                Object[] newRow = new Object[inputs.size()];
+                int i = 0;
+                for (Input<?> input : inputs) {
+                    newRow[i++] = input.value();
+                }
+                if (!downstream.setNextRow(newRow)) {
+                    throw new CollectionTerminatedException();
+                }
+            }
+        }
+
+        @Nullable
+        private LineReader createReader(FileRange range) throws IOException {
+            if (range.end >= 0) {
+                FileChannel channel = fileInput.getChannel(range.uri);
+                if (channel == null) {
+                    return null;
+                }
+                return LineReader.forRange(channel, range.start, range.end);
+            }
+            InputStream inputStream = fileInput.getStream(range.uri);
+            if (inputStream == null) {
+                return null;
+            }
+            if (compressed) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            return new LineReader(Channels.newChannel(inputStream));
         }
-        return moduloPredicate;
     }
 
     @Override
@@ -0,0 +1,170 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * reads newline separated lines as bytes from a channel without decoding them into Strings.
+ *
+ * A reader may be limited to a byte range of a file, see {@link #forRange(java.nio.channels.FileChannel, long, long)}.
+ * Ranges are line-aligned: a line belongs to the range its first byte is in,
+ * so adjacent ranges of the same file return every line exactly once.
+ */
+public class LineReader implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final long limit;
+
+    private ByteBuffer buffer;
+    private int pos = 0;
+    private long offset = 0;
+    private boolean eof = false;
+
+    public LineReader(ReadableByteChannel channel) {
+        this(channel, Long.MAX_VALUE, BUFFER_SIZE);
+    }
+
+    LineReader(ReadableByteChannel channel, long limit, int bufferSize) {
+        this.channel = channel;
+        this.limit = limit;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * create a reader returning all lines of <code>channel</code> which start within
+     * <code>[start, end)</code>. The last line may extend beyond <code>end</code>.
+     */
+    public static LineReader forRange(FileChannel channel, long start, long end) throws IOException {
+        return forRange(channel, start, end, BUFFER_SIZE);
+    }
+
+    static LineReader forRange(FileChannel channel, long start, long end, int bufferSize) throws IOException {
+        if (start == 0) {
+            channel.position(0);
+            return new LineReader(channel, end, bufferSize);
+        }
+        // start one byte early so that a line starting exactly at start is not skipped
+        channel.position(start - 1);
+        LineReader reader = new LineReader(channel, end - start + 1, bufferSize);
+        reader.skipLine();
+        return reader;
+    }
+
+    /**
+     * @return the next line without its line terminator or null if there are no more lines
+     */
+    public byte[] readLine() throws IOException {
+        if (offset >= limit) {
+            return null;
+        }
+        int newLine = findNewLine();
+        if (newLine < 0) {
+            return null;
+        }
+        byte[] array = buffer.array();
+        int end = newLine;
+        if (end > pos && array[end - 1] == '\r') {
+            end--;
+        }
+        byte[] line = Arrays.copyOfRange(array, pos, end);
+        consume(newLine);
+        return line;
+    }
+
+    private void skipLine() throws IOException {
+        int newLine = findNewLine();
+        if (newLine >= 0) {
+            consume(newLine);
+        }
+    }
+
+    private void consume(int newLine) {
+        int next = Math.min(newLine + 1, buffer.limit());
+        offset += next - pos;
+        pos = next;
+    }
+
+    /**
+     * @return the index of the newline terminating the line starting at <code>pos</code>,
+     *         the end of the buffered data if the last line has no terminator or -1 if there is no line left.
+     */
+    private int findNewLine() throws IOException {
+        int scanned = pos;
+        while (true) {
+            byte[] array = buffer.array();
+            int end = buffer.limit();
+            for (int i = scanned; i < end; i++) {
+                if (array[i] == '\n') {
+                    return i;
+                }
+            }
+            scanned = end;
+            if (eof) {
+                return pos < end ? end : -1;
+            }
+            scanned -= fill();
+        }
+    }
+
+    /**
+     * moves the unconsumed bytes to the start of the buffer, growing it if a single line doesn't fit,
+     * and reads more bytes from the channel.
+     *
+     * @return the number of positions the unconsumed bytes were moved by
+     */
+    private int fill() throws IOException {
+        int shift = pos;
+        buffer.position(pos);
+        if (pos == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.compact();
+        }
+        pos = 0;
+        int read = 0;
+        while (read == 0) {
+            read = channel.read(buffer);
+        }
+        if (read < 0) {
+            eof = true;
+        }
+        buffer.flip();
+        return shift;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
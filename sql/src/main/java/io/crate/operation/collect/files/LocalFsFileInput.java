@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
@@ -76,6 +77,15 @@ public class LocalFsFileInput implements FileInput {
         }
     }
 
+    @Override
+    public FileChannel getChannel(URI uri) throws IOException {
+        try {
+            return FileChannel.open(Paths.get(uri), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean sharedStorageDefault() {
         return false;
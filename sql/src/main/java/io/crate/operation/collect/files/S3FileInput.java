@@ -31,6 +31,7 @@ import io.crate.external.S3ClientHelper;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -79,6 +80,11 @@ public class S3FileInput implements FileInput {
         return null;
     }
 
+    @Override
+    public FileChannel getChannel(URI uri) {
+        return null;
+    }
+
     @Override
     public boolean sharedStorageDefault() {
         return true;
@@ -22,14 +22,18 @@
 package io.crate.operation.merge;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.analyze.EvaluatingNormalizer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.DownstreamOperation;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.projectors.FlatProjectorChain;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.operation.projectors.Projector;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.util.BigArrays;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -45,8 +49,33 @@ public class MergeOperation implements DownstreamOperation {
     private AtomicBoolean wantMore = new AtomicBoolean(true);
 
     public MergeOperation(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor, MergeNode mergeNode) {
+        this(clientProvider, symbolVisitor, mergeNode, SpillSettings.DEFAULT);
+    }
+
+    public MergeOperation(Provider<Client> clientProvider,
+                          ImplementationSymbolVisitor symbolVisitor,
+                          MergeNode mergeNode,
+                          SpillSettings spillSettings) {
+        this(clientProvider, symbolVisitor, mergeNode, spillSettings, RamAccountingContext.NOOP);
+    }
+
+    /**
+     * @param ramAccountingContext the memory used by the projectors is accounted to this context,
+     *                             it is closed once the result is done
+     */
+    public MergeOperation(Provider<Client> clientProvider,
+                          ImplementationSymbolVisitor symbolVisitor,
+                          MergeNode mergeNode,
+                          SpillSettings spillSettings,
+                          RamAccountingContext ramAccountingContext) {
         projectorChain = new FlatProjectorChain(mergeNode.projections(),
-                new ProjectionToProjectorVisitor(clientProvider, symbolVisitor));
+                new ProjectionToProjectorVisitor(clientProvider, symbolVisitor,
+                        new EvaluatingNormalizer(symbolVisitor.functions(), symbolVisitor.rowGranularity(),
+                                symbolVisitor.referenceResolver()),
+                        BigArrays.NON_RECYCLING_INSTANCE,
+                        spillSettings),
+                ramAccountingContext);
+        ramAccountingContext.closeWhenDone(projectorChain.result());
         downstream(projectorChain.firstProjector());
         this.numUpstreams = mergeNode.numUpstreams();
         projectorChain.startProjections();
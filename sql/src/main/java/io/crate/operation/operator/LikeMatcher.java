@@ -0,0 +1,196 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.operator;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * a compiled LIKE pattern
+ *
+ * patterns which only use <code>%</code> at the start and/or the end (<code>abc</code>, <code>abc%</code>,
+ * <code>%abc</code>, <code>%abc%</code>) are matched directly on the UTF-8 bytes,
+ * all other patterns are matched using a regular expression.
+ */
+public abstract class LikeMatcher {
+
+    public abstract boolean matches(BytesRef value);
+
+    public static LikeMatcher compile(BytesRef pattern) {
+        return compile(pattern.utf8ToString(), LikeOperator.DEFAULT_ESCAPE);
+    }
+
+    public static LikeMatcher compile(String pattern, char escapeChar) {
+        // split the pattern into the literal parts between the % wildcards
+        List<StringBuilder> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        parts.add(current);
+        boolean escaped = false;
+        for (char c : pattern.toCharArray()) {
+            if (escaped) {
+                current.append(c);
+                escaped = false;
+            } else if (c == escapeChar) {
+                escaped = true;
+            } else if (c == '%') {
+                current = new StringBuilder();
+                parts.add(current);
+            } else if (c == '_') {
+                return new RegexMatcher(pattern, escapeChar);
+            } else {
+                current.append(c);
+            }
+        }
+
+        boolean leadingWildcard = parts.get(0).length() == 0 && parts.size() > 1;
+        boolean trailingWildcard = parts.get(parts.size() - 1).length() == 0 && parts.size() > 1;
+        StringBuilder literal = null;
+        for (StringBuilder part : parts) {
+            if (part.length() > 0) {
+                if (literal != null) {
+                    // more than one literal part, e.g. a%b
+                    return new RegexMatcher(pattern, escapeChar);
+                }
+                literal = part;
+            }
+        }
+        if (literal == null) {
+            return parts.size() > 1 ? MatchAll.INSTANCE : new ExactMatcher(new BytesRef());
+        }
+
+        BytesRef bytes = new BytesRef(literal);
+        if (leadingWildcard && trailingWildcard) {
+            return new ContainsMatcher(bytes);
+        } else if (leadingWildcard) {
+            return new SuffixMatcher(bytes);
+        } else if (trailingWildcard) {
+            return new PrefixMatcher(bytes);
+        }
+        return new ExactMatcher(bytes);
+    }
+
+    static class MatchAll extends LikeMatcher {
+
+        static final MatchAll INSTANCE = new MatchAll();
+
+        @Override
+        public boolean matches(BytesRef value) {
+            return true;
+        }
+    }
+
+    static class ExactMatcher extends LikeMatcher {
+
+        private final BytesRef literal;
+
+        ExactMatcher(BytesRef literal) {
+            this.literal = literal;
+        }
+
+        @Override
+        public boolean matches(BytesRef value) {
+            return literal.bytesEquals(value);
+        }
+    }
+
+    static class PrefixMatcher extends LikeMatcher {
+
+        private final BytesRef prefix;
+
+        PrefixMatcher(BytesRef prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean matches(BytesRef value) {
+            return regionMatches(value, value.offset, prefix);
+        }
+    }
+
+    static class SuffixMatcher extends LikeMatcher {
+
+        private final BytesRef suffix;
+
+        SuffixMatcher(BytesRef suffix) {
+            this.suffix = suffix;
+        }
+
+        @Override
+        public boolean matches(BytesRef value) {
+            return value.length >= suffix.length
+                    && regionMatches(value, value.offset + value.length - suffix.length, suffix);
+        }
+    }
+
+    static class ContainsMatcher extends LikeMatcher {
+
+        private final BytesRef infix;
+
+        ContainsMatcher(BytesRef infix) {
+            this.infix = infix;
+        }
+
+        @Override
+        public boolean matches(BytesRef value) {
+            int last = value.offset + value.length - infix.length;
+            byte first = infix.bytes[infix.offset];
+            for (int i = value.offset; i <= last; i++) {
+                if (value.bytes[i] == first && regionMatches(value, i, infix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class RegexMatcher extends LikeMatcher {
+
+        private final Pattern pattern;
+
+        RegexMatcher(String pattern, char escapeChar) {
+            this.pattern = Pattern.compile(LikeOperator.patternToRegex(pattern, escapeChar, true), Pattern.DOTALL);
+        }
+
+        @Override
+        public boolean matches(BytesRef value) {
+            return pattern.matcher(value.utf8ToString()).matches();
+        }
+    }
+
+    /**
+     * @return true if <code>value</code> contains all bytes of <code>other</code> starting at <code>pos</code>
+     */
+    private static boolean regionMatches(BytesRef value, int pos, BytesRef other) {
+        if (pos + other.length > value.offset + value.length) {
+            return false;
+        }
+        for (int i = 0; i < other.length; i++) {
+            if (value.bytes[pos + i] != other.bytes[other.offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,6 +21,9 @@
 
 package io.crate.operation.operator;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.planner.symbol.Function;
@@ -29,14 +32,42 @@ import io.crate.planner.symbol.Symbol;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 
-import java.util.regex.Pattern;
-
 public class LikeOperator extends Operator<BytesRef> {
 
     public static final String NAME = "op_like";
 
+    /**
+     * maximum number of compiled patterns kept in the cache
+     */
+    private static final int MATCHER_CACHE_SIZE = 1000;
+
     private FunctionInfo info;
 
+    private final LoadingCache<BytesRef, LikeMatcher> matchers = CacheBuilder.newBuilder()
+            .maximumSize(MATCHER_CACHE_SIZE)
+            .build(new CacheLoader<BytesRef, LikeMatcher>() {
+                @Override
+                public LikeMatcher load(BytesRef pattern) throws Exception {
+                    return LikeMatcher.compile(pattern);
+                }
+            });
+
+    /**
+     * the last used pattern, a literal pattern is the same for every row
+     * so it doesn't even need a cache lookup
+     */
+    private volatile CompiledPattern lastPattern = new CompiledPattern(null, null);
+
+    private static class CompiledPattern {
+        private final BytesRef pattern;
+        private final LikeMatcher matcher;
+
+        private CompiledPattern(BytesRef pattern, LikeMatcher matcher) {
+            this.pattern = pattern;
+            this.matcher = matcher;
+        }
+    }
+
     public static final char DEFAULT_ESCAPE = '\\';
 
     public static void register(OperatorModule module) {
@@ -77,14 +108,19 @@ public class LikeOperator extends Operator<BytesRef> {
             return null;
         }
 
-        return matches(expression.utf8ToString(), pattern.utf8ToString());
+        return matcher(pattern).matches(expression);
     }
 
-    private boolean matches(String expression, String pattern) {
-        return Pattern.matches(
-                patternToRegex(pattern, DEFAULT_ESCAPE, true),
-                expression
-        );
+    private LikeMatcher matcher(BytesRef pattern) {
+        CompiledPattern last = lastPattern;
+        if (last.pattern != null && last.pattern.bytesEquals(pattern)) {
+            return last.matcher;
+        }
+        // the pattern might be a reused buffer, so the cache needs its own copy
+        BytesRef patternCopy = BytesRef.deepCopyOf(pattern);
+        LikeMatcher matcher = matchers.getUnchecked(patternCopy);
+        lastPattern = new CompiledPattern(patternCopy, matcher);
+        return matcher;
     }
 
     protected static String patternToRegex(String patternString, char escapeChar, boolean shouldEscape) {
@@ -125,6 +161,11 @@ public class LikeOperator extends Operator<BytesRef> {
                             case ']':
                             case '(':
                             case ')':
+                            case '+':
+                            case '?':
+                            case '{':
+                            case '}':
+                            case '|':
                                 regex.append('\\');
                         }
 
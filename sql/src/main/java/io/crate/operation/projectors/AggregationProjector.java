@@ -24,17 +24,20 @@ package io.crate.operation.projectors;
 import io.crate.operation.AggregationContext;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.aggregation.AggregationCollector;
+import io.crate.operation.block.RowBlock;
 import io.crate.operation.collect.CollectExpression;
 
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class AggregationProjector implements Projector {
+public class AggregationProjector implements BlockProjector {
 
     private final AggregationCollector[] aggregationCollectors;
     private final Set<CollectExpression<?>> collectExpressions;
     private final Object[] row;
+    private final boolean[] processedBlock;
+    private Object[] blockRow;
     private Projector downstream;
     private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final AtomicReference<Throwable> upstreamFailure = new AtomicReference<>(null);
@@ -45,6 +48,7 @@ public class AggregationProjector implements Projector {
         row = new Object[aggregations.length];
         this.collectExpressions = collectExpressions;
         aggregationCollectors = new AggregationCollector[aggregations.length];
+        processedBlock = new boolean[aggregations.length];
         for (int i = 0; i < aggregationCollectors.length; i++) {
             aggregationCollectors[i] = new AggregationCollector(
                     aggregations[i].symbol(),
@@ -90,6 +94,36 @@ public class AggregationProjector implements Projector {
         return upstreamFailure.get() == null;
     }
 
+    /**
+     * aggregations that support the column vectors of the block consume them at once,
+     * the rows of the block are only materialized for the remaining aggregations.
+     */
+    @Override
+    public synchronized boolean setNextBlock(RowBlock block) {
+        boolean allProcessed = true;
+        for (int i = 0; i < aggregationCollectors.length; i++) {
+            processedBlock[i] = aggregationCollectors[i].processBlock(block);
+            allProcessed &= processedBlock[i];
+        }
+        if (!allProcessed) {
+            if (blockRow == null || blockRow.length != block.numColumns()) {
+                blockRow = new Object[block.numColumns()];
+            }
+            for (int r = 0; r < block.size(); r++) {
+                block.row(r, blockRow);
+                for (CollectExpression<?> collectExpression : collectExpressions) {
+                    collectExpression.setNextRow(blockRow);
+                }
+                for (int i = 0; i < aggregationCollectors.length; i++) {
+                    if (!processedBlock[i]) {
+                        aggregationCollectors[i].processRow();
+                    }
+                }
+            }
+        }
+        return upstreamFailure.get() == null;
+    }
+
     @Override
     public void registerUpstream(ProjectorUpstream upstream) {
         remainingUpstreams.incrementAndGet();
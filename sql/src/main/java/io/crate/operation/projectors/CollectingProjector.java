@@ -21,7 +21,10 @@
 
 package io.crate.operation.projectors;
 
+import io.crate.breaker.RamAccountingContext;
+import io.crate.exceptions.QueryMemoryLimitExceededException;
 import io.crate.operation.ProjectorUpstream;
+import io.crate.operation.projectors.spill.RowSizeEstimator;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
@@ -41,9 +44,19 @@ public class CollectingProjector implements ResultProvider, Projector {
     private final AtomicInteger upstreamsRemaining;
     public List<Object[]> rows = new ArrayList<>();
     private SettableFuture<Object[][]> result = SettableFuture.create();
+    private final RamAccountingContext ramAccountingContext;
+    private Throwable failure;
 
     public CollectingProjector() {
+        this(RamAccountingContext.NOOP);
+    }
+
+    /**
+     * @param ramAccountingContext the collected rows are accounted to this context
+     */
+    public CollectingProjector(RamAccountingContext ramAccountingContext) {
         this.upstreamsRemaining = new AtomicInteger(0);
+        this.ramAccountingContext = ramAccountingContext;
     }
 
     // TODO: further split Projector interface so that this projector doesn't have downstream / setDownstream
@@ -65,6 +78,15 @@ public class CollectingProjector implements ResultProvider, Projector {
 
     @Override
     public synchronized boolean setNextRow(Object... row) {
+        if (failure != null) {
+            return false;
+        }
+        try {
+            ramAccountingContext.addBytes(RowSizeEstimator.estimate(row));
+        } catch (QueryMemoryLimitExceededException e) {
+            failure = e;
+            return false;
+        }
         rows.add(row);
         return true;
     }
@@ -77,6 +99,11 @@ public class CollectingProjector implements ResultProvider, Projector {
     @Override
     public void upstreamFinished() {
         if (upstreamsRemaining.decrementAndGet() <= 0) {
+            if (failure != null) {
+                rows.clear();
+                result.setException(failure);
+                return;
+            }
             result.set(rows.toArray(new Object[rows.size()][]));
         }
     }
@@ -0,0 +1,436 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.Constants;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.core.collections.ArrayIterator;
+import io.crate.exceptions.QueryMemoryLimitExceededException;
+import io.crate.operation.Input;
+import io.crate.operation.ProjectorUpstream;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.spill.RowSizeEstimator;
+import io.crate.operation.projectors.spill.SpillFile;
+import io.crate.operation.projectors.spill.SpillSettings;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * sorting projector for result sets that might not fit into memory.
+ *
+ * Rows are buffered until the row or byte threshold of the given {@link SpillSettings}
+ * is reached. The buffer is then sorted and written as a run to a {@link SpillFile}.
+ * Once all upstreams are finished the runs and the remaining buffer are merged
+ * using a k-way merge, offset and limit are applied while merging.
+ *
+ * Like {@link io.crate.operation.projectors.SortingTopNProjector} it caps
+ * {@link io.crate.operation.projectors.TopN#NO_LIMIT} at {@link io.crate.Constants#DEFAULT_SELECT_LIMIT},
+ * the planner always plans a limit. The projector is used for large explicit limits.
+ * If a downstream is set the merged rows are streamed to it without being materialized
+ * and the result is empty. Otherwise the result rows are accounted to the
+ * {@link io.crate.breaker.RamAccountingContext}.
+ */
+public class ExternalSortProjector implements Projector, ResultProvider {
+
+    private static final ESLogger logger = Loggers.getLogger(ExternalSortProjector.class);
+
+    private final Input<?>[] inputs;
+    private final CollectExpression<?>[] collectExpressions;
+    private final int numOutputs;
+    private final int offset;
+    private final int maxSize;
+    private final Ordering<Object[]> ordering;
+    private final SpillSettings spillSettings;
+    private final RamAccountingContext ramAccountingContext;
+
+    private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
+    private final SettableFuture<Object[][]> result = SettableFuture.create();
+
+    private final List<SpillFile> runs = new ArrayList<>();
+    private List<Object[]> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+    private Throwable failure;
+    private Projector downstream;
+
+    /**
+     * @param inputs             contains output {@link io.crate.operation.Input}s and orderBy {@link io.crate.operation.Input}s
+     * @param collectExpressions gathered from outputs and orderBy inputs
+     * @param numOutputs         <code>inputs</code> contains this much output {@link io.crate.operation.Input}s starting form index 0
+     * @param orderBy            indices of {@link io.crate.operation.Input}s in parameter <code>inputs</code> we sort by
+     * @param reverseFlags       for every index orderBy a boolean indicates ascending (<code>false</code>) or descending (<code>true</code>) order
+     * @param limit              the number of rows to gather
+     * @param offset             the initial offset, this number of rows are skipped
+     * @param spillSettings      thresholds for spilling and the directory spill files are written to
+     */
+    public ExternalSortProjector(Input<?>[] inputs,
+                                 CollectExpression<?>[] collectExpressions,
+                                 int numOutputs,
+                                 int[] orderBy, boolean[] reverseFlags,
+                                 int limit, int offset,
+                                 SpillSettings spillSettings) {
+        this(inputs, collectExpressions, numOutputs, orderBy, reverseFlags, limit, offset, spillSettings,
+                RamAccountingContext.NOOP);
+    }
+
+    /**
+     * @param ramAccountingContext the buffered rows are accounted to this context,
+     *                             the buffer is spilled if the query memory limit is hit
+     */
+    public ExternalSortProjector(Input<?>[] inputs,
+                                 CollectExpression<?>[] collectExpressions,
+                                 int numOutputs,
+                                 int[] orderBy, boolean[] reverseFlags,
+                                 int limit, int offset,
+                                 SpillSettings spillSettings,
+                                 RamAccountingContext ramAccountingContext) {
+        Preconditions.checkArgument(limit >= TopN.NO_LIMIT, "invalid limit");
+        Preconditions.checkArgument(offset >= 0, "invalid offset");
+        this.inputs = inputs;
+        this.collectExpressions = collectExpressions;
+        this.numOutputs = numOutputs;
+        this.offset = offset;
+        this.spillSettings = spillSettings;
+        this.ramAccountingContext = ramAccountingContext;
+        if (limit == TopN.NO_LIMIT) {
+            limit = Constants.DEFAULT_SELECT_LIMIT;
+        }
+        this.maxSize = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+        List<Ordering<Object[]>> orderings = new ArrayList<>(orderBy.length);
+        for (int i = 0; i < orderBy.length; i++) {
+            orderings.add(new ColOrdering(orderBy[i], reverseFlags[i]));
+        }
+        this.ordering = Ordering.compound(orderings);
+    }
+
+    static class ColOrdering extends Ordering<Object[]> {
+
+        private final int col;
+        private final Ordering<Comparable> ordering;
+
+        ColOrdering(int col, boolean reverse) {
+            this.col = col;
+            // nulls are sorted like in SortingTopNProjector: last if ascending, first if descending
+            if (reverse) {
+                ordering = Ordering.natural().reverse().nullsFirst();
+            } else {
+                ordering = Ordering.natural().nullsLast();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(@Nullable Object[] left, @Nullable Object[] right) {
+            Comparable l = left != null ? (Comparable) left[col] : null;
+            Comparable r = right != null ? (Comparable) right[col] : null;
+            return ordering.compare(l, r);
+        }
+    }
+
+    @Override
+    public void startProjection() {
+        if (remainingUpstreams.get() <= 0) {
+            upstreamFinished();
+        }
+    }
+
+    @Override
+    public synchronized boolean setNextRow(Object... row) {
+        if (failure != null) {
+            return false;
+        }
+        Object[] evaluatedRow = evaluateRow(row);
+        long rowBytes = RowSizeEstimator.estimate(evaluatedRow);
+        try {
+            try {
+                ramAccountingContext.addBytes(rowBytes);
+            } catch (QueryMemoryLimitExceededException e) {
+                if (buffer.isEmpty()) {
+                    throw e;
+                }
+                spill();
+                ramAccountingContext.addBytes(rowBytes);
+            }
+            buffer.add(evaluatedRow);
+            bufferedBytes += rowBytes;
+            if (spillSettings.exceeded(buffer.size(), bufferedBytes)) {
+                spill();
+            }
+        } catch (QueryMemoryLimitExceededException | IOException e) {
+            failure = e;
+            return false;
+        }
+        return true;
+    }
+
+    private Object[] evaluateRow(Object[] row) {
+        for (CollectExpression<?> collectExpression : collectExpressions) {
+            collectExpression.setNextRow(row);
+        }
+        Object[] evaluatedRow = new Object[inputs.length];
+        int i = 0;
+        for (Input<?> input : inputs) {
+            evaluatedRow[i++] = input.value();
+        }
+        return evaluatedRow;
+    }
+
+    /**
+     * sort the buffer and write it as a new run.
+     * Rows beyond offset + limit can never be part of the result, so they are not written.
+     */
+    private void spill() throws IOException {
+        Collections.sort(buffer, ordering);
+        SpillFile run = new SpillFile(spillSettings.directory(), "crate-sort-");
+        runs.add(run);
+        run.write(buffer.iterator(), maxSize);
+        if (logger.isTraceEnabled()) {
+            logger.trace("spilled {} rows to {}", run.numRows(), run.file());
+        }
+        buffer = new ArrayList<>();
+        releaseBuffer();
+    }
+
+    private void releaseBuffer() {
+        ramAccountingContext.addBytes(-bufferedBytes);
+        bufferedBytes = 0;
+    }
+
+    @Override
+    public void registerUpstream(ProjectorUpstream upstream) {
+        remainingUpstreams.incrementAndGet();
+    }
+
+    @Override
+    public void upstreamFinished() {
+        if (remainingUpstreams.decrementAndGet() <= 0) {
+            synchronized (this) {
+                if (failure != null) {
+                    fail(failure);
+                    return;
+                }
+                // without a downstream the rows are collected and accounted for the result
+                CollectingProjector collector = null;
+                Projector target = downstream;
+                if (target == null) {
+                    collector = new CollectingProjector(ramAccountingContext);
+                    collector.registerUpstream(this);
+                    target = collector;
+                }
+                try {
+                    emitSorted(target);
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                } finally {
+                    buffer.clear();
+                    releaseBuffer();
+                    deleteRuns();
+                }
+                target.upstreamFinished();
+                if (collector == null) {
+                    result.set(Constants.EMPTY_RESULT);
+                    return;
+                }
+                try {
+                    result.set(collector.result().get());
+                } catch (ExecutionException | InterruptedException e) {
+                    result.setException(e instanceof ExecutionException ? e.getCause() : e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void upstreamFailed(Throwable throwable) {
+        if (remainingUpstreams.decrementAndGet() <= 0) {
+            synchronized (this) {
+                fail(throwable);
+            }
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        buffer.clear();
+        releaseBuffer();
+        deleteRuns();
+        result.setException(throwable);
+        if (downstream != null) {
+            downstream.upstreamFailed(throwable);
+        }
+    }
+
+    private void deleteRuns() {
+        for (SpillFile run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    /**
+     * passes the sorted rows between offset and limit to the target until it returns false.
+     * If there are runs, these and the in-memory buffer are merged using a k-way merge.
+     */
+    private void emitSorted(Projector target) throws IOException {
+        Collections.sort(buffer, ordering);
+        if (runs.isEmpty()) {
+            int end = Math.min(buffer.size(), maxSize);
+            for (int i = offset; i < end; i++) {
+                if (!target.setNextRow(Arrays.copyOfRange(buffer.get(i), 0, numOutputs))) { // strip order by inputs
+                    return;
+                }
+            }
+            return;
+        }
+
+        List<RunIterator> iterators = new ArrayList<>(runs.size() + 1);
+        try {
+            for (SpillFile run : runs) {
+                iterators.add(new FileRunIterator(run.reader()));
+            }
+            iterators.add(new BufferRunIterator(buffer.iterator()));
+
+            PriorityQueue<RunIterator> queue = new PriorityQueue<>(iterators.size(), new Comparator<RunIterator>() {
+                @Override
+                public int compare(RunIterator o1, RunIterator o2) {
+                    return ordering.compare(o1.current(), o2.current());
+                }
+            });
+            for (RunIterator iterator : iterators) {
+                if (iterator.advance()) {
+                    queue.add(iterator);
+                }
+            }
+            int position = 0;
+            while (position < maxSize && !queue.isEmpty()) {
+                RunIterator head = queue.poll();
+                if (position >= offset) {
+                    if (!target.setNextRow(Arrays.copyOfRange(head.current(), 0, numOutputs))) { // strip order by inputs
+                        return;
+                    }
+                }
+                position++;
+                if (head.advance()) {
+                    queue.add(head);
+                }
+            }
+        } finally {
+            for (RunIterator iterator : iterators) {
+                iterator.close();
+            }
+        }
+    }
+
+    private static abstract class RunIterator {
+
+        private Object[] current;
+
+        /**
+         * @return false if the run is exhausted
+         */
+        boolean advance() throws IOException {
+            current = next();
+            return current != null;
+        }
+
+        Object[] current() {
+            return current;
+        }
+
+        @Nullable
+        protected abstract Object[] next() throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private static class BufferRunIterator extends RunIterator {
+
+        private final Iterator<Object[]> iterator;
+
+        BufferRunIterator(Iterator<Object[]> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        protected Object[] next() {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private static class FileRunIterator extends RunIterator {
+
+        private final SpillFile.Reader reader;
+
+        FileRunIterator(SpillFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        protected Object[] next() throws IOException {
+            return reader.next();
+        }
+
+        @Override
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    @Override
+    public ListenableFuture<Object[][]> result() {
+        return result;
+    }
+
+    @Override
+    public Iterator<Object[]> iterator() throws IllegalStateException {
+        if (!result.isDone()) {
+            throw new IllegalStateException("result not ready.");
+        }
+        try {
+            return new ArrayIterator(result.get(), 0, result.get().length);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void downstream(Projector downstream) {
+        downstream.registerUpstream(this);
+        this.downstream = downstream;
+    }
+
+    @Override
+    public Projector downstream() {
+        return downstream;
+    }
+}
@@ -23,6 +23,7 @@ package io.crate.operation.projectors;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.planner.projection.Projection;
 
 import java.util.ArrayList;
@@ -36,16 +37,25 @@ public class FlatProjectorChain {
     private ResultProvider lastProjector;
 
     public FlatProjectorChain(List<Projection> projections, ProjectionToProjectorVisitor projectorVisitor) {
+        this(projections, projectorVisitor, RamAccountingContext.NOOP);
+    }
+
+    /**
+     * @param ramAccountingContext the memory used by the projectors of this chain is accounted to this context
+     */
+    public FlatProjectorChain(List<Projection> projections,
+                              ProjectionToProjectorVisitor projectorVisitor,
+                              RamAccountingContext ramAccountingContext) {
         projectors = new ArrayList<>();
         this.projectorVisitor = projectorVisitor;
         if (projections.size() == 0) {
-            firstProjector = new CollectingProjector();
+            firstProjector = new CollectingProjector(ramAccountingContext);
             lastProjector = (ResultProvider)firstProjector;
             projectors.add(firstProjector);
         } else {
             Projector previousProjector = null;
             for (Projection projection : projections) {
-                Projector projector = projectorVisitor.process(projection);
+                Projector projector = projectorVisitor.process(projection, ramAccountingContext);
                 projectors.add(projector);
                 if (previousProjector != null) {
                     previousProjector.downstream(projector);
@@ -59,7 +69,7 @@ public class FlatProjectorChain {
             if (previousProjector instanceof ResultProvider) {
                 lastProjector = (ResultProvider)previousProjector;
             } else {
-                lastProjector = new CollectingProjector();
+                lastProjector = new CollectingProjector(ramAccountingContext);
                 previousProjector.downstream((Projector)lastProjector);
             }
             assert firstProjector != null;
@@ -21,33 +21,143 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.exceptions.QueryMemoryLimitExceededException;
+import io.crate.exceptions.UnsupportedFeatureException;
 import io.crate.operation.AggregationContext;
 import io.crate.operation.Input;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.aggregation.AggregationCollector;
 import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.RowBlock;
 import io.crate.operation.collect.CollectExpression;
-
+import io.crate.operation.projectors.grouping.GroupSpill;
+import io.crate.operation.projectors.grouping.GroupTable;
+import io.crate.operation.projectors.grouping.OrdinalGrouper;
+import io.crate.operation.projectors.spill.RowSizeEstimator;
+import io.crate.operation.projectors.spill.SpillSettings;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.types.DataType;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ObjectArray;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class GroupingProjector implements Projector {
+public class GroupingProjector implements BlockProjector {
+
+    private static final ESLogger logger = Loggers.getLogger(GroupingProjector.class);
+
+    /**
+     * rough estimate of the heap used by a single aggregation state, used for the memory accounting
+     */
+    private static final long STATE_SIZE_ESTIMATE = 64;
+
+    /**
+     * number of groups after which a projector that aggregates to {@link Aggregation.Step#PARTIAL}
+     * emits its partial groups downstream and starts over with an empty table.
+     * The downstream merges the partial states, so this only bounds the memory used by the groups.
+     */
+    public static final int PARTIAL_FLUSH_THRESHOLD = 100000;
 
     private final List<CollectExpression<?>> collectExpressions;
+    private final List<Input<?>> keyInputs;
+    private final AggregationCollector[] aggregationCollectors;
 
     private final Grouper grouper;
+    private final OrdinalGrouper ordinalGrouper;
+    private final int flushThreshold;
+
+    @Nullable
+    private final SpillSettings spillSettings;
+    private final RamAccountingContext ramAccountingContext;
+    private long estimatedBytes = 0;
+    private GroupSpill groupSpill;
 
     private Object[][] rows;
+    private Object[] blockRow;
     private Projector downstream;
     private AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
 
+    /**
+     * optional settings of a {@link GroupingProjector}, the defaults are used for settings which aren't set
+     */
+    public static class Options {
+
+        private List<DataType> keyTypes;
+        private BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+        private int flushThreshold = PARTIAL_FLUSH_THRESHOLD;
+        private SpillSettings spillSettings;
+        private RamAccountingContext ramAccountingContext = RamAccountingContext.NOOP;
+
+        /**
+         * if the types of all keys are known and supported by {@link GroupTable}
+         * the groups are kept in flat hash tables allocated from {@link #bigArrays(BigArrays)}
+         * instead of a {@link java.util.HashMap}
+         */
+        public Options keyTypes(@Nullable List<DataType> keyTypes) {
+            this.keyTypes = keyTypes;
+            return this;
+        }
+
+        public Options bigArrays(BigArrays bigArrays) {
+            this.bigArrays = bigArrays;
+            return this;
+        }
+
+        /**
+         * number of groups after which partial groups are emitted downstream,
+         * only used if all aggregations aggregate to {@link Aggregation.Step#PARTIAL},
+         * 0 to keep all groups until the upstreams are finished.
+         * Defaults to {@link #PARTIAL_FLUSH_THRESHOLD}.
+         */
+        public Options flushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+            return this;
+        }
+
+        /**
+         * if not null and groups aren't flushed downstream, groups are spilled to disk
+         * as partial states once their estimated size exceeds {@link SpillSettings#maxBytesInMemory()}
+         */
+        public Options spillSettings(@Nullable SpillSettings spillSettings) {
+            this.spillSettings = spillSettings;
+            return this;
+        }
+
+        /**
+         * the estimated size of the groups is accounted to this context.
+         * If the query memory limit is hit and spilling is possible the groups are spilled,
+         * otherwise the projection fails.
+         */
+        public Options ramAccountingContext(RamAccountingContext ramAccountingContext) {
+            this.ramAccountingContext = ramAccountingContext;
+            return this;
+        }
+    }
+
     public GroupingProjector(List<Input<?>> keyInputs,
                              List<CollectExpression<?>> collectExpressions,
-                             AggregationContext[] aggregations) {
+                             AggregationContext[] aggregations,
+                             Options options) {
+        List<DataType> keyTypes = options.keyTypes;
+        BigArrays bigArrays = options.bigArrays;
         this.collectExpressions = collectExpressions;
+        this.keyInputs = keyInputs;
+        this.spillSettings = options.spillSettings;
+        this.ramAccountingContext = options.ramAccountingContext;
 
+        boolean toPartial = true;
         AggregationCollector[] aggregationCollectors = new AggregationCollector[aggregations.length];
         for (int i = 0; i < aggregations.length; i++) {
             aggregationCollectors[i] = new AggregationCollector(
@@ -55,12 +165,24 @@ public class GroupingProjector implements Projector {
                     aggregations[i].function(),
                     aggregations[i].inputs()
             );
+            toPartial &= aggregations[i].symbol().toStep() == Aggregation.Step.PARTIAL;
         }
-        if (keyInputs.size() == 1) {
+        this.aggregationCollectors = aggregationCollectors;
+        this.flushThreshold = toPartial ? options.flushThreshold : 0;
+        if (keyTypes != null && keyTypes.size() == keyInputs.size() && GroupTable.supports(keyTypes)) {
+            grouper = new TypedKeyGrouper(keyTypes, bigArrays,
+                    keyInputs, collectExpressions, aggregationCollectors);
+        } else if (keyInputs.size() == 1) {
             grouper = new SingleKeyGrouper(keyInputs.get(0), collectExpressions, aggregationCollectors);
         } else {
             grouper = new ManyKeyGrouper(keyInputs, collectExpressions, aggregationCollectors);
         }
+        // partial groups of a segment can only be emitted if the partial states are merged downstream
+        if (this.flushThreshold > 0 && OrdinalGrouper.supports(keyInputs, aggregationCollectors)) {
+            ordinalGrouper = new OrdinalGrouper(keyInputs, collectExpressions, aggregationCollectors, bigArrays);
+        } else {
+            ordinalGrouper = null;
+        }
     }
 
     @Override
@@ -87,7 +209,106 @@ public class GroupingProjector implements Projector {
 
     @Override
     public synchronized boolean setNextRow(final Object... row) {
-        return grouper.setNextRow(row);
+        if (failure.get() != null) {
+            return false;
+        }
+        long numGroups = grouper.size();
+        boolean needMore;
+        try {
+            needMore = grouper.setNextRow(row);
+            if (grouper.size() > numGroups) {
+                accountNewGroup();
+            }
+            if (flushThreshold > 0 && downstream != null && grouper.size() >= flushThreshold) {
+                needMore = grouper.flush();
+                releaseGroups();
+            } else if (canSpill() && estimatedBytes >= spillSettings.maxBytesInMemory()) {
+                spill();
+            }
+        } catch (QueryMemoryLimitExceededException | UnsupportedFeatureException | IOException e) {
+            failure.set(e);
+            return false;
+        }
+        return needMore;
+    }
+
+    /**
+     * blocks with a string key of a segment with few distinct values are grouped by ordinal,
+     * the groups of a segment are sent downstream as partial groups once the segment is finished.
+     *
+     * Other blocks are added row by row. The groupers don't hold on to the rows they get,
+     * so a single row is reused for all rows of the block.
+     */
+    @Override
+    public synchronized boolean setNextBlock(RowBlock block) {
+        if (failure.get() != null) {
+            return false;
+        }
+        if (ordinalGrouper != null && downstream != null && ordinalGrouper.accepts(block)) {
+            if (ordinalGrouper.segmentChanged(block) && !ordinalGrouper.emit(downstream)) {
+                return false;
+            }
+            ordinalGrouper.setNextBlock(block);
+            return true;
+        }
+        if (blockRow == null || blockRow.length != block.numColumns()) {
+            blockRow = new Object[block.numColumns()];
+        }
+        for (int i = 0; i < block.size(); i++) {
+            if (!setNextRow(block.row(i, blockRow))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * groups are only spilled if all groups are kept until the upstreams are finished.
+     * If partial groups are flushed downstream the number of groups in memory is bounded by
+     * the flush threshold instead, and hitting the query memory limit fails the projection.
+     */
+    private boolean canSpill() {
+        return flushThreshold == 0 && spillSettings != null;
+    }
+
+    private void accountNewGroup() throws QueryMemoryLimitExceededException, IOException {
+        // the key inputs still hold the values of the new group
+        long groupBytes = STATE_SIZE_ESTIMATE * aggregationCollectors.length;
+        for (Input<?> keyInput : keyInputs) {
+            groupBytes += RowSizeEstimator.estimate(keyInput.value());
+        }
+        try {
+            ramAccountingContext.addBytes(groupBytes);
+        } catch (QueryMemoryLimitExceededException e) {
+            if (!canSpill()) {
+                throw e;
+            }
+            // the new group is spilled together with all others
+            spill();
+            return;
+        }
+        estimatedBytes += groupBytes;
+    }
+
+    private void releaseGroups() {
+        ramAccountingContext.addBytes(-estimatedBytes);
+        estimatedBytes = 0;
+    }
+
+    private void spill() throws IOException {
+        if (groupSpill == null) {
+            assert spillSettings != null;
+            groupSpill = new GroupSpill(spillSettings, ramAccountingContext, keyInputs.size(), aggregationCollectors);
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("spilling {} groups, estimated size {} bytes", grouper.size(), estimatedBytes);
+        }
+        try {
+            groupSpill.spill(grouper.partialIterator());
+        } finally {
+            grouper.clear();
+            releaseGroups();
+        }
     }
 
     @Override
@@ -98,13 +319,82 @@ public class GroupingProjector implements Projector {
     @Override
     public void upstreamFinished() {
         if (remainingUpstreams.decrementAndGet() <= 0) {
-            rows = grouper.finish();
+            emitOrdinalGroups();
+            if (groupSpill == null) {
+                rows = grouper.finish();
+                releaseGroups();
+            } else {
+                rows = finishSpilled();
+            }
+        }
+    }
+
+    /**
+     * spill the remaining groups and re-aggregate the spilled partitions one at a time.
+     * Rows are only kept if there is no downstream to send them to.
+     */
+    private synchronized Object[][] finishSpilled() {
+        final List<Object[]> result = new ArrayList<>();
+        try {
+            if (failure.get() == null) {
+                spill();
+            }
+            Throwable throwable = failure.get();
+            if (throwable != null) {
+                if (downstream != null) {
+                    downstream.upstreamFailed(throwable);
+                }
+                return new Object[0][];
+            }
+            groupSpill.reduce(new Predicate<Object[]>() {
+                @Override
+                public boolean apply(Object[] row) {
+                    int c = keyInputs.size();
+                    for (AggregationCollector aggregationCollector : aggregationCollectors) {
+                        aggregationCollector.state((AggregationState) row[c]);
+                        row[c++] = aggregationCollector.finishCollect();
+                    }
+                    if (downstream == null) {
+                        result.add(row);
+                        return true;
+                    }
+                    return downstream.setNextRow(row);
+                }
+            });
+        } catch (IOException | QueryMemoryLimitExceededException e) {
+            if (downstream != null) {
+                downstream.upstreamFailed(e);
+            }
+            return new Object[0][];
+        } finally {
+            grouper.release();
+            groupSpill.delete();
+        }
+        if (downstream != null) {
+            downstream.upstreamFinished();
+        }
+        return result.toArray(new Object[result.size()][]);
+    }
+
+    private synchronized void emitOrdinalGroups() {
+        if (ordinalGrouper == null) {
+            return;
+        }
+        if (failure.get() == null && downstream != null) {
+            ordinalGrouper.emit(downstream);
+        } else {
+            ordinalGrouper.release();
         }
     }
 
     @Override
     public void upstreamFailed(Throwable throwable) {
         if (remainingUpstreams.decrementAndGet() <= 0) {
+            if (ordinalGrouper != null) {
+                synchronized (this) {
+                    ordinalGrouper.release();
+                }
+            }
             if (downstream != null) {
                 downstream.upstreamFailed(throwable);
             }
@@ -153,8 +443,36 @@ public class GroupingProjector implements Projector {
 
     private interface Grouper {
         boolean setNextRow(final Object... row);
+
+        /**
+         * @return the number of groups
+         */
+        long size();
+
+        /**
+         * send all groups downstream and remove them
+         *
+         * @return false if the downstream doesn't need any more rows
+         */
+        boolean flush();
+
         Object[][] finish();
         Iterator<Object[]> iterator();
+
+        /**
+         * @return rows of the keys followed by the partial aggregation states of every group
+         */
+        Iterator<Object[]> partialIterator();
+
+        /**
+         * remove all groups
+         */
+        void clear();
+
+        /**
+         * remove all groups and release their resources, the grouper can't be used afterwards
+         */
+        void release();
     }
 
     private class SingleKeyGrouper implements Grouper {
@@ -199,6 +517,26 @@ public class GroupingProjector implements Projector {
             return true;
         }
 
+        @Override
+        public long size() {
+            return result.size();
+        }
+
+        @Override
+        public boolean flush() {
+            boolean needMore = true;
+            for (Map.Entry<Object, AggregationState[]> entry : result.entrySet()) {
+                Object[] row = new Object[1 + aggregationCollectors.length];
+                singleTransformToRow(entry, row, aggregationCollectors);
+                if (!downstream.setNextRow(row)) {
+                    needMore = false;
+                    break;
+                }
+            }
+            result.clear();
+            return needMore;
+        }
+
         @Override
         public Object[][] finish() {
             Throwable throwable = failure.get();
@@ -228,6 +566,30 @@ public class GroupingProjector implements Projector {
             return new SingleEntryToRowIterator(
                     result.entrySet().iterator(), aggregationCollectors.length + 1, aggregationCollectors);
         }
+
+        @Override
+        public Iterator<Object[]> partialIterator() {
+            return Iterators.transform(result.entrySet().iterator(),
+                    new Function<Map.Entry<Object, AggregationState[]>, Object[]>() {
+                        @Override
+                        public Object[] apply(Map.Entry<Object, AggregationState[]> entry) {
+                            Object[] row = new Object[1 + aggregationCollectors.length];
+                            row[0] = entry.getKey();
+                            System.arraycopy(entry.getValue(), 0, row, 1, aggregationCollectors.length);
+                            return row;
+                        }
+                    });
+        }
+
+        @Override
+        public void clear() {
+            result.clear();
+        }
+
+        @Override
+        public void release() {
+            result.clear();
+        }
     }
 
     private class ManyKeyGrouper implements Grouper {
@@ -277,6 +639,26 @@ public class GroupingProjector implements Projector {
             return true;
         }
 
+        @Override
+        public long size() {
+            return result.size();
+        }
+
+        @Override
+        public boolean flush() {
+            boolean needMore = true;
+            for (Map.Entry<List<Object>, AggregationState[]> entry : result.entrySet()) {
+                Object[] row = new Object[keyInputs.size() + aggregationCollectors.length];
+                transformToRow(entry, row, aggregationCollectors);
+                if (!downstream.setNextRow(row)) {
+                    needMore = false;
+                    break;
+                }
+            }
+            result.clear();
+            return needMore;
+        }
+
         @Override
         public Object[][] finish() {
             Throwable throwable = failure.get();
@@ -307,8 +689,251 @@ public class GroupingProjector implements Projector {
                     keyInputs.size() + aggregationCollectors.length,
                     aggregationCollectors);
         }
+
+        @Override
+        public Iterator<Object[]> partialIterator() {
+            return Iterators.transform(result.entrySet().iterator(),
+                    new Function<Map.Entry<List<Object>, AggregationState[]>, Object[]>() {
+                        @Override
+                        public Object[] apply(Map.Entry<List<Object>, AggregationState[]> entry) {
+                            Object[] row = new Object[keyInputs.size() + aggregationCollectors.length];
+                            int c = 0;
+                            for (Object key : entry.getKey()) {
+                                row[c++] = key;
+                            }
+                            System.arraycopy(entry.getValue(), 0, row, c, aggregationCollectors.length);
+                            return row;
+                        }
+                    });
+        }
+
+        @Override
+        public void clear() {
+            result.clear();
+        }
+
+        @Override
+        public void release() {
+            result.clear();
+        }
     }
 
+    /**
+     * grouper for keys of known primitive types.
+     * Key lookups are done in a {@link GroupTable}, fixed width aggregation states are kept in
+     * {@link StateColumns} and all other aggregation states by group id in one flat array,
+     * so rows of existing groups don't cause any allocations.
+     */
+    private class TypedKeyGrouper implements Grouper {
+
+        private final List<DataType> keyTypes;
+        private final BigArrays bigArrays;
+        private final List<Input<?>> keyInputs;
+        private final List<CollectExpression<?>> collectExpressions;
+        private final AggregationCollector[] aggregationCollectors;
+        private final StateColumns[] stateColumns;
+        private final int numObjectStates;
+
+        private GroupTable groupTable;
+        private ObjectArray<AggregationState> states;
+
+        public TypedKeyGrouper(List<DataType> keyTypes,
+                               BigArrays bigArrays,
+                               List<Input<?>> keyInputs,
+                               List<CollectExpression<?>> collectExpressions,
+                               AggregationCollector[] aggregationCollectors) {
+            this.keyTypes = keyTypes;
+            this.bigArrays = bigArrays;
+            this.keyInputs = keyInputs;
+            this.collectExpressions = collectExpressions;
+            this.aggregationCollectors = aggregationCollectors;
+            this.stateColumns = new StateColumns[aggregationCollectors.length];
+            int numObjectStates = 0;
+            for (AggregationCollector aggregationCollector : aggregationCollectors) {
+                if (!aggregationCollector.hasFixedWidthState()) {
+                    numObjectStates++;
+                }
+            }
+            this.numObjectStates = numObjectStates;
+            allocate();
+        }
+
+        private void allocate() {
+            groupTable = new GroupTable(keyTypes, bigArrays);
+            for (int i = 0; i < aggregationCollectors.length; i++) {
+                if (aggregationCollectors[i].hasFixedWidthState()) {
+                    stateColumns[i] = aggregationCollectors[i].newStateColumns(bigArrays);
+                }
+            }
+            states = bigArrays.newObjectArray(16 * numObjectStates);
+        }
+
+        @Override
+        public boolean setNextRow(Object... row) {
+            for (CollectExpression collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+
+            long groupId = groupTable.add(keyInputs);
+            long offset = groupId * numObjectStates;
+            if (groupTable.lastAddCreatedGroup()) {
+                if (offset + numObjectStates > states.size()) {
+                    states = bigArrays.grow(states, offset + numObjectStates);
+                }
+                for (int i = 0; i < aggregationCollectors.length; i++) {
+                    if (stateColumns[i] == null) {
+                        aggregationCollectors[i].startCollect();
+                        aggregationCollectors[i].processRow();
+                        states.set(offset++, aggregationCollectors[i].state());
+                    } else {
+                        stateColumns[i].ensureCapacity(groupId);
+                        aggregationCollectors[i].startCollect(stateColumns[i], groupId);
+                        aggregationCollectors[i].processRow(stateColumns[i], groupId);
+                    }
+                }
+            } else {
+                for (int i = 0; i < aggregationCollectors.length; i++) {
+                    if (stateColumns[i] == null) {
+                        aggregationCollectors[i].state(states.get(offset++));
+                        aggregationCollectors[i].processRow();
+                    } else {
+                        aggregationCollectors[i].processRow(stateColumns[i], groupId);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long size() {
+            return groupTable.size();
+        }
+
+        @Override
+        public boolean flush() {
+            boolean needMore = true;
+            try {
+                Iterator<Object[]> it = iterator();
+                while (needMore && it.hasNext()) {
+                    needMore = downstream.setNextRow(it.next());
+                }
+            } finally {
+                release();
+            }
+            allocate();
+            return needMore;
+        }
+
+        @Override
+        public Object[][] finish() {
+            Throwable throwable = failure.get();
+            if (throwable != null && downstream != null) {
+                downstream.upstreamFailed(throwable);
+            }
+
+            Object[][] rows = new Object[(int) groupTable.size()][];
+            boolean sendToDownStream = downstream != null;
+            try {
+                Iterator<Object[]> it = iterator();
+                int r = 0;
+                while (it.hasNext()) {
+                    Object[] row = it.next();
+                    rows[r++] = row;
+                    if (sendToDownStream) {
+                        sendToDownStream = downstream.setNextRow(row);
+                    }
+                }
+            } finally {
+                release();
+            }
+            if (downstream != null) {
+                downstream.upstreamFinished();
+            }
+            return rows;
+        }
+
+        @Override
+        public void release() {
+            groupTable.release();
+            states.release();
+            for (StateColumns columns : stateColumns) {
+                if (columns != null) {
+                    columns.release();
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            release();
+            allocate();
+        }
+
+        /**
+         * only valid until {@link #finish()} has released the group table
+         */
+        @Override
+        public Iterator<Object[]> iterator() {
+            return groupIterator(false);
+        }
+
+        @Override
+        public Iterator<Object[]> partialIterator() {
+            return groupIterator(true);
+        }
+
+        private Iterator<Object[]> groupIterator(final boolean partial) {
+            return new Iterator<Object[]>() {
+
+                private final long maxGroupId = groupTable.maxGroupId();
+                private long groupId = nextGroupId(0);
+
+                private long nextGroupId(long groupId) {
+                    while (groupId < maxGroupId && !groupTable.exists(groupId)) {
+                        groupId++;
+                    }
+                    return groupId;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return groupId < maxGroupId;
+                }
+
+                @Override
+                public Object[] next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Object[] row = new Object[groupTable.numKeys() + aggregationCollectors.length];
+                    groupTable.keys(groupId, row);
+                    long offset = groupId * numObjectStates;
+                    int c = groupTable.numKeys();
+                    for (int i = 0; i < aggregationCollectors.length; i++) {
+                        if (stateColumns[i] == null) {
+                            if (partial) {
+                                row[c++] = states.get(offset++);
+                            } else {
+                                aggregationCollectors[i].state(states.get(offset++));
+                                row[c++] = aggregationCollectors[i].finishCollect();
+                            }
+                        } else if (partial) {
+                            row[c++] = aggregationCollectors[i].partialState(stateColumns[i], groupId);
+                        } else {
+                            row[c++] = aggregationCollectors[i].finishCollect(stateColumns[i], groupId);
+                        }
+                    }
+                    groupId = nextGroupId(groupId + 1);
+                    return row;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove not supported");
+                }
+            };
+        }
+    }
 
     private static class SingleEntryToRowIterator implements Iterator<Object[]> {
 
@@ -22,49 +22,84 @@
 package io.crate.operation.projectors;
 
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import io.crate.Constants;
 import io.crate.Id;
 import io.crate.PartitionName;
-import io.crate.exceptions.UnhandledServerException;
 import io.crate.operation.Input;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.collect.CollectExpression;
 import org.apache.lucene.util.BytesRef;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkProcessor;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.bulk.BulkShardProcessor;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * writes rows into a table, the index requests are routed to their shards by a {@link BulkShardProcessor}.
+ */
 public class IndexWriterProjector implements Projector {
 
-    private final BulkProcessor bulkProcessor;
-    private final Listener listener;
+    private final BulkShardProcessor bulkShardProcessor;
     private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
-    private final CollectExpression<?>[] collectExpressions;
-    private final List<Input<?>> idInputs;
-    private final Input<?> sourceInput;
-    private final Input<?> routingInput;
+    private final AtomicReference<Throwable> upstreamFailure = new AtomicReference<>();
     private final String tableName;
-    private final Object lock = new Object();
     private final List<String> primaryKeys;
-    private final List<Input<?>> partitionedByInputs;
     private final String[] includes;
     private final String[] excludes;
+
+    // set if all upstreams share the same inputs, requests are built under the lock then
+    private final RowInputs sharedInputs;
+    // the inputs of every thread building requests, cleared once the upstreams finished
+    private final Supplier<RowInputs> rowInputsSupplier;
+    private final ConcurrentMap<Thread, RowInputs> threadInputs = ConcurrentCollections.newConcurrentMap();
+    private final Object lock = new Object();
     private Projector downstream;
 
-    public IndexWriterProjector(Client client,
+    /**
+     * the inputs needed to build an index request from a row.
+     * Every thread building requests uses its own instance.
+     */
+    public static class RowInputs {
+
+        private final CollectExpression<?>[] collectExpressions;
+        private final List<Input<?>> idInputs;
+        private final List<Input<?>> partitionedByInputs;
+        private final Input<?> routingInput;
+        private final Input<?> sourceInput;
+
+        public RowInputs(CollectExpression<?>[] collectExpressions,
+                         List<Input<?>> idInputs,
+                         List<Input<?>> partitionedByInputs,
+                         Input<?> routingInput,
+                         Input<?> sourceInput) {
+            this.collectExpressions = collectExpressions;
+            this.idInputs = idInputs;
+            this.partitionedByInputs = partitionedByInputs;
+            this.routingInput = routingInput;
+            this.sourceInput = sourceInput;
+        }
+    }
+
+    public IndexWriterProjector(ClusterService clusterService,
+                                @Nullable ThreadPool threadPool,
+                                Client client,
+                                TransportShardBulkAction transportShardBulkAction,
                                 String tableName,
                                 List<String> primaryKeys,
                                 List<Input<?>> idInputs,
@@ -76,42 +111,75 @@ public class IndexWriterProjector implements Projector {
                                 @Nullable Integer concurrency,
                                 @Nullable String[] includes,
                                 @Nullable String[] excludes) {
-        listener = new Listener();
+        this(clusterService, threadPool, client, transportShardBulkAction, tableName, primaryKeys,
+                new RowInputs(collectExpressions, idInputs, partitionedByInputs, routingInput, sourceInput),
+                null, bulkActions, concurrency, includes, excludes);
+    }
+
+    /**
+     * @param rowInputsSupplier creates the inputs for each thread calling {@link #setNextRow(Object...)},
+     *                          so requests are built without locking
+     */
+    public IndexWriterProjector(ClusterService clusterService,
+                                @Nullable ThreadPool threadPool,
+                                Client client,
+                                TransportShardBulkAction transportShardBulkAction,
+                                String tableName,
+                                List<String> primaryKeys,
+                                final Supplier<RowInputs> rowInputsSupplier,
+                                @Nullable Integer bulkActions,
+                                @Nullable Integer concurrency,
+                                @Nullable String[] includes,
+                                @Nullable String[] excludes) {
+        this(clusterService, threadPool, client, transportShardBulkAction, tableName, primaryKeys,
+                null, rowInputsSupplier, bulkActions, concurrency, includes, excludes);
+    }
+
+    private IndexWriterProjector(ClusterService clusterService,
+                                 @Nullable ThreadPool threadPool,
+                                 Client client,
+                                 TransportShardBulkAction transportShardBulkAction,
+                                 String tableName,
+                                 List<String> primaryKeys,
+                                 @Nullable RowInputs sharedInputs,
+                                 @Nullable Supplier<RowInputs> rowInputsSupplier,
+                                 @Nullable Integer bulkActions,
+                                 @Nullable Integer concurrency,
+                                 @Nullable String[] includes,
+                                 @Nullable String[] excludes) {
         this.tableName = tableName;
         this.primaryKeys = primaryKeys;
-        this.collectExpressions = collectExpressions;
-        this.idInputs = idInputs;
-        this.routingInput = routingInput;
-        this.sourceInput = sourceInput;
-        this.partitionedByInputs = partitionedByInputs;
         this.includes = includes;
         this.excludes = excludes;
-        BulkProcessor.Builder builder = BulkProcessor.builder(client, listener);
-        if (bulkActions != null) {
-            builder.setBulkActions(bulkActions);
-        }
-        if (concurrency != null) {
-            builder.setConcurrentRequests(concurrency);
-        }
-        bulkProcessor = builder.build();
+        this.sharedInputs = sharedInputs;
+        this.rowInputsSupplier = rowInputsSupplier;
+        bulkShardProcessor = new BulkShardProcessor(
+                clusterService,
+                threadPool,
+                client,
+                transportShardBulkAction,
+                Objects.firstNonNull(bulkActions, BulkShardProcessor.DEFAULT_BULK_SIZE),
+                Objects.firstNonNull(concurrency, BulkShardProcessor.DEFAULT_CONCURRENCY)
+        );
     }
 
     @Override
     public void startProjection() {
-        listener.allRowsAdded.set(false);
     }
 
     @Override
     public boolean setNextRow(Object... row) {
         IndexRequest indexRequest;
-        synchronized (lock) {
-            for (CollectExpression<?> collectExpression : collectExpressions) {
-                collectExpression.setNextRow(row);
+        if (sharedInputs != null) {
+            synchronized (lock) {
+                indexRequest = buildRequest(sharedInputs, row);
             }
-            indexRequest = buildRequest();
+        } else {
+            indexRequest = buildRequest(threadInputs(), row);
         }
         if (indexRequest != null) {
-            bulkProcessor.add(indexRequest);
+            // stop the upstream once a bulk failed, the failure is raised on close
+            return bulkShardProcessor.add(indexRequest);
         }
         return true;
     }
@@ -121,42 +189,85 @@ public class IndexWriterProjector implements Projector {
         remainingUpstreams.incrementAndGet();
     }
 
+    private RowInputs threadInputs() {
+        Thread thread = Thread.currentThread();
+        RowInputs inputs = threadInputs.get(thread);
+        if (inputs == null) {
+            // only the current thread adds its own inputs
+            inputs = rowInputsSupplier.get();
+            threadInputs.put(thread, inputs);
+        }
+        return inputs;
+    }
+
+    /**
+     * the inputs of a thread aren't needed anymore once its upstream finished,
+     * upstreams might finish on other threads than they collected on,
+     * so all inputs are released once the last one finished.
+     */
+    private void releaseInputs(boolean lastUpstream) {
+        threadInputs.remove(Thread.currentThread());
+        if (lastUpstream) {
+            threadInputs.clear();
+        }
+    }
+
     @Override
     public void upstreamFinished() {
-        if (remainingUpstreams.decrementAndGet() <= 0) {
-            bulkProcessor.close();
-            listener.allRowsAdded.set(true);
-            if (listener.inProgress.get() == 0) {
-                downstream.setNextRow(listener.rowsImported.get());
-                downstream.upstreamFinished();
-            }
+        boolean lastUpstream = remainingUpstreams.decrementAndGet() <= 0;
+        releaseInputs(lastUpstream);
+        if (lastUpstream) {
+            bulkShardProcessor.close();
+            Futures.addCallback(bulkShardProcessor.result(), new FutureCallback<Long>() {
+                @Override
+                public void onSuccess(@Nullable Long rowsImported) {
+                    downstream.setNextRow(rowsImported);
+                    Throwable failure = upstreamFailure.get();
+                    if (failure == null) {
+                        downstream.upstreamFinished();
+                    } else {
+                        downstream.upstreamFailed(failure);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    downstream.upstreamFailed(t);
+                }
+            });
         }
     }
 
     @Override
     public void upstreamFailed(Throwable throwable) {
-        if (remainingUpstreams.decrementAndGet() <= 0) {
-            bulkProcessor.close();
+        boolean lastUpstream = remainingUpstreams.decrementAndGet() <= 0;
+        releaseInputs(lastUpstream);
+        if (lastUpstream) {
+            bulkShardProcessor.close();
             if (downstream != null) {
-                downstream.setNextRow(listener.rowsImported.get());
+                downstream.setNextRow(bulkShardProcessor.rowsImported());
                 downstream.upstreamFailed(throwable);
             }
             return;
         }
-        listener.failure.set(throwable);
+        upstreamFailure.set(throwable);
     }
 
-    private IndexRequest buildRequest() {
+    @Nullable
+    private IndexRequest buildRequest(RowInputs inputs, Object[] row) {
+        for (CollectExpression<?> collectExpression : inputs.collectExpressions) {
+            collectExpression.setNextRow(row);
+        }
         // TODO: reuse logic that is currently  in AbstractESIndexTask
         IndexRequest indexRequest = new IndexRequest();
-        Object value = sourceInput.value();
+        Object value = inputs.sourceInput.value();
         if (value == null) {
             return null;
         }
         indexRequest.type(Constants.DEFAULT_MAPPING_TYPE);
 
-        if (partitionedByInputs.size() > 0) {
-            List<String> partitionedByValues = Lists.transform(partitionedByInputs, new Function<Input<?>, String>() {
+        if (inputs.partitionedByInputs.size() > 0) {
+            List<String> partitionedByValues = Lists.transform(inputs.partitionedByInputs, new Function<Input<?>, String>() {
                 @Nullable
                 @Override
                 public String apply(Input<?> input) {
@@ -185,7 +296,7 @@ public class IndexWriterProjector implements Projector {
             indexRequest.source(((BytesRef) value).bytes);
         }
 
-        List<String> primaryKeyValues = Lists.transform(idInputs, new Function<Input<?>, String>() {
+        List<String> primaryKeyValues = Lists.transform(inputs.idInputs, new Function<Input<?>, String>() {
             @Override
             public String apply(Input<?> input) {
                 if (input.value() == null)
@@ -194,7 +305,7 @@ public class IndexWriterProjector implements Projector {
             }
         });
 
-        Object routing = routingInput.value();
+        Object routing = inputs.routingInput.value();
         String clusteredBy = null;
         if (routing != null) {
             clusteredBy = routing.toString();
@@ -208,66 +319,10 @@ public class IndexWriterProjector implements Projector {
     @Override
     public void downstream(Projector downstream) {
         this.downstream = downstream;
-        this.listener.downstream(downstream);
     }
 
     @Override
     public Projector downstream() {
         return downstream;
     }
-
-    private class Listener implements BulkProcessor.Listener {
-        AtomicInteger inProgress = new AtomicInteger(0);
-        final AtomicBoolean allRowsAdded;
-        final AtomicReference<Throwable> failure = new AtomicReference<>();
-        final AtomicLong rowsImported = new AtomicLong(0);
-        Projector downstream;
-
-        Listener() {
-            allRowsAdded = new AtomicBoolean(false);
-        }
-
-        void downstream(Projector downstream) {
-            this.downstream = downstream;
-        }
-
-        @Override
-        public void beforeBulk(long executionId, BulkRequest request) {
-            inProgress.incrementAndGet();
-        }
-
-        @Override
-        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
-            if (response.hasFailures()) {
-                for (BulkItemResponse item : response.getItems()) {
-                    if (!item.isFailed()) {
-                        rowsImported.incrementAndGet();
-                    } else {
-                        failure.set(new UnhandledServerException(item.getFailureMessage()));
-                    }
-                }
-            } else {
-                rowsImported.addAndGet(response.getItems().length);
-            }
-
-            if (inProgress.decrementAndGet() == 0 && allRowsAdded.get() && downstream != null) {
-                Throwable throwable = failure.get();
-                if (throwable != null) {
-                    downstream.upstreamFailed(throwable);
-                } else {
-                    downstream.setNextRow(rowsImported.get());
-                    downstream.upstreamFinished();
-                }
-            }
-        }
-
-        @Override
-        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
-            this.failure.set(failure);
-            if (inProgress.decrementAndGet() == 0 && allRowsAdded.get() && downstream != null) {
-                downstream.setNextRow(rowsImported.get());
-                downstream.upstreamFailed(failure);
-            }
-        }
-    }
 }
@@ -21,38 +21,94 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import io.crate.analyze.EvaluatingNormalizer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.Input;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.spill.SpillSettings;
+import io.crate.operation.projectors.writer.Output;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Literal;
 import io.crate.planner.symbol.StringValueSymbolVisitor;
 import io.crate.planner.symbol.Symbol;
 import io.crate.types.StringType;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.threadpool.ThreadPool;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
-public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projector> {
+public class ProjectionToProjectorVisitor extends ProjectionVisitor<RamAccountingContext, Projector> {
 
     private final ImplementationSymbolVisitor symbolVisitor;
     private final EvaluatingNormalizer normalizer;
     private final Provider<Client> clientProvider;
+    private final BigArrays bigArrays;
+    private final SpillSettings spillSettings;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final TransportShardBulkAction transportShardBulkAction;
 
     public Projector process(Projection projection) {
-        return process(projection, null);
+        return process(projection, RamAccountingContext.NOOP);
     }
 
-    public ProjectionToProjectorVisitor(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor,
-            EvaluatingNormalizer normalizer) {
+    /**
+     * the cluster service, thread pool and shard bulk action are only needed
+     * to write rows into tables with an {@link IndexWriterProjector}
+     */
+    public ProjectionToProjectorVisitor(Provider<Client> clientProvider,
+                                        @Nullable ClusterService clusterService,
+                                        @Nullable ThreadPool threadPool,
+                                        @Nullable TransportShardBulkAction transportShardBulkAction,
+                                        ImplementationSymbolVisitor symbolVisitor,
+                                        EvaluatingNormalizer normalizer,
+                                        BigArrays bigArrays,
+                                        SpillSettings spillSettings) {
         this.clientProvider = clientProvider;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.transportShardBulkAction = transportShardBulkAction;
         this.symbolVisitor = symbolVisitor;
         this.normalizer = normalizer;
+        this.bigArrays = bigArrays;
+        this.spillSettings = spillSettings;
+    }
+
+    public ProjectionToProjectorVisitor(Provider<Client> clientProvider,
+                                        ClusterService clusterService,
+                                        ThreadPool threadPool,
+                                        TransportShardBulkAction transportShardBulkAction,
+                                        ImplementationSymbolVisitor symbolVisitor) {
+        this(clientProvider, clusterService, threadPool, transportShardBulkAction, symbolVisitor,
+                new EvaluatingNormalizer(symbolVisitor.functions(), symbolVisitor.rowGranularity(),
+                        symbolVisitor.referenceResolver()),
+                BigArrays.NON_RECYCLING_INSTANCE, SpillSettings.DEFAULT);
+    }
+
+    public ProjectionToProjectorVisitor(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor,
+            EvaluatingNormalizer normalizer, BigArrays bigArrays, SpillSettings spillSettings) {
+        this(clientProvider, null, null, null, symbolVisitor, normalizer, bigArrays, spillSettings);
+    }
+
+    public ProjectionToProjectorVisitor(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor,
+            EvaluatingNormalizer normalizer, BigArrays bigArrays) {
+        this(clientProvider, symbolVisitor, normalizer, bigArrays, SpillSettings.DEFAULT);
+    }
+
+    public ProjectionToProjectorVisitor(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor,
+            EvaluatingNormalizer normalizer) {
+        this(clientProvider, symbolVisitor, normalizer, BigArrays.NON_RECYCLING_INSTANCE);
     }
 
     public ProjectionToProjectorVisitor(Provider<Client> clientProvider, ImplementationSymbolVisitor symbolVisitor) {
@@ -61,7 +117,7 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
     }
 
     @Override
-    public Projector visitTopNProjection(TopNProjection projection, Void context) {
+    public Projector visitTopNProjection(TopNProjection projection, RamAccountingContext context) {
         Projector projector;
         List<Input<?>> inputs = new ArrayList<>();
         List<CollectExpression<?>> collectExpressions = new ArrayList<>();
@@ -84,14 +140,28 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
                 orderByIndices[idx++] = i;
             }
 
-            projector = new SortingTopNProjector(
-                    inputs.toArray(new Input<?>[inputs.size()]),
-                    collectExpressions.toArray(new CollectExpression[collectExpressions.size()]),
-                    numOutputs,
-                    orderByIndices,
-                    projection.reverseFlags(),
-                    projection.limit(),
-                    projection.offset());
+            if (needsExternalSort(projection)) {
+                projector = new ExternalSortProjector(
+                        inputs.toArray(new Input<?>[inputs.size()]),
+                        collectExpressions.toArray(new CollectExpression[collectExpressions.size()]),
+                        numOutputs,
+                        orderByIndices,
+                        projection.reverseFlags(),
+                        projection.limit(),
+                        projection.offset(),
+                        spillSettings,
+                        context);
+            } else {
+                projector = new SortingTopNProjector(
+                        inputs.toArray(new Input<?>[inputs.size()]),
+                        collectExpressions.toArray(new CollectExpression[collectExpressions.size()]),
+                        numOutputs,
+                        orderByIndices,
+                        projection.reverseFlags(),
+                        projection.limit(),
+                        projection.offset(),
+                        context);
+            }
         } else {
             projector = new SimpleTopNProjector(
                     inputs.toArray(new Input<?>[inputs.size()]),
@@ -102,8 +172,16 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
         return projector;
     }
 
+    /**
+     * the priority queue of the {@link SortingTopNProjector} is allocated upfront with offset + limit slots,
+     * use the spilling {@link ExternalSortProjector} if that exceeds the rows allowed in memory.
+     */
+    private boolean needsExternalSort(TopNProjection projection) {
+        return (long) projection.offset() + projection.limit() > spillSettings.maxRowsInMemory();
+    }
+
     @Override
-    public Projector visitGroupProjection(GroupProjection projection, Void context) {
+    public Projector visitGroupProjection(GroupProjection projection, RamAccountingContext context) {
         ImplementationSymbolVisitor.Context symbolContext = symbolVisitor.process(projection.keys());
         List<Input<?>> keyInputs = symbolContext.topLevelInputs();
 
@@ -113,13 +191,19 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
         Projector groupProjector = new GroupingProjector(
                 keyInputs,
                 ImmutableList.copyOf(symbolContext.collectExpressions()),
-                symbolContext.aggregations()
+                symbolContext.aggregations(),
+                new GroupingProjector.Options()
+                        .keyTypes(projection.keyTypes())
+                        .bigArrays(bigArrays)
+                        .flushThreshold(projection.flushPartialGroups() ? GroupingProjector.PARTIAL_FLUSH_THRESHOLD : 0)
+                        .spillSettings(spillSettings)
+                        .ramAccountingContext(context)
         );
         return groupProjector;
     }
 
     @Override
-    public Projector visitAggregationProjection(AggregationProjection projection, Void context) {
+    public Projector visitAggregationProjection(AggregationProjection projection, RamAccountingContext context) {
         ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
         for (Aggregation aggregation : projection.aggregations()) {
             symbolVisitor.process(aggregation, symbolContext);
@@ -131,20 +215,10 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
     }
 
     @Override
-    public Projector visitWriterProjection(WriterProjection projection, Void context) {
-        ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
-
-        List<Input<?>> inputs = null;
-        if (!projection.inputs().isEmpty()) {
-            inputs = new ArrayList<>(projection.inputs().size());
-            for (Symbol symbol : projection.inputs()) {
-                inputs.add(symbolVisitor.process(symbol, symbolContext));
-            }
-        }
-
-        projection = projection.normalize(normalizer);
-        String uri = StringValueSymbolVisitor.INSTANCE.process(projection.uri());
-        if (projection.isDirectoryUri()) {
+    public Projector visitWriterProjection(final WriterProjection projection, RamAccountingContext context) {
+        WriterProjection normalized = projection.normalize(normalizer);
+        String uri = StringValueSymbolVisitor.INSTANCE.process(normalized.uri());
+        if (normalized.isDirectoryUri()) {
             StringBuilder sb = new StringBuilder(uri);
             Symbol resolvedFileName = normalizer.normalize(WriterProjection.DIRECTORY_TO_FILENAME);
             assert resolvedFileName instanceof Literal;
@@ -154,20 +228,59 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
                 sb.append("/");
             }
             sb.append(fileName);
-            if (projection.settings().get("compression", "").equalsIgnoreCase("gzip")) {
-                sb.append(".gz");
-            }
+            sb.append(Output.fileExtension(normalized.settings()));
             uri = sb.toString();
         }
         return new WriterProjector(
                 uri,
-                projection.settings(),
-                inputs,
-                symbolContext.collectExpressions()
+                normalized.settings(),
+                normalized.isDirectoryUri(),
+                new Supplier<WriterProjector.RowInputs>() {
+                    @Override
+                    public WriterProjector.RowInputs get() {
+                        return rowInputs(projection);
+                    }
+                }
         );
     }
 
-    public Projector visitIndexWriterProjection(IndexWriterProjection projection, Void context) {
+    private WriterProjector.RowInputs rowInputs(WriterProjection projection) {
+        ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
+        List<Input<?>> inputs = null;
+        if (!projection.inputs().isEmpty()) {
+            inputs = new ArrayList<>(projection.inputs().size());
+            for (Symbol symbol : projection.inputs()) {
+                inputs.add(symbolVisitor.process(symbol, symbolContext));
+            }
+        }
+        return new WriterProjector.RowInputs(inputs, symbolContext.collectExpressions());
+    }
+
+    public Projector visitIndexWriterProjection(final IndexWriterProjection projection,
+                                                RamAccountingContext context) {
+        Preconditions.checkState(clusterService != null && transportShardBulkAction != null,
+                "writing into tables is not supported here");
+        return new IndexWriterProjector(
+                clusterService,
+                threadPool,
+                clientProvider.get(),
+                transportShardBulkAction,
+                projection.tableName(),
+                projection.primaryKeys(),
+                new Supplier<IndexWriterProjector.RowInputs>() {
+                    @Override
+                    public IndexWriterProjector.RowInputs get() {
+                        return rowInputs(projection);
+                    }
+                },
+                projection.bulkActions(),
+                projection.concurrency(),
+                projection.includes(),
+                projection.excludes()
+        );
+    }
+
+    private IndexWriterProjector.RowInputs rowInputs(IndexWriterProjection projection) {
         ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
         List<Input<?>> idInputs = new ArrayList<>(projection.ids().size());
         for (Symbol idSymbol : projection.ids()) {
@@ -179,19 +292,12 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<Void, Projec
         }
         Input<?> sourceInput = symbolVisitor.process(projection.rawSource(), symbolContext);
         Input<?> clusteredBy = symbolVisitor.process(projection.clusteredBy(), symbolContext);
-        return new IndexWriterProjector(
-                clientProvider.get(),
-                projection.tableName(),
-                projection.primaryKeys(),
+        return new IndexWriterProjector.RowInputs(
+                symbolContext.collectExpressions().toArray(new CollectExpression[symbolContext.collectExpressions().size()]),
                 idInputs,
                 partitionedByInputs,
                 clusteredBy,
-                sourceInput,
-                symbolContext.collectExpressions().toArray(new CollectExpression[symbolContext.collectExpressions().size()]),
-                projection.bulkActions(),
-                projection.concurrency(),
-                projection.includes(),
-                projection.excludes()
+                sourceInput
         );
     }
 }
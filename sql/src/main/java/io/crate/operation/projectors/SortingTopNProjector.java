@@ -26,11 +26,15 @@ import com.google.common.collect.Ordering;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.crate.Constants;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.ArrayIterator;
+import io.crate.exceptions.QueryMemoryLimitExceededException;
 import io.crate.operation.Input;
 import io.crate.operation.ProjectorUpstream;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.spill.RowSizeEstimator;
 import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
@@ -39,6 +43,12 @@ import java.util.Iterator;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * sorting projector keeping the top <code>offset + limit</code> rows in a priority queue.
+ *
+ * The rows are provided as result, and if a downstream is set they are passed to it as well.
+ * This way the projector can truncate rows before they are sent to other nodes.
+ */
 public class SortingTopNProjector implements Projector, ResultProvider {
 
 
@@ -99,6 +109,9 @@ public class SortingTopNProjector implements Projector, ResultProvider {
     private final CollectExpression<?>[] collectExpressions;
     private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final SettableFuture<Object[][]> result = SettableFuture.create();
+    private final RamAccountingContext ramAccountingContext;
+    private Throwable failure;
+    private Projector downstream;
 
     /**
      * @param inputs             contains output {@link io.crate.operation.Input}s and orderBy {@link io.crate.operation.Input}s
@@ -114,12 +127,25 @@ public class SortingTopNProjector implements Projector, ResultProvider {
                                 int numOutputs,
                                 int[] orderBy, boolean[] reverseFlags,
                                 int limit, int offset) {
+        this(inputs, collectExpressions, numOutputs, orderBy, reverseFlags, limit, offset, RamAccountingContext.NOOP);
+    }
+
+    /**
+     * @param ramAccountingContext the queue and the rows inside it are accounted to this context
+     */
+    public SortingTopNProjector(Input<?>[] inputs,
+                                CollectExpression<?>[] collectExpressions,
+                                int numOutputs,
+                                int[] orderBy, boolean[] reverseFlags,
+                                int limit, int offset,
+                                RamAccountingContext ramAccountingContext) {
         Preconditions.checkArgument(limit >= TopN.NO_LIMIT, "invalid limit");
         Preconditions.checkArgument(offset >= 0, "invalid offset");
         this.inputs = inputs;
         this.numOutputs = numOutputs;
         this.collectExpressions = collectExpressions;
         this.offset = offset;
+        this.ramAccountingContext = ramAccountingContext;
 
         if (limit == TopN.NO_LIMIT) {
             limit = Constants.DEFAULT_SELECT_LIMIT;
@@ -135,6 +161,13 @@ public class SortingTopNProjector implements Projector, ResultProvider {
 
     @Override
     public void startProjection() {
+        try {
+            // the heap array of the queue is allocated upfront
+            ramAccountingContext.addBytes(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + (long) (maxSize + 1) * RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+        } catch (QueryMemoryLimitExceededException e) {
+            failure = e;
+        }
         pq = new RowPriorityQueue(maxSize);
         if (remainingUpstreams.get() <= 0) {
             upstreamFinished();
@@ -144,7 +177,19 @@ public class SortingTopNProjector implements Projector, ResultProvider {
 
     @Override
     public synchronized boolean setNextRow(Object... row) {
+        if (failure != null) {
+            return false;
+        }
         Object[] evaluatedRow = evaluateRow(row);
+        if (pq.size() < maxSize) {
+            // once the queue is full every insert replaces a row
+            try {
+                ramAccountingContext.addBytes(RowSizeEstimator.estimate(evaluatedRow));
+            } catch (QueryMemoryLimitExceededException e) {
+                failure = e;
+                return false;
+            }
+        }
         pq.insertWithOverflow(evaluatedRow);
         return true;
     }
@@ -169,6 +214,14 @@ public class SortingTopNProjector implements Projector, ResultProvider {
     @Override
     public void upstreamFinished() {
         if (remainingUpstreams.decrementAndGet() <= 0) {
+            if (failure != null) {
+                pq.clear();
+                result.setException(failure);
+                if (downstream != null) {
+                    downstream.upstreamFailed(failure);
+                }
+                return;
+            }
             generateResult();
         }
     }
@@ -177,6 +230,9 @@ public class SortingTopNProjector implements Projector, ResultProvider {
     public void upstreamFailed(Throwable throwable) {
         if (remainingUpstreams.decrementAndGet() <= 0) {
             result.setException(throwable);
+            if (downstream != null) {
+                downstream.upstreamFailed(throwable);
+            }
         }
     }
 
@@ -188,6 +244,14 @@ public class SortingTopNProjector implements Projector, ResultProvider {
         }
         result.set(rows);
         pq.clear();
+        if (downstream != null) {
+            for (Object[] row : rows) {
+                if (!downstream.setNextRow(row)) {
+                    break;
+                }
+            }
+            downstream.upstreamFinished();
+        }
     }
 
     @Override
@@ -209,12 +273,12 @@ public class SortingTopNProjector implements Projector, ResultProvider {
 
     @Override
     public void downstream(Projector downstream) {
-        throw new UnsupportedOperationException(
-                "SortingTopNProjector is a ResultProvider. Doesn't support downstreams");
+        downstream.registerUpstream(this);
+        this.downstream = downstream;
     }
 
     @Override
     public Projector downstream() {
-        return null;
+        return downstream;
     }
 }
@@ -19,8 +19,13 @@
  * software solely pursuant to the terms of the relevant commercial agreement.
  */
 
+
 package io.crate.operation.projectors;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.io.CountingOutputStream;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.exceptions.UnsupportedFeatureException;
 import io.crate.exceptions.ValidationException;
@@ -31,7 +36,10 @@ import io.crate.operation.projectors.writer.Output;
 import io.crate.operation.projectors.writer.OutputFile;
 import io.crate.operation.projectors.writer.OutputS3;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 
@@ -41,78 +49,156 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * writes rows to a file or s3 uri.
+ *
+ * If the output is split into parts every thread calling {@link #setNextRow(Object...)}
+ * writes to its own part file, so rows are written without locking.
+ * The first part keeps the given uri, further parts are named
+ * <code>{name}_{part}.json[.gz|.lzf]</code>. A new part is also started once
+ * the current part exceeds the <code>max_file_size</code> setting.
+ */
 public class WriterProjector implements Projector {
 
     private static final byte NEW_LINE = (byte) '\n';
+    private static final String FILE_EXTENSION = ".json";
+
+    private final String uri;
+    private final Settings settings;
+    private final Supplier<RowInputs> rowInputsSupplier;
+    private final Output firstOutput;
+
+    private final String partUriPrefix;
+    private final String partUriSuffix;
+    private final long maxFileSize;
 
-    private final URI uri;
-    private final Set<CollectExpression<?>> collectExpressions;
-    private final List<Input<?>> inputs;
-    private Output output;
+    // the current part writer of every writing thread, cleared once the projection ended
+    @Nullable
+    private final ConcurrentMap<Thread, PartWriter> threadWriters;
+    private final AtomicReference<PartWriter> unclaimedWriter = new AtomicReference<>();
+    private final Queue<PartWriter> openWriters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextPart = new AtomicInteger(1);
+    private final Object lock = new Object();
+    private PartWriter sharedWriter;
 
     protected final AtomicInteger remainingUpstreams = new AtomicInteger();
     protected final AtomicLong counter = new AtomicLong();
     private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
 
     private Projector downstream;
-    private RowWriter rowWriter;
 
-    /**
-     * @param inputs a list of {@link io.crate.operation.Input}.
-     *               If null the row that is received in {@link #setNextRow(Object...)}
-     *               is expected to contain the raw source in its first column.
-     *               That raw source is then written to the output
-     *
-     *               If inputs is not null the inputs are consumed to write a JSON array to the output.
-     */
+    public static class RowInputs {
+
+        private final List<Input<?>> inputs;
+        private final Set<CollectExpression<?>> collectExpressions;
+
+        /**
+         * @param inputs a list of {@link io.crate.operation.Input}.
+         *               If null the row that is received in {@link #setNextRow(Object...)}
+         *               is expected to contain the raw source in its first column.
+         *               That raw source is then written to the output
+         *
+         *               If inputs is not null the inputs are consumed to write a JSON array to the output.
+         */
+        public RowInputs(@Nullable List<Input<?>> inputs, Set<CollectExpression<?>> collectExpressions) {
+            this.inputs = inputs;
+            this.collectExpressions = collectExpressions;
+        }
+    }
+
     public WriterProjector(String uri,
                            Settings settings,
                            @Nullable List<Input<?>> inputs,
                            Set<CollectExpression<?>> collectExpressions) {
-        this.collectExpressions = collectExpressions;
-        this.inputs = inputs;
+        this(uri, settings, false, Suppliers.ofInstance(new RowInputs(inputs, collectExpressions)));
+    }
+
+    /**
+     * @param splitOutput if true every writing thread gets its own part file and parts are
+     *                    rotated by size, uri must then end with <code>.json</code> followed
+     *                    by the extension of the configured compression
+     * @param rowInputsSupplier creates the inputs for each part writer
+     */
+    public WriterProjector(String uri,
+                           Settings settings,
+                           boolean splitOutput,
+                           Supplier<RowInputs> rowInputsSupplier) {
+        this.uri = uri;
+        this.settings = settings;
+        this.rowInputsSupplier = rowInputsSupplier;
+        this.firstOutput = createOutput(uri);
+
+        if (splitOutput) {
+            partUriSuffix = FILE_EXTENSION + Output.fileExtension(settings);
+            Preconditions.checkArgument(uri.endsWith(partUriSuffix),
+                    "uri '%s' must end with '%s' to be split into parts", uri, partUriSuffix);
+            partUriPrefix = uri.substring(0, uri.length() - partUriSuffix.length());
+            ByteSizeValue maxFileSizeSetting = settings.getAsBytesSize("max_file_size", null);
+            maxFileSize = maxFileSizeSetting == null ? Long.MAX_VALUE : maxFileSizeSetting.bytes();
+            threadWriters = ConcurrentCollections.newConcurrentMap();
+        } else {
+            partUriSuffix = null;
+            partUriPrefix = null;
+            maxFileSize = Long.MAX_VALUE;
+            threadWriters = null;
+        }
+    }
+
+    private Output createOutput(String uri) {
+        URI parsedUri;
         try {
-            this.uri = new URI(uri);
+            parsedUri = new URI(uri);
         } catch (URISyntaxException e) {
             throw new ValidationException(String.format("Invalid uri '%s'", uri), e);
         }
-        if (this.uri.getScheme() == null || this.uri.getScheme().equals("file")) {
-            this.output = new OutputFile(this.uri, settings);
-        } else if (this.uri.getScheme().equalsIgnoreCase("s3")) {
-            this.output = new OutputS3(this.uri, settings);
+        if (parsedUri.getScheme() == null || parsedUri.getScheme().equals("file")) {
+            return new OutputFile(parsedUri, settings);
+        } else if (parsedUri.getScheme().equalsIgnoreCase("s3")) {
+            return new OutputS3(parsedUri, settings);
         } else {
-            throw new UnsupportedFeatureException(String.format("Unknown scheme '%s'", this.uri.getScheme()));
+            throw new UnsupportedFeatureException(String.format("Unknown scheme '%s'", parsedUri.getScheme()));
         }
     }
 
+    private Output nextPartOutput() {
+        return createOutput(partUriPrefix + "_" + nextPart.getAndIncrement() + partUriSuffix);
+    }
+
     @Override
     public void startProjection() {
         counter.set(0);
         try {
-            output.open();
-            if (inputs != null && !inputs.isEmpty()) {
-                rowWriter = new ColumnRowWriter(output.getOutputStream(), collectExpressions, inputs, failure);
+            PartWriter writer = new PartWriter(firstOutput, rowInputsSupplier.get());
+            if (threadWriters == null) {
+                sharedWriter = writer;
             } else {
-                rowWriter = new RawRowWriter(output.getOutputStream(), failure);
+                unclaimedWriter.set(writer);
             }
         } catch (IOException e) {
-            failure.set(new UnhandledServerException("Failed to open output", e));
+            failure.set(new UnhandledServerException(String.format("Failed to open output '%s'", uri), e));
         }
     }
 
     private void endProjection() {
-        try {
-            if (rowWriter != null) {
-                rowWriter.close();
+        if (threadWriters != null) {
+            threadWriters.clear();
+            unclaimedWriter.set(null);
+        }
+        PartWriter writer;
+        while ((writer = openWriters.poll()) != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                failure.set(new UnhandledServerException("Failed to close output", e));
             }
-            output.close();
-        } catch (IOException e) {
-            failure.set(new UnhandledServerException("Failed to close output", e));
         }
         if (downstream != null) {
             if (failure.get() == null){
@@ -125,15 +211,49 @@ public class WriterProjector implements Projector {
     }
 
     @Override
-    public synchronized boolean setNextRow(Object... row) {
+    public boolean setNextRow(Object... row) {
         if (failure.get()!=null){
             return false;
         }
-        rowWriter.write(row);
+        try {
+            if (threadWriters == null) {
+                synchronized (lock) {
+                    sharedWriter.write(row);
+                }
+            } else {
+                threadWriter().write(row);
+            }
+        } catch (IOException e) {
+            failure.set(new UnhandledServerException("Failed to write row to output", e));
+            return false;
+        }
         counter.incrementAndGet();
         return true;
     }
 
+    /**
+     * the part writer of the current thread, a new part is started if the thread has
+     * none yet or its current part exceeds the maximum file size
+     */
+    private PartWriter threadWriter() throws IOException {
+        assert threadWriters != null;
+        Thread thread = Thread.currentThread();
+        PartWriter writer = threadWriters.get(thread);
+        if (writer == null) {
+            writer = unclaimedWriter.getAndSet(null);
+            if (writer == null) {
+                writer = new PartWriter(nextPartOutput(), rowInputsSupplier.get());
+            }
+            threadWriters.put(thread, writer);
+        } else if (writer.bytesWritten() >= maxFileSize) {
+            openWriters.remove(writer);
+            writer.close();
+            writer = new PartWriter(nextPartOutput(), writer.rowInputs);
+            threadWriters.put(thread, writer);
+        }
+        return writer;
+    }
+
     @Override
     public void registerUpstream(ProjectorUpstream upstream) {
         remainingUpstreams.incrementAndGet();
@@ -164,30 +284,64 @@ public class WriterProjector implements Projector {
     }
 
 
+    private class PartWriter {
+
+        private final Output output;
+        private final RowInputs rowInputs;
+        private final CountingOutputStream outputStream;
+        private final RowWriter rowWriter;
+
+        PartWriter(Output output, RowInputs rowInputs) throws IOException {
+            this.output = output;
+            this.rowInputs = rowInputs;
+            output.open();
+            openWriters.add(this);
+            outputStream = new CountingOutputStream(output.getOutputStream());
+            if (rowInputs.inputs != null && !rowInputs.inputs.isEmpty()) {
+                rowWriter = new ColumnRowWriter(outputStream, rowInputs);
+            } else {
+                rowWriter = new RawRowWriter(outputStream);
+            }
+        }
+
+        void write(Object[] row) throws IOException {
+            rowWriter.write(row);
+        }
+
+        /**
+         * @return the number of uncompressed bytes written to this part
+         */
+        long bytesWritten() {
+            return outputStream.getCount();
+        }
+
+        void close() throws IOException {
+            try {
+                rowWriter.close();
+            } finally {
+                output.close();
+            }
+        }
+    }
+
     interface RowWriter {
-        void write(Object[] row);
-        void close();
+        void write(Object[] row) throws IOException;
+        void close() throws IOException;
     }
 
-    class RawRowWriter implements RowWriter {
+    static class RawRowWriter implements RowWriter {
 
         private final OutputStream outputStream;
-        private final AtomicReference<Throwable> failure;
 
-        RawRowWriter(OutputStream outputStream, AtomicReference<Throwable> failure) {
+        RawRowWriter(OutputStream outputStream) {
             this.outputStream = outputStream;
-            this.failure = failure;
         }
 
         @Override
-        public void write(Object[] row) {
+        public void write(Object[] row) throws IOException {
             BytesRef value = (BytesRef)row[0];
-            try {
-                outputStream.write(value.bytes, value.offset, value.length);
-                outputStream.write(NEW_LINE);
-            } catch (IOException e) {
-                failure.set(new UnhandledServerException("Failed to write row to output", e));
-            }
+            outputStream.write(value.bytes, value.offset, value.length);
+            outputStream.write(NEW_LINE);
         }
 
         @Override
@@ -196,39 +350,36 @@ public class WriterProjector implements Projector {
         }
     }
 
-    class ColumnRowWriter implements RowWriter {
-        private final Set<CollectExpression<?>> collectExpressions;
-        private final List<Input<?>> inputs;
-        private final AtomicReference<Throwable> failure;
+    /**
+     * serializes each row as JSON array into a reused in-memory buffer, so the
+     * output stream only receives whole rows and is never flushed per row
+     */
+    static class ColumnRowWriter implements RowWriter {
+        private final RowInputs rowInputs;
         private final OutputStream outputStream;
+        private final BytesStreamOutput rowBytes = new BytesStreamOutput();
         private final XContentBuilder builder;
 
-        ColumnRowWriter(OutputStream outputStream,
-                  Set<CollectExpression<?>> collectExpressions,
-                  List<Input<?>> inputs,
-                  AtomicReference<Throwable> failure) throws IOException {
+        ColumnRowWriter(OutputStream outputStream, RowInputs rowInputs) throws IOException {
             this.outputStream = outputStream;
-            this.collectExpressions = collectExpressions;
-            this.inputs = inputs;
-            this.failure = failure;
-            builder = XContentFactory.jsonBuilder(outputStream);
+            this.rowInputs = rowInputs;
+            builder = XContentFactory.jsonBuilder(rowBytes);
         }
 
-        public void write(Object[] row) {
-            for (CollectExpression<?> collectExpression : collectExpressions) {
+        @Override
+        public void write(Object[] row) throws IOException {
+            for (CollectExpression<?> collectExpression : rowInputs.collectExpressions) {
                 collectExpression.setNextRow(row);
             }
-            try {
-                builder.startArray();
-                for (Input<?> input : inputs) {
-                    builder.value(input.value());
-                }
-                builder.endArray();
-                builder.flush();
-                outputStream.write(NEW_LINE);
-            } catch (IOException e) {
-                failure.set(new UnhandledServerException("Failed to write row to output", e));
+            builder.startArray();
+            for (Input<?> input : rowInputs.inputs) {
+                builder.value(input.value());
             }
+            builder.endArray();
+            builder.flush();
+            rowBytes.bytes().writeTo(outputStream);
+            outputStream.write(NEW_LINE);
+            rowBytes.reset();
         }
 
         @Override
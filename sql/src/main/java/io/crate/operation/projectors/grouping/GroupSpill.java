@@ -0,0 +1,272 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors.grouping;
+
+import com.google.common.base.Predicate;
+import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.operation.aggregation.AggregationCollector;
+import io.crate.operation.aggregation.AggregationState;
+import io.crate.operation.projectors.spill.RowSizeEstimator;
+import io.crate.operation.projectors.spill.SpillFile;
+import io.crate.operation.projectors.spill.SpillSettings;
+import io.crate.planner.node.AggregationStateStreamer;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * groups that have been spilled to disk as partial aggregation states.
+ *
+ * Groups are partitioned by the hash of their keys, so all partial states of a group
+ * end up in the same partition no matter how often the groups were spilled.
+ * Partitions are re-aggregated one at a time, so only the groups of a single
+ * partition are kept in memory at once. The groups of a partition are accounted to the
+ * {@link RamAccountingContext} while it is reduced.
+ *
+ * A partition whose estimated size exceeds the maximum bytes in memory is split
+ * into sub partitions using a different hash first. The number of sub partitions
+ * is derived from the estimated size, this is repeated up to {@link #MAX_DEPTH} times.
+ */
+public class GroupSpill {
+
+    public static final int NUM_PARTITIONS = 16;
+
+    static final int MAX_DEPTH = 4;
+    static final int MAX_SUB_PARTITIONS = 1024;
+
+    private static final long ENTRY_OVERHEAD = 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+            + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+    private final SpillSettings spillSettings;
+    private final RamAccountingContext ramAccountingContext;
+    private final int numKeys;
+    private final int numAggregations;
+    private final Streamer<?>[] streamers;
+    private final Partition[] partitions;
+    private final List<SpillFile> files = new ArrayList<>();
+
+    /**
+     * the spill files of a partition and the estimated size of their rows in memory
+     */
+    private static class Partition {
+
+        private final List<SpillFile> files = new ArrayList<>();
+        private long estimatedBytes = 0;
+    }
+
+    /**
+     * @param numKeys number of key columns, every spilled row consists of the keys followed by one
+     *                partial state per aggregation collector
+     */
+    public GroupSpill(SpillSettings spillSettings,
+                      RamAccountingContext ramAccountingContext,
+                      int numKeys,
+                      AggregationCollector[] aggregationCollectors) {
+        this.spillSettings = spillSettings;
+        this.ramAccountingContext = ramAccountingContext;
+        this.numKeys = numKeys;
+        this.numAggregations = aggregationCollectors.length;
+        this.streamers = new Streamer<?>[numKeys + aggregationCollectors.length];
+        for (int i = 0; i < aggregationCollectors.length; i++) {
+            streamers[numKeys + i] = new AggregationStateStreamer(aggregationCollectors[i].aggregationFunction());
+        }
+        this.partitions = newPartitions(NUM_PARTITIONS);
+    }
+
+    private static Partition[] newPartitions(int numPartitions) {
+        Partition[] partitions = new Partition[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            partitions[i] = new Partition();
+        }
+        return partitions;
+    }
+
+    /**
+     * write the given rows of keys and partial states into their partitions
+     */
+    public void spill(Iterator<Object[]> rows) throws IOException {
+        write(rows, partitions, 0);
+    }
+
+    private void write(Iterator<Object[]> rows, Partition[] target, int depth) throws IOException {
+        SpillFile.Writer[] writers = new SpillFile.Writer[target.length];
+        try {
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                int p = partition(row, depth, target.length);
+                if (writers[p] == null) {
+                    SpillFile file = new SpillFile(spillSettings.directory(), "crate-group-", streamers);
+                    files.add(file);
+                    target[p].files.add(file);
+                    writers[p] = file.writer();
+                }
+                writers[p].write(row);
+                target[p].estimatedBytes += groupBytes(row);
+            }
+        } finally {
+            for (SpillFile.Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    private static long groupBytes(Object[] row) {
+        return ENTRY_OVERHEAD + RowSizeEstimator.estimate(row);
+    }
+
+    /**
+     * the partition of a row, every depth uses a different hash
+     */
+    private int partition(Object[] row, int depth, int numPartitions) {
+        int hash = 1 + depth;
+        for (int i = 0; i < numKeys; i++) {
+            hash = 31 * hash + (row[i] == null ? 0 : row[i].hashCode());
+        }
+        hash *= 0x9E3779B1 + 2 * depth;
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    /**
+     * reduce the partial states of equal keys one partition at a time,
+     * the spill files of a partition are deleted once it is reduced.
+     *
+     * @param consumer gets rows of keys followed by the reduced partial states,
+     *                 returns false if no more rows are needed
+     */
+    public void reduce(Predicate<Object[]> consumer) throws IOException {
+        for (Partition partition : partitions) {
+            if (!reduce(partition, 0, consumer)) {
+                return;
+            }
+        }
+    }
+
+    private boolean reduce(Partition partition, int depth, Predicate<Object[]> consumer) throws IOException {
+        long maxBytes = spillSettings.maxBytesInMemory();
+        if (partition.estimatedBytes > maxBytes && depth < MAX_DEPTH) {
+            long needed = (partition.estimatedBytes + maxBytes - 1) / maxBytes;
+            int numSubPartitions = (int) Math.min(MAX_SUB_PARTITIONS, Math.max(2, 2 * needed));
+            Partition[] subPartitions = newPartitions(numSubPartitions);
+            for (SpillFile file : partition.files) {
+                try (SpillFile.Reader reader = file.reader()) {
+                    write(new ReaderIterator(reader), subPartitions, depth + 1);
+                }
+                file.delete();
+            }
+            partition.files.clear();
+            for (Partition subPartition : subPartitions) {
+                if (!reduce(subPartition, depth + 1, consumer)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Map<List<Object>, Object[]> groups = new HashMap<>();
+        long accountedBytes = 0;
+        try {
+            for (SpillFile file : partition.files) {
+                try (SpillFile.Reader reader = file.reader()) {
+                    Object[] row;
+                    while ((row = reader.next()) != null) {
+                        List<Object> key = Arrays.asList(Arrays.copyOfRange(row, 0, numKeys));
+                        Object[] existing = groups.get(key);
+                        if (existing == null) {
+                            long bytes = groupBytes(row);
+                            ramAccountingContext.addBytes(bytes);
+                            accountedBytes += bytes;
+                            groups.put(key, row);
+                        } else {
+                            for (int i = numKeys; i < numKeys + numAggregations; i++) {
+                                ((AggregationState) existing[i]).reduce((AggregationState) row[i]);
+                            }
+                        }
+                    }
+                }
+                file.delete();
+            }
+            partition.files.clear();
+            for (Object[] row : groups.values()) {
+                if (!consumer.apply(row)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            ramAccountingContext.addBytes(-accountedBytes);
+        }
+    }
+
+    /**
+     * delete all spill files that haven't been reduced
+     */
+    public void delete() {
+        for (SpillFile file : files) {
+            file.delete();
+        }
+        files.clear();
+        for (Partition partition : partitions) {
+            partition.files.clear();
+        }
+    }
+
+    private static class ReaderIterator implements Iterator<Object[]> {
+
+        private final SpillFile.Reader reader;
+        private Object[] next;
+
+        ReaderIterator(SpillFile.Reader reader) throws IOException {
+            this.reader = reader;
+            this.next = reader.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Object[] next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Object[] current = next;
+            try {
+                next = reader.next();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read spilled groups", e);
+            }
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors.grouping;
+
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.operation.Input;
+import io.crate.types.DataType;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongHash;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * maps the values of the group key inputs to dense group ids.
+ *
+ * Every key column assigns ordinals to its own values. With more than one key the ordinals
+ * are combined pairwise: (group id of the first n columns, ordinal of column n + 1) is packed
+ * into a single long and looked up in another {@link LongHash}, whose id becomes the group id
+ * for the first n + 1 columns. Looking up a key therefore never allocates.
+ *
+ * Group ids start at 0 and are dense, but in the single key case id 0 is reserved for
+ * the null group, which might never be used.
+ *
+ * The packed longs limit the ordinals of a key column and the group ids to {@link Integer#MAX_VALUE},
+ * adding keys beyond that fails with an {@link UnsupportedFeatureException}.
+ */
+public class GroupTable {
+
+    private static final long INITIAL_CAPACITY = 16;
+    private static final long MAX_CODE = Integer.MAX_VALUE;
+
+    private final KeyColumn[] columns;
+    private final LongHash[] levels;
+
+    private boolean nullGroupSeen = false;
+    private boolean lastAddCreatedGroup;
+
+    public GroupTable(List<DataType> keyTypes, BigArrays bigArrays) {
+        assert supports(keyTypes) : "unsupported key types";
+        columns = new KeyColumn[keyTypes.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = KeyColumn.forType(keyTypes.get(i), bigArrays);
+        }
+        levels = new LongHash[columns.length - 1];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new LongHash(INITIAL_CAPACITY, bigArrays);
+        }
+    }
+
+    public static boolean supports(List<DataType> keyTypes) {
+        if (keyTypes == null || keyTypes.isEmpty()) {
+            return false;
+        }
+        for (DataType keyType : keyTypes) {
+            if (keyType == null || !KeyColumn.supports(keyType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int numKeys() {
+        return columns.length;
+    }
+
+    /**
+     * add the current values of the keyInputs
+     *
+     * @return the id of the group the values belong to
+     */
+    public long add(List<Input<?>> keyInputs) {
+        long sizeBefore = columns[0].size();
+        long groupId = code(columns[0].add(keyInputs.get(0).value()));
+        if (levels.length == 0) {
+            if (groupId == 0) {
+                lastAddCreatedGroup = !nullGroupSeen;
+                nullGroupSeen = true;
+            } else {
+                lastAddCreatedGroup = columns[0].size() > sizeBefore;
+            }
+            return groupId;
+        }
+        for (int i = 0; i < levels.length; i++) {
+            long keyCode = code(columns[i + 1].add(keyInputs.get(i + 1).value()));
+            if (groupId > MAX_CODE || keyCode > MAX_CODE) {
+                throw new UnsupportedFeatureException(String.format(Locale.ENGLISH,
+                        "GROUP BY with more than %d distinct values of a key or %d groups is not supported",
+                        MAX_CODE, MAX_CODE));
+            }
+            groupId = levels[i].add((groupId << 32) | keyCode);
+            lastAddCreatedGroup = groupId >= 0;
+            if (groupId < 0) {
+                groupId = -1 - groupId;
+            }
+        }
+        return groupId;
+    }
+
+    /**
+     * @return true if the last call to {@link #add(java.util.List)} created a new group
+     */
+    public boolean lastAddCreatedGroup() {
+        return lastAddCreatedGroup;
+    }
+
+    /**
+     * @return true if the given id, which must be lower than {@link #maxGroupId()}, belongs to a group
+     */
+    public boolean exists(long groupId) {
+        return groupId != 0 || levels.length > 0 || nullGroupSeen;
+    }
+
+    /**
+     * @return number of groups
+     */
+    public long size() {
+        if (levels.length == 0) {
+            return columns[0].size() + (nullGroupSeen ? 1 : 0);
+        }
+        return levels[levels.length - 1].size();
+    }
+
+    /**
+     * @return the upper bound (exclusive) of the group ids handed out so far
+     */
+    public long maxGroupId() {
+        if (levels.length == 0) {
+            return columns[0].size() + 1;
+        }
+        return levels[levels.length - 1].size();
+    }
+
+    /**
+     * write the key values of the given group into the first {@link #numKeys()} columns of row
+     */
+    public void keys(long groupId, Object[] row) {
+        for (int i = levels.length - 1; i >= 0; i--) {
+            long packed = levels[i].get(groupId);
+            row[i + 1] = columns[i + 1].key((packed & 0xFFFFFFFFL) - 1);
+            groupId = packed >>> 32;
+        }
+        row[0] = columns[0].key(groupId - 1);
+    }
+
+    public void release() {
+        for (KeyColumn column : columns) {
+            column.release();
+        }
+        for (LongHash level : levels) {
+            level.release();
+        }
+    }
+
+    /**
+     * shift the ordinals by one so that null keys get code 0
+     */
+    private static long code(long ordinal) {
+        return ordinal + 1;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors.grouping;
+
+import io.crate.types.*;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongHash;
+
+/**
+ * assigns dense ordinals to the values of a single group key column.
+ *
+ * The values are kept in flat, open-addressed hash tables allocated through {@link BigArrays},
+ * so adding a value that was already seen does not allocate.
+ */
+public abstract class KeyColumn {
+
+    public static final long NULL_ORDINAL = -1L;
+
+    private static final long INITIAL_CAPACITY = 16;
+
+    protected final DataType type;
+
+    protected KeyColumn(DataType type) {
+        this.type = type;
+    }
+
+    public static boolean supports(DataType type) {
+        return isLongType(type) || isDoubleType(type) || type instanceof StringType;
+    }
+
+    public static KeyColumn forType(DataType type, BigArrays bigArrays) {
+        if (isLongType(type)) {
+            return new LongKeyColumn(type, bigArrays);
+        } else if (isDoubleType(type)) {
+            return new DoubleKeyColumn(type, bigArrays);
+        } else if (type instanceof StringType) {
+            return new BytesRefKeyColumn(type, bigArrays);
+        }
+        throw new IllegalArgumentException(String.format("Unsupported group key type: %s", type));
+    }
+
+    private static boolean isLongType(DataType type) {
+        return DataTypes.INTEGRAL_TYPES.contains(type);
+    }
+
+    private static boolean isDoubleType(DataType type) {
+        return DataTypes.FLOATING_POINT_TYPES.contains(type);
+    }
+
+    /**
+     * add a value if it isn't known yet
+     *
+     * @return the ordinal of the value or {@link #NULL_ORDINAL} if the value is null
+     */
+    public abstract long add(Object value);
+
+    /**
+     * @return the value of the given ordinal converted to the type of this column
+     */
+    public abstract Object key(long ordinal);
+
+    /**
+     * @return number of distinct non-null values
+     */
+    public abstract long size();
+
+    public abstract void release();
+
+
+    static class LongKeyColumn extends KeyColumn {
+
+        private final LongHash hash;
+
+        LongKeyColumn(DataType type, BigArrays bigArrays) {
+            super(type);
+            this.hash = new LongHash(INITIAL_CAPACITY, bigArrays);
+        }
+
+        @Override
+        public long add(Object value) {
+            if (value == null) {
+                return NULL_ORDINAL;
+            }
+            long ordinal = hash.add(((Number) value).longValue());
+            return ordinal < 0 ? -1 - ordinal : ordinal;
+        }
+
+        @Override
+        public Object key(long ordinal) {
+            if (ordinal == NULL_ORDINAL) {
+                return null;
+            }
+            return type.value(hash.get(ordinal));
+        }
+
+        @Override
+        public long size() {
+            return hash.size();
+        }
+
+        @Override
+        public void release() {
+            hash.release();
+        }
+    }
+
+    static class DoubleKeyColumn extends KeyColumn {
+
+        private final LongHash hash;
+
+        DoubleKeyColumn(DataType type, BigArrays bigArrays) {
+            super(type);
+            this.hash = new LongHash(INITIAL_CAPACITY, bigArrays);
+        }
+
+        @Override
+        public long add(Object value) {
+            if (value == null) {
+                return NULL_ORDINAL;
+            }
+            long ordinal = hash.add(Double.doubleToLongBits(((Number) value).doubleValue()));
+            return ordinal < 0 ? -1 - ordinal : ordinal;
+        }
+
+        @Override
+        public Object key(long ordinal) {
+            if (ordinal == NULL_ORDINAL) {
+                return null;
+            }
+            return type.value(Double.longBitsToDouble(hash.get(ordinal)));
+        }
+
+        @Override
+        public long size() {
+            return hash.size();
+        }
+
+        @Override
+        public void release() {
+            hash.release();
+        }
+    }
+
+    static class BytesRefKeyColumn extends KeyColumn {
+
+        private final BytesRefHash hash;
+        private final BytesRef spare = new BytesRef();
+
+        BytesRefKeyColumn(DataType type, BigArrays bigArrays) {
+            super(type);
+            this.hash = new BytesRefHash(INITIAL_CAPACITY, bigArrays);
+        }
+
+        @Override
+        public long add(Object value) {
+            if (value == null) {
+                return NULL_ORDINAL;
+            }
+            BytesRef bytesRef = value instanceof BytesRef ? (BytesRef) value : (BytesRef) type.value(value);
+            long ordinal = hash.add(bytesRef);
+            return ordinal < 0 ? -1 - ordinal : ordinal;
+        }
+
+        @Override
+        public Object key(long ordinal) {
+            if (ordinal == NULL_ORDINAL) {
+                return null;
+            }
+            // the hash returns a view on its pages, which are released once grouping is done
+            return BytesRef.deepCopyOf(hash.get(ordinal, spare));
+        }
+
+        @Override
+        public long size() {
+            return hash.size();
+        }
+
+        @Override
+        public void release() {
+            hash.release();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.grouping;
+
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.AggregationCollector;
+import io.crate.operation.aggregation.StateColumns;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.OrdinalVector;
+import io.crate.operation.block.RowBlock;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.Projector;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+
+import java.util.List;
+
+/**
+ * groups the rows of a segment by the field data ordinal of their single string key.
+ *
+ * The aggregation states of a segment are kept in dense state columns indexed by ordinal,
+ * so rows are neither hashed nor are their keys copied.
+ * Ordinals are resolved to their terms once per group when the segment is finished
+ * and its groups are emitted as partial rows.
+ */
+public class OrdinalGrouper {
+
+    /**
+     * segments with more distinct values are grouped by their values
+     */
+    public static final long MAX_ORDINALS = 1 << 16;
+
+    private final int keyPosition;
+    private final List<CollectExpression<?>> collectExpressions;
+    private final AggregationCollector[] aggregationCollectors;
+    private final BigArrays bigArrays;
+    private final StateColumns[] stateColumns;
+    private final boolean needsRows;
+
+    private BytesValues.WithOrdinals values;
+    private FixedBitSet seen;
+    private Object[] row;
+
+    /**
+     * @return true if the key is a plain row column and all aggregations have a fixed width state
+     *         and don't use the key column as input
+     */
+    public static boolean supports(List<Input<?>> keyInputs, AggregationCollector[] aggregationCollectors) {
+        if (keyInputs.size() != 1 || !(keyInputs.get(0) instanceof InputCollectExpression)) {
+            return false;
+        }
+        int keyPosition = ((InputCollectExpression) keyInputs.get(0)).position();
+        for (AggregationCollector aggregationCollector : aggregationCollectors) {
+            int[] inputPositions = aggregationCollector.inputPositions();
+            if (!aggregationCollector.hasFixedWidthState() || inputPositions == null) {
+                return false;
+            }
+            for (int inputPosition : inputPositions) {
+                if (inputPosition == keyPosition) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public OrdinalGrouper(List<Input<?>> keyInputs,
+                          List<CollectExpression<?>> collectExpressions,
+                          AggregationCollector[] aggregationCollectors,
+                          BigArrays bigArrays) {
+        assert supports(keyInputs, aggregationCollectors);
+        this.keyPosition = ((InputCollectExpression) keyInputs.get(0)).position();
+        this.collectExpressions = collectExpressions;
+        this.aggregationCollectors = aggregationCollectors;
+        this.bigArrays = bigArrays;
+        this.stateColumns = new StateColumns[aggregationCollectors.length];
+        boolean needsRows = false;
+        for (AggregationCollector aggregationCollector : aggregationCollectors) {
+            needsRows |= aggregationCollector.inputPositions().length > 0;
+        }
+        this.needsRows = needsRows;
+    }
+
+    /**
+     * @return true if the key column of the block contains ordinals of a segment with few enough values
+     */
+    public boolean accepts(RowBlock block) {
+        ColumnVector keys = block.column(keyPosition);
+        return keys instanceof OrdinalVector && ((OrdinalVector) keys).maxOrd() <= MAX_ORDINALS;
+    }
+
+    /**
+     * @return true if the block contains rows of another segment than the groups of this grouper,
+     *         which have to be emitted before the block can be added
+     */
+    public boolean segmentChanged(RowBlock block) {
+        return values != null && ((OrdinalVector) block.column(keyPosition)).values() != values;
+    }
+
+    /**
+     * add the rows of a block of the current segment
+     */
+    public void setNextBlock(RowBlock block) {
+        OrdinalVector keys = (OrdinalVector) block.column(keyPosition);
+        if (values == null) {
+            allocate(keys);
+        }
+        if (row == null || row.length != block.numColumns()) {
+            row = new Object[block.numColumns()];
+        }
+        for (int r = 0; r < block.size(); r++) {
+            long ord = keys.get(r);
+            if (needsRows) {
+                for (int c = 0; c < row.length; c++) {
+                    if (c != keyPosition) {
+                        row[c] = block.column(c).value(r);
+                    }
+                }
+                for (CollectExpression<?> collectExpression : collectExpressions) {
+                    collectExpression.setNextRow(row);
+                }
+            }
+            if (!seen.get((int) ord)) {
+                seen.set((int) ord);
+                for (int i = 0; i < aggregationCollectors.length; i++) {
+                    aggregationCollectors[i].startCollect(stateColumns[i], ord);
+                }
+            }
+            for (int i = 0; i < aggregationCollectors.length; i++) {
+                aggregationCollectors[i].processRow(stateColumns[i], ord);
+            }
+        }
+    }
+
+    private void allocate(OrdinalVector keys) {
+        values = keys.values();
+        long maxOrd = keys.maxOrd();
+        seen = new FixedBitSet((int) maxOrd + 1);
+        for (int i = 0; i < aggregationCollectors.length; i++) {
+            stateColumns[i] = aggregationCollectors[i].newStateColumns(bigArrays);
+            stateColumns[i].ensureCapacity(maxOrd);
+        }
+    }
+
+    /**
+     * send the groups of the current segment as rows of the key followed by the partial aggregation states
+     * downstream and remove them.
+     *
+     * @return false if the downstream doesn't need any more rows
+     */
+    public boolean emit(Projector downstream) {
+        if (values == null) {
+            return true;
+        }
+        boolean needMore = true;
+        try {
+            for (int ord = seen.nextSetBit(0); needMore && ord >= 0;
+                 ord = ord + 1 < seen.length() ? seen.nextSetBit(ord + 1) : -1) {
+                Object[] groupRow = new Object[1 + aggregationCollectors.length];
+                groupRow[0] = ord == Ordinals.MISSING_ORDINAL ? null : BytesRef.deepCopyOf(values.getValueByOrd(ord));
+                for (int i = 0; i < aggregationCollectors.length; i++) {
+                    groupRow[i + 1] = aggregationCollectors[i].partialState(stateColumns[i], ord);
+                }
+                needMore = downstream.setNextRow(groupRow);
+            }
+        } finally {
+            release();
+        }
+        return needMore;
+    }
+
+    /**
+     * remove the groups of the current segment without emitting them
+     */
+    public void release() {
+        for (int i = 0; i < stateColumns.length; i++) {
+            if (stateColumns[i] != null) {
+                stateColumns[i].release();
+                stateColumns[i] = null;
+            }
+        }
+        values = null;
+        seen = null;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.spill;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * rough, cheap estimation of the heap used by rows buffered inside a projector.
+ * It does not need to be exact, it only decides when to spill.
+ */
+public class RowSizeEstimator {
+
+    private static final long OBJECT_OVERHEAD = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+            + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    private static final long NUMBER_SIZE = OBJECT_OVERHEAD + RamUsageEstimator.NUM_BYTES_LONG;
+    private static final long UNKNOWN_SIZE = 64;
+
+    private RowSizeEstimator() {}
+
+    public static long estimate(Object[] row) {
+        long size = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+        for (Object value : row) {
+            size += estimate(value);
+        }
+        return size;
+    }
+
+    public static long estimate(@Nullable Object value) {
+        if (value == null) {
+            return RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        } else if (value instanceof BytesRef) {
+            return OBJECT_OVERHEAD + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + ((BytesRef) value).length;
+        } else if (value instanceof String) {
+            return OBJECT_OVERHEAD + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + ((String) value).length() * RamUsageEstimator.NUM_BYTES_CHAR;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return NUMBER_SIZE;
+        } else if (value instanceof Object[]) {
+            return estimate((Object[]) value);
+        } else if (value instanceof Collection) {
+            long size = OBJECT_OVERHEAD;
+            for (Object o : (Collection) value) {
+                size += estimate(o);
+            }
+            return size;
+        } else if (value instanceof Map) {
+            long size = OBJECT_OVERHEAD;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += OBJECT_OVERHEAD + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return size;
+        }
+        return UNKNOWN_SIZE;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.spill;
+
+import io.crate.Streamer;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * a temporary file holding rows that did not fit into memory.
+ *
+ * Values are written using the {@link io.crate.Streamer} of their {@link io.crate.types.DataType},
+ * prefixed by the type so that rows can be read back without knowing the column types upfront.
+ * Values without a matching type (Strings, Lists, Maps, arrays) fall back to the
+ * generic value format of {@link org.elasticsearch.common.io.stream.StreamOutput}.
+ * Columns whose streamer is known upfront (e.g. aggregation states) are written with that
+ * streamer only.
+ */
+public class SpillFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte NULL = 0;
+    private static final byte TYPED = 1;
+    private static final byte GENERIC = 2;
+
+    private final File file;
+    private final Streamer<?>[] columnStreamers;
+    private int numRows = 0;
+
+    public SpillFile(File directory, String prefix) throws IOException {
+        this(directory, prefix, new Streamer<?>[0]);
+    }
+
+    /**
+     * @param columnStreamers streamers by column index, columns without a streamer are written with their type
+     */
+    public SpillFile(File directory, String prefix, Streamer<?>[] columnStreamers) throws IOException {
+        this.file = File.createTempFile(prefix, ".spill", directory);
+        this.columnStreamers = columnStreamers;
+    }
+
+    /**
+     * write at most <code>limit</code> rows to this file, overwriting previous content
+     */
+    public void write(Iterator<Object[]> rows, int limit) throws IOException {
+        try (Writer writer = writer()) {
+            int written = 0;
+            while (written < limit && rows.hasNext()) {
+                writer.write(rows.next());
+                written++;
+            }
+        }
+    }
+
+    /**
+     * @return a writer that overwrites the content of this file
+     */
+    public Writer writer() throws IOException {
+        numRows = 0;
+        return new Writer(new OutputStreamStreamOutput(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)));
+    }
+
+    public Reader reader() throws IOException {
+        return new Reader(new InputStreamStreamInput(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)), numRows);
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    private static void writeValue(StreamOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        DataType type = null;
+        if (value instanceof BytesRef || value instanceof Number || value instanceof Boolean) {
+            type = DataTypes.guessType(value);
+        }
+        if (type != null) {
+            out.writeByte(TYPED);
+            DataTypes.toStream(type, out);
+            type.streamer().writeValueTo(out, value);
+        } else {
+            out.writeByte(GENERIC);
+            out.writeGenericValue(value);
+        }
+    }
+
+    @Nullable
+    private static Object readValue(StreamInput in) throws IOException {
+        byte marker = in.readByte();
+        switch (marker) {
+            case NULL:
+                return null;
+            case TYPED:
+                return DataTypes.fromStream(in).streamer().readValueFrom(in);
+            case GENERIC:
+                return in.readGenericValue();
+            default:
+                throw new IOException("invalid spill file value marker: " + marker);
+        }
+    }
+
+    @Nullable
+    private Streamer<?> columnStreamer(int column) {
+        return column < columnStreamers.length ? columnStreamers[column] : null;
+    }
+
+    public class Writer implements Closeable {
+
+        private final StreamOutput out;
+
+        Writer(StreamOutput out) {
+            this.out = out;
+        }
+
+        public void write(Object[] row) throws IOException {
+            out.writeVInt(row.length);
+            for (int i = 0; i < row.length; i++) {
+                Streamer<?> streamer = columnStreamer(i);
+                if (streamer == null) {
+                    writeValue(out, row[i]);
+                } else {
+                    streamer.writeValueTo(out, row[i]);
+                }
+            }
+            numRows++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * sequential reader over the rows of a spill file
+     */
+    public class Reader implements Closeable {
+
+        private final StreamInput in;
+        private int remaining;
+
+        Reader(StreamInput in, int numRows) {
+            this.in = in;
+            this.remaining = numRows;
+        }
+
+        /**
+         * @return the next row or null if all rows have been read
+         */
+        @Nullable
+        public Object[] next() throws IOException {
+            if (remaining <= 0) {
+                return null;
+            }
+            remaining--;
+            Object[] row = new Object[in.readVInt()];
+            for (int i = 0; i < row.length; i++) {
+                Streamer<?> streamer = columnStreamer(i);
+                if (streamer == null) {
+                    row[i] = readValue(in);
+                } else {
+                    row[i] = streamer.readValueFrom(in);
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.spill;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.io.File;
+
+/**
+ * thresholds that decide when projectors stop buffering rows in memory
+ * and start spilling them to temporary files.
+ */
+@Singleton
+public class SpillSettings {
+
+    public static final String SETTING_MAX_ROWS_IN_MEMORY = "crate.sql.spill.max_rows_in_memory";
+    public static final String SETTING_MAX_BYTES_IN_MEMORY = "crate.sql.spill.max_bytes_in_memory";
+    public static final String SETTING_PATH = "crate.sql.spill.path";
+
+    public static final int DEFAULT_MAX_ROWS_IN_MEMORY = 100000;
+    public static final ByteSizeValue DEFAULT_MAX_BYTES_IN_MEMORY = new ByteSizeValue(64, ByteSizeUnit.MB);
+
+    public static final SpillSettings DEFAULT = new SpillSettings(ImmutableSettings.EMPTY);
+
+    private final int maxRowsInMemory;
+    private final long maxBytesInMemory;
+    private final File directory;
+
+    @Inject
+    public SpillSettings(Settings settings) {
+        this(settings.getAsInt(SETTING_MAX_ROWS_IN_MEMORY, DEFAULT_MAX_ROWS_IN_MEMORY),
+             settings.getAsBytesSize(SETTING_MAX_BYTES_IN_MEMORY, DEFAULT_MAX_BYTES_IN_MEMORY).bytes(),
+             new File(settings.get(SETTING_PATH, System.getProperty("java.io.tmpdir"))));
+    }
+
+    public SpillSettings(int maxRowsInMemory, long maxBytesInMemory, File directory) {
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.maxBytesInMemory = maxBytesInMemory;
+        this.directory = directory;
+    }
+
+    /**
+     * the maximum number of rows a projector keeps in memory before spilling
+     */
+    public int maxRowsInMemory() {
+        return maxRowsInMemory;
+    }
+
+    /**
+     * the maximum estimated size in bytes of the rows a projector keeps in memory before spilling
+     */
+    public long maxBytesInMemory() {
+        return maxBytesInMemory;
+    }
+
+    /**
+     * the directory spill files are created in
+     */
+    public File directory() {
+        return directory;
+    }
+
+    public boolean exceeded(int rows, long bytes) {
+        return rows >= maxRowsInMemory || bytes >= maxBytesInMemory;
+    }
+}
@@ -19,29 +19,105 @@
  * software solely pursuant to the terms of the relevant commercial agreement.
  */
 
+
 package io.crate.operation.projectors.writer;
 
 import com.google.common.base.Preconditions;
+import org.elasticsearch.common.compress.lzf.LZFCompressor;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
 import org.elasticsearch.common.settings.Settings;
 
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class Output {
 
+    public static final String COMPRESSION_GZIP = "gzip";
+    public static final String COMPRESSION_LZF = "lzf";
+
+    /**
+     * rows are collected in blocks of this size before they are compressed
+     * and handed to the underlying stream
+     */
+    protected static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final LZFCompressor LZF_COMPRESSOR = new LZFCompressor();
+
+    protected final String compression;
+    protected final int compressionLevel;
+
+    protected Output(Settings settings) {
+        compression = parseCompression(settings);
+        compressionLevel = parseCompressionLevel(settings, compression);
+    }
+
     public abstract void open() throws java.io.IOException;
 
     public abstract void close() throws java.io.IOException;
 
     public abstract OutputStream getOutputStream();
 
-    protected boolean parseCompression(Settings settings) {
+    /**
+     * @return the file extension matching the compression in the given settings, e.g. <code>.gz</code>
+     */
+    public static String fileExtension(Settings settings) {
+        String compression = parseCompression(settings);
+        if (COMPRESSION_GZIP.equals(compression)) {
+            return ".gz";
+        } else if (COMPRESSION_LZF.equals(compression)) {
+            return ".lzf";
+        }
+        return "";
+    }
+
+    /**
+     * wrap the given stream with the configured compression and a block buffer
+     */
+    protected OutputStream wrap(OutputStream outputStream) throws IOException {
+        if (COMPRESSION_GZIP.equals(compression)) {
+            outputStream = new LeveledGZIPOutputStream(outputStream, compressionLevel);
+        } else if (COMPRESSION_LZF.equals(compression)) {
+            outputStream = LZF_COMPRESSOR.streamOutput(new OutputStreamStreamOutput(outputStream));
+        }
+        return new BufferedOutputStream(outputStream, BUFFER_SIZE);
+    }
+
+    @Nullable
+    protected static String parseCompression(Settings settings) {
         String compressionType = settings.get("compression");
         if (compressionType != null) {
-            Preconditions.checkArgument(compressionType.equals("gzip"),
+            compressionType = compressionType.toLowerCase(Locale.ENGLISH);
+            Preconditions.checkArgument(
+                    compressionType.equals(COMPRESSION_GZIP) || compressionType.equals(COMPRESSION_LZF),
                     String.format("Unsupported compression type: '%s'", compressionType));
-            return true;
         }
+        return compressionType;
+    }
 
-        return false;
+    /**
+     * the compression level only applies to gzip, lzf has no levels
+     */
+    protected static int parseCompressionLevel(Settings settings, @Nullable String compression) {
+        Preconditions.checkArgument(
+                settings.get("compression_level") == null || COMPRESSION_GZIP.equals(compression),
+                "compression_level is only supported for gzip compression");
+        int level = settings.getAsInt("compression_level", Deflater.DEFAULT_COMPRESSION);
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+                        || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+                String.format("Invalid compression level: %d", level));
+        return level;
+    }
+
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
     }
 }
@@ -29,19 +29,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-import java.util.zip.GZIPOutputStream;
 
 public class OutputFile extends Output {
 
     private final String path;
     private OutputStream os;
     private final boolean overwrite;
-    private final boolean compression;
 
     public OutputFile(URI uri, Settings settings) {
+        super(settings);
         Preconditions.checkArgument(uri.getHost() == null);
         this.path = uri.getPath();
-        compression = parseCompression(settings);
         this.overwrite = true;
     }
 
@@ -56,10 +54,7 @@ public class OutputFile extends Output {
                 throw new IOException("Output path is a directory: " + path);
             }
         }
-        os = new FileOutputStream(outFile);
-        if (compression) {
-            os = new GZIPOutputStream(os);
-        }
+        os = wrap(new FileOutputStream(outFile));
     }
 
     @Override
@@ -41,26 +41,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.zip.GZIPOutputStream;
 
 @NotThreadSafe
 public class OutputS3 extends Output {
 
     private final URI uri;
-    private final boolean compression;
     private OutputStream outputStream;
 
     public OutputS3(URI uri, Settings settings) {
+        super(settings);
         this.uri = uri;
-        compression = parseCompression(settings);
     }
 
     @Override
     public void open() throws IOException {
-        outputStream = new S3OutputStream(uri, new S3ClientHelper());
-        if (compression) {
-            outputStream = new GZIPOutputStream(outputStream);
-        }
+        outputStream = wrap(new S3OutputStream(uri, new S3ClientHelper()));
     }
 
     @Override
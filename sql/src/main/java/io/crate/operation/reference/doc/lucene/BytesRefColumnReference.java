@@ -21,6 +21,9 @@
 
 package io.crate.operation.reference.doc.lucene;
 
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.ObjectVector;
+import io.crate.operation.block.OrdinalVector;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.util.BytesRef;
 import io.crate.exceptions.GroupByOnArrayUnsupportedException;
@@ -29,8 +32,10 @@ import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.index.fielddata.BytesValues;
 import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
 
-public class BytesRefColumnReference extends FieldCacheExpression<IndexFieldData, BytesRef> {
+public class BytesRefColumnReference extends FieldCacheExpression<IndexFieldData, BytesRef>
+        implements BlockCollectorExpression {
 
     private BytesValues values;
 
@@ -51,6 +56,55 @@ public class BytesRefColumnReference extends FieldCacheExpression<IndexFieldData
         }
     }
 
+    /**
+     * if the field data has ordinals the block is filled with the ordinals of the docs,
+     * the terms are copied otherwise.
+     */
+    @Override
+    public ColumnVector newVector(int capacity) {
+        if (indexFieldData instanceof IndexFieldData.WithOrdinals) {
+            return new OrdinalVector(capacity);
+        }
+        return new ObjectVector(capacity);
+    }
+
+    @Override
+    public void fill(int[] docs, int count, ColumnVector vector) {
+        if (vector instanceof OrdinalVector) {
+            fillOrdinals(docs, count, (OrdinalVector) vector);
+            return;
+        }
+        ObjectVector objects = (ObjectVector) vector;
+        for (int i = 0; i < count; i++) {
+            docId = docs[i];
+            objects.set(i, value());
+        }
+    }
+
+    private void fillOrdinals(int[] docs, int count, OrdinalVector vector) {
+        // field data with ordinals loads values with ordinals for every segment
+        BytesValues.WithOrdinals ordinalValues = (BytesValues.WithOrdinals) values;
+        Ordinals.Docs ordinals = ordinalValues.ordinals();
+        vector.values(ordinalValues);
+        boolean multiValued = ordinals.isMultiValued();
+        for (int i = 0; i < count; i++) {
+            if (!multiValued) {
+                vector.set(i, ordinals.getOrd(docs[i]));
+                continue;
+            }
+            switch (ordinals.setDocument(docs[i])) {
+                case 0:
+                    vector.set(i, Ordinals.MISSING_ORDINAL);
+                    break;
+                case 1:
+                    vector.set(i, ordinals.nextOrd());
+                    break;
+                default:
+                    throw new GroupByOnArrayUnsupportedException(columnName());
+            }
+        }
+    }
+
     @Override
     public void setNextReader(AtomicReaderContext context) {
         super.setNextReader(context);
@@ -22,13 +22,16 @@
 package io.crate.operation.reference.doc.lucene;
 
 import io.crate.exceptions.GroupByOnArrayUnsupportedException;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.DoubleVector;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.elasticsearch.index.fielddata.DoubleValues;
 import org.elasticsearch.index.fielddata.IndexNumericFieldData;
 
-public class DoubleColumnReference extends FieldCacheExpression<IndexNumericFieldData, Double> {
+public class DoubleColumnReference extends FieldCacheExpression<IndexNumericFieldData, Double>
+        implements BlockCollectorExpression {
 
     private DoubleValues values;
 
@@ -48,6 +51,28 @@ public class DoubleColumnReference extends FieldCacheExpression<IndexNumericFiel
         }
     }
 
+    @Override
+    public ColumnVector newVector(int capacity) {
+        return new DoubleVector(capacity, DataTypes.DOUBLE);
+    }
+
+    @Override
+    public void fill(int[] docs, int count, ColumnVector vector) {
+        DoubleVector doubles = (DoubleVector) vector;
+        for (int i = 0; i < count; i++) {
+            switch (values.setDocument(docs[i])) {
+                case 0:
+                    doubles.setNull(i);
+                    break;
+                case 1:
+                    doubles.set(i, values.nextValue());
+                    break;
+                default:
+                    throw new GroupByOnArrayUnsupportedException(columnName());
+            }
+        }
+    }
+
     @Override
     public void setNextReader(AtomicReaderContext context) {
         super.setNextReader(context);
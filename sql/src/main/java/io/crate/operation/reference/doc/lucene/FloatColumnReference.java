@@ -21,6 +21,8 @@
 
 package io.crate.operation.reference.doc.lucene;
 
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.DoubleVector;
 import io.crate.types.FloatType;
 import org.apache.lucene.index.AtomicReaderContext;
 import io.crate.types.DataType;
@@ -28,7 +30,8 @@ import io.crate.exceptions.GroupByOnArrayUnsupportedException;
 import org.elasticsearch.index.fielddata.DoubleValues;
 import org.elasticsearch.index.fielddata.IndexNumericFieldData;
 
-public class FloatColumnReference extends FieldCacheExpression<IndexNumericFieldData, Float> {
+public class FloatColumnReference extends FieldCacheExpression<IndexNumericFieldData, Float>
+        implements BlockCollectorExpression {
 
     DoubleValues values;
 
@@ -48,6 +51,28 @@ public class FloatColumnReference extends FieldCacheExpression<IndexNumericField
         }
     }
 
+    @Override
+    public ColumnVector newVector(int capacity) {
+        return new DoubleVector(capacity, FloatType.INSTANCE);
+    }
+
+    @Override
+    public void fill(int[] docs, int count, ColumnVector vector) {
+        DoubleVector doubles = (DoubleVector) vector;
+        for (int i = 0; i < count; i++) {
+            switch (values.setDocument(docs[i])) {
+                case 0:
+                    doubles.setNull(i);
+                    break;
+                case 1:
+                    doubles.set(i, (float) values.nextValue());
+                    break;
+                default:
+                    throw new GroupByOnArrayUnsupportedException(columnName());
+            }
+        }
+    }
+
     @Override
     public void setNextReader(AtomicReaderContext context) {
         super.setNextReader(context);
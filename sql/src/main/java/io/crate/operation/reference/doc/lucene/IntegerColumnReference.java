@@ -22,13 +22,16 @@
 package io.crate.operation.reference.doc.lucene;
 
 import io.crate.exceptions.GroupByOnArrayUnsupportedException;
+import io.crate.operation.block.ColumnVector;
+import io.crate.operation.block.LongVector;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.elasticsearch.index.fielddata.IndexNumericFieldData;
 import org.elasticsearch.index.fielddata.LongValues;
 
-public class IntegerColumnReference extends FieldCacheExpression<IndexNumericFieldData, Integer> {
+public class IntegerColumnReference extends FieldCacheExpression<IndexNumericFieldData, Integer>
+        implements BlockCollectorExpression {
 
     private LongValues values;
 
@@ -48,6 +51,28 @@ public class IntegerColumnReference extends FieldCacheExpression<IndexNumericFie
         }
     }
 
+    @Override
+    public ColumnVector newVector(int capacity) {
+        return new LongVector(capacity, DataTypes.INTEGER);
+    }
+
+    @Override
+    public void fill(int[] docs, int count, ColumnVector vector) {
+        LongVector longs = (LongVector) vector;
+        for (int i = 0; i < count; i++) {
+            switch (values.setDocument(docs[i])) {
+                case 0:
+                    longs.setNull(i);
+                    break;
+                case 1:
+                    longs.set(i, values.nextValue());
+                    break;
+                default:
+                    throw new GroupByOnArrayUnsupportedException(columnName());
+            }
+        }
+    }
+
     @Override
     public void setNextReader(AtomicReaderContext context) {
         super.setNextReader(context);
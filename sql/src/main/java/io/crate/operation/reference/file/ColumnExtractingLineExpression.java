@@ -39,9 +39,6 @@ public class ColumnExtractingLineExpression extends LineCollectorExpression<Obje
         return context.get(columnIdent);
     }
 
-    @Override
-    public void setNextLine(String line) {}
-
     @Override
     public void startCollect(CollectorContext context) {
         this.context = context.lineContext();
@@ -24,11 +24,14 @@ package io.crate.operation.reference.file;
 import io.crate.metadata.ColumnIdent;
 import io.crate.operation.collect.files.CollectorContext;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 import javax.annotation.Nullable;
-import java.util.LinkedList;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
 public class LineContext {
 
@@ -40,6 +43,8 @@ public class LineContext {
 
     private byte[] rawSource;
     private Map<String, Object> parsedSource;
+    private Map<ColumnIdent, Object> prefetchedValues;
+    private PathNode prefetchPaths;
 
     @Nullable
     public BytesRef sourceAsBytesRef() {
@@ -60,35 +65,173 @@ public class LineContext {
         return parsedSource;
     }
 
+    /**
+     * Columns registered as prefetch columns are extracted from the raw source
+     * in a single streaming pass on first access, without building the whole source map.
+     */
     public Object get(ColumnIdent columnIdent) {
-        if (parsedSource == null) {
-            // TODO: optimize if collectorContext has prefetchColumns
+        if (rawSource == null) {
+            return null;
+        }
+        if (parsedSource == null && collectorContext.prefetchColumns().contains(columnIdent)) {
+            if (prefetchedValues == null) {
+                prefetchedValues = extractPrefetchColumns();
+            }
+            return prefetchedValues.get(columnIdent);
+        }
+        return extractValue(sourceAsMap(), columnIdent);
+    }
 
-            try {
-                parsedSource = XContentHelper.convertToMap(rawSource, false).v2();
-            } catch (NullPointerException e) {
+    public void rawSource(byte[] bytes) {
+        this.rawSource = bytes;
+        this.parsedSource = null;
+        this.prefetchedValues = null;
+    }
+
+    @Nullable
+    private static Object extractValue(@Nullable Map<String, Object> source, ColumnIdent columnIdent) {
+        if (source == null) {
+            return null;
+        }
+        Object value = source.get(columnIdent.name());
+        for (String part : columnIdent.path()) {
+            if (!(value instanceof Map)) {
                 return null;
             }
+            value = ((Map) value).get(part);
         }
+        return value;
+    }
 
-        LinkedList<String> path = new LinkedList<>(columnIdent.path());
-        path.add(0, columnIdent.name());
-        Map parentMap = parsedSource;
+    private Map<ColumnIdent, Object> extractPrefetchColumns() {
+        if (prefetchPaths == null) {
+            prefetchPaths = PathNode.build(collectorContext.prefetchColumns());
+        }
+        Map<ColumnIdent, Object> values = new HashMap<>(prefetchPaths.numColumns);
+        XContentParser parser = null;
+        try {
+            parser = XContentFactory.xContent(rawSource).createParser(rawSource);
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                extractObject(parser, prefetchPaths, values, true);
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Failed to parse content to map", e);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+        return values;
+    }
 
-        while (path.size() > 1) {
-            Object o = parentMap.get(path.pollFirst());
-            if (o == null) {
-                return null;
+    /**
+     * reads the object the parser is positioned at, descending only into fields which lead to a prefetch column.
+     *
+     * @param stopWhenComplete if true the rest of the object is not read once all columns below <code>node</code>
+     *                         have been found
+     */
+    private static void extractObject(XContentParser parser,
+                                      PathNode node,
+                                      Map<ColumnIdent, Object> values,
+                                      boolean stopWhenComplete) throws IOException {
+        int remaining = node.numColumns;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+            PathNode child = node.children.get(parser.currentName());
+            token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+                continue;
+            }
+            if (child.column != null) {
+                Object value = readValue(parser, token);
+                values.put(child.column, value);
+                if (value instanceof Map) {
+                    child.extractChildren((Map) value, values);
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                extractObject(parser, child, values, false);
+            } else {
+                parser.skipChildren();
+            }
+            remaining -= child.numColumns;
+            if (stopWhenComplete && remaining <= 0) {
+                return;
             }
-            assert o instanceof Map;
-            parentMap = (Map)o;
         }
+    }
 
-        return parentMap.get(path.peekFirst());
+    @Nullable
+    private static Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    list.add(readValue(parser, token));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.binaryValue();
+            default:
+                return null;
+        }
     }
 
-    public void rawSource(byte[] bytes) {
-        this.rawSource = bytes;
-        this.parsedSource = null;
+    /**
+     * the paths of the prefetch columns as a tree of field names
+     */
+    private static class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<>();
+        private ColumnIdent column;
+        private int numColumns = 0;
+
+        private static PathNode build(Set<ColumnIdent> columns) {
+            PathNode root = new PathNode();
+            for (ColumnIdent column : columns) {
+                root.numColumns++;
+                PathNode node = root.child(column.name());
+                for (String part : column.path()) {
+                    node.numColumns++;
+                    node = node.child(part);
+                }
+                node.numColumns++;
+                node.column = column;
+            }
+            return root;
+        }
+
+        private PathNode child(String name) {
+            PathNode child = children.get(name);
+            if (child == null) {
+                child = new PathNode();
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        /**
+         * resolves nested prefetch columns from the already read value of this node's column
+         */
+        private void extractChildren(Map value, Map<ColumnIdent, Object> values) {
+            for (Map.Entry<String, PathNode> entry : children.entrySet()) {
+                Object childValue = value.get(entry.getKey());
+                PathNode child = entry.getValue();
+                if (child.column != null) {
+                    values.put(child.column, childValue);
+                }
+                if (childValue instanceof Map) {
+                    child.extractChildren((Map) childValue, values);
+                }
+            }
+        }
     }
 }
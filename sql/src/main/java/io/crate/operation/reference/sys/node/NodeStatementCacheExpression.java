@@ -0,0 +1,95 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.reference.sys.node;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.action.sql.StatementCache;
+import io.crate.metadata.ColumnIdent;
+import io.crate.operation.reference.sys.SysNodeObjectReference;
+import org.elasticsearch.common.inject.Inject;
+
+public class NodeStatementCacheExpression extends SysNodeObjectReference<Long> {
+
+    abstract class StatementCacheExpression extends SysNodeExpression<Long> {
+        StatementCacheExpression(String name) {
+            super(new ColumnIdent(NAME, ImmutableList.of(name)));
+        }
+    }
+
+    public static final String NAME = "stmt_cache";
+
+    public static final String HITS = "hits";
+    public static final String MISSES = "misses";
+    public static final String SIZE = "size";
+    public static final String PLAN_HITS = "plan_hits";
+    public static final String PLAN_MISSES = "plan_misses";
+    public static final String PLAN_SIZE = "plan_size";
+
+    private final StatementCache statementCache;
+
+    @Inject
+    public NodeStatementCacheExpression(StatementCache statementCache) {
+        super(NAME);
+        this.statementCache = statementCache;
+        addChildImplementations();
+    }
+
+    private void addChildImplementations() {
+        childImplementations.put(HITS, new StatementCacheExpression(HITS) {
+            @Override
+            public Long value() {
+                return statementCache.hits();
+            }
+        });
+        childImplementations.put(MISSES, new StatementCacheExpression(MISSES) {
+            @Override
+            public Long value() {
+                return statementCache.misses();
+            }
+        });
+        childImplementations.put(SIZE, new StatementCacheExpression(SIZE) {
+            @Override
+            public Long value() {
+                return statementCache.size();
+            }
+        });
+        childImplementations.put(PLAN_HITS, new StatementCacheExpression(PLAN_HITS) {
+            @Override
+            public Long value() {
+                return statementCache.templateHits();
+            }
+        });
+        childImplementations.put(PLAN_MISSES, new StatementCacheExpression(PLAN_MISSES) {
+            @Override
+            public Long value() {
+                return statementCache.templateMisses();
+            }
+        });
+        childImplementations.put(PLAN_SIZE, new StatementCacheExpression(PLAN_SIZE) {
+            @Override
+            public Long value() {
+                return statementCache.templateSize();
+            }
+        });
+    }
+}
@@ -54,5 +54,7 @@ public class SysNodeExpressionModule extends AbstractModule {
         bindExpr(NodePortExpression.NAME, NodePortExpression.class);
         bindExpr(NodeHeapExpression.NAME, NodeHeapExpression.class);
         bindExpr(NodeVersionExpression.NAME, NodeVersionExpression.class);
+        bindExpr(NodeQueryMemoryExpression.NAME, NodeQueryMemoryExpression.class);
+        bindExpr(NodeStatementCacheExpression.NAME, NodeStatementCacheExpression.class);
     }
 }
@@ -120,6 +120,44 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         return plan;
     }
 
+    /**
+     * create one plan indexing the documents of all given analyses of the same insert statement,
+     * each analyzed with one row of bulk arguments.
+     * The plan results in one row per document: [rowCount, errorMessage]
+     */
+    public Plan planBulkInsert(List<InsertAnalysis> analyses) {
+        Preconditions.checkArgument(!analyses.isEmpty(), "no analysis given");
+        InsertAnalysis first = analyses.get(0);
+        boolean partitioned = first.table().isPartitioned();
+        List<String> indices = new ArrayList<>();
+        List<Map<String, Object>> sourceMaps = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<String> routingValues = new ArrayList<>();
+        for (InsertAnalysis analysis : analyses) {
+            Preconditions.checkState(!analysis.sourceMaps().isEmpty(), "no values given");
+            if (partitioned) {
+                indices.addAll(analysis.partitions());
+            }
+            sourceMaps.addAll(analysis.sourceMaps());
+            ids.addAll(analysis.ids());
+            routingValues.addAll(analysis.routingValues());
+        }
+        if (!partitioned) {
+            indices.add(first.table().ident().name());
+        }
+        ESIndexNode indexNode = new ESIndexNode(
+                indices.toArray(new String[indices.size()]),
+                sourceMaps,
+                ids,
+                routingValues);
+        indexNode.itemResults(true);
+
+        Plan plan = new Plan();
+        plan.add(indexNode);
+        plan.expectsAffectedRows(true);
+        return plan;
+    }
+
     @Override
     protected Plan visitUpdateAnalysis(UpdateAnalysis analysis, Void context) {
         Plan plan = new Plan();
@@ -524,8 +562,10 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         if ((schema == null || schema.equalsIgnoreCase(DocSchemaInfo.NAME))
                 && hasOnlyGlobalCount(analysis.outputSymbols())
                 && !analysis.hasSysExpressions()
-                && !analysis.table().isPartitioned()) {
-            plan.add(new ESCountNode(analysis.table().ident().name(), analysis.whereClause()));
+                && (!analysis.table().isPartitioned() || !analysis.whereClause().hasQuery())) {
+            // conditions on partitioned columns are already resolved to partitions,
+            // so the count is answered by the shards of these partitions
+            plan.add(new ESCountNode(countIndices(analysis), analysis.whereClause()));
             return;
         }
 
@@ -556,6 +596,16 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         plan.add(PlanNodeBuilder.localMerge(projections, collectNode));
     }
 
+    private String[] countIndices(SelectAnalysis analysis) {
+        if (analysis.table().isPartitioned()
+                && analysis.whereClause().partitions().size() == 0
+                && analysis.table().partitions().size() == 0) {
+            // partitioned table without any partition, there is no index to count
+            return new String[0];
+        }
+        return indices(analysis);
+    }
+
     private boolean hasOnlyGlobalCount(List<Symbol> symbols) {
         if (symbols.size() != 1) {
             return false;
@@ -589,8 +639,8 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
                 .output(analysis.outputSymbols())
                 .orderBy(analysis.sortSymbols());
 
-        GroupProjection groupProjection =
-                new GroupProjection(contextBuilder.groupBy(), contextBuilder.aggregations());
+        GroupProjection groupProjection = new GroupProjection(
+                contextBuilder.groupBy(), contextBuilder.aggregations(), contextBuilder.groupByTypes());
         CollectNode collectNode = PlanNodeBuilder.collect(
                 analysis,
                 contextBuilder.toCollect(),
@@ -601,8 +651,8 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         contextBuilder.nextStep();
 
         // handler
-        groupProjection =
-            new GroupProjection(contextBuilder.groupBy(), contextBuilder.aggregations());
+        groupProjection = new GroupProjection(
+                contextBuilder.groupBy(), contextBuilder.aggregations(), contextBuilder.groupByTypes());
         TopNProjection topN = new TopNProjection(
                 Objects.firstNonNull(analysis.limit(), Constants.DEFAULT_SELECT_LIMIT),
                 analysis.offset(),
@@ -627,12 +677,20 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
 
         // collector
         GroupProjection groupProjection = new GroupProjection(
-                contextBuilder.groupBy(), contextBuilder.aggregations());
+                contextBuilder.groupBy(), contextBuilder.aggregations(), contextBuilder.groupByTypes());
+        ImmutableList.Builder<Projection> collectProjections = ImmutableList.<Projection>builder()
+                .add(groupProjection);
+        TopNProjection mapperTopN = mapperTopN(analysis, contextBuilder);
+        if (mapperTopN != null) {
+            // the top-n must see every group only once, so the groups are spilled instead of flushed
+            groupProjection.flushPartialGroups(false);
+            collectProjections.add(mapperTopN);
+        }
         CollectNode collectNode = PlanNodeBuilder.distributingCollect(
                 analysis,
                 contextBuilder.toCollect(),
                 nodesFromTable(analysis),
-                ImmutableList.<Projection>of(groupProjection)
+                collectProjections.build()
         );
         plan.add(collectNode);
 
@@ -642,7 +700,8 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         ImmutableList.Builder<Projection> projectionsBuilder = ImmutableList.<Projection>builder();
         projectionsBuilder.add(new GroupProjection(
                 contextBuilder.groupBy(),
-                contextBuilder.aggregations()));
+                contextBuilder.aggregations(),
+                contextBuilder.groupByTypes()));
 
         boolean topNDone = false;
         if (analysis.limit() != null
@@ -684,6 +743,50 @@ public class Planner extends AnalysisVisitor<Void, Plan> {
         plan.add(localMergeNode);
     }
 
+    /**
+     * A top-n applied to the partial groups of every mapper, so only these are sent to the reducers.
+     *
+     * This is only done if the groups are ordered by all group keys. Every group of the final top-n
+     * is then part of the top-n of every mapper, so the result is exact.
+     * Groups ordered by aggregates are never truncated: a group might be missing from the top-n of a
+     * mapper and its aggregates would lack the values of that mapper.
+     *
+     * @return null if all partial groups must be sent to the reducers
+     */
+    @Nullable
+    private TopNProjection mapperTopN(SelectAnalysis analysis, PlannerContextBuilder contextBuilder) {
+        if (analysis.limit() == null || !analysis.isSorted()) {
+            return null;
+        }
+        int numKeys = contextBuilder.groupBy().size();
+        List<Symbol> orderBy = contextBuilder.orderBy();
+        Set<Integer> orderedKeys = new HashSet<>(numKeys);
+        for (Symbol symbol : orderBy) {
+            if (symbol.symbolType() != SymbolType.INPUT_COLUMN) {
+                // aggregates wrapped in scalars can't be evaluated on partial states
+                return null;
+            }
+            int index = ((InputColumn) symbol).index();
+            if (index < numKeys) {
+                orderedKeys.add(index);
+            }
+        }
+
+        if (orderedKeys.size() != numKeys || orderedKeys.size() != orderBy.size()) {
+            return null;
+        }
+        int limit = (int) Math.min((long) analysis.limit() + analysis.offset(), Integer.MAX_VALUE);
+
+        int numOutputs = numKeys + contextBuilder.aggregations().size();
+        List<Symbol> outputs = new ArrayList<>(numOutputs);
+        for (int i = 0; i < numOutputs; i++) {
+            outputs.add(new InputColumn(i));
+        }
+        TopNProjection topN = new TopNProjection(limit, 0, orderBy, analysis.reverseFlags());
+        topN.outputs(outputs);
+        return topN;
+    }
+
     private List<String> nodesFromTable(SelectAnalysis analysis) {
         return Lists.newArrayList(analysis.table().getRouting(analysis.whereClause()).nodes());
     }
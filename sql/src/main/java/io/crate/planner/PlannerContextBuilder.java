@@ -27,6 +27,7 @@ import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Symbol;
 import io.crate.planner.symbol.SymbolType;
+import io.crate.types.DataType;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -57,6 +58,16 @@ public class PlannerContextBuilder {
         return context.groupBy;
     }
 
+    /**
+     * the types of the original group by symbols, which stay the same in every aggregation step
+     */
+    public List<DataType> groupByTypes() {
+        if (context.originalGroupBy == null) {
+            return new ArrayList<>();
+        }
+        return Planner.extractDataTypes(context.originalGroupBy);
+    }
+
     public List<Symbol> toCollect() {
         return Lists.newArrayList(context.toCollectAllocation.keySet());
     }
@@ -38,6 +38,7 @@ public class ESIndexNode extends DMLPlanNode {
     private List<Map<String, Object>> sourceMaps;
     private List<String> ids;
     private List<String> routingValues;
+    private boolean itemResults = false;
 
     public ESIndexNode(String[] indices,
                        List<Map<String, Object>> sourceMaps,
@@ -68,6 +69,18 @@ public class ESIndexNode extends DMLPlanNode {
         return routingValues;
     }
 
+    /**
+     * if true the result contains one row per document: [rowCount, errorMessage]
+     * instead of a single row holding the number of indexed documents
+     */
+    public boolean itemResults() {
+        return itemResults;
+    }
+
+    public void itemResults(boolean itemResults) {
+        this.itemResults = itemResults;
+    }
+
     @Override
     public <C, R> R accept(PlanVisitor<C, R> visitor, C context) {
         return visitor.visitESIndexNode(this, context);
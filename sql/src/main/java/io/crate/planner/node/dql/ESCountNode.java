@@ -32,11 +32,15 @@ import java.util.List;
 public class ESCountNode extends ESDQLPlanNode {
 
     private final List<DataType> outputTypes = Arrays.<DataType>asList(LongType.INSTANCE);
-    private final String indexName;
+    private final String[] indices;
     private final WhereClause whereClause;
 
-    public ESCountNode(String indexName, WhereClause whereClause) {
-        this.indexName = indexName;
+    /**
+     * @param indices the indices to count, an empty array counts nothing,
+     *                e.g. a partitioned table without partitions
+     */
+    public ESCountNode(String[] indices, WhereClause whereClause) {
+        this.indices = indices;
         this.whereClause = whereClause;
     }
 
@@ -45,8 +49,8 @@ public class ESCountNode extends ESDQLPlanNode {
         return visitor.visitESCountNode(this, context);
     }
 
-    public String indexName() {
-        return indexName;
+    public String[] indices() {
+        return indices;
     }
 
     public WhereClause whereClause() {
@@ -76,6 +76,14 @@ public class MergeNode extends AbstractDQLPlanNode {
         this.contextId = contextId;
     }
 
+    /**
+     * the id of the job this merge belongs to, the executor uses it as the context id
+     * so rows distributed by the collecting nodes find their merge context.
+     */
+    public UUID jobId() {
+        return contextId;
+    }
+
     public void numUpstreams(int numUpstreams) {
         this.numUpstreams = numUpstreams;
     }
@@ -23,6 +23,8 @@ package io.crate.planner.projection;
 
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
@@ -30,11 +32,19 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * The key types and the partial flush flag are always streamed.
+ * The stream version of the transport is the elasticsearch version, which doesn't change between
+ * crate releases, so the stream of older crate nodes can't be told apart.
+ * All nodes of a cluster must run the same crate release, mixed version clusters are not supported.
+ */
 public class GroupProjection extends Projection {
 
     List<Symbol> keys;
     List<Aggregation> values;
     List<Symbol> outputs;
+    List<DataType> keyTypes = new ArrayList<>();
+    boolean flushPartialGroups = true;
 
     public static final ProjectionFactory<GroupProjection> FACTORY = new ProjectionFactory<GroupProjection>() {
         @Override
@@ -51,6 +61,11 @@ public class GroupProjection extends Projection {
         this.values = values;
     }
 
+    public GroupProjection(List<Symbol> keys, List<Aggregation> values, List<DataType> keyTypes) {
+        this(keys, values);
+        this.keyTypes = keyTypes;
+    }
+
     public List<Symbol> keys() {
         return keys;
     }
@@ -67,6 +82,29 @@ public class GroupProjection extends Projection {
         this.values = values;
     }
 
+    /**
+     * the types of the keys, might be empty if they are unknown
+     */
+    public List<DataType> keyTypes() {
+        return keyTypes;
+    }
+
+    public void keyTypes(List<DataType> keyTypes) {
+        this.keyTypes = keyTypes;
+    }
+
+    /**
+     * if false partial groups are never emitted before all rows are grouped,
+     * required if a projection which truncates rows follows
+     */
+    public boolean flushPartialGroups() {
+        return flushPartialGroups;
+    }
+
+    public void flushPartialGroups(boolean flushPartialGroups) {
+        this.flushPartialGroups = flushPartialGroups;
+    }
+
     @Override
     public ProjectionType projectionType() {
         return ProjectionType.GROUP;
@@ -98,6 +136,12 @@ public class GroupProjection extends Projection {
         for (int i = 0; i < size; i++) {
             values.add((Aggregation) Symbol.fromStream(in));
         }
+        size = in.readVInt();
+        keyTypes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keyTypes.add(DataTypes.fromStream(in));
+        }
+        flushPartialGroups = in.readBoolean();
     }
 
     @Override
@@ -111,6 +155,12 @@ public class GroupProjection extends Projection {
         for (Symbol symbol : values) {
             Symbol.toStream(symbol, out);
         }
+
+        out.writeVInt(keyTypes.size());
+        for (DataType keyType : keyTypes) {
+            DataTypes.toStream(keyType, out);
+        }
+        out.writeBoolean(flushPartialGroups);
     }
 
     @Override
@@ -122,8 +172,19 @@ public class GroupProjection extends Projection {
 
         if (!keys.equals(that.keys)) return false;
         if (values != null ? !values.equals(that.values) : that.values != null) return false;
+        if (!keyTypes.equals(that.keyTypes)) return false;
+        if (flushPartialGroups != that.flushPartialGroups) return false;
 
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        int result = keys.hashCode();
+        result = 31 * result + (values != null ? values.hashCode() : 0);
+        result = 31 * result + keyTypes.hashCode();
+        result = 31 * result + (flushPartialGroups ? 1 : 0);
+        return result;
+    }
+
 }
@@ -216,6 +216,8 @@ public class WriterProjection extends Projection {
         if (uri != nUri){
             WriterProjection p = new WriterProjection();
             p.uri = nUri;
+            p.isDirectoryUri = isDirectoryUri;
+            p.inputs = inputs;
             p.outputNames = outputNames;
             p.settings = settings;
             return p;
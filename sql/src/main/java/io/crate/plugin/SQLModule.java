@@ -23,6 +23,7 @@ package io.crate.plugin;
 
 import io.crate.action.sql.DDLAnalysisDispatcher;
 import io.crate.action.sql.SQLAction;
+import io.crate.action.sql.StatementCache;
 import io.crate.action.sql.TransportSQLAction;
 import io.crate.metadata.FulltextAnalyzerResolver;
 import org.elasticsearch.action.GenericAction;
@@ -35,6 +36,7 @@ public class SQLModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        bind(StatementCache.class).asEagerSingleton();
         bind(TransportSQLAction.class).asEagerSingleton();
         bind(DDLAnalysisDispatcher.class).asEagerSingleton();
         bind(FulltextAnalyzerResolver.class).asEagerSingleton();
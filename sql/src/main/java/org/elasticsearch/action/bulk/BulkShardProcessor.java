@@ -0,0 +1,535 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package org.elasticsearch.action.bulk;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.exceptions.UnhandledServerException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Buffers index requests per target shard and sends them as shard level bulk requests
+ * using the {@link TransportShardBulkAction}, so a bulk isn't split up again on the coordinating node.
+ * <p>
+ * The target shard is resolved like the {@link TransportBulkAction} does it, using the id and routing
+ * of the request. Indices which don't exist yet, e.g. new partitions, are created asynchronously on first use,
+ * their requests are held back until the index is part of the cluster state of this node.
+ * <p>
+ * A shard's buffer is sent once it holds <code>bulkSize</code> requests or {@link #MAX_BULK_BYTES}.
+ * The number of requests per bulk is adapted to the measured latency of the shard:
+ * it is halved if a bulk takes longer than {@link #TARGET_LATENCY} or is rejected
+ * and grows again up to <code>bulkSize</code> while bulks are fast.
+ * <p>
+ * At most <code>concurrency</code> bulks per shard and <code>concurrency</code> times the number of nodes
+ * bulks in total are in flight, {@link #add(org.elasticsearch.action.index.IndexRequest)} blocks until one of them
+ * finished if a limit is reached, which slows down the upstream.
+ * Both limits apply to this processor only, which is a single import on a single node; concurrent imports
+ * aren't limited against each other, the bulk thread pools of the shards push back on them instead.
+ * Bulks rejected by the bulk thread pool of the primary are retried with an exponential backoff.
+ */
+public class BulkShardProcessor {
+
+    public static final int DEFAULT_BULK_SIZE = 1000;
+    public static final int DEFAULT_CONCURRENCY = 1;
+
+    static final long MAX_BULK_BYTES = new ByteSizeValue(10, ByteSizeUnit.MB).bytes();
+    static final long TARGET_LATENCY = TimeValue.timeValueSeconds(1).nanos();
+    static final int MIN_BULK_SIZE = 10;
+    static final int MAX_RETRIES = 8;
+    static final long INITIAL_BACKOFF_MILLIS = 50;
+    static final long PROGRESS_LOG_INTERVAL = TimeValue.timeValueSeconds(30).nanos();
+    static final TimeValue INDEX_AVAILABLE_TIMEOUT = TimeValue.timeValueSeconds(30);
+
+    private static final ESLogger logger = Loggers.getLogger(BulkShardProcessor.class);
+
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final Client client;
+    private final TransportShardBulkAction transportShardBulkAction;
+    private final int bulkSize;
+    private final int concurrency;
+    // bulks in flight of this processor, not of the node
+    private final Semaphore processorInFlight;
+
+    private final ConcurrentMap<ShardId, ShardBuffer> buffers = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, PendingIndex> pendingIndices = ConcurrentCollections.newConcurrentMap();
+    // number of requests in flight, plus one until the processor is closed
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final SettableFuture<Long> result = SettableFuture.create();
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong lastProgressLog = new AtomicLong(startTime);
+    private final AtomicLong rowsAdded = new AtomicLong(0);
+    private final AtomicLong rowsImported = new AtomicLong(0);
+    private final AtomicLong bytesImported = new AtomicLong(0);
+    private final AtomicLong rejections = new AtomicLong(0);
+
+    /**
+     * @param threadPool used to schedule retries of rejected bulks and to send the requests of created indices,
+     *                   if null bulks are not retried and index creation doesn't time out
+     */
+    public BulkShardProcessor(ClusterService clusterService,
+                              @Nullable ThreadPool threadPool,
+                              Client client,
+                              TransportShardBulkAction transportShardBulkAction,
+                              int bulkSize,
+                              int concurrency) {
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.client = client;
+        this.transportShardBulkAction = transportShardBulkAction;
+        this.bulkSize = bulkSize;
+        this.concurrency = concurrency;
+        this.processorInFlight = new Semaphore(concurrency * Math.max(1, clusterService.state().nodes().size()));
+    }
+
+    /**
+     * add a request to the buffer of its shard, sending the buffer if it is full.
+     *
+     * @return false if a request failed already
+     */
+    public boolean add(IndexRequest request) {
+        rowsAdded.incrementAndGet();
+        if (!clusterService.state().metaData().hasIndex(request.index())) {
+            if (queue(request)) {
+                return failure.get() == null;
+            }
+            if (failure.get() != null) {
+                return false;
+            }
+            // the index became available in the meantime
+        }
+        route(request);
+        return failure.get() == null;
+    }
+
+    private void route(IndexRequest request) {
+        ShardId shardId = shardId(request);
+        ShardBuffer buffer = buffers.get(shardId);
+        if (buffer == null) {
+            buffer = new ShardBuffer(shardId);
+            ShardBuffer existing = buffers.putIfAbsent(shardId, buffer);
+            if (existing != null) {
+                buffer = existing;
+            }
+        }
+        BulkItemRequest[] items = buffer.add(request);
+        if (items != null) {
+            buffer.send(items);
+        }
+    }
+
+    /**
+     * hold back the request until its index is created, the first request of an index triggers its creation
+     *
+     * @return false if the index is already available or its creation failed
+     */
+    private boolean queue(IndexRequest request) {
+        PendingIndex pendingIndex = pendingIndices.get(request.index());
+        boolean created = false;
+        if (pendingIndex == null) {
+            pendingIndex = new PendingIndex(request.index());
+            PendingIndex existing = pendingIndices.putIfAbsent(request.index(), pendingIndex);
+            if (existing != null) {
+                pendingIndex = existing;
+            } else {
+                created = true;
+            }
+        }
+        boolean queued = pendingIndex.add(request);
+        if (created) {
+            pendingIndex.create();
+        }
+        return queued;
+    }
+
+    /**
+     * send all buffered requests, {@link #result()} is done once all of them finished
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (ShardBuffer buffer : buffers.values()) {
+            BulkItemRequest[] items = buffer.drain();
+            if (items != null) {
+                buffer.send(items);
+            }
+        }
+        requestFinished();
+    }
+
+    /**
+     * @return the number of rows imported or the first failure
+     */
+    public ListenableFuture<Long> result() {
+        return result;
+    }
+
+    public long rowsAdded() {
+        return rowsAdded.get();
+    }
+
+    public long rowsImported() {
+        return rowsImported.get();
+    }
+
+    public long rejections() {
+        return rejections.get();
+    }
+
+    /**
+     * @return the number of source bytes imported per second since the processor was created
+     */
+    public long bytesPerSecond() {
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        return bytesImported.get() * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private ShardId shardId(IndexRequest request) {
+        ClusterState state = clusterService.state();
+        MetaData metaData = state.metaData();
+        MappingMetaData mappingMd = metaData.index(request.index()).mappingOrDefault(request.type());
+        request.process(metaData, request.index(), mappingMd, false);
+        return clusterService.operationRouting().indexShards(
+                state, request.index(), request.type(), request.id(), request.routing()).shardId();
+    }
+
+    private void setFailure(Throwable t) {
+        if (failure.compareAndSet(null, t)) {
+            logger.error("bulk request failed", t);
+        }
+    }
+
+    private void requestFinished() {
+        if (pending.decrementAndGet() == 0) {
+            Throwable t = failure.get();
+            if (t == null) {
+                result.set(rowsImported.get());
+            } else {
+                result.setException(t);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("bulk import finished: {}", progress());
+            }
+        }
+    }
+
+    private String progress() {
+        return String.format("%d rows read, %d rows indexed, %d rejections, %s/s",
+                rowsAdded(), rowsImported(), rejections(), new ByteSizeValue(bytesPerSecond()));
+    }
+
+    private void logProgress() {
+        long now = System.nanoTime();
+        long last = lastProgressLog.get();
+        if (now - last >= PROGRESS_LOG_INTERVAL && lastProgressLog.compareAndSet(last, now)) {
+            logger.info("bulk import in progress: {}", progress());
+        }
+    }
+
+    private static long bytes(BulkItemRequest[] items) {
+        long bytes = 0;
+        for (BulkItemRequest item : items) {
+            bytes += ((IndexRequest) item.request()).source().length();
+        }
+        return bytes;
+    }
+
+    /**
+     * the requests of an index which is being created.
+     * Another upstream might create the same index concurrently, which is fine.
+     * <p>
+     * Once the index is part of the cluster state of this node the requests are routed
+     * on the GENERIC thread pool, neither the upstream nor the cluster state update thread wait for it.
+     */
+    private class PendingIndex implements ClusterStateListener {
+
+        private final String index;
+        // null once the index is available or its creation failed
+        private List<IndexRequest> requests = new ArrayList<>();
+
+        private PendingIndex(String index) {
+            this.index = index;
+        }
+
+        /**
+         * @return false if the requests of this index aren't held back anymore
+         */
+        private synchronized boolean add(IndexRequest request) {
+            if (requests == null) {
+                return false;
+            }
+            requests.add(request);
+            return true;
+        }
+
+        private void create() {
+            pending.incrementAndGet();
+            client.admin().indices().create(new CreateIndexRequest(index).cause("bulkShardProcessor"),
+                    new ActionListener<CreateIndexResponse>() {
+                        @Override
+                        public void onResponse(CreateIndexResponse createIndexResponse) {
+                            waitForIndex();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            if (ExceptionsHelper.unwrapCause(e) instanceof IndexAlreadyExistsException) {
+                                waitForIndex();
+                            } else {
+                                failed(e);
+                            }
+                        }
+                    });
+        }
+
+        private void waitForIndex() {
+            clusterService.add(this);
+            // the index might have been added before this listener
+            if (clusterService.state().metaData().hasIndex(index)) {
+                available();
+                return;
+            }
+            if (threadPool != null) {
+                threadPool.schedule(INDEX_AVAILABLE_TIMEOUT, ThreadPool.Names.GENERIC, new Runnable() {
+                    @Override
+                    public void run() {
+                        failed(new UnhandledServerException(
+                                String.format("index %s was created but isn't available on this node", index)));
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void clusterChanged(ClusterChangedEvent event) {
+            if (event.state().metaData().hasIndex(index)) {
+                available();
+            }
+        }
+
+        private void available() {
+            final List<IndexRequest> available = drain();
+            if (available == null) {
+                return;
+            }
+            Runnable routeRequests = new Runnable() {
+                @Override
+                public void run() {
+                    for (IndexRequest request : available) {
+                        route(request);
+                    }
+                    if (closed.get()) {
+                        // close() might have drained the shard buffers already
+                        for (ShardBuffer buffer : buffers.values()) {
+                            BulkItemRequest[] items = buffer.drain();
+                            if (items != null) {
+                                buffer.send(items);
+                            }
+                        }
+                    }
+                    requestFinished();
+                }
+            };
+            if (threadPool != null) {
+                threadPool.executor(ThreadPool.Names.GENERIC).execute(routeRequests);
+            } else {
+                routeRequests.run();
+            }
+        }
+
+        private void failed(Throwable t) {
+            if (drain() != null) {
+                setFailure(t);
+                requestFinished();
+            }
+        }
+
+        /**
+         * stop holding back requests
+         *
+         * @return the held back requests or null if they were drained already
+         */
+        private List<IndexRequest> drain() {
+            List<IndexRequest> drained;
+            synchronized (this) {
+                drained = requests;
+                requests = null;
+            }
+            if (drained != null) {
+                clusterService.remove(this);
+                pendingIndices.remove(index, this);
+            }
+            return drained;
+        }
+    }
+
+    private class ShardBuffer {
+
+        private final ShardId shardId;
+        private final Semaphore inFlight = new Semaphore(concurrency);
+        private List<BulkItemRequest> items = new ArrayList<>();
+        private long bufferedBytes = 0;
+        private volatile int currentBulkSize = bulkSize;
+
+        private ShardBuffer(ShardId shardId) {
+            this.shardId = shardId;
+        }
+
+        /**
+         * @return the buffered items if the buffer is full, otherwise null
+         */
+        private synchronized BulkItemRequest[] add(IndexRequest request) {
+            items.add(new BulkItemRequest(items.size(), request));
+            bufferedBytes += request.source().length();
+            if (items.size() < currentBulkSize && bufferedBytes < MAX_BULK_BYTES) {
+                return null;
+            }
+            return drain();
+        }
+
+        private synchronized BulkItemRequest[] drain() {
+            if (items.isEmpty()) {
+                return null;
+            }
+            BulkItemRequest[] drained = items.toArray(new BulkItemRequest[items.size()]);
+            items = new ArrayList<>(Math.min(currentBulkSize, drained.length));
+            bufferedBytes = 0;
+            return drained;
+        }
+
+        private void send(BulkItemRequest[] drained) {
+            try {
+                inFlight.acquire();
+                try {
+                    processorInFlight.acquire();
+                } catch (InterruptedException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                setFailure(e);
+                return;
+            }
+            pending.incrementAndGet();
+            execute(drained, bytes(drained), 0);
+        }
+
+        private void execute(final BulkItemRequest[] drained, final long bytes, final int attempt) {
+            final long started = System.nanoTime();
+            BulkShardRequest request = new BulkShardRequest(shardId.index().name(), shardId.id(), false, drained);
+            transportShardBulkAction.execute(request, new ActionListener<BulkShardResponse>() {
+                @Override
+                public void onResponse(BulkShardResponse response) {
+                    adapt(System.nanoTime() - started, false);
+                    for (BulkItemResponse item : response.getResponses()) {
+                        if (item.isFailed()) {
+                            setFailure(new UnhandledServerException(item.getFailureMessage()));
+                        } else {
+                            rowsImported.incrementAndGet();
+                        }
+                    }
+                    bytesImported.addAndGet(bytes);
+                    finished();
+                    logProgress();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    if (threadPool != null && attempt < MAX_RETRIES
+                            && ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+                        rejections.incrementAndGet();
+                        adapt(System.nanoTime() - started, true);
+                        TimeValue backoff = TimeValue.timeValueMillis(INITIAL_BACKOFF_MILLIS << attempt);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("bulk request for shard {} rejected, retrying in {}", shardId, backoff);
+                        }
+                        threadPool.schedule(backoff, ThreadPool.Names.GENERIC, new Runnable() {
+                            @Override
+                            public void run() {
+                                execute(drained, bytes, attempt + 1);
+                            }
+                        });
+                        return;
+                    }
+                    setFailure(e);
+                    finished();
+                }
+            });
+        }
+
+        private void finished() {
+            processorInFlight.release();
+            inFlight.release();
+            requestFinished();
+        }
+
+        /**
+         * halve the bulk size if the shard is overloaded, grow it again while bulks are fast
+         */
+        private void adapt(long tookNanos, boolean rejected) {
+            int size = currentBulkSize;
+            if (rejected || tookNanos > TARGET_LATENCY) {
+                currentBulkSize = Math.max(Math.min(MIN_BULK_SIZE, bulkSize), size / 2);
+            } else if (tookNanos < TARGET_LATENCY / 2 && size < bulkSize) {
+                currentBulkSize = Math.min(bulkSize, size + size / 4 + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package org.elasticsearch.action.bulk;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.util.List;
+
+/**
+ * creates {@link BulkShardRequest}s outside of this package,
+ * the constructors of the request and its items are package private.
+ */
+public class BulkShardRequests {
+
+    private BulkShardRequests() {
+    }
+
+    public static BulkShardRequest create(ShardId shardId, List<? extends ActionRequest> requests) {
+        BulkItemRequest[] items = new BulkItemRequest[requests.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new BulkItemRequest(i, requests.get(i));
+        }
+        return new BulkShardRequest(shardId.index().name(), shardId.id(), false, items);
+    }
+}
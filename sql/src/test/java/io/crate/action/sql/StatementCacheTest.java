@@ -0,0 +1,93 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import io.crate.sql.parser.ParsingException;
+import io.crate.sql.tree.Statement;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatementCacheTest {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        StatementCache cache = new StatementCache(10);
+        Statement first = cache.get("select name from users where id = ?");
+        Statement second = cache.get("select name from users where id = ?");
+
+        assertThat(second, sameInstance(first));
+        assertThat(cache.misses(), is(1L));
+        assertThat(cache.hits(), is(1L));
+
+        cache.get("select name from users where id = 1");
+        assertThat(cache.misses(), is(2L));
+        assertThat(cache.size(), is(2L));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        StatementCache cache = new StatementCache(1);
+        cache.get("select 1 from sys.cluster");
+        cache.get("select 2 from sys.cluster");
+        cache.get("select 1 from sys.cluster");
+
+        assertThat(cache.misses(), is(3L));
+        assertThat(cache.size(), is(1L));
+    }
+
+    @Test (expected = ParsingException.class)
+    public void testParsingExceptionIsNotWrapped() throws Exception {
+        new StatementCache(10).get("selct name frm users");
+    }
+
+    @Test
+    public void testTemplatesAreClearedOnMetaDataChange() throws Exception {
+        StatementCache cache = new StatementCache(10);
+        long generation = cache.generation();
+        cache.cacheTemplate("select name from users", generation, null, null);
+        assertThat(cache.templateSize(), is(1L));
+        assertNull(cache.bind("select name from users", new Object[0]));
+        assertThat(cache.templateMisses(), is(1L));
+
+        ClusterChangedEvent event = mock(ClusterChangedEvent.class);
+        when(event.metaDataChanged()).thenReturn(false);
+        cache.clusterChanged(event);
+        assertThat(cache.templateSize(), is(1L));
+
+        when(event.metaDataChanged()).thenReturn(true);
+        cache.clusterChanged(event);
+        assertThat(cache.templateSize(), is(0L));
+
+        // analyzed before the metadata changed
+        cache.cacheTemplate("select name from users", generation, null, null);
+        assertThat(cache.templateSize(), is(0L));
+        cache.get("select name from users");
+        assertThat(cache.size(), is(1L));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.breaker;
+
+import io.crate.exceptions.QueryMemoryLimitExceededException;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class QueryMemoryBreakerTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void testParseLimit() throws Exception {
+        assertThat(QueryMemoryBreaker.parseLimit("-1"), is(-1L));
+        assertThat(QueryMemoryBreaker.parseLimit("1kb"), is(1024L));
+        assertThat(QueryMemoryBreaker.parseLimit("50%"), is(Runtime.getRuntime().maxMemory() / 2));
+    }
+
+    @Test
+    public void testSettings() throws Exception {
+        QueryMemoryBreaker breaker = new QueryMemoryBreaker(ImmutableSettings.builder()
+                .put(QueryMemoryBreaker.SETTING_LIMIT, "10mb")
+                .put(QueryMemoryBreaker.SETTING_JOB_LIMIT, "1mb")
+                .build());
+        assertThat(breaker.limit(), is(10L * 1024 * 1024));
+        assertThat(breaker.jobLimit(), is(1024L * 1024));
+    }
+
+    @Test
+    public void testCloseReleasesReservedBytes() throws Exception {
+        QueryMemoryBreaker breaker = new QueryMemoryBreaker(100, -1);
+        UUID jobId = UUID.randomUUID();
+        RamAccountingContext context = breaker.newContext(jobId);
+        context.addBytes(40);
+        context.addBytes(20);
+        assertThat(breaker.used(), is(60L));
+        assertThat(breaker.usedByJob().get(jobId.toString()), is(60L));
+
+        context.close();
+        assertThat(context.reservedBytes(), is(0L));
+        assertThat(breaker.used(), is(0L));
+        assertThat(breaker.usedByJob().size(), is(0));
+
+        // ignored after close
+        context.addBytes(10);
+        assertThat(breaker.used(), is(0L));
+    }
+
+    @Test
+    public void testConcurrentCloseDoesNotLeakReservations() throws Exception {
+        final QueryMemoryBreaker breaker = new QueryMemoryBreaker(-1, -1);
+        for (int run = 0; run < 100; run++) {
+            final RamAccountingContext context = breaker.newContext(UUID.randomUUID());
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread adder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        context.addBytes(10);
+                    }
+                }
+            });
+            adder.start();
+            start.countDown();
+            context.close();
+            adder.join();
+            assertThat(breaker.used(), is(0L));
+        }
+        assertThat(breaker.usedByJob().size(), is(0));
+    }
+
+    @Test
+    public void testNodeLimitExceeded() throws Exception {
+        QueryMemoryBreaker breaker = new QueryMemoryBreaker(100, -1);
+        RamAccountingContext context1 = breaker.newContext(UUID.randomUUID());
+        RamAccountingContext context2 = breaker.newContext(UUID.randomUUID());
+        context1.addBytes(80);
+        try {
+            context2.addBytes(40);
+        } catch (QueryMemoryLimitExceededException e) {
+            // failed reservations are rolled back
+            assertThat(breaker.used(), is(80L));
+            assertThat(context2.reservedBytes(), is(0L));
+            return;
+        }
+        throw new AssertionError("expected QueryMemoryLimitExceededException");
+    }
+
+    @Test
+    public void testJobLimitExceeded() throws Exception {
+        QueryMemoryBreaker breaker = new QueryMemoryBreaker(-1, 100);
+        UUID jobId = UUID.randomUUID();
+        breaker.newContext(jobId).addBytes(60);
+        breaker.newContext(UUID.randomUUID()).addBytes(60);
+
+        expectedException.expect(QueryMemoryLimitExceededException.class);
+        breaker.newContext(jobId).addBytes(60);
+    }
+
+    @Test
+    public void testNoopContext() throws Exception {
+        RamAccountingContext.NOOP.addBytes(Long.MAX_VALUE);
+        assertThat(RamAccountingContext.NOOP.reservedBytes(), is(0L));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport;
+
+import io.crate.Streamer;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ColumnarRowStreamerTest {
+
+    private static final Streamer<?>[] STREAMERS = new Streamer[]{
+            DataTypes.STRING.streamer(),
+            DataTypes.LONG.streamer(),
+            DataTypes.TIMESTAMP.streamer(),
+            DataTypes.INTEGER.streamer(),
+            DataTypes.DOUBLE.streamer()
+    };
+
+    private Object[][] streamed(Object[][] rows) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        ColumnarRowStreamer.writeRows(out, STREAMERS, rows);
+        return ColumnarRowStreamer.readRows(new BytesStreamInput(out.bytes()), STREAMERS);
+    }
+
+    @Test
+    public void testRepeatedValues() throws Exception {
+        Object[][] rows = new Object[100][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{
+                    i % 7 == 0 ? null : new BytesRef("value" + (i % 3)),
+                    i % 5 == 0 ? null : 1000000000L + i,
+                    1400000000000L + i * 1000L,
+                    i % 2 == 0 ? null : -i,
+                    i / 3.0
+            };
+        }
+        assertThat(streamed(rows), is(rows));
+    }
+
+    @Test
+    public void testDistinctValues() throws Exception {
+        Object[][] rows = new Object[][]{
+                {new BytesRef("a"), Long.MIN_VALUE, 0L, Integer.MIN_VALUE, null},
+                {new BytesRef("b"), Long.MAX_VALUE, null, Integer.MAX_VALUE, 1.0},
+                {new BytesRef(""), null, null, null, null}
+        };
+        assertThat(streamed(rows), is(rows));
+    }
+
+    @Test
+    public void testOnlyNulls() throws Exception {
+        Object[][] rows = new Object[][]{
+                {null, null, null, null, null},
+                {null, null, null, null, null}
+        };
+        assertThat(streamed(rows), is(rows));
+    }
+
+    @Test
+    public void testOtherNumbersAreWrittenByStreamer() throws Exception {
+        Streamer<?>[] streamers = new Streamer[]{DataTypes.LONG.streamer()};
+        Object[][] rows = new Object[][]{{1L}, {2.7d}, {null}};
+        BytesStreamOutput out = new BytesStreamOutput();
+        ColumnarRowStreamer.writeRows(out, streamers, rows);
+        // format, number of rows, encoding of the first column
+        assertThat(out.bytes().get(2), is(ColumnarRowStreamer.ENCODING_STREAMER));
+
+        Object[][] streamed = ColumnarRowStreamer.readRows(new BytesStreamInput(out.bytes()), streamers);
+        assertThat(streamed, is(new Object[][]{{1L}, {2L}, {null}}));
+    }
+
+    @Test
+    public void testNoRows() throws Exception {
+        assertThat(streamed(new Object[0][]).length, is(0));
+    }
+}
@@ -555,7 +555,7 @@ public class TransportExecutorTest extends SQLTransportIntegrationTest {
         insertCharacters();
         Plan plan = new Plan();
         WhereClause whereClause = new WhereClause(null, false);
-        plan.add(new ESCountNode("characters", whereClause));
+        plan.add(new ESCountNode(new String[]{"characters"}, whereClause));
 
         List<ListenableFuture<Object[][]>> result = executor.execute(executor.newJob(plan));
         Object[][] rows = result.get(0).get();
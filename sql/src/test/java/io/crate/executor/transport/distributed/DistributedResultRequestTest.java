@@ -33,6 +33,7 @@ import java.util.UUID;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
@@ -68,4 +69,23 @@ public class DistributedResultRequestTest {
         assertThat(r1.rows(), is(r2.rows()));
     }
 
+    @Test
+    public void testStreamingIsLast() throws Exception {
+        DistributedRequestContextManager cm = mock(DistributedRequestContextManager.class);
+        Streamer<?>[] streamers = new Streamer[]{DataTypes.STRING.streamer()};
+        when(cm.getStreamer((UUID) anyObject())).thenReturn(Optional.of(streamers));
+
+        DistributedResultRequest r1 = new DistributedResultRequest(UUID.randomUUID(), streamers);
+        r1.rows(new Object[][]{{new BytesRef("ab")}});
+        r1.isLast(false);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        r1.writeTo(out);
+        DistributedResultRequest r2 = new DistributedResultRequest(cm);
+        r2.readFrom(new BytesStreamInput(out.bytes()));
+
+        assertFalse(r2.isLast());
+        assertThat(r2.rows().length, is(1));
+    }
+
 }
@@ -180,6 +180,66 @@ public class DistributedResultRequestTest {
         }
     }
 
+    private DistributedResultRequest receive(DistributedRequestContextManager contextManager,
+                                             Object[][] rows,
+                                             boolean isLast) throws Exception {
+        Streamer<?>[] streamers = new Streamer[]{DataTypes.INTEGER.streamer(), DataTypes.STRING.streamer()};
+        DistributedResultRequest requestSender = new DistributedResultRequest(contextId, streamers);
+        requestSender.rows(rows);
+        requestSender.isLast(isLast);
+        BytesStreamOutput streamOutput = new BytesStreamOutput();
+        requestSender.writeTo(streamOutput);
+
+        DistributedResultRequest requestReceiver = new DistributedResultRequest(contextManager);
+        requestReceiver.readFrom(new BytesStreamInput(streamOutput.bytes()));
+        return requestReceiver;
+    }
+
+    @Test
+    public void testPagedResult() throws Exception {
+        DistributedRequestContextManager contextManager =
+                new DistributedRequestContextManager(new DummyDownstreamOperationFactory(rows), functions);
+        final SettableFuture<Object[][]> result = SettableFuture.create();
+        contextManager.createContext(dummyMergeNode, new ActionListener<NodeMergeResponse>() {
+            @Override
+            public void onResponse(NodeMergeResponse nodeMergeResponse) {
+                result.set(nodeMergeResponse.rows());
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                result.setException(e);
+            }
+        });
+
+        assertTrue(contextManager.addToContext(receive(contextManager, new Object[][]{rows[0], rows[1]}, false)));
+        assertFalse(result.isDone());
+        assertTrue(contextManager.addToContext(receive(contextManager, new Object[][]{rows[2]}, true)));
+        assertThat(result.get().length, is(3));
+    }
+
+    @Test
+    public void testPagedResultWithLateContext() throws Exception {
+        DistributedRequestContextManager contextManager =
+                new DistributedRequestContextManager(new DummyDownstreamOperationFactory(rows), functions);
+        contextManager.addToContext(receive(contextManager, new Object[][]{rows[0], rows[1]}, false));
+        contextManager.addToContext(receive(contextManager, new Object[][]{rows[2]}, true));
+
+        final SettableFuture<Object[][]> result = SettableFuture.create();
+        contextManager.createContext(dummyMergeNode, new ActionListener<NodeMergeResponse>() {
+            @Override
+            public void onResponse(NodeMergeResponse nodeMergeResponse) {
+                result.set(nodeMergeResponse.rows());
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                result.setException(e);
+            }
+        });
+        assertThat(result.get().length, is(3));
+    }
+
     class NoopActionListener implements ActionListener<NodeMergeResponse> {
 
         @Override
@@ -0,0 +1,73 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport.task.elasticsearch;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.exceptions.VersionConflictException;
+import io.crate.executor.transport.task.elasticsearch.facet.InternalUpdateFacet;
+import io.crate.executor.transport.task.elasticsearch.facet.UpdateFacet;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.facet.Facets;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ESUpdateByQueryTaskTest {
+
+    private SearchResponse response(long rowCount, long versionConflicts) {
+        InternalUpdateFacet facet = mock(InternalUpdateFacet.class);
+        when(facet.rowCount()).thenReturn(rowCount);
+        when(facet.versionConflicts()).thenReturn(versionConflicts);
+        Facets facets = mock(Facets.class);
+        when(facets.facet(InternalUpdateFacet.class, UpdateFacet.TYPE)).thenReturn(facet);
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getFacets()).thenReturn(facets);
+        return response;
+    }
+
+    @Test
+    public void testRowCount() throws Exception {
+        SettableFuture<Object[][]> future = SettableFuture.create();
+        new ESUpdateByQueryTask.UpdateByQueryResponseListener(future).onResponse(response(3L, 0L));
+        assertThat((Long) future.get()[0][0], is(3L));
+    }
+
+    @Test
+    public void testVersionConflictsFailTheUpdate() throws Exception {
+        SettableFuture<Object[][]> future = SettableFuture.create();
+        new ESUpdateByQueryTask.UpdateByQueryResponseListener(future).onResponse(response(3L, 2L));
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(VersionConflictException.class));
+            return;
+        }
+        throw new AssertionError("expected VersionConflictException");
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport.task.elasticsearch.facet;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkShardRequest;
+import org.elasticsearch.action.bulk.BulkShardResponse;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.SearchLookup;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UpdateCollectorTest {
+
+    private final ShardId shardId = new ShardId("test", 0);
+    private final List<ActionListener<BulkShardResponse>> pending = new CopyOnWriteArrayList<>();
+    private UpdateCollector collector;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void prepare() {
+        TransportShardBulkAction bulkAction = mock(TransportShardBulkAction.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                pending.add((ActionListener<BulkShardResponse>) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(bulkAction).execute(any(BulkShardRequest.class), any(ActionListener.class));
+
+        IndexShard indexShard = mock(IndexShard.class);
+        when(indexShard.shardId()).thenReturn(shardId);
+        SearchContext searchContext = mock(SearchContext.class);
+        when(searchContext.indexShard()).thenReturn(indexShard);
+        when(searchContext.lookup()).thenReturn(mock(SearchLookup.class));
+
+        collector = new UpdateCollector(
+                ImmutableMap.<String, Object>of("name", "updated"), null, bulkAction, searchContext);
+    }
+
+    private Uid uid(int id) {
+        return new Uid("default", Integer.toString(id));
+    }
+
+    private void collectBulks(int from, int numBulks) {
+        for (int i = from * UpdateCollector.BULK_SIZE; i < (from + numBulks) * UpdateCollector.BULK_SIZE; i++) {
+            collector.collect(uid(i));
+        }
+    }
+
+    /**
+     * @return a response of a bulk of {@link UpdateCollector#BULK_SIZE} items
+     * with the first <code>conflicts</code> items failed because of version conflicts
+     */
+    private BulkShardResponse response(int conflicts) {
+        BulkItemResponse[] items = new BulkItemResponse[UpdateCollector.BULK_SIZE];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = mock(BulkItemResponse.class);
+            if (i < conflicts) {
+                BulkItemResponse.Failure failure = mock(BulkItemResponse.Failure.class);
+                when(failure.getStatus()).thenReturn(RestStatus.CONFLICT);
+                when(items[i].isFailed()).thenReturn(true);
+                when(items[i].getFailure()).thenReturn(failure);
+            }
+        }
+        BulkShardResponse response = mock(BulkShardResponse.class);
+        when(response.getResponses()).thenReturn(items);
+        return response;
+    }
+
+    private Thread collectInBackground(final int from, final int numBulks, final AtomicReference<Throwable> failure) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    collectBulks(from, numBulks);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testRequestsAreSentInBulks() throws Exception {
+        for (int i = 0; i < UpdateCollector.BULK_SIZE - 1; i++) {
+            collector.collect(uid(i));
+        }
+        assertThat(pending.size(), is(0));
+        collector.collect(uid(UpdateCollector.BULK_SIZE - 1));
+        assertThat(pending.size(), is(1));
+
+        collector.collect(uid(UpdateCollector.BULK_SIZE));
+        pending.get(0).onResponse(response(0));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                collector.postCollection();
+            }
+        });
+        thread.start();
+        thread.join(100);
+        // the last bulk with a single request is sent by postCollection, which waits for it
+        assertThat(thread.isAlive(), is(true));
+        assertThat(pending.size(), is(2));
+        BulkShardResponse last = mock(BulkShardResponse.class);
+        when(last.getResponses()).thenReturn(new BulkItemResponse[]{mock(BulkItemResponse.class)});
+        pending.get(1).onResponse(last);
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        assertThat(thread.isAlive(), is(false));
+        assertThat(collector.rowCount(), is((long) UpdateCollector.BULK_SIZE + 1));
+    }
+
+    @Test
+    public void testBulksAreExecutedConcurrently() throws Exception {
+        collectBulks(0, UpdateCollector.MAX_CONCURRENT_REQUESTS);
+        // no bulk has been answered yet, all of them are in flight
+        assertThat(pending.size(), is(UpdateCollector.MAX_CONCURRENT_REQUESTS));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread blocked = collectInBackground(UpdateCollector.MAX_CONCURRENT_REQUESTS, 1, failure);
+        blocked.join(100);
+        assertThat(blocked.isAlive(), is(true));
+        assertThat(pending.size(), is(UpdateCollector.MAX_CONCURRENT_REQUESTS));
+
+        pending.get(0).onResponse(response(0));
+        blocked.join(TimeUnit.SECONDS.toMillis(5));
+        assertThat(blocked.isAlive(), is(false));
+        assertThat(failure.get(), is((Throwable) null));
+
+        for (int i = 1; i < pending.size(); i++) {
+            pending.get(i).onResponse(response(0));
+        }
+        collector.postCollection();
+        assertThat(collector.rowCount(),
+                is((long) (UpdateCollector.MAX_CONCURRENT_REQUESTS + 1) * UpdateCollector.BULK_SIZE));
+    }
+
+    @Test
+    public void testUpdatesStopAfterVersionConflict() throws Exception {
+        collectBulks(0, 2);
+        pending.get(0).onResponse(response(5));
+        pending.get(1).onResponse(response(0));
+
+        // no more bulks are sent once a conflict has been reported
+        collectBulks(2, 2);
+        collector.postCollection();
+        assertThat(pending.size(), is(2));
+        assertThat(collector.versionConflicts(), is(5L));
+        assertThat(collector.rowCount(), is((long) 2 * UpdateCollector.BULK_SIZE - 5));
+    }
+
+    @Test
+    public void testFailureWaitsForBulksInFlight() throws Exception {
+        collectBulks(0, 2);
+        pending.get(1).onFailure(new IllegalStateException("update failed"));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = collectInBackground(2, 1, failure);
+        thread.join(100);
+        // the failure is only raised once the other bulk in flight is done
+        assertThat(thread.isAlive(), is(true));
+
+        pending.get(0).onResponse(response(0));
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        assertThat(thread.isAlive(), is(false));
+        assertThat(failure.get().getMessage(), is("update failed"));
+        assertThat(pending.size(), is(2));
+        assertThat(collector.rowCount(), is((long) UpdateCollector.BULK_SIZE));
+    }
+}
@@ -93,6 +93,21 @@ public class SQLTransportIntegrationTest extends CrateIntegrationTest {
         return response;
     }
 
+    /**
+     * Execute an SQL Statement once per row of bulk arguments on a random node of the cluster
+     *
+     * @param stmt the SQL Statement
+     * @param bulkArgs the rows of arguments
+     * @return the SQLResponse
+     */
+    public SQLResponse executeBulk(String stmt, Object[][] bulkArgs) {
+        SQLRequestBuilder requestBuilder = new SQLRequestBuilder(client());
+        requestBuilder.stmt(stmt);
+        requestBuilder.bulkArgs(bulkArgs);
+        response = requestBuilder.execute().actionGet();
+        return response;
+    }
+
     /**
      * Get all mappings from an index as JSON String
      *
@@ -176,6 +191,7 @@ public class SQLTransportIntegrationTest extends CrateIntegrationTest {
         parser.parseSource(new BytesArray(source));
         requestBuilder.stmt(context.stmt());
         requestBuilder.args(context.args());
+        requestBuilder.bulkArgs(context.bulkArgs());
         requestBuilder.includeTypesOnResponse(includeTypes);
         SQLResponse response = requestBuilder.execute().actionGet();
         response.toXContent(builder, ToXContent.EMPTY_PARAMS);
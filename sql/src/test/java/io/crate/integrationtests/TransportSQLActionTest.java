@@ -3896,4 +3896,72 @@ public class TransportSQLActionTest extends SQLTransportIntegrationTest {
         assertThat((Long)response.rows()[0][0], is(2L));
     }
 
+    @Test
+    public void testBulkInsert() throws Exception {
+        execute("create table t1 (id int primary key, name string) with (number_of_replicas=0)");
+        ensureGreen();
+
+        executeBulk("insert into t1 (id, name) values (?, ?)", new Object[][]{
+                new Object[]{1, "Arthur"},
+                new Object[]{2, "Trillian"},
+                new Object[]{1, "Ford"}
+        });
+        assertThat(response.rowCount(), is(2L));
+        SQLResponse.BulkResult[] results = response.bulkResults();
+        assertThat(results.length, is(3));
+        assertThat(results[0].rowCount(), is(1L));
+        assertThat(results[1].rowCount(), is(1L));
+        assertThat(results[2].failed(), is(true));
+        assertThat(results[2].rowCount(), is(SQLResponse.ROW_COUNT_FAILED));
+        refresh();
+
+        execute("select name from t1 order by id");
+        assertThat(response.rowCount(), is(2L));
+        assertThat((String) response.rows()[0][0], is("Arthur"));
+        assertThat((String) response.rows()[1][0], is("Trillian"));
+    }
+
+    @Test
+    public void testBulkUpdateAndDelete() throws Exception {
+        execute("create table t1 (id int primary key, name string) with (number_of_replicas=0)");
+        ensureGreen();
+        execute("insert into t1 (id, name) values (1, 'Arthur'), (2, 'Trillian'), (3, 'Ford')");
+        refresh();
+
+        executeBulk("update t1 set name = ? where id = ?", new Object[][]{
+                new Object[]{"Zaphod", 1},
+                new Object[]{"Marvin", 2},
+                new Object[]{"Slartibartfast", 3}
+        });
+        SQLResponse.BulkResult[] results = response.bulkResults();
+        assertThat(results[0].rowCount(), is(1L));
+        assertThat(results[1].rowCount(), is(1L));
+        assertThat(results[2].rowCount(), is(1L));
+        refresh();
+
+        execute("select name from t1 order by id");
+        assertThat((String) response.rows()[0][0], is("Zaphod"));
+        assertThat((String) response.rows()[1][0], is("Marvin"));
+
+        executeBulk("delete from t1 where id = ?", new Object[][]{
+                new Object[]{1},
+                new Object[]{3}
+        });
+        assertThat(response.bulkResults().length, is(2));
+        refresh();
+
+        execute("select id from t1");
+        assertThat(response.rowCount(), is(1L));
+        assertThat((Integer) response.rows()[0][0], is(2));
+    }
+
+    @Test
+    public void testBulkArgsOnSelect() throws Exception {
+        execute("create table t1 (id int primary key) with (number_of_replicas=0)");
+        ensureGreen();
+
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("bulk_args are only supported for INSERT, UPDATE and DELETE statements");
+        executeBulk("select * from t1 where id = ?", new Object[][]{ new Object[]{1} });
+    }
 }
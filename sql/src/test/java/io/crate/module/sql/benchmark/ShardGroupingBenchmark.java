@@ -0,0 +1,171 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.module.sql.benchmark;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.carrotsearch.junitbenchmarks.annotation.AxisRange;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkMethodChart;
+import com.google.common.collect.ImmutableList;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.metadata.*;
+import io.crate.operation.ImplementationSymbolVisitor;
+import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.collect.ShardProjectorChain;
+import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.Projector;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * feeds the same number of rows through a group by projector chain from a varying number
+ * of shard collector threads
+ */
+@AxisRange(min = 0)
+@BenchmarkMethodChart(filePrefix = "benchmark-shard-grouping")
+public class ShardGroupingBenchmark {
+
+    public static final int NUMBER_OF_ROWS = 4000000;
+    public static final int NUMBER_OF_KEYS = 100;
+    public static final int BENCHMARK_ROUNDS = 20;
+
+    private static ProjectionToProjectorVisitor visitor;
+    private static List<Projection> projections;
+    private static BytesRef[] keys;
+    private static ExecutorService executor;
+
+    @Rule
+    public TestRule benchmarkRun = new BenchmarkRule();
+
+    @BeforeClass
+    public static void setUpClass() {
+        Injector injector = new ModulesBuilder()
+                .add(new AggregationImplModule())
+                .add(new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(Client.class).toInstance(mock(Client.class));
+                    }
+                })
+                .createInjector();
+        ImplementationSymbolVisitor symbolVisitor = new ImplementationSymbolVisitor(
+                new GlobalReferenceResolver(new HashMap<ReferenceIdent, ReferenceImplementation>()),
+                injector.getInstance(Functions.class),
+                RowGranularity.NODE);
+        visitor = new ProjectionToProjectorVisitor(injector.getProvider(Client.class), symbolVisitor);
+
+        FunctionInfo countInfo = new FunctionInfo(
+                new FunctionIdent(CountAggregation.NAME, Arrays.<DataType>asList(DataTypes.STRING)), DataTypes.LONG);
+        Aggregation count = new Aggregation(countInfo, ImmutableList.<Symbol>of(new InputColumn(0)),
+                Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        projections = ImmutableList.<Projection>of(new GroupProjection(
+                ImmutableList.<Symbol>of(new InputColumn(0)),
+                Arrays.asList(count),
+                ImmutableList.<DataType>of(DataTypes.STRING)));
+
+        keys = new BytesRef[NUMBER_OF_KEYS];
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys[i] = new BytesRef("key" + i);
+        }
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+    }
+
+    private void groupBy(int numShards) throws Exception {
+        ShardProjectorChain chain = new ShardProjectorChain(numShards, projections, visitor, null, RamAccountingContext.NOOP);
+        List<Projector> shardProjectors = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            Projector projector = chain.newShardDownstreamProjector(visitor);
+            projector.registerUpstream(null);
+            shardProjectors.add(projector);
+        }
+        chain.startProjections();
+
+        final int rowsPerShard = NUMBER_OF_ROWS / numShards;
+        for (final Projector projector : shardProjectors) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < rowsPerShard; i++) {
+                        projector.setNextRow(keys[i % NUMBER_OF_KEYS]);
+                    }
+                    projector.upstreamFinished();
+                }
+            });
+        }
+        assert chain.result().get().length == NUMBER_OF_KEYS;
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 2)
+    @Test
+    public void testGroupBy1Shard() throws Exception {
+        groupBy(1);
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 2)
+    @Test
+    public void testGroupBy2Shards() throws Exception {
+        groupBy(2);
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 2)
+    @Test
+    public void testGroupBy4Shards() throws Exception {
+        groupBy(4);
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 2)
+    @Test
+    public void testGroupBy8Shards() throws Exception {
+        groupBy(8);
+    }
+}
@@ -32,6 +32,7 @@ import io.crate.operation.collect.InputCollectExpression;
 import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.util.BigArrays;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.rules.ExpectedException;
@@ -94,4 +95,40 @@ public abstract class AggregationTest {
         return new Object[][]{{state.value()}};
     }
 
+    /**
+     * like {@link #executeAggregation(String, io.crate.types.DataType, Object[][])} but uses the fixed width state.
+     * Every row is aggregated into its own group whose partial states are then reduced into a single group.
+     */
+    @SuppressWarnings("unchecked")
+    public Object[][] executeFixedWidthAggregation(String name, DataType dataType, Object[][] data) throws Exception {
+        FunctionIdent fi;
+        InputCollectExpression[] inputs;
+        if (dataType != null) {
+            fi = new FunctionIdent(name, ImmutableList.of(dataType));
+            inputs = new InputCollectExpression[]{new InputCollectExpression(0)};
+        } else {
+            fi = new FunctionIdent(name, ImmutableList.<DataType>of());
+            inputs = new InputCollectExpression[0];
+        }
+        AggregationFunction impl = (AggregationFunction) functions.get(fi);
+        assert impl.hasFixedWidthState();
+
+        StateColumns iterColumns = new StateColumns(impl.longSlots(), impl.doubleSlots(), BigArrays.NON_RECYCLING_INSTANCE);
+        StateColumns reducedColumns = new StateColumns(impl.longSlots(), impl.doubleSlots(), BigArrays.NON_RECYCLING_INSTANCE);
+        impl.newState(reducedColumns, 0);
+        for (int group = 0; group < data.length; group++) {
+            for (InputCollectExpression i : inputs) {
+                i.setNextRow(data[group]);
+            }
+            iterColumns.ensureCapacity(group);
+            impl.newState(iterColumns, group);
+            impl.iterate(iterColumns, group, inputs);
+            impl.reduce(reducedColumns, 0, impl.partialState(iterColumns, group));
+        }
+        Object value = impl.value(reducedColumns, 0);
+        iterColumns.release();
+        reducedColumns.release();
+        return new Object[][]{{value}};
+    }
+
 }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation;
+
+import org.elasticsearch.common.util.BigArrays;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class StateColumnsTest {
+
+    @Test
+    public void testColumnsGrowAndKeepStates() throws Exception {
+        StateColumns columns = new StateColumns(1, 1, BigArrays.NON_RECYCLING_INSTANCE);
+        for (long group = 0; group < 100; group++) {
+            columns.ensureCapacity(group);
+            assertThat(columns.getLong(0, group), is(0L));
+            assertThat(columns.getDouble(0, group), is(0.0d));
+            columns.incrementLong(0, group, group);
+            columns.setDouble(0, group, group / 2.0);
+        }
+        for (long group = 0; group < 100; group++) {
+            assertThat(columns.getLong(0, group), is(group));
+            assertThat(columns.getDouble(0, group), is(group / 2.0));
+        }
+        columns.release();
+    }
+}
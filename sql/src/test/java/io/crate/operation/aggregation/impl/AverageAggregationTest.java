@@ -82,4 +82,13 @@ public class AverageAggregationTest extends AggregationTest {
     public void testUnsupportedType() throws Exception {
         Object[][] result = executeAggregation(DataTypes.STRING, new Object[][]{{"Youri"}, {"Ruben"}});
     }
+
+    @Test
+    public void testFixedWidthState() throws Exception {
+        Object[][] result = executeFixedWidthAggregation("avg", DataTypes.LONG, new Object[][]{{7L}, {null}, {3L}});
+        assertEquals(5d, result[0][0]);
+
+        result = executeFixedWidthAggregation("avg", DataTypes.LONG, new Object[][]{{null}});
+        assertEquals(null, result[0][0]);
+    }
 }
@@ -92,4 +92,10 @@ public class CountAggregationTest extends AggregationTest {
         assertEquals(2L, result[0][0]);
     }
 
+    @Test
+    public void testFixedWidthState() throws Exception {
+        Object[][] result = executeFixedWidthAggregation("count", DataTypes.LONG, new Object[][]{{7L}, {null}, {3L}});
+
+        assertEquals(2L, result[0][0]);
+    }
 }
@@ -88,4 +88,24 @@ public class MaximumAggregationTest extends AggregationTest {
     public void testUnsupportedType() throws Exception {
         Object[][] result = executeAggregation(DataTypes.OBJECT, new Object[][]{{new Object()}});
     }
+
+    @Test
+    public void testFixedWidthState() throws Exception {
+        Object[][] result = executeFixedWidthAggregation("max", DataTypes.TIMESTAMP, new Object[][]{{-8L}, {null}, {-3L}});
+        assertEquals(-3L, result[0][0]);
+
+        result = executeFixedWidthAggregation("max", DataTypes.DOUBLE, new Object[][]{{0.8d}, {0.3d}});
+        assertEquals(0.8d, result[0][0]);
+
+        result = executeFixedWidthAggregation("max", DataTypes.INTEGER, new Object[][]{{null}});
+        assertEquals(null, result[0][0]);
+    }
+
+    @Test
+    public void testFixedWidthStateOrdersNaNLikeComparableState() throws Exception {
+        Object[][] data = new Object[][]{{0.8d}, {Double.NaN}, {0.3d}};
+        Object[][] result = executeFixedWidthAggregation("max", DataTypes.DOUBLE, data);
+        assertEquals(Double.NaN, result[0][0]);
+        assertEquals(executeAggregation(DataTypes.DOUBLE, data)[0][0], result[0][0]);
+    }
 }
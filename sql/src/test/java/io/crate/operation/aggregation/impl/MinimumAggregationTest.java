@@ -88,4 +88,24 @@ public class MinimumAggregationTest extends AggregationTest {
     public void testUnsupportedType() throws Exception {
         Object[][] result = executeAggregation(DataTypes.OBJECT, new Object[][]{{new Object()}});
     }
+
+    @Test
+    public void testFixedWidthState() throws Exception {
+        Object[][] result = executeFixedWidthAggregation("min", DataTypes.SHORT, new Object[][]{{(short) 8}, {null}, {(short) -3}});
+        assertEquals((short) -3, result[0][0]);
+
+        result = executeFixedWidthAggregation("min", DataTypes.FLOAT, new Object[][]{{0.8f}, {0.3f}});
+        assertEquals(0.3f, result[0][0]);
+
+        result = executeFixedWidthAggregation("min", DataTypes.DOUBLE, new Object[][]{{null}});
+        assertEquals(null, result[0][0]);
+    }
+
+    @Test
+    public void testFixedWidthStateOrdersNaNLikeComparableState() throws Exception {
+        Object[][] data = new Object[][]{{0.8d}, {Double.NaN}, {0.3d}};
+        Object[][] result = executeFixedWidthAggregation("min", DataTypes.DOUBLE, data);
+        assertEquals(0.3d, result[0][0]);
+        assertEquals(executeAggregation(DataTypes.DOUBLE, data)[0][0], result[0][0]);
+    }
 }
@@ -82,4 +82,13 @@ public class SumAggregationTest extends AggregationTest {
     public void testUnsupportedType() throws Exception {
         Object[][] result = executeAggregation(DataTypes.STRING, new Object[][]{{"Youri"}, {"Ruben"}});
     }
+
+    @Test
+    public void testFixedWidthState() throws Exception {
+        Object[][] result = executeFixedWidthAggregation("sum", DataTypes.INTEGER, new Object[][]{{7}, {null}, {3}});
+        assertEquals(10d, result[0][0]);
+
+        result = executeFixedWidthAggregation("sum", DataTypes.INTEGER, new Object[][]{{null}});
+        assertEquals(null, result[0][0]);
+    }
 }
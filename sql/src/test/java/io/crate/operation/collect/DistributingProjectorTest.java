@@ -0,0 +1,215 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.Constants;
+import io.crate.Streamer;
+import io.crate.executor.transport.distributed.DistributedResultRequest;
+import io.crate.executor.transport.distributed.DistributedResultResponse;
+import io.crate.executor.transport.merge.TransportMergeNodeAction;
+import io.crate.types.DataTypes;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.transport.TransportException;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponseHandler;
+import org.elasticsearch.transport.TransportService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class DistributingProjectorTest {
+
+    private final List<DistributedResultRequest> requests = new ArrayList<>();
+    private final List<TransportResponseHandler<DistributedResultResponse>> handlers = new ArrayList<>();
+    private final AtomicBoolean submittedWhileLocked = new AtomicBoolean(false);
+    private TransportService transportService;
+
+    @Before
+    public void prepare() {
+        transportService = mock(TransportService.class);
+        doAnswer(new Answer() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                if (Thread.holdsLock(args[4])) {
+                    submittedWhileLocked.set(true);
+                }
+                requests.add((DistributedResultRequest) args[2]);
+                handlers.add((TransportResponseHandler<DistributedResultResponse>) args[4]);
+                return null;
+            }
+        }).when(transportService).submitRequest(any(DiscoveryNode.class), Matchers.same(TransportMergeNodeAction.mergeRowsAction),
+                Matchers.<TransportRequest>any(),
+                any(TransportRequestOptions.class),
+                any(TransportResponseHandler.class));
+    }
+
+    private DistributingProjector newProjector(int pageSize) {
+        return new DistributingProjector(
+                UUID.randomUUID(),
+                Arrays.asList(mock(DiscoveryNode.class)),
+                transportService,
+                new Streamer[]{DataTypes.INTEGER.streamer()},
+                pageSize,
+                false);
+    }
+
+    @Test
+    public void testSendPages() throws Exception {
+        DistributingProjector projector = newProjector(2);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        for (int i = 0; i < 5; i++) {
+            projector.setNextRow(i);
+        }
+        // the second page waits for the first one to be acknowledged
+        assertThat(requests.size(), is(1));
+        assertThat(requests.get(0).rows().length, is(2));
+        assertFalse(requests.get(0).isLast());
+
+        projector.upstreamFinished();
+        handlers.get(0).handleResponse(new DistributedResultResponse(true));
+        assertThat(requests.size(), is(2));
+        handlers.get(1).handleResponse(new DistributedResultResponse(true));
+        assertThat(requests.size(), is(3));
+        assertTrue(requests.get(2).isLast());
+        assertThat(requests.get(2).rows().length, is(1));
+        assertFalse(projector.result().isDone());
+
+        handlers.get(2).handleResponse(new DistributedResultResponse(true));
+        assertThat(projector.result().get(), is(Constants.EMPTY_RESULT));
+        // requests are submitted after the bucket lock is released
+        assertFalse(submittedWhileLocked.get());
+    }
+
+    @Test
+    public void testDownstreamNeedsNoMoreRows() throws Exception {
+        DistributingProjector projector = newProjector(1);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        projector.setNextRow(1);
+        projector.setNextRow(2);
+        projector.setNextRow(3);
+        handlers.get(0).handleResponse(new DistributedResultResponse(false));
+        projector.upstreamFinished();
+
+        // the queued pages are dropped, the stream is closed with an empty last page
+        assertThat(requests.size(), is(2));
+        assertTrue(requests.get(1).isLast());
+        assertThat(requests.get(1).rows().length, is(0));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        DistributingProjector projector = newProjector(10);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        projector.setNextRow(1);
+        projector.fail(new IllegalStateException("dummy"));
+        projector.upstreamFinished();
+
+        assertThat(requests.size(), is(1));
+        assertTrue(requests.get(0).failure());
+    }
+
+    @Test
+    public void testUpstreamBlocksIfTooManyPagesArePending() throws Exception {
+        final DistributingProjector projector = newProjector(1);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        // one page in flight and MAX_PENDING_PAGES queued
+        for (int i = 0; i < DistributingProjector.MAX_PENDING_PAGES + 1; i++) {
+            assertTrue(projector.setNextRow(i));
+        }
+        final AtomicBoolean added = new AtomicBoolean(false);
+        Thread upstream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                added.set(projector.setNextRow(42));
+            }
+        });
+        upstream.start();
+        upstream.join(200);
+        assertTrue(upstream.isAlive());
+        assertFalse(added.get());
+
+        handlers.get(0).handleResponse(new DistributedResultResponse(true));
+        upstream.join(10000);
+        assertFalse(upstream.isAlive());
+        assertTrue(added.get());
+        assertThat(requests.size(), is(2));
+    }
+
+    @Test
+    public void testBlockedUpstreamIsReleasedOnFailure() throws Exception {
+        final DistributingProjector projector = newProjector(1);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        for (int i = 0; i < DistributingProjector.MAX_PENDING_PAGES + 1; i++) {
+            projector.setNextRow(i);
+        }
+        final AtomicBoolean added = new AtomicBoolean(true);
+        Thread upstream = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                added.set(projector.setNextRow(42));
+            }
+        });
+        upstream.start();
+        handlers.get(0).handleException(new TransportException("dummy"));
+        upstream.join(10000);
+        assertFalse(upstream.isAlive());
+        assertFalse(added.get());
+        try {
+            projector.result().get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TransportException.class));
+        }
+    }
+}
@@ -23,6 +23,7 @@ package io.crate.operation.collect;
 
 import com.google.common.collect.ImmutableList;
 import io.crate.analyze.WhereClause;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.integrationtests.SQLTransportIntegrationTest;
 import io.crate.metadata.*;
 import io.crate.metadata.doc.DocSchemaInfo;
@@ -30,9 +31,13 @@ import io.crate.metadata.sys.SysClusterTableInfo;
 import io.crate.metadata.sys.SysNodesTableInfo;
 import io.crate.metadata.sys.SysShardsTableInfo;
 import io.crate.operation.operator.EqOperator;
+import io.crate.operation.projectors.TopN;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
 import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Literal;
 import io.crate.planner.symbol.Reference;
 import io.crate.planner.symbol.Symbol;
@@ -41,6 +46,8 @@ import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.index.service.IndexService;
+import org.elasticsearch.indices.IndicesService;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -49,6 +56,9 @@ import java.util.*;
 import static org.hamcrest.collection.IsIn.isIn;
 import static org.hamcrest.collection.IsIn.isOneOf;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
 
 @CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.SUITE, numNodes = 1)
 public class DocLevelCollectTest extends SQLTransportIntegrationTest {
@@ -148,6 +158,58 @@ public class DocLevelCollectTest extends SQLTransportIntegrationTest {
         assertThat((Integer) result[0][0], is(2));
     }
 
+    private CollectNode orderedTopNCollectNode(int limit, boolean reverse) {
+        CollectNode collectNode = new CollectNode("docCollect", routing(TEST_TABLE_NAME));
+        collectNode.toCollect(Arrays.<Symbol>asList(testDocLevelReference));
+        collectNode.maxRowGranularity(RowGranularity.DOC);
+        TopNProjection topN = new TopNProjection(limit, TopN.NO_OFFSET,
+                Arrays.<Symbol>asList(new InputColumn(0)), new boolean[]{reverse});
+        topN.outputs(Arrays.<Symbol>asList(new InputColumn(0)));
+        collectNode.projections(Arrays.<Projection>asList(topN));
+        return collectNode;
+    }
+
+    @Test
+    public void testCollectDocLevelOrderedTopN() throws Exception {
+        Object[][] result = operation.collect(orderedTopNCollectNode(1, true)).get();
+        assertThat(result.length, is(1));
+        assertThat((Integer) result[0][0], is(4));
+
+        result = operation.collect(orderedTopNCollectNode(1, false)).get();
+        assertThat(result.length, is(1));
+        assertThat((Integer) result[0][0], is(2));
+    }
+
+    @Test
+    public void testOrderedTopNIsCollectedSortedByLucene() throws Exception {
+        IndexService indexService = cluster().getInstance(IndicesService.class).indexServiceSafe(TEST_TABLE_NAME);
+        for (int shardId = 0; shardId < 2; shardId++) {
+            ShardCollectService shardCollectService =
+                    indexService.shardInjectorSafe(shardId).getInstance(ShardCollectService.class);
+
+            // the rows the lucene collector emits are collected before the top-n projection is applied
+            ShardProjectorChain projectorChain = new ShardProjectorChain(
+                    1, ImmutableList.<Projection>of(), null, null, RamAccountingContext.NOOP);
+            CrateCollector collector = shardCollectService.getCollector(
+                    orderedTopNCollectNode(1, true), projectorChain);
+            assertThat(collector, instanceOf(LuceneDocCollector.class));
+            assertThat(((LuceneDocCollector) collector).sort(), notNullValue());
+
+            projectorChain.startProjections();
+            collector.doCollect();
+            Object[][] rows = projectorChain.result().get();
+            assertThat(rows.length <= 1, is(true));
+
+            // without a limit all documents are collected unsorted
+            projectorChain = new ShardProjectorChain(1, ImmutableList.<Projection>of(), null, null, RamAccountingContext.NOOP);
+            collector = shardCollectService.getCollector(
+                    orderedTopNCollectNode(TopN.NO_LIMIT, true), projectorChain);
+            assertThat(((LuceneDocCollector) collector).sort(), nullValue());
+            projectorChain.startProjections();
+            collector.doCollect();
+        }
+    }
+
     @Test
     public void testCollectWithShardAndNodeExpressions() throws Exception {
         Routing routing = routing(TEST_TABLE_NAME);
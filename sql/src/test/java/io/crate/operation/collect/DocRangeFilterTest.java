@@ -0,0 +1,127 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DocRangeFilterTest {
+
+    private IndexWriter writer;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void prepare() throws Exception {
+        writer = new IndexWriter(new RAMDirectory(),
+                new IndexWriterConfig(Lucene.VERSION, new StandardAnalyzer(Lucene.VERSION)));
+        for (int i = 0; i < 100; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", String.valueOf(i), Field.Store.YES));
+            doc.add(new StringField("even", String.valueOf(i % 2 == 0), Field.Store.NO));
+            writer.addDocument(doc);
+            if (i == 40) {
+                // second segment
+                writer.commit();
+            }
+        }
+        writer.deleteDocuments(new Term("id", "42"));
+        writer.commit();
+        reader = DirectoryReader.open(writer.getDirectory());
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        reader.close();
+        writer.close();
+    }
+
+    private Set<String> collect(Query query, int fromDoc, int toDoc) throws IOException {
+        TopDocs topDocs = searcher.search(
+                new FilteredQuery(query, new DocRangeFilter(fromDoc, toDoc), FilteredQuery.LEAP_FROG_FILTER_FIRST_STRATEGY),
+                reader.maxDoc());
+        Set<String> ids = new HashSet<>();
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            ids.add(searcher.doc(scoreDoc.doc).get("id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSlicesCoverAllDocs() throws Exception {
+        int maxDoc = reader.maxDoc();
+        int numSlices = 3;
+        Set<String> ids = new HashSet<>();
+        int total = 0;
+        for (int i = 0; i < numSlices; i++) {
+            Set<String> sliceIds = collect(new MatchAllDocsQuery(), maxDoc * i / numSlices, maxDoc * (i + 1) / numSlices);
+            total += sliceIds.size();
+            ids.addAll(sliceIds);
+        }
+        assertThat(total, is(99));
+        assertThat(ids.size(), is(99));
+    }
+
+    @Test
+    public void testRangeWithQuery() throws Exception {
+        Set<String> ids = collect(new TermQuery(new Term("even", "true")), 38, 46);
+        // 42 is deleted
+        assertThat(ids.size(), is(3));
+        assertThat(ids.contains("38"), is(true));
+        assertThat(ids.contains("40"), is(true));
+        assertThat(ids.contains("44"), is(true));
+    }
+
+    @Test
+    public void testEmptyRange() throws Exception {
+        assertThat(collect(new MatchAllDocsQuery(), 200, 300).size(), is(0));
+    }
+
+    @Test
+    public void testNumSlices() throws Exception {
+        CollectSettings settings = new CollectSettings(4, 1000, CollectSettings.DEFAULT_COMPRESS_ROWS,
+                CollectSettings.DEFAULT_FILE_PARALLELISM, CollectSettings.DEFAULT_MIN_FILE_RANGE_SIZE);
+        assertThat(settings.numSlices(10), is(1));
+        assertThat(settings.numSlices(2500), is(2));
+        assertThat(settings.numSlices(100000), is(4));
+    }
+}
@@ -27,6 +27,7 @@ import com.google.common.collect.Sets;
 import io.crate.action.SQLXContentQueryParser;
 import io.crate.analyze.WhereClause;
 import io.crate.blob.v2.BlobIndices;
+import io.crate.breaker.QueryMemoryBreaker;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.metadata.*;
 import io.crate.metadata.shard.ShardReferenceImplementation;
@@ -281,7 +282,8 @@ public class LocalDataCollectTest {
         operation = new MapSideDataCollectOperation(
                 clientProvider,
                 injector.getInstance(ClusterService.class),
-                functions, injector.getInstance(ReferenceResolver.class), indicesService, testThreadPool
+                functions, injector.getInstance(ReferenceResolver.class), indicesService, testThreadPool,
+                QueryMemoryBreaker.UNLIMITED, CollectSettings.DEFAULT, null
         );
     }
 
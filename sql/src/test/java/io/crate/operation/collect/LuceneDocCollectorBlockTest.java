@@ -0,0 +1,222 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.operation.Input;
+import io.crate.operation.block.RowBlock;
+import io.crate.operation.projectors.BlockProjector;
+import io.crate.operation.projectors.CollectingProjector;
+import io.crate.operation.reference.doc.DocLevelExpressionsTest;
+import io.crate.operation.reference.doc.lucene.LongColumnReference;
+import io.crate.operation.reference.doc.lucene.LuceneCollectorExpression;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * compares the rows collected block-at-a-time with the rows collected row by row
+ */
+public class LuceneDocCollectorBlockTest extends DocLevelExpressionsTest {
+
+    private static final int FIRST_SEGMENT_DOCS = 1300;
+    private static final int SECOND_SEGMENT_DOCS = 1200;
+
+    private DirectoryReader reader;
+
+    /**
+     * two segments, every 7th document has no value and every 10th document is deleted
+     */
+    @Override
+    protected void insertValues(IndexWriter writer) throws Exception {
+        for (int i = 0; i < FIRST_SEGMENT_DOCS + SECOND_SEGMENT_DOCS; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("_id", Integer.toString(i), Field.Store.NO));
+            if (i % 7 != 0) {
+                doc.add(new LongField(fieldName().name(), i, Field.Store.NO));
+            }
+            writer.addDocument(doc);
+            if (i == FIRST_SEGMENT_DOCS - 1) {
+                writer.commit();
+            }
+        }
+        for (int i = 3; i < FIRST_SEGMENT_DOCS + SECOND_SEGMENT_DOCS; i += 10) {
+            writer.deleteDocuments(new Term("_id", Integer.toString(i)));
+        }
+        writer.commit();
+        reader = DirectoryReader.open(writer, true);
+    }
+
+    @After
+    public void closeReader() throws Exception {
+        reader.close();
+    }
+
+    @Override
+    protected FieldMapper.Names fieldName() {
+        return new FieldMapper.Names("l");
+    }
+
+    @Override
+    protected FieldDataType fieldType() {
+        return new FieldDataType("long");
+    }
+
+    /**
+     * the global doc id, a row-wise input
+     */
+    static class DocIdExpression extends LuceneCollectorExpression<Integer> {
+
+        private int docBase;
+        private int doc;
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public void setNextDocId(int doc) {
+            this.doc = doc;
+        }
+
+        @Override
+        public Integer value() {
+            return docBase + doc;
+        }
+
+        @Override
+        public DataType returnType() {
+            return DataTypes.INTEGER;
+        }
+    }
+
+    static class CollectingBlockProjector extends CollectingProjector implements BlockProjector {
+
+        private final int maxBlocks;
+        final List<Integer> blockSizes = new ArrayList<>();
+
+        CollectingBlockProjector(int maxBlocks) {
+            this.maxBlocks = maxBlocks;
+        }
+
+        @Override
+        public synchronized boolean setNextBlock(RowBlock block) {
+            blockSizes.add(block.size());
+            for (int i = 0; i < block.size(); i++) {
+                setNextRow(block.row(i, new Object[block.numColumns()]));
+            }
+            return blockSizes.size() < maxBlocks;
+        }
+    }
+
+    private Object[][] collect(CollectingProjector downstream) throws Exception {
+        SearchContext searchContext = ctx.searchContext();
+        ContextIndexSearcher searcher = mock(ContextIndexSearcher.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                new IndexSearcher(reader).search(
+                        (Query) invocation.getArguments()[0], (Collector) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(searcher).search(any(Query.class), any(Collector.class));
+        when(searchContext.searcher()).thenReturn(searcher);
+
+        LongColumnReference longColumn = new LongColumnReference(fieldName().name());
+        DocIdExpression docId = new DocIdExpression();
+        LuceneDocCollector collector = new LuceneDocCollector(
+                searchContext,
+                null,
+                ImmutableList.<Input<?>>of(longColumn, docId),
+                ImmutableList.<LuceneCollectorExpression<?>>of(longColumn, docId),
+                downstream);
+        downstream.startProjection();
+        collector.doCollect();
+        return downstream.result().get();
+    }
+
+    @Test
+    public void testBlocksMatchRows() throws Exception {
+        Object[][] rows = collect(new CollectingProjector());
+        CollectingBlockProjector blockProjector = new CollectingBlockProjector(Integer.MAX_VALUE);
+        Object[][] blockRows = collect(blockProjector);
+
+        // 10% of the docs are deleted, the last block of each segment is partial
+        assertThat(rows.length, is(2250));
+        assertThat(blockProjector.blockSizes, is(Arrays.asList(1024, 146, 1024, 56)));
+        assertThat(blockRows.length, is(rows.length));
+        int nulls = 0;
+        for (int i = 0; i < rows.length; i++) {
+            assertThat(blockRows[i], is(rows[i]));
+            int doc = (Integer) rows[i][1];
+            assertThat(doc % 10, not(3));
+            if (doc % 7 == 0) {
+                assertThat(rows[i][0], is((Object) null));
+                nulls++;
+            } else {
+                assertThat((Long) rows[i][0], is((long) doc));
+            }
+        }
+        assertThat(nulls > 0, is(true));
+    }
+
+    @Test
+    public void testBlockCollectionStopsIfDownstreamNeedsNoMoreRows() throws Exception {
+        CollectingBlockProjector blockProjector = new CollectingBlockProjector(1);
+        Object[][] blockRows = collect(blockProjector);
+
+        assertThat(blockProjector.blockSizes, is(Arrays.asList(1024)));
+        assertThat(blockRows.length, is(1024));
+    }
+}
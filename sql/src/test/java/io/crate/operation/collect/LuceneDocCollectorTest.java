@@ -0,0 +1,44 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect;
+
+import org.elasticsearch.index.engine.Engine;
+import org.junit.Test;
+
+import static org.mockito.Mockito.*;
+
+public class LuceneDocCollectorTest {
+
+    @Test
+    public void testSharedSearcherIsReleasedByTheLastSlice() throws Exception {
+        Engine.Searcher engineSearcher = mock(Engine.Searcher.class);
+        LuceneDocCollector.SharedSearcher sharedSearcher = new LuceneDocCollector.SharedSearcher(engineSearcher, 3);
+
+        sharedSearcher.release();
+        sharedSearcher.release();
+        verify(engineSearcher, never()).release();
+
+        sharedSearcher.release();
+        verify(engineSearcher, times(1)).release();
+    }
+}
@@ -23,6 +23,7 @@ package io.crate.operation.collect;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.breaker.QueryMemoryBreaker;
 import io.crate.metadata.*;
 import io.crate.planner.node.dql.FileUriCollectNode;
 import io.crate.planner.projection.Projection;
@@ -82,7 +83,10 @@ public class MapSideDataCollectOperationTest {
                 functions,
                 referenceResolver,
                 indicesService,
-                new ThreadPool(ImmutableSettings.EMPTY, null)
+                new ThreadPool(ImmutableSettings.EMPTY, null),
+                QueryMemoryBreaker.UNLIMITED,
+                CollectSettings.DEFAULT,
+                null
         );
 
         File tmpFile = File.createTempFile("fileUriCollectOperation", ".json");
@@ -0,0 +1,104 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect;
+
+import io.crate.types.DataTypes;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SegmentMinMaxCollectorTest {
+
+    private IndexWriter writer;
+    private DirectoryReader reader;
+    private AtomicReader segment;
+
+    @Before
+    public void prepare() throws Exception {
+        writer = new IndexWriter(new RAMDirectory(),
+                new IndexWriterConfig(Lucene.VERSION, new StandardAnalyzer(Lucene.VERSION)));
+        for (int i = -500; i < 1000; i += 3) {
+            Document doc = new Document();
+            doc.add(new LongField("l", i * 1000000000L, Field.Store.NO));
+            doc.add(new IntField("i", i, Field.Store.NO));
+            doc.add(new DoubleField("d", i / 4.0, Field.Store.NO));
+            doc.add(new FloatField("f", i / 8.0f, Field.Store.NO));
+            writer.addDocument(doc);
+        }
+        writer.forceMerge(1);
+        writer.commit();
+        reader = DirectoryReader.open(writer.getDirectory());
+        segment = reader.leaves().get(0).reader();
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testLongBounds() throws Exception {
+        Number[] bounds = SegmentMinMaxCollector.termBounds(segment.terms("l"), DataTypes.LONG);
+        assertThat((Long) bounds[0], is(-500000000000L));
+        assertThat((Long) bounds[1], is(997000000000L));
+    }
+
+    @Test
+    public void testIntegerBounds() throws Exception {
+        Number[] bounds = SegmentMinMaxCollector.termBounds(segment.terms("i"), DataTypes.INTEGER);
+        assertThat((Integer) bounds[0], is(-500));
+        assertThat((Integer) bounds[1], is(997));
+    }
+
+    @Test
+    public void testDoubleBounds() throws Exception {
+        Number[] bounds = SegmentMinMaxCollector.termBounds(segment.terms("d"), DataTypes.DOUBLE);
+        assertThat((Double) bounds[0], is(-125.0));
+        assertThat((Double) bounds[1], is(249.25));
+    }
+
+    @Test
+    public void testFloatBounds() throws Exception {
+        Number[] bounds = SegmentMinMaxCollector.termBounds(segment.terms("f"), DataTypes.FLOAT);
+        assertThat((Float) bounds[0], is(-62.5f));
+        assertThat((Float) bounds[1], is(124.625f));
+    }
+
+    @Test
+    public void testMissingField() throws Exception {
+        assertThat(SegmentMinMaxCollector.termBounds(segment.terms("x"), DataTypes.LONG), nullValue());
+    }
+}
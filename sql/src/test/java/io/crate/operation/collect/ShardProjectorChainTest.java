@@ -0,0 +1,149 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.metadata.*;
+import io.crate.operation.ImplementationSymbolVisitor;
+import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.projectors.GroupingProjector;
+import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.Projector;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ShardProjectorChainTest {
+
+    private ProjectionToProjectorVisitor visitor;
+    private FunctionInfo countInfo;
+
+    @Before
+    public void prepare() {
+        ReferenceResolver referenceResolver = new GlobalReferenceResolver(new HashMap<ReferenceIdent, ReferenceImplementation>());
+        Injector injector = new ModulesBuilder()
+                .add(new AggregationImplModule())
+                .add(new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(Client.class).toInstance(mock(Client.class));
+                    }
+                })
+                .createInjector();
+        Functions functions = injector.getInstance(Functions.class);
+        ImplementationSymbolVisitor symbolvisitor =
+                new ImplementationSymbolVisitor(referenceResolver, functions, RowGranularity.NODE);
+        visitor = new ProjectionToProjectorVisitor(injector.getProvider(Client.class), symbolvisitor);
+        countInfo = new FunctionInfo(
+                new FunctionIdent(CountAggregation.NAME, Arrays.<DataType>asList(DataTypes.STRING)), DataTypes.LONG);
+    }
+
+    private List<Projection> groupProjections() {
+        Aggregation count = new Aggregation(countInfo, ImmutableList.<Symbol>of(new InputColumn(0)),
+                Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        GroupProjection projection = new GroupProjection(
+                ImmutableList.<Symbol>of(new InputColumn(0)),
+                Arrays.asList(count),
+                ImmutableList.<DataType>of(DataTypes.STRING));
+        return ImmutableList.<Projection>of(projection);
+    }
+
+    @Test
+    public void testPreAggregateOnShards() throws Exception {
+        ShardProjectorChain chain = new ShardProjectorChain(2, groupProjections(), visitor, null, RamAccountingContext.NOOP);
+        Projector shard1 = chain.newShardDownstreamProjector(visitor);
+        Projector shard2 = chain.newShardDownstreamProjector(visitor);
+        assertThat(shard1, instanceOf(GroupingProjector.class));
+        assertThat(shard1, not(sameInstance(shard2)));
+
+        shard1.registerUpstream(null);
+        shard2.registerUpstream(null);
+        chain.startProjections();
+
+        shard1.setNextRow(new BytesRef("foo"));
+        shard1.setNextRow(new BytesRef("bar"));
+        shard2.setNextRow(new BytesRef("foo"));
+        shard1.upstreamFinished();
+        shard2.setNextRow(new BytesRef("foo"));
+        shard2.upstreamFinished();
+
+        Object[][] rows = chain.result().get();
+        assertThat(rows.length, is(2));
+        for (Object[] row : rows) {
+            if (row[0].equals(new BytesRef("foo"))) {
+                assertThat((Long) row[1], is(3L));
+            } else {
+                assertThat((BytesRef) row[0], is(new BytesRef("bar")));
+                assertThat((Long) row[1], is(1L));
+            }
+        }
+    }
+
+    @Test
+    public void testShardWithoutUpstream() throws Exception {
+        // a shard whose collector is a NOOP finishes its pre-aggregation on start
+        ShardProjectorChain chain = new ShardProjectorChain(2, groupProjections(), visitor, null, RamAccountingContext.NOOP);
+        Projector shard1 = chain.newShardDownstreamProjector(visitor);
+        chain.newShardDownstreamProjector(visitor);
+
+        shard1.registerUpstream(null);
+        chain.startProjections();
+        shard1.setNextRow(new BytesRef("foo"));
+        shard1.upstreamFinished();
+
+        Object[][] rows = chain.result().get();
+        assertThat(rows.length, is(1));
+        assertThat((Long) rows[0][1], is(1L));
+    }
+
+    @Test
+    public void testNoPreAggregationOnSingleShard() throws Exception {
+        ShardProjectorChain chain = new ShardProjectorChain(1, groupProjections(), visitor, null, RamAccountingContext.NOOP);
+        assertThat(chain.newShardDownstreamProjector(visitor),
+                sameInstance(chain.newShardDownstreamProjector(visitor)));
+    }
+}
@@ -27,12 +27,14 @@ import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import io.crate.external.S3ClientHelper;
 import io.crate.metadata.DynamicFunctionResolver;
 import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionImplementation;
 import io.crate.metadata.Functions;
+import io.crate.operation.collect.CollectSettings;
 import io.crate.operation.projectors.CollectingProjector;
 import io.crate.operation.reference.file.FileLineReferenceResolver;
 import io.crate.types.DataTypes;
@@ -42,15 +44,27 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 import static io.crate.testing.TestingHelpers.createReference;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -140,6 +154,160 @@ public class FileReadingCollectorTest {
         assertCorrectResult(projector.result().get());
     }
 
+    @Test
+    public void testCollectRangesInParallel() throws Throwable {
+        Path dir = Files.createTempDirectory("copy_from_ranges");
+        File file = new File(dir.toFile(), "ranges.json");
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < 500; i++) {
+                writer.write("{\"id\": " + i + "}\n");
+            }
+        }
+        final FileCollectInputSymbolVisitor.Context context =
+                inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING));
+        CollectingProjector projector = new CollectingProjector();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            FileReadingCollector collector = new FileReadingCollector(
+                    file.getAbsolutePath(),
+                    context.topLevelInputs(),
+                    context.expressions(),
+                    new Supplier<FileCollectInputSymbolVisitor.Context>() {
+                        @Override
+                        public FileCollectInputSymbolVisitor.Context get() {
+                            return inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING));
+                        }
+                    },
+                    projector,
+                    FileReadingCollector.FileFormat.JSON,
+                    null,
+                    ImmutableMap.<String, FileInputFactory>of(),
+                    false,
+                    1,
+                    0,
+                    executor,
+                    new CollectSettings(1, 1, false, 4, 100)
+            );
+            projector.startProjection();
+            collector.doCollect();
+            Object[][] rows = projector.result().get();
+
+            Set<String> lines = new HashSet<>();
+            for (Object[] row : rows) {
+                lines.add(((BytesRef) row[0]).utf8ToString());
+            }
+            assertThat(rows.length, is(500));
+            assertThat(lines.size(), is(500));
+            assertThat(lines.contains("{\"id\": 0}"), is(true));
+            assertThat(lines.contains("{\"id\": 499}"), is(true));
+        } finally {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAllWorkersStopIfDownstreamStops() throws Throwable {
+        final AtomicInteger rowsReceived = new AtomicInteger();
+        CollectingProjector projector = new CollectingProjector() {
+            @Override
+            public synchronized boolean setNextRow(Object... row) {
+                return rowsReceived.incrementAndGet() <= 10 && super.setNextRow(row);
+            }
+        };
+        // stopping isn't a failure
+        assertThat(collectRangesInParallel(projector), nullValue());
+
+        // every worker may get at most one rejected row before it stops
+        assertThat(projector.result().get().length, is(10));
+        assertThat(rowsReceived.get(), lessThanOrEqualTo(10 + 4));
+    }
+
+    @Test
+    public void testAllWorkersStopIfOneWorkerFails() throws Throwable {
+        final AtomicInteger rowsReceived = new AtomicInteger();
+        CollectingProjector projector = new CollectingProjector() {
+            @Override
+            public synchronized boolean setNextRow(Object... row) {
+                if (rowsReceived.incrementAndGet() == 10) {
+                    throw new IllegalStateException("dummy");
+                }
+                return super.setNextRow(row);
+            }
+        };
+        // the calling worker reports the failure of any worker, not its own termination
+        Throwable collectFailure = collectRangesInParallel(projector);
+        assertThat(collectFailure, instanceOf(IllegalStateException.class));
+        assertThat(collectFailure.getMessage(), is("dummy"));
+
+        try {
+            projector.result().get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        // the other workers stop at their next line after the failure
+        assertThat(rowsReceived.get(), lessThanOrEqualTo(10 + 4));
+    }
+
+    /**
+     * collects 500 lines split into many small ranges with 4 workers,
+     * returns the failure raised by doCollect once all workers finished
+     */
+    @Nullable
+    private Throwable collectRangesInParallel(CollectingProjector projector) throws Throwable {
+        Path dir = Files.createTempDirectory("copy_from_ranges");
+        File file = new File(dir.toFile(), "ranges.json");
+        try (FileWriter writer = new FileWriter(file)) {
+            for (int i = 0; i < 500; i++) {
+                writer.write("{\"id\": " + i + "}\n");
+            }
+        }
+        FileCollectInputSymbolVisitor.Context context =
+                inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            FileReadingCollector collector = new FileReadingCollector(
+                    file.getAbsolutePath(),
+                    context.topLevelInputs(),
+                    context.expressions(),
+                    new Supplier<FileCollectInputSymbolVisitor.Context>() {
+                        @Override
+                        public FileCollectInputSymbolVisitor.Context get() {
+                            return inputSymbolVisitor.process(createReference("_raw", DataTypes.STRING));
+                        }
+                    },
+                    projector,
+                    FileReadingCollector.FileFormat.JSON,
+                    null,
+                    ImmutableMap.<String, FileInputFactory>of(),
+                    false,
+                    1,
+                    0,
+                    executor,
+                    new CollectSettings(1, 1, false, 4, 100)
+            );
+            projector.startProjection();
+            Throwable collectFailure = null;
+            try {
+                collector.doCollect();
+            } catch (Throwable t) {
+                collectFailure = t;
+            }
+            // the last finishing worker completes the result
+            try {
+                projector.result().get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // checked by the caller
+            }
+            return collectFailure;
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+            file.delete();
+        }
+    }
+
     private void assertCorrectResult(Object[][] rows) throws Throwable {
         assertThat(((BytesRef)rows[0][0]).utf8ToString(), is(
                 "{\"name\": \"Arthur\", \"id\": 4, \"details\": {\"age\": 38}}"));
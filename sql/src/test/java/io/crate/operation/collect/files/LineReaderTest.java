@@ -0,0 +1,108 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect.files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LineReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> readAll(LineReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        byte[] line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(new String(line, StandardCharsets.UTF_8));
+        }
+        reader.close();
+        return lines;
+    }
+
+    private File file(String content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    @Test
+    public void testReadLines() throws Exception {
+        File file = file("foo\r\nbar\n\nbaz");
+        LineReader reader = new LineReader(Channels.newChannel(new FileInputStream(file)));
+        assertThat(readAll(reader), contains("foo", "bar", "", "baz"));
+    }
+
+    @Test
+    public void testLineLongerThanBuffer() throws Exception {
+        File file = file("abcdefghijklmnopqrstuvwxyz\nfoo\n");
+        LineReader reader = LineReader.forRange(FileChannel.open(file.toPath()), 0, file.length(), 4);
+        assertThat(readAll(reader), contains("abcdefghijklmnopqrstuvwxyz", "foo"));
+    }
+
+    @Test
+    public void testEmptyRange() throws Exception {
+        File file = file("foo bar baz\n");
+        LineReader reader = LineReader.forRange(FileChannel.open(file.toPath()), 2, 6);
+        assertThat(readAll(reader), is(empty()));
+    }
+
+    @Test
+    public void testRangesReturnEveryLineOnce() throws Exception {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String line = "line" + i;
+            expected.add(line);
+            content.append(line).append('\n');
+        }
+        File file = file(content.toString());
+        long size = file.length();
+        for (int rangeSize = 1; rangeSize < 40; rangeSize++) {
+            List<String> lines = new ArrayList<>();
+            for (long start = 0; start < size; start += rangeSize) {
+                lines.addAll(readAll(LineReader.forRange(
+                        FileChannel.open(file.toPath()), start, Math.min(size, start + rangeSize), 8)));
+            }
+            assertThat(lines, is(expected));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.operator;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import static io.crate.operation.operator.LikeOperator.DEFAULT_ESCAPE;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LikeMatcherTest {
+
+    private static boolean matches(String pattern, String value) {
+        return LikeMatcher.compile(pattern, DEFAULT_ESCAPE).matches(new BytesRef(value));
+    }
+
+    @Test
+    public void testSpecializedMatchers() {
+        assertThat(LikeMatcher.compile("foo", DEFAULT_ESCAPE), instanceOf(LikeMatcher.ExactMatcher.class));
+        assertThat(LikeMatcher.compile("foo%", DEFAULT_ESCAPE), instanceOf(LikeMatcher.PrefixMatcher.class));
+        assertThat(LikeMatcher.compile("%foo", DEFAULT_ESCAPE), instanceOf(LikeMatcher.SuffixMatcher.class));
+        assertThat(LikeMatcher.compile("%%foo%", DEFAULT_ESCAPE), instanceOf(LikeMatcher.ContainsMatcher.class));
+        assertThat(LikeMatcher.compile("%%", DEFAULT_ESCAPE), instanceOf(LikeMatcher.MatchAll.class));
+        assertThat(LikeMatcher.compile("f\\%o%", DEFAULT_ESCAPE), instanceOf(LikeMatcher.PrefixMatcher.class));
+        assertThat(LikeMatcher.compile("f_o", DEFAULT_ESCAPE), instanceOf(LikeMatcher.RegexMatcher.class));
+        assertThat(LikeMatcher.compile("f%o", DEFAULT_ESCAPE), instanceOf(LikeMatcher.RegexMatcher.class));
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(matches("foo", "foo"));
+        assertFalse(matches("foo", "fooo"));
+        assertTrue(matches("foo%", "foobar"));
+        assertFalse(matches("foo%", "fo"));
+        assertTrue(matches("%bar", "foobar"));
+        assertFalse(matches("%bar", "ba"));
+        assertTrue(matches("%oob%", "foobar"));
+        assertTrue(matches("%bar%", "bar"));
+        assertFalse(matches("%baz%", "foobar"));
+        assertTrue(matches("%", ""));
+        assertTrue(matches("", ""));
+        assertFalse(matches("", "a"));
+        assertTrue(matches("50\\%%", "50% off"));
+        assertFalse(matches("50\\%%", "500 off"));
+        assertTrue(matches("%ü%", "Grüße"));
+        assertTrue(matches("gr__e", "größe"));
+        assertTrue(matches("a+%", "a+b"));
+        assertFalse(matches("a+%", "aab"));
+        assertTrue(matches("foo%", "foo\nbar"));
+        assertTrue(matches("f%o_", "f\noo"));
+    }
+
+    @Test
+    public void testMatchesWithOffset() {
+        BytesRef value = new BytesRef("xxfoobarxx");
+        value.offset = 2;
+        value.length = 6;
+        assertTrue(LikeMatcher.compile("foo%", DEFAULT_ESCAPE).matches(value));
+        assertTrue(LikeMatcher.compile("%bar", DEFAULT_ESCAPE).matches(value));
+        assertFalse(LikeMatcher.compile("%barx%", DEFAULT_ESCAPE).matches(value));
+        assertTrue(LikeMatcher.compile("foobar", DEFAULT_ESCAPE).matches(value));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import io.crate.operation.Input;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.spill.SpillSettings;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class ExternalSortProjectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File spillDirectory;
+    private SpillSettings spillSettings;
+
+    @Before
+    public void setUp() throws Exception {
+        spillDirectory = folder.newFolder();
+        // spill every 3 rows
+        spillSettings = new SpillSettings(3, Long.MAX_VALUE, spillDirectory);
+    }
+
+    private ExternalSortProjector projector(boolean reverse, int limit, int offset) {
+        InputCollectExpression<Object> input = new InputCollectExpression<>(0);
+        ExternalSortProjector projector = new ExternalSortProjector(
+                new Input<?>[]{input, input},
+                new CollectExpression[]{input},
+                1,
+                new int[]{1},
+                new boolean[]{reverse},
+                limit,
+                offset,
+                spillSettings);
+        projector.registerUpstream(null);
+        projector.startProjection();
+        return projector;
+    }
+
+    @Test
+    public void testSortWithSpilling() throws Exception {
+        ExternalSortProjector projector = projector(false, TopN.NO_LIMIT, TopN.NO_OFFSET);
+        for (int i = 10; i > 0; i--) {
+            assertThat(projector.setNextRow(i), is(true));
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = projector.result().get();
+        assertThat(rows.length, is(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(rows[i].length, is(1));
+            assertThat((Integer) rows[i][0], is(i + 1));
+        }
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testSortDescendingWithNullsAndStrings() throws Exception {
+        ExternalSortProjector projector = projector(true, TopN.NO_LIMIT, TopN.NO_OFFSET);
+        projector.setNextRow(new BytesRef("b"));
+        projector.setNextRow((Object) null);
+        projector.setNextRow(new BytesRef("d"));
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("c"));
+        projector.upstreamFinished();
+
+        Object[][] rows = projector.result().get();
+        assertThat(rows.length, is(5));
+        assertThat(rows[0][0], is(nullValue()));
+        assertThat((BytesRef) rows[1][0], is(new BytesRef("d")));
+        assertThat((BytesRef) rows[2][0], is(new BytesRef("c")));
+        assertThat((BytesRef) rows[3][0], is(new BytesRef("b")));
+        assertThat((BytesRef) rows[4][0], is(new BytesRef("a")));
+    }
+
+    @Test
+    public void testSortWithLimitAndOffset() throws Exception {
+        ExternalSortProjector projector = projector(false, 3, 4);
+        for (int i = 20; i > 0; i--) {
+            projector.setNextRow((long) i);
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = projector.result().get();
+        assertThat(rows.length, is(3));
+        assertThat((Long) rows[0][0], is(5L));
+        assertThat((Long) rows[1][0], is(6L));
+        assertThat((Long) rows[2][0], is(7L));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testSortWithHighOffset() throws Exception {
+        ExternalSortProjector projector = projector(false, 2, 30);
+        for (int i = 0; i < 10; i++) {
+            projector.setNextRow(i);
+        }
+        projector.upstreamFinished();
+        assertThat(projector.result().get().length, is(0));
+    }
+
+    @Test
+    public void testFailureDeletesSpillFiles() throws Exception {
+        ExternalSortProjector projector = projector(false, TopN.NO_LIMIT, TopN.NO_OFFSET);
+        for (int i = 0; i < 10; i++) {
+            projector.setNextRow(i);
+        }
+        assertThat(spillDirectory.listFiles().length, is(3));
+        projector.upstreamFailed(new IllegalStateException("dummy"));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testSpilledRowsAreStreamedToDownstream() throws Exception {
+        ExternalSortProjector projector = projector(false, TopN.NO_LIMIT, TopN.NO_OFFSET);
+        CollectingProjector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+        downstream.startProjection();
+        for (int i = 10; i > 0; i--) {
+            projector.setNextRow(i);
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = downstream.result().get();
+        assertThat(rows.length, is(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat((Integer) rows[i][0], is(i + 1));
+        }
+        // the rows are not materialized as result of the sort projector
+        assertThat(projector.result().get().length, is(0));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testMergeStopsIfDownstreamNeedsNoMoreRows() throws Exception {
+        ExternalSortProjector projector = projector(false, TopN.NO_LIMIT, TopN.NO_OFFSET);
+        final AtomicInteger rowsReceived = new AtomicInteger();
+        CollectingProjector downstream = new CollectingProjector() {
+            @Override
+            public synchronized boolean setNextRow(Object... row) {
+                return super.setNextRow(row) && rowsReceived.incrementAndGet() < 4;
+            }
+        };
+        projector.downstream(downstream);
+        downstream.startProjection();
+        for (int i = 10; i > 0; i--) {
+            projector.setNextRow(i);
+        }
+        projector.upstreamFinished();
+
+        assertThat(downstream.result().get().length, is(4));
+        assertThat(rowsReceived.get(), is(4));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+}
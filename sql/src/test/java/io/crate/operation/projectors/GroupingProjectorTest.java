@@ -9,22 +9,42 @@ import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.block.OrdinalVector;
+import io.crate.operation.block.RowBlock;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.spill.SpillSettings;
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Symbol;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class GroupingProjectorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * NOTE:
      *
@@ -53,7 +73,8 @@ public class GroupingProjectorTest {
         GroupingProjector projector = new GroupingProjector(
                 keys,
                 ImmutableList.<CollectExpression<?>>of(),
-                aggregations
+                aggregations,
+                new GroupingProjector.Options()
         );
         CollectingProjector collectingProjector = new CollectingProjector();
         projector.registerUpstream(null);
@@ -69,6 +90,223 @@ public class GroupingProjectorTest {
         assertThat(rows[0][1], instanceOf(CountAggregation.CountAggState.class));
     }
 
+    @Test
+    public void testTypedKeys() throws Exception {
+        InputCollectExpression<Object> name = new InputCollectExpression<>(0);
+        InputCollectExpression<Object> age = new InputCollectExpression<>(1);
+
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        GroupingProjector projector = new GroupingProjector(
+                ImmutableList.<Input<?>>of(name, age),
+                ImmutableList.<CollectExpression<?>>of(name, age),
+                new AggregationContext[] { aggregationContext },
+                new GroupingProjector.Options()
+                        .keyTypes(Arrays.<DataType>asList(DataTypes.STRING, DataTypes.INTEGER))
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        projector.startProjection();
+        projector.setNextRow(new BytesRef("Arthur"), 42);
+        projector.setNextRow(new BytesRef("Trillian"), 30);
+        projector.setNextRow(new BytesRef("Arthur"), 42);
+        projector.setNextRow(new BytesRef("Arthur"), null);
+        projector.setNextRow(null, 30);
+        projector.setNextRow(new BytesRef("Arthur"), 42);
+        projector.upstreamFinished();
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(4));
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            String key = row[0] == null ? null : ((BytesRef) row[0]).utf8ToString();
+            counts.put(key + ":" + row[1], (Long) row[2]);
+        }
+        assertThat(counts.get("Arthur:42"), is(3L));
+        assertThat(counts.get("Trillian:30"), is(1L));
+        assertThat(counts.get("Arthur:null"), is(1L));
+        assertThat(counts.get("null:30"), is(1L));
+    }
+
+    @Test
+    public void testFlushPartialGroups() throws Exception {
+        InputCollectExpression<Object> key = new InputCollectExpression<>(0);
+
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.PARTIAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        GroupingProjector projector = new GroupingProjector(
+                ImmutableList.<Input<?>>of(key),
+                ImmutableList.<CollectExpression<?>>of(key),
+                new AggregationContext[] { aggregationContext },
+                new GroupingProjector.Options()
+                        .keyTypes(Arrays.<DataType>asList(DataTypes.STRING))
+                        .flushThreshold(2)
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        projector.startProjection();
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("b"));  // flush
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("a"));
+        projector.upstreamFinished();
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(3));
+
+        long countA = 0;
+        for (Object[] row : rows) {
+            if (row[0].equals(new BytesRef("a"))) {
+                countA += ((CountAggregation.CountAggState) row[1]).value;
+            }
+        }
+        assertThat(countA, is(3L));
+    }
+
+    private static BytesValues.WithOrdinals segmentValues(String... terms) {
+        Ordinals.Docs ordinals = mock(Ordinals.Docs.class);
+        when(ordinals.getMaxOrd()).thenReturn((long) terms.length + 1);
+        BytesValues.WithOrdinals values = mock(BytesValues.WithOrdinals.class);
+        when(values.ordinals()).thenReturn(ordinals);
+        for (int i = 0; i < terms.length; i++) {
+            when(values.getValueByOrd(i + 1)).thenReturn(new BytesRef(terms[i]));
+        }
+        return values;
+    }
+
+    private static RowBlock ordinalBlock(BytesValues.WithOrdinals values, long... ords) {
+        OrdinalVector keys = new OrdinalVector(ords.length);
+        keys.values(values);
+        for (int i = 0; i < ords.length; i++) {
+            keys.set(i, ords[i]);
+        }
+        RowBlock block = new RowBlock(keys);
+        block.size(ords.length);
+        return block;
+    }
+
+    @Test
+    public void testGroupByOrdinals() throws Exception {
+        InputCollectExpression<Object> key = new InputCollectExpression<>(0);
+
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.PARTIAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        GroupingProjector projector = new GroupingProjector(
+                ImmutableList.<Input<?>>of(key),
+                ImmutableList.<CollectExpression<?>>of(key),
+                new AggregationContext[] { aggregationContext },
+                new GroupingProjector.Options()
+                        .keyTypes(Arrays.<DataType>asList(DataTypes.STRING))
+                        .flushThreshold(100)
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        projector.startProjection();
+        BytesValues.WithOrdinals segment1 = segmentValues("a", "b");
+        projector.setNextBlock(ordinalBlock(segment1, 1, 2, 1, 0));
+        projector.setNextBlock(ordinalBlock(segment1, 1));
+        // new segment, the groups of the first one are emitted
+        BytesValues.WithOrdinals segment2 = segmentValues("b");
+        projector.setNextBlock(ordinalBlock(segment2, 1, 1));
+        projector.upstreamFinished();
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(4));
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            String k = row[0] == null ? null : ((BytesRef) row[0]).utf8ToString();
+            Long count = counts.get(k);
+            counts.put(k, (count == null ? 0L : count) + ((CountAggregation.CountAggState) row[1]).value);
+        }
+        assertThat(counts.get("a"), is(3L));
+        assertThat(counts.get("b"), is(3L));
+        assertThat(counts.get(null), is(1L));
+    }
+
+    @Test
+    public void testSpillTypedKeyGroups() throws Exception {
+        assertSpilledGroups(Arrays.<DataType>asList(DataTypes.STRING));
+    }
+
+    @Test
+    public void testSpillGroups() throws Exception {
+        assertSpilledGroups(null);
+    }
+
+    private void assertSpilledGroups(List<DataType> keyTypes) throws Exception {
+        InputCollectExpression<Object> key = new InputCollectExpression<>(0);
+
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        File spillDirectory = folder.newFolder();
+        // every new group exceeds the memory budget
+        SpillSettings spillSettings = new SpillSettings(Integer.MAX_VALUE, 1, spillDirectory);
+        GroupingProjector projector = new GroupingProjector(
+                ImmutableList.<Input<?>>of(key),
+                ImmutableList.<CollectExpression<?>>of(key),
+                new AggregationContext[] { aggregationContext },
+                new GroupingProjector.Options()
+                        .keyTypes(keyTypes)
+                        .spillSettings(spillSettings)
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        projector.startProjection();
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("b"));
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("c"));
+        projector.setNextRow(new BytesRef("a"));
+        projector.setNextRow(new BytesRef("b"));
+        projector.upstreamFinished();
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(3));
+
+        Map<BytesRef, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((BytesRef) row[0], (Long) row[1]);
+        }
+        assertThat(counts.get(new BytesRef("a")), is(3L));
+        assertThat(counts.get(new BytesRef("b")), is(2L));
+        assertThat(counts.get(new BytesRef("c")), is(1L));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
     class DummyInput implements Input<String> {
 
         private final String[] values;
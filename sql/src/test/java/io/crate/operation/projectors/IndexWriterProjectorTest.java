@@ -28,7 +28,10 @@ import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.InputCollectExpression;
 import io.crate.test.integration.CrateIntegrationTest;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -49,7 +52,10 @@ public class IndexWriterProjectorTest extends SQLTransportIntegrationTest {
         CollectExpression[] collectExpressions = new CollectExpression[]{ idInput, sourceInput };
 
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
+                cluster().getInstance(ClusterService.class),
+                cluster().getInstance(ThreadPool.class),
                 cluster().getInstance(Client.class),
+                cluster().getInstance(TransportShardBulkAction.class),
                 "bulk_import",
                 Arrays.asList("id"),
                 Arrays.<Input<?>>asList(idInput),
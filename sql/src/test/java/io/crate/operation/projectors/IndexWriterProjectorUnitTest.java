@@ -26,12 +26,15 @@ import io.crate.operation.Input;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.InputCollectExpression;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
 
 public class IndexWriterProjectorUnitTest {
@@ -44,6 +47,9 @@ public class IndexWriterProjectorUnitTest {
         CollectExpression[] collectExpressions = new CollectExpression[]{ idInput, sourceInput };
 
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
+                mock(ClusterService.class, RETURNS_DEEP_STUBS),
+                null,
+                null,
                 null,
                 "bulk_import",
                 Arrays.<String>asList("id"),
@@ -76,7 +82,10 @@ public class IndexWriterProjectorUnitTest {
         InputCollectExpression<Object> routingInput = new InputCollectExpression<>(0);
         CollectExpression[] collectExpressions = new CollectExpression[]{ idInput, sourceInput, routingInput };
         final IndexWriterProjector indexWriter = new IndexWriterProjector(
-                mock(Client.class),
+                mock(ClusterService.class, RETURNS_DEEP_STUBS),
+                null,
+                mock(Client.class, RETURNS_DEEP_STUBS),
+                mock(TransportShardBulkAction.class),
                 "bulk_import",
                 Arrays.<String>asList("id"),
                 Arrays.<Input<?>>asList(idInput),
@@ -26,6 +26,10 @@ import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.operation.aggregation.impl.AverageAggregation;
 import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.aggregation.impl.MinimumAggregation;
+import io.crate.operation.block.LongVector;
+import io.crate.operation.block.ObjectVector;
+import io.crate.operation.block.RowBlock;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.projection.AggregationProjection;
 import io.crate.planner.projection.GroupProjection;
@@ -168,6 +172,44 @@ public class ProjectionToProjectorVisitorTest {
         assertThat((Long)rows[0][1], is(2L));       // count
     }
 
+    @Test
+    public void testAggregationProjectorBlock() throws ExecutionException, InterruptedException {
+        FunctionInfo minInfo = new FunctionInfo(
+                new FunctionIdent(MinimumAggregation.NAME, Arrays.<DataType>asList(DataTypes.STRING)), DataTypes.STRING);
+        AggregationProjection projection = new AggregationProjection();
+        projection.aggregations(Arrays.asList(
+                new Aggregation(avgInfo, Arrays.<Symbol>asList(new InputColumn(1)), Aggregation.Step.ITER, Aggregation.Step.FINAL),
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.FINAL),
+                // strings have no vector support, iterated row by row
+                new Aggregation(minInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.FINAL)
+        ));
+        Projector projector = visitor.process(projection);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        assertThat(projector, instanceOf(BlockProjector.class));
+
+        ObjectVector names = new ObjectVector(4);
+        LongVector ages = new LongVector(4, DataTypes.INTEGER);
+        RowBlock block = new RowBlock(names, ages);
+        names.set(0, new BytesRef("foo"));
+        ages.set(0, 10);
+        names.set(1, null);
+        ages.set(1, 20);
+        names.set(2, new BytesRef("bar"));
+        ages.setNull(2);
+        block.size(3);
+
+        projector.startProjection();
+        ((BlockProjector) projector).setNextBlock(block);
+        projector.setNextRow(new BytesRef("baz"), 30);
+        projector.upstreamFinished();
+        Object[][] rows = collectingProjector.result().get();
+        assertThat(rows.length, is(1));
+        assertThat((Double)rows[0][0], is(20.0));   // avg
+        assertThat((Long)rows[0][1], is(3L));       // count
+        assertThat((BytesRef)rows[0][2], is(new BytesRef("bar")));  // min
+    }
+
     @Test
     public void testGroupProjector() throws ExecutionException, InterruptedException {
         //         in(0)  in(1)      in(0),      in(2)
@@ -210,4 +252,39 @@ public class ProjectionToProjectorVisitorTest {
         assertThat((Double)rows[2][2], is(44.0));
         assertThat((Long)rows[2][3], is(2L));
     }
+
+    @Test
+    public void testGroupProjectorFollowedByTopNEmitsEveryGroupOnce() throws ExecutionException, InterruptedException {
+        GroupProjection groupProjection = new GroupProjection(
+                Arrays.<Symbol>asList(new InputColumn(0)),
+                Arrays.asList(new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)),
+                        Aggregation.Step.ITER, Aggregation.Step.PARTIAL)));
+        groupProjection.flushPartialGroups(false);
+        TopNProjection topN = new TopNProjection(10, 0,
+                Arrays.<Symbol>asList(new InputColumn(0)), new boolean[]{false});
+        topN.outputs(Arrays.<Symbol>asList(new InputColumn(0), new InputColumn(1)));
+
+        Projector groupProjector = visitor.process(groupProjection);
+        Projector topNProjector = visitor.process(topN);
+        groupProjector.downstream(topNProjector);
+        groupProjector.registerUpstream(null);
+        topNProjector.startProjection();
+        groupProjector.startProjection();
+
+        // more groups than the partial flush threshold, every key is seen twice
+        int numGroups = GroupingProjector.PARTIAL_FLUSH_THRESHOLD + 10;
+        for (int round = 0; round < 2; round++) {
+            for (long key = numGroups - 1; key >= 0; key--) {
+                groupProjector.setNextRow(key);
+            }
+        }
+        groupProjector.upstreamFinished();
+
+        Object[][] rows = ((ResultProvider) topNProjector).result().get();
+        assertThat(rows.length, is(10));
+        for (int i = 0; i < rows.length; i++) {
+            assertThat((Long) rows[i][0], is((long) i));
+            assertThat(((CountAggregation.CountAggState) rows[i][1]).value, is(2L));
+        }
+    }
 }
@@ -253,4 +253,31 @@ public class SortingTopNProjectorTest {
         assertThat(iterateLength, is(20));
 
     }
+
+    @Test
+    public void testPassesResultToDownstream() throws Exception {
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{INPUT, TRUE_LITERAL},
+                new CollectExpression[]{(CollectExpression<?>)INPUT},
+                2,
+                new int[]{0},
+                new boolean[]{true},
+                3,
+                TopN.NO_OFFSET);
+        CollectingProjector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+        projector.registerUpstream(null);
+        projector.startProjection();
+        downstream.startProjection();
+        for (int i = 0; i < 10; i++) {
+            projector.setNextRow(i);
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = downstream.result().get();
+        assertThat(rows.length, is(3));
+        assertThat((Integer) rows[0][0], is(9));
+        assertThat((Integer) rows[1][0], is(8));
+        assertThat((Integer) rows[2][0], is(7));
+    }
 }
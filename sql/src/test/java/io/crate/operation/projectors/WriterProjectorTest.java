@@ -21,17 +21,29 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableSet;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.testing.TestingHelpers;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.compress.lzf.LZFCompressor;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class WriterProjectorTest {
 
@@ -71,4 +83,169 @@ public class WriterProjectorTest {
                 "input line 03\n" +
                 "input line 04\n", TestingHelpers.readFile(uri));
     }
+
+    @Test
+    public void testSplitOutputRotatesBySize() throws Exception {
+        String uri = new File(folder.getRoot(), "t_1.json").getAbsolutePath();
+        Settings settings = ImmutableSettings.builder().put("max_file_size", "30b").build();
+        WriterProjector projector = new WriterProjector(
+                uri,
+                settings,
+                true,
+                Suppliers.ofInstance(new WriterProjector.RowInputs(null, ImmutableSet.<CollectExpression<?>>of()))
+        );
+        Projector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+
+        projector.startProjection();
+
+        projector.registerUpstream(null);
+        for (int i = 0; i < 5; i++) {
+            projector.setNextRow(new BytesRef(String.format("input line %02d", i)));
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = ((ResultProvider) downstream).result().get();
+        assertEquals(5L, rows[0][0]);
+
+        assertEquals("input line 00\n" +
+                "input line 01\n" +
+                "input line 02\n", TestingHelpers.readFile(uri));
+        assertEquals("input line 03\n" +
+                "input line 04\n", TestingHelpers.readFile(new File(folder.getRoot(), "t_1_1.json").getAbsolutePath()));
+    }
+
+    @Test
+    public void testSplitOutputWritesPartPerThread() throws Exception {
+        String uri = new File(folder.getRoot(), "t_1.json").getAbsolutePath();
+        final WriterProjector projector = new WriterProjector(
+                uri,
+                ImmutableSettings.EMPTY,
+                true,
+                Suppliers.ofInstance(new WriterProjector.RowInputs(null, ImmutableSet.<CollectExpression<?>>of()))
+        );
+        Projector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+        projector.startProjection();
+
+        final CountDownLatch started = new CountDownLatch(2);
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            projector.registerUpstream(null);
+            final int threadNum = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        started.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        projector.setNextRow(new BytesRef(String.format("thread %d line %02d", threadNum, i)));
+                    }
+                    projector.upstreamFinished();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Object[][] rows = ((ResultProvider) downstream).result().get();
+        assertEquals(200L, rows[0][0]);
+
+        String first = TestingHelpers.readFile(uri);
+        String second = TestingHelpers.readFile(new File(folder.getRoot(), "t_1_1.json").getAbsolutePath());
+        for (String part : new String[]{first, second}) {
+            String[] lines = part.split("\n");
+            assertEquals(100, lines.length);
+            String threadPrefix = lines[0].substring(0, "thread 0".length());
+            for (String line : lines) {
+                assertEquals(threadPrefix, line.substring(0, threadPrefix.length()));
+            }
+        }
+    }
+
+    private void writeLines(WriterProjector projector, int numLines) throws Exception {
+        Projector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+        projector.startProjection();
+
+        projector.registerUpstream(null);
+        for (int i = 0; i < numLines; i++) {
+            projector.setNextRow(new BytesRef(String.format("input line %02d", i)));
+        }
+        projector.upstreamFinished();
+
+        Object[][] rows = ((ResultProvider) downstream).result().get();
+        assertEquals((long) numLines, rows[0][0]);
+    }
+
+    private String expectedLines(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append(String.format("input line %02d\n", i));
+        }
+        return sb.toString();
+    }
+
+    private String readCompressed(InputStream inputStream) throws Exception {
+        try {
+            return Streams.copyToString(new InputStreamReader(inputStream, "UTF-8"));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testWriteGzipWithCompressionLevel() throws Exception {
+        File fastest = new File(folder.getRoot(), "fastest.json.gz");
+        File best = new File(folder.getRoot(), "best.json.gz");
+        writeLines(new WriterProjector(fastest.getAbsolutePath(),
+                ImmutableSettings.builder().put("compression", "gzip").put("compression_level", 1).build(),
+                null,
+                ImmutableSet.<CollectExpression<?>>of()), 100);
+        writeLines(new WriterProjector(best.getAbsolutePath(),
+                ImmutableSettings.builder().put("compression", "gzip").put("compression_level", 9).build(),
+                null,
+                ImmutableSet.<CollectExpression<?>>of()), 100);
+
+        assertEquals(expectedLines(0, 100), readCompressed(new GZIPInputStream(new FileInputStream(fastest))));
+        assertEquals(expectedLines(0, 100), readCompressed(new GZIPInputStream(new FileInputStream(best))));
+        assertTrue(best.length() <= fastest.length());
+    }
+
+    @Test
+    public void testSplitOutputWritesLzfParts() throws Exception {
+        String uri = new File(folder.getRoot(), "t_1.json.lzf").getAbsolutePath();
+        Settings settings = ImmutableSettings.builder()
+                .put("compression", "lzf")
+                .put("max_file_size", "30b")
+                .build();
+        writeLines(new WriterProjector(
+                uri,
+                settings,
+                true,
+                Suppliers.ofInstance(new WriterProjector.RowInputs(null, ImmutableSet.<CollectExpression<?>>of()))
+        ), 5);
+
+        LZFCompressor compressor = new LZFCompressor();
+        File part = new File(folder.getRoot(), "t_1_1.json.lzf");
+        assertEquals(expectedLines(0, 3), readCompressed(
+                compressor.streamInput(new InputStreamStreamInput(new FileInputStream(uri)))));
+        assertEquals(expectedLines(3, 5), readCompressed(
+                compressor.streamInput(new InputStreamStreamInput(new FileInputStream(part)))));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testCompressionLevelIsRejectedForLzf() throws Exception {
+        new WriterProjector(
+                new File(folder.getRoot(), "out.json.lzf").getAbsolutePath(),
+                ImmutableSettings.builder().put("compression", "lzf").put("compression_level", 9).build(),
+                null,
+                ImmutableSet.<CollectExpression<?>>of());
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors.grouping;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import io.crate.breaker.QueryMemoryBreaker;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionInfo;
+import io.crate.metadata.Functions;
+import io.crate.operation.aggregation.AggregationCollector;
+import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.operation.projectors.spill.SpillSettings;
+import io.crate.planner.symbol.Aggregation;
+import io.crate.planner.symbol.Symbol;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class GroupSpillTest {
+
+    private static final int NUM_GROUPS = 1000;
+    private static final long MAX_BYTES_IN_MEMORY = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AggregationCollector countCollector() {
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.PARTIAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        return new AggregationCollector(countAggregation, (AggregationFunction) functions.get(countInfo.ident()));
+    }
+
+    private List<Object[]> groups() {
+        List<Object[]> rows = new ArrayList<>(NUM_GROUPS);
+        for (long i = 0; i < NUM_GROUPS; i++) {
+            CountAggregation.CountAggState state = new CountAggregation.CountAggState();
+            state.value = 1;
+            rows.add(new Object[]{i, state});
+        }
+        return rows;
+    }
+
+    @Test
+    public void testPartitionsThatDontFitAreRepartitioned() throws Exception {
+        File spillDirectory = folder.newFolder();
+        final QueryMemoryBreaker breaker = new QueryMemoryBreaker(-1, -1);
+        RamAccountingContext ramAccountingContext = breaker.newContext(UUID.randomUUID());
+        GroupSpill groupSpill = new GroupSpill(
+                new SpillSettings(Integer.MAX_VALUE, MAX_BYTES_IN_MEMORY, spillDirectory),
+                ramAccountingContext,
+                1,
+                new AggregationCollector[]{countCollector()});
+
+        // every group is spilled twice
+        groupSpill.spill(groups().iterator());
+        groupSpill.spill(groups().iterator());
+
+        final Map<Long, Long> counts = new HashMap<>();
+        final long[] maxUsed = new long[1];
+        groupSpill.reduce(new Predicate<Object[]>() {
+            @Override
+            public boolean apply(Object[] row) {
+                maxUsed[0] = Math.max(maxUsed[0], breaker.used());
+                counts.put((Long) row[0], ((CountAggregation.CountAggState) row[1]).value);
+                return true;
+            }
+        });
+
+        assertThat(counts.size(), is(NUM_GROUPS));
+        for (long i = 0; i < NUM_GROUPS; i++) {
+            assertThat(counts.get(i), is(2L));
+        }
+        // only the groups of a single (sub) partition are kept in memory and accounted
+        assertThat(maxUsed[0], lessThanOrEqualTo(MAX_BYTES_IN_MEMORY));
+        assertThat(breaker.used(), is(0L));
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testReduceStopsIfConsumerNeedsNoMoreRows() throws Exception {
+        File spillDirectory = folder.newFolder();
+        GroupSpill groupSpill = new GroupSpill(
+                new SpillSettings(Integer.MAX_VALUE, MAX_BYTES_IN_MEMORY, spillDirectory),
+                RamAccountingContext.NOOP,
+                1,
+                new AggregationCollector[]{countCollector()});
+        groupSpill.spill(groups().iterator());
+
+        final int[] rows = new int[1];
+        groupSpill.reduce(new Predicate<Object[]>() {
+            @Override
+            public boolean apply(Object[] row) {
+                return ++rows[0] < 10;
+            }
+        });
+        assertThat(rows[0], is(10));
+
+        groupSpill.delete();
+        assertThat(spillDirectory.listFiles(), emptyArray());
+    }
+}
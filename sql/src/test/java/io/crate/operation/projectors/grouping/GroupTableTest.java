@@ -0,0 +1,125 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors.grouping;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.operation.Input;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class GroupTableTest {
+
+    static class ValueInput implements Input<Object> {
+        Object value;
+
+        @Override
+        public Object value() {
+            return value;
+        }
+    }
+
+    @Test
+    public void testSupports() throws Exception {
+        assertThat(GroupTable.supports(Arrays.<DataType>asList(DataTypes.LONG, DataTypes.STRING)), is(true));
+        assertThat(GroupTable.supports(Arrays.<DataType>asList(DataTypes.DOUBLE, DataTypes.TIMESTAMP)), is(true));
+        assertThat(GroupTable.supports(Arrays.<DataType>asList(DataTypes.LONG, DataTypes.OBJECT)), is(false));
+        assertThat(GroupTable.supports(ImmutableList.<DataType>of()), is(false));
+        assertThat(GroupTable.supports(null), is(false));
+    }
+
+    @Test
+    public void testSingleKey() throws Exception {
+        ValueInput input = new ValueInput();
+        List<Input<?>> inputs = ImmutableList.<Input<?>>of(input);
+        GroupTable table = new GroupTable(ImmutableList.<DataType>of(DataTypes.INTEGER), BigArrays.NON_RECYCLING_INSTANCE);
+
+        input.value = 10;
+        long tenId = table.add(inputs);
+        input.value = null;
+        long nullId = table.add(inputs);
+        input.value = 20;
+        long twentyId = table.add(inputs);
+        input.value = 10;
+        assertThat(table.add(inputs), is(tenId));
+
+        assertThat(table.maxGroupId(), is(3L));
+        Object[] row = new Object[1];
+        table.keys(tenId, row);
+        assertThat((Integer) row[0], is(10));
+        table.keys(twentyId, row);
+        assertThat((Integer) row[0], is(20));
+        table.keys(nullId, row);
+        assertThat(row[0], is((Object) null));
+        table.release();
+    }
+
+    @Test
+    public void testManyKeys() throws Exception {
+        ValueInput first = new ValueInput();
+        ValueInput second = new ValueInput();
+        ValueInput third = new ValueInput();
+        List<Input<?>> inputs = ImmutableList.<Input<?>>of(first, second, third);
+        GroupTable table = new GroupTable(
+                ImmutableList.<DataType>of(DataTypes.LONG, DataTypes.DOUBLE, DataTypes.STRING),
+                BigArrays.NON_RECYCLING_INSTANCE);
+
+        first.value = 1L;
+        second.value = 0.5d;
+        third.value = "foo";
+        long id1 = table.add(inputs);
+        third.value = null;
+        long id2 = table.add(inputs);
+        first.value = null;
+        second.value = null;
+        third.value = "foo";
+        long id3 = table.add(inputs);
+        first.value = 1L;
+        second.value = 0.5d;
+        assertThat(table.add(inputs), is(id1));
+
+        assertThat(table.maxGroupId(), is(3L));
+        Object[] row = new Object[3];
+        table.keys(id1, row);
+        assertThat((Long) row[0], is(1L));
+        assertThat((Double) row[1], is(0.5d));
+        assertThat((BytesRef) row[2], is(new BytesRef("foo")));
+
+        table.keys(id2, row);
+        assertThat((Long) row[0], is(1L));
+        assertThat(row[2], is((Object) null));
+
+        table.keys(id3, row);
+        assertThat(row[0], is((Object) null));
+        assertThat(row[1], is((Object) null));
+        table.release();
+    }
+}
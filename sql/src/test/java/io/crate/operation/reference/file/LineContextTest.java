@@ -21,10 +21,13 @@
 
 package io.crate.operation.reference.file;
 
+import com.google.common.collect.ImmutableMap;
 import io.crate.metadata.ColumnIdent;
 import io.crate.operation.collect.files.CollectorContext;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -40,4 +43,45 @@ public class LineContextTest {
         assertNull(context.get(new ColumnIdent("details", "invalid")));
         assertEquals(43, context.get(new ColumnIdent("details", "age")));
     }
+
+    @Test
+    public void testGetPrefetchColumns() throws Exception {
+        CollectorContext collectorContext = new CollectorContext();
+        collectorContext.addPrefetchColumn(new ColumnIdent("id"));
+        collectorContext.addPrefetchColumn(new ColumnIdent("details", "age"));
+        collectorContext.addPrefetchColumn(new ColumnIdent("details", "invalid"));
+        collectorContext.addPrefetchColumn(new ColumnIdent("tags"));
+        collectorContext.addPrefetchColumn(new ColumnIdent("name", "invalid"));
+        LineContext context = new LineContext(collectorContext);
+
+        String source = "{\"name\": \"foo\", \"ignored\": {\"id\": 1, \"x\": [1, 2]}, " +
+                "\"tags\": [\"a\", \"b\"], \"details\": {\"size\": [{\"age\": 1}], \"age\": 43}, \"id\": 7}";
+        context.rawSource(source.getBytes());
+
+        assertEquals(7, context.get(new ColumnIdent("id")));
+        assertEquals(43, context.get(new ColumnIdent("details", "age")));
+        assertEquals(Arrays.asList("a", "b"), context.get(new ColumnIdent("tags")));
+        assertNull(context.get(new ColumnIdent("details", "invalid")));
+        assertNull(context.get(new ColumnIdent("name", "invalid")));
+        assertEquals(source, context.sourceAsBytesRef().utf8ToString());
+
+        // columns which are not prefetched are read from the parsed source
+        assertEquals("foo", context.get(new ColumnIdent("name")));
+
+        context.rawSource("{\"id\": 8}".getBytes());
+        assertEquals(8, context.get(new ColumnIdent("id")));
+        assertNull(context.get(new ColumnIdent("details", "age")));
+    }
+
+    @Test
+    public void testGetPrefetchColumnAndChild() throws Exception {
+        CollectorContext collectorContext = new CollectorContext();
+        collectorContext.addPrefetchColumn(new ColumnIdent("details"));
+        collectorContext.addPrefetchColumn(new ColumnIdent("details", "age"));
+        LineContext context = new LineContext(collectorContext);
+
+        context.rawSource("{\"details\": {\"age\": 43}}".getBytes());
+        assertEquals(43, context.get(new ColumnIdent("details", "age")));
+        assertEquals(ImmutableMap.of("age", 43), context.get(new ColumnIdent("details")));
+    }
 }
@@ -22,6 +22,7 @@ package io.crate.operation.reference.sys;
 
 import io.crate.Build;
 import io.crate.Version;
+import io.crate.action.sql.StatementCache;
 import io.crate.metadata.GlobalReferenceResolver;
 import io.crate.metadata.ReferenceIdent;
 import io.crate.metadata.ReferenceResolver;
@@ -32,6 +33,7 @@ import io.crate.operation.reference.sys.node.SysNodeExpressionModule;
 import junit.framework.Assert;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.inject.AbstractModule;
@@ -116,6 +118,7 @@ public class TestSysNodesExpressions {
 
             Discovery discovery = mock(Discovery.class);
             bind(Discovery.class).toInstance(discovery);
+            bind(ClusterService.class).toInstance(mock(ClusterService.class));
             when(discovery.localNode()).thenReturn(node);
             when(node.getId()).thenReturn("node-id-1");
             when(node.getName()).thenReturn("node 1");
@@ -303,4 +306,21 @@ public class TestSysNodesExpressions {
 
     }
 
+    @Test
+    public void testStatementCache() throws Exception {
+        StatementCache statementCache = injector.getInstance(StatementCache.class);
+        statementCache.get("select name from sys.nodes");
+        statementCache.get("select name from sys.nodes");
+
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, "stmt_cache");
+        SysObjectReference<Long> cache = (SysObjectReference<Long>) resolver.getImplementation(ident);
+
+        Map<String, Long> v = cache.value();
+        assertEquals(new Long(1), v.get("hits"));
+        assertEquals(new Long(1), v.get("misses"));
+        assertEquals(new Long(1), v.get("size"));
+        assertEquals(new Long(0), v.get("plan_hits"));
+        assertEquals(new Long(0), v.get("plan_misses"));
+        assertEquals(new Long(0), v.get("plan_size"));
+    }
 }
@@ -3,6 +3,7 @@ package io.crate.planner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import io.crate.PartitionName;
+import io.crate.action.sql.PlanTemplate;
 import io.crate.analyze.Analysis;
 import io.crate.analyze.Analyzer;
 import io.crate.analyze.WhereClause;
@@ -38,6 +39,7 @@ import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
@@ -133,6 +135,7 @@ public class PlannerTest {
             DiscoveryNode node = mock(DiscoveryNode.class);
             when(clusterService.state()).thenReturn(clusterState);
             when(clusterState.nodes()).thenReturn(nodes);
+            when(clusterState.metaData()).thenReturn(MetaData.EMPTY_META_DATA);
             ImmutableOpenMap<String, DiscoveryNode> dataNodes =
                     ImmutableOpenMap.<String, DiscoveryNode>builder().fPut("foo", node).build();
             when(nodes.dataNodes()).thenReturn(dataNodes);
@@ -623,6 +626,27 @@ public class PlannerTest {
         assertThat(collection_count, instanceOf(Function.class));
     }
 
+    @Test
+    public void testGroupByOrderedByAggregateMapperSendsAllGroups() throws Exception {
+        Plan plan = plan("select count(*), name from users group by name order by count(*) desc limit 10");
+        CollectNode collectNode = (CollectNode) plan.iterator().next();
+        assertThat(collectNode.projections().size(), is(1));
+        assertThat(collectNode.projections().get(0), instanceOf(GroupProjection.class));
+        assertThat(((GroupProjection) collectNode.projections().get(0)).flushPartialGroups(), is(true));
+    }
+
+    @Test
+    public void testGroupByOrderedByKeysMapperTopN() throws Exception {
+        Plan plan = plan("select count(*), name from users group by name order by name limit 10");
+        CollectNode collectNode = (CollectNode) plan.iterator().next();
+        assertThat(collectNode.projections().size(), is(2));
+        // partial groups must not be flushed into the top-n more than once
+        assertThat(((GroupProjection) collectNode.projections().get(0)).flushPartialGroups(), is(false));
+        TopNProjection topN = (TopNProjection) collectNode.projections().get(1);
+        assertThat(topN.limit(), is(10));
+        assertThat(((InputColumn) topN.orderBy().get(0)).index(), is(0));
+    }
+
     @Test
     public void testGroupByWithOrderOnAggregate() throws Exception {
         Plan plan = plan("select count(*), name from users group by name order by count(*)");
@@ -873,6 +897,109 @@ public class PlannerTest {
         assertThat(planNode, instanceOf(ESCountNode.class));
 
         ESCountNode node = (ESCountNode)planNode;
-        assertThat(node.indexName(), is("users"));
+        assertThat(node.indices(), is(new String[]{"users"}));
+    }
+
+    @Test
+    public void testGlobalCountPlanPartitioned() throws Exception {
+        Plan plan = plan("select count(*) from parted");
+        Iterator<PlanNode> iterator = plan.iterator();
+        PlanNode planNode = iterator.next();
+        assertThat(planNode, instanceOf(ESCountNode.class));
+
+        ESCountNode node = (ESCountNode)planNode;
+        assertThat(node.indices(), is(new String[]{"parted"}));
+        assertFalse(node.whereClause().hasQuery());
+    }
+
+    @Test
+    public void testGlobalCountPlanPartitionWhereClause() throws Exception {
+        Plan plan = plan("select count(*) from parted where date = 123");
+        Iterator<PlanNode> iterator = plan.iterator();
+        PlanNode planNode = iterator.next();
+        assertThat(planNode, instanceOf(ESCountNode.class));
+
+        ESCountNode node = (ESCountNode)planNode;
+        assertThat(node.indices(), is(new String[]{
+                new PartitionName("parted", Arrays.asList("123")).stringValue()}));
+        assertFalse(node.whereClause().hasQuery());
+    }
+
+    @Test
+    public void testGlobalCountPlanEmptyPartitioned() throws Exception {
+        Plan plan = plan("select count(*) from empty_parted");
+        Iterator<PlanNode> iterator = plan.iterator();
+        PlanNode planNode = iterator.next();
+        assertThat(planNode, instanceOf(ESCountNode.class));
+
+        ESCountNode node = (ESCountNode)planNode;
+        assertThat(node.indices().length, is(0));
+    }
+
+    @Test
+    public void testGlobalCountPlanPartitionedWithQuery() throws Exception {
+        Plan plan = plan("select count(*) from parted where name = 'x'");
+        Iterator<PlanNode> iterator = plan.iterator();
+        assertThat(iterator.next(), instanceOf(CollectNode.class));
+    }
+
+    private PlanTemplate planTemplate(String statement, Object[] args) {
+        Analysis analysis = analyzer.analyze(SqlParser.createStatement(statement), args);
+        return PlanTemplate.create(analysis, planner.plan(analysis));
+    }
+
+    @Test
+    public void testPlanTemplateBindsParameters() throws Exception {
+        PlanTemplate template = planTemplate("select name from users where name = ?", new Object[]{"foo"});
+        assertNotNull(template);
+        assertThat(template.outputNames(), is(new String[]{"name"}));
+
+        Plan plan = template.bind(new Object[]{"bar"});
+        assertNotNull(plan);
+        Iterator<PlanNode> iterator = plan.iterator();
+        ESSearchNode searchNode = (ESSearchNode) iterator.next();
+        assertFalse(iterator.hasNext());
+        assertFalse(plan.expectsAffectedRows());
+
+        Function query = (Function) searchNode.whereClause().query();
+        assertThat(query.info().ident().name(), is("op_="));
+        assertThat(((Literal) query.arguments().get(1)).value(), is((Object) new BytesRef("bar")));
+        assertThat(searchNode.outputs().size(), is(1));
+    }
+
+    @Test
+    public void testPlanTemplateBindsCount() throws Exception {
+        PlanTemplate template = planTemplate("select count(*) from users where name = ?", new Object[]{"foo"});
+        assertNotNull(template);
+
+        Plan plan = template.bind(new Object[]{"bar"});
+        ESCountNode countNode = (ESCountNode) plan.iterator().next();
+        assertThat(countNode.indices(), is(new String[]{"users"}));
+        Function query = (Function) countNode.whereClause().query();
+        assertThat(((Literal) query.arguments().get(1)).value(), is((Object) new BytesRef("bar")));
+    }
+
+    @Test
+    public void testPlanTemplateNotBoundToInvalidArgs() throws Exception {
+        PlanTemplate template = planTemplate("select name from users where name = ?", new Object[]{"foo"});
+        assertNull(template.bind(new Object[]{null}));
+        assertNull(template.bind(new Object[0]));
+        assertNull(template.bind(new Object[]{"foo", "bar"}));
+    }
+
+    @Test
+    public void testNoPlanTemplateForPrimaryKeyLookup() throws Exception {
+        assertNull(planTemplate("select name from users where id = ?", new Object[]{1L}));
+    }
+
+    @Test
+    public void testNoPlanTemplateForPartitionedTable() throws Exception {
+        assertNull(planTemplate("select name from parted where name = ?", new Object[]{"foo"}));
+    }
+
+    @Test
+    public void testNoPlanTemplateForCollectPlan() throws Exception {
+        assertNull(planTemplate("select name, count(*) from users where name = ? group by name",
+                new Object[]{"foo"}));
     }
 }
@@ -69,6 +69,7 @@ public class GroupProjectionTest {
         Reference nameRef = createReference("name", DataTypes.STRING);
         GroupProjection groupProjection = new GroupProjection();
         groupProjection.keys(Arrays.<Symbol>asList(nameRef));
+        groupProjection.keyTypes(Arrays.<DataType>asList(DataTypes.STRING));
         groupProjection.values(Arrays.asList(
                 new Aggregation(
                         new FunctionInfo(new FunctionIdent(CountAggregation.NAME, ImmutableList.<DataType>of()), DataTypes.LONG),
@@ -86,6 +87,37 @@ public class GroupProjectionTest {
         GroupProjection p2 = (GroupProjection) Projection.fromStream(in);
 
         assertThat(p2.keys.size(), is(1));
+        assertThat(p2.keyTypes(), is(Arrays.<DataType>asList(DataTypes.STRING)));
         assertThat(p2.values().size(), is(1));
     }
+
+    @Test
+    public void testEqualsRespectsKeyTypes() throws Exception {
+        Reference nameRef = createReference("name", DataTypes.STRING);
+        GroupProjection p1 = new GroupProjection(Arrays.<Symbol>asList(nameRef), ImmutableList.<Aggregation>of(),
+                Arrays.<DataType>asList(DataTypes.STRING));
+        GroupProjection p2 = new GroupProjection(Arrays.<Symbol>asList(nameRef), ImmutableList.<Aggregation>of(),
+                Arrays.<DataType>asList(DataTypes.IP));
+
+        assertThat(p1.equals(p2), is(false));
+        assertThat(p1.hashCode() == p2.hashCode(), is(false));
+    }
+
+    @Test
+    public void testStreamingFlushPartialGroups() throws Exception {
+        Reference nameRef = createReference("name", DataTypes.STRING);
+        GroupProjection p = new GroupProjection(Arrays.<Symbol>asList(nameRef), ImmutableList.<Aggregation>of(),
+                Arrays.<DataType>asList(DataTypes.STRING));
+        p.flushPartialGroups(false);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        Projection.toStream(p, out);
+
+        BytesStreamInput in = new BytesStreamInput(out.bytes());
+        GroupProjection p2 = (GroupProjection) Projection.fromStream(in);
+
+        assertThat(p2.flushPartialGroups(), is(false));
+        assertEquals(p, p2);
+        assertThat(in.available(), is(0));
+    }
 }
@@ -0,0 +1,264 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package org.elasticsearch.action.bulk;
+
+import io.crate.exceptions.UnhandledServerException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.AdminClient;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.operation.OperationRouting;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BulkShardProcessorTest {
+
+    private ClusterService clusterService;
+    private MetaData metaData;
+    private Client client;
+    private TransportShardBulkAction transportShardBulkAction;
+    private final List<BulkShardRequest> requests = new CopyOnWriteArrayList<>();
+    private volatile String failingId = null;
+    private final AtomicInteger rejectedBulks = new AtomicInteger(0);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void prepare() {
+        metaData = mock(MetaData.class);
+        when(metaData.hasIndex("test")).thenReturn(true);
+        when(metaData.index(anyString())).thenReturn(mock(IndexMetaData.class));
+
+        ClusterState state = mock(ClusterState.class);
+        when(state.metaData()).thenReturn(metaData);
+        when(state.nodes()).thenReturn(mock(DiscoveryNodes.class));
+
+        // documents with an even id are routed to shard 0, the others to shard 1
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        when(operationRouting.indexShards(any(ClusterState.class), anyString(), anyString(), anyString(), anyString()))
+                .thenAnswer(new Answer<ShardIterator>() {
+                    @Override
+                    public ShardIterator answer(InvocationOnMock invocation) throws Throwable {
+                        Object[] args = invocation.getArguments();
+                        ShardIterator shardIterator = mock(ShardIterator.class);
+                        when(shardIterator.shardId()).thenReturn(
+                                new ShardId((String) args[1], Integer.parseInt((String) args[3]) % 2));
+                        return shardIterator;
+                    }
+                });
+
+        clusterService = mock(ClusterService.class);
+        when(clusterService.state()).thenReturn(state);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        client = mock(Client.class);
+
+        // answers every bulk right away, rejecting the first rejectedBulks bulks
+        // and failing the item with the failingId
+        transportShardBulkAction = mock(TransportShardBulkAction.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                BulkShardRequest request = (BulkShardRequest) invocation.getArguments()[0];
+                ActionListener<BulkShardResponse> listener = (ActionListener<BulkShardResponse>) invocation.getArguments()[1];
+                requests.add(request);
+                if (rejectedBulks.getAndDecrement() > 0) {
+                    listener.onFailure(new EsRejectedExecutionException("rejected"));
+                    return null;
+                }
+                BulkItemResponse[] itemResponses = new BulkItemResponse[request.items().length];
+                for (int i = 0; i < itemResponses.length; i++) {
+                    String id = ((IndexRequest) request.items()[i].request()).id();
+                    itemResponses[i] = mock(BulkItemResponse.class);
+                    if (id.equals(failingId)) {
+                        when(itemResponses[i].isFailed()).thenReturn(true);
+                        when(itemResponses[i].getFailureMessage()).thenReturn("document " + id + " failed");
+                    }
+                }
+                BulkShardResponse response = mock(BulkShardResponse.class);
+                when(response.getResponses()).thenReturn(itemResponses);
+                listener.onResponse(response);
+                return null;
+            }
+        }).when(transportShardBulkAction).execute(any(BulkShardRequest.class), any(ActionListener.class));
+    }
+
+    private IndexRequest indexRequest(String index, int id) {
+        return new IndexRequest(index, "default", Integer.toString(id)).source("{\"id\": " + id + "}");
+    }
+
+    @Test
+    public void testRequestsAreGroupedByShard() throws Exception {
+        BulkShardProcessor processor = new BulkShardProcessor(
+                clusterService, null, client, transportShardBulkAction, 5, 1);
+        for (int i = 0; i < 22; i++) {
+            assertThat(processor.add(indexRequest("test", i)), is(true));
+        }
+        // two full bulks per shard
+        assertThat(requests.size(), is(4));
+        processor.close();
+
+        assertThat(processor.result().get(), is(22L));
+        assertThat(requests.size(), is(6));
+        int items = 0;
+        for (BulkShardRequest request : requests) {
+            for (BulkItemRequest item : request.items()) {
+                int id = Integer.parseInt(((IndexRequest) item.request()).id());
+                assertThat(id % 2, is(request.shardId()));
+                items++;
+            }
+        }
+        assertThat(items, is(22));
+    }
+
+    @Test
+    public void testFailedItemFailsTheResult() throws Exception {
+        failingId = "3";
+        BulkShardProcessor processor = new BulkShardProcessor(
+                clusterService, null, client, transportShardBulkAction, 2, 1);
+        processor.add(indexRequest("test", 1));
+        processor.add(indexRequest("test", 3));
+        // the bulk of shard 1 failed, the caller is told to stop
+        assertThat(processor.add(indexRequest("test", 2)), is(false));
+        processor.close();
+
+        try {
+            processor.result().get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(UnhandledServerException.class));
+            assertThat(e.getCause().getMessage(), is("document 3 failed"));
+            assertThat(processor.rowsImported(), is(2L));
+            return;
+        }
+        throw new AssertionError("expected UnhandledServerException");
+    }
+
+    @Test
+    public void testRejectedBulkIsRetriedWithSmallerBulkSize() throws Exception {
+        // runs retries right away instead of after the backoff
+        ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.schedule(any(TimeValue.class), anyString(), any(Runnable.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable) invocation.getArguments()[2]).run();
+                return null;
+            }
+        });
+        rejectedBulks.set(1);
+        BulkShardProcessor processor = new BulkShardProcessor(
+                clusterService, threadPool, client, transportShardBulkAction, 100, 1);
+        for (int i = 0; i < 200; i += 2) {
+            processor.add(indexRequest("test", i));
+        }
+        // rejected and retried
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(1).items().length, is(100));
+        assertThat(processor.rejections(), is(1L));
+        verify(threadPool, times(1)).schedule(
+                eq(TimeValue.timeValueMillis(BulkShardProcessor.INITIAL_BACKOFF_MILLIS)), anyString(), any(Runnable.class));
+
+        // halved on rejection, grown by a quarter after the fast retry
+        for (int i = 200; i < 400; i += 2) {
+            processor.add(indexRequest("test", i));
+        }
+        assertThat(requests.get(2).items().length, is(63));
+        processor.close();
+
+        assertThat(processor.result().get(), is(200L));
+        assertThat(processor.rowsAdded(), is(200L));
+        assertThat(processor.rowsImported(), is(200L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWaitsForIndexCreatedConcurrently() throws Exception {
+        // another upstream created the partition, but it's not yet in the cluster state of this node
+        IndicesAdminClient indicesAdminClient = mock(IndicesAdminClient.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((ActionListener<CreateIndexResponse>) invocation.getArguments()[1]).onFailure(
+                        new IndexAlreadyExistsException(new Index("parted")));
+                return null;
+            }
+        }).when(indicesAdminClient).create(any(CreateIndexRequest.class), any(ActionListener.class));
+        AdminClient adminClient = mock(AdminClient.class);
+        when(adminClient.indices()).thenReturn(indicesAdminClient);
+        when(client.admin()).thenReturn(adminClient);
+        when(metaData.hasIndex("parted")).thenReturn(false);
+
+        BulkShardProcessor processor = new BulkShardProcessor(
+                clusterService, null, client, transportShardBulkAction, 10, 1);
+        assertThat(processor.add(indexRequest("parted", 0)), is(true));
+        assertThat(processor.add(indexRequest("parted", 1)), is(true));
+        processor.close();
+        // the upstream didn't wait, the requests are held back
+        assertThat(requests.size(), is(0));
+        assertThat(processor.result().isDone(), is(false));
+
+        ArgumentCaptor<ClusterStateListener> listener = ArgumentCaptor.forClass(ClusterStateListener.class);
+        verify(clusterService).add(listener.capture());
+        when(metaData.hasIndex("parted")).thenReturn(true);
+        ClusterChangedEvent event = mock(ClusterChangedEvent.class);
+        when(event.state()).thenReturn(clusterService.state());
+        listener.getValue().clusterChanged(event);
+
+        assertThat(processor.result().get(), is(2L));
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(0).index(), is("parted"));
+        verify(indicesAdminClient, times(1)).create(any(CreateIndexRequest.class), any(ActionListener.class));
+        verify(clusterService).remove(listener.getValue());
+    }
+}